@@ -1,16 +1,59 @@
 package io.core9.core;
 
+import java.lang.invoke.CallSite;
 import java.util.Collection;
+import java.util.Map;
 
 import net.xeoh.plugins.base.Plugin;
 import net.xeoh.plugins.base.impl.PluginManagerImpl;
 
 public interface PluginRegistry {
 	void registerPlugin(Class<? extends Plugin> clazz, Plugin plugin);
+
+	/**
+	 * Returns the plugin registered for the given implementation class, or
+	 * the first plugin implementing the given interface
+	 * @param className
+	 * @return Plugin
+	 */
 	Plugin getPlugin(Class<? extends Plugin> className);
+
+	/**
+	 * Returns all plugins implementing the given interface
+	 * @param pluginInterface
+	 * @return Collection<Plugin>
+	 */
+	Collection<Plugin> getPlugins(Class<?> pluginInterface);
 	
 	void registerPlugins(Collection<Plugin> plugins);
+
+	/**
+	 * Registers several plugins by implementation class in one write
+	 * @param plugins
+	 */
+	void registerPlugins(Map<Class<? extends Plugin>, Plugin> plugins);
+
 	Collection<Plugin> getPlugins();
 
 	PluginManagerImpl getManager();
+
+	/**
+	 * Seals the registry (and the hook, command and invocation handler providers)
+	 * after boot. Every write after freezing throws an IllegalStateException.
+	 */
+	void freeze();
+
+	/**
+	 * Returns true if the registry has been frozen
+	 * @return boolean
+	 */
+	boolean isFrozen();
+
+	/**
+	 * Returns a constant call site bound to the registered plugin, so callers
+	 * can keep it in a static final field. Only available after freeze().
+	 * @param className
+	 * @return CallSite, or null if no plugin was registered for the class
+	 */
+	CallSite getPluginCallSite(Class<? extends Plugin> className);
 }
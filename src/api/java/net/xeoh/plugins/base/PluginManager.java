@@ -29,10 +29,13 @@ package net.xeoh.plugins.base;
 
 import java.lang.reflect.InvocationHandler;
 import java.net.URI;
+import java.util.Collection;
 
 import net.xeoh.plugins.base.impl.registry.PluginRegistry;
 import net.xeoh.plugins.base.options.AddPluginsFromOption;
 import net.xeoh.plugins.base.options.GetPluginOption;
+import net.xeoh.plugins.base.options.getplugin.OptionCapabilities;
+import net.xeoh.plugins.base.options.getplugin.OptionPluginSelector;
 
 /**
  * This is your entry point to and the heart of JSPF. The plugin manager keeps track of all 
@@ -65,10 +68,20 @@ import net.xeoh.plugins.base.options.GetPluginOption;
  * 
  *  <ul>
  *  <li><b>cache.enabled</b> - Specifies if the known plugins should be cached. Specify either {true, false}.</li>
- *  <li><b>cache.mode</b> - If we should use strong caching (slow but more accurate) or weak (much faster). Specify either {stong, weak}. </li>
+ *  <li><b>cache.mode</b> - Kept for compatibility, JARs are only rehashed when their size, modification time or inode change. Specify either {stong, weak}. </li>
  *  <li><b>cache.file</b> - Cache file to use. Specify any relative or absolute file path, file will be created / overwritten.</li>
+ *  <li><b>cache.entries.max</b> - Number of JARs the cache remembers, least recently used ones are evicted on save. Defaults to 512.</li>
+ *  <li><b>cache.entries.minusage</b> - Of JARs last used at the same time, those used fewer times than this are evicted first. The least recently used JARs are evicted before all others, JARs used by the running process are never evicted. Defaults to 2.</li>
  *  <li><b>classpath.filter.default.enabled</b> - If Java default classpaths (e.g., jre/lib/*) should be filtered. Specify either {true, false}. Might not work on all platforms as expected.</li>
+ *  <li><b>cache.downloads.dir</b> - Directory plugins loaded from http:// URIs are cached in. Only the current user should be able to write to it. Defaults to .jspf/downloads in the user's home directory.</li>
+ *  <li><b>classpath.filter.packages.include</b> - Only classes matching one of these ';' separated globs are considered for classpath://* plugins, e.g., "com.acme.**". <code>*</code> stays within a package, <code>**</code> spans packages. Packages outside are never read.</li>
+ *  <li><b>classpath.filter.packages.exclude</b> - Classes matching one of these ';' separated globs are never read, e.g., "org.apache.**".</li>
+ *  <li><b>classpath.filter.jars.exclude</b> - Classpath JARs whose file name matches one of these ';' separated globs are skipped, e.g., "log4j-*.jar;commons-*.jar".</li>
  *  <li><b>classpath.filter.default.pattern</b> - Specify what to filter in addition to default classpaths. Specify a list of ';' separated tokens, e.g., "jdk/lib;jre/lib". Will be matched against URL representations, so all \\ will be converted to / (and ' ' might become %20, ...).</li>
+ *  <li><b>scheduler.threads</b> - Number of threads running all &#064;Timer methods. Timers should return quickly, a slow one delays the others. Defaults to 2.</li>
+ *  <li><b>spawn.threads</b> - Number of threads spawning plugins that don't depend on each other, 1 spawns them one after another. Defaults to the number of processors.</li>
+ *  <li><b>spawn.init.timeout</b> - Milliseconds the &#064;Init methods of a plugin may take before the plugin fails, unless they specify their own timeout. Their thread is interrupted, but an init method ignoring that still blocks its dependents until it returns. Defaults to 0 (no limit).</li>
+ *  <li><b>executor.shutdown.grace</b> - Milliseconds the tasks and threads of a plugin being destroyed may take to finish before they are interrupted. Defaults to 1000.</li>
  *  <li><b>logging.level</b> - Either {OFF, FINEST, FINER, FINE, INFO, WARNING, ALL}. Specifies what to log on the console. </li>
  *  </ul><br/>
  * @see PluginManagerUtil
@@ -108,6 +121,19 @@ public interface PluginManager extends Plugin {
      */
     public void addPluginsFrom(URI url, AddPluginsFromOption... options);
 
+    /**
+     * Adds plugins from several locations at once, see {@link #addPluginsFrom(URI, AddPluginsFromOption...)}
+     * for the supported URIs. This is faster than adding them one by one: the plugin cache is 
+     * read and written only once, all locations are scanned in parallel and the plugins found are 
+     * spawned together, so plugins may depend on plugins of another location of the same call.
+     * 
+     * @param urls The URLs to add from.
+     * 
+     * @param options A set of options supported. Please see the individual options for more
+     * details.
+     */
+    public void addPluginsFrom(Collection<URI> urls, AddPluginsFromOption... options);
+
     /**
      * Returns the next best plugin for the requested interface. The way the plugin is being 
      * selected is undefined, you should assume that a random plugin implementing the requested 
@@ -126,6 +152,28 @@ public interface PluginManager extends Plugin {
      * @return A randomly chosen Object that implements <code>plugin</code>.
      */
     public <P extends Plugin> P getPlugin(Class<P> plugin, GetPluginOption... options);
+
+    /**
+     * Returns all plugins implementing the requested interface. The result is evaluated
+     * lazily from the registry's type index, i.e., plugins are only checked against the
+     * given options while you iterate over them. To list all plugins implementing the 
+     * <code>Chat</code> interface, write:<br/><br/>
+     * 
+     * <code>
+     * for (Chat chat : pluginManager.getPlugins(Chat.class)) { ... }
+     * </code><br/><br/>
+     * 
+     * {@link OptionCapabilities} and {@link OptionPluginSelector} are honored, a selector
+     * is called for every active candidate and decides if it is returned.
+     * 
+     * @param <P> Type of the plugins / return value.
+     *
+     * @param plugin The interface to request. Must be an interface deriving from Plugin.
+     * @param options A set of options for the request.
+     *
+     * @return All active plugins implementing <code>plugin</code> and matching the options.
+     */
+    public <P extends Plugin> Iterable<P> getPlugins(Class<P> plugin, GetPluginOption... options);
     
     // quick fix
     public <P extends Plugin> P getPlugin(final Class<P> requestedPlugin, Class<? extends InvocationHandler> invocationHandler, GetPluginOption... options);
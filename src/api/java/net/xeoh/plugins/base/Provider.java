@@ -0,0 +1,27 @@
+package net.xeoh.plugins.base;
+
+import net.xeoh.plugins.base.annotations.injections.InjectPlugin;
+
+/**
+ * Hands out a plugin that is looked up on first use. Declare an &#064;{@link InjectPlugin}
+ * field of this type if you don't need the plugin while initializing, for example:<br/><br/>
+ * 
+ * <code>
+ * &#064;InjectPlugin<br/>
+ * public Provider&lt;StorageService&gt; storage;
+ * </code><br/><br/>
+ * 
+ * The plugin does not have to be there when this plugin is spawned, so two plugins may
+ * depend on each other this way.
+ * 
+ * @param <P> Type of the plugin.
+ * @see InjectPlugin#lazy()
+ */
+public interface Provider<P extends Plugin> {
+    /**
+     * Returns the plugin, looking it up if this has not been done yet.
+     * 
+     * @return The plugin, or <code>null</code> if there is none (yet).
+     */
+    public P get();
+}
@@ -42,7 +42,13 @@ import java.lang.annotation.Target;
  * public void background() { ... }
  * </code><br/><br/>
  * 
- * All threads are terminated upon <code>PluginManager.shutdown()</code>. 
+ * All threads are terminated upon <code>PluginManager.shutdown()</code>. Threads that
+ * mostly wait (for I/O, locks, ...) can run on virtual threads:<br/><br/>
+ * 
+ * <code>
+ * &#064;Thread(isVirtual = true)<br/>
+ * public void poll() { ... }
+ * </code><br/><br/>
  * 
  * 
  * @author Ralf Biedert
@@ -57,4 +63,12 @@ public @interface Thread {
      * @return True if the VM may exit with the thread still running..
      */
     boolean isDaemonic() default true;
+
+    /**
+     * If the thread should be a virtual thread. Virtual threads are always daemonic, on VMs
+     * without virtual threads (before Java 21) a platform thread is used.
+     *
+     * @return True if a virtual thread should be used.
+     */
+    boolean isVirtual() default false;
 }
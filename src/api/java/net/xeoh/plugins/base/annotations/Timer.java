@@ -44,6 +44,8 @@ import java.lang.annotation.Target;
  * </code><br/><br/>
  * 
  * All timers are terminated upon <code>PluginManager.shutdown()</code>. 
+ * Timers share a small pool of threads (see <code>scheduler.threads</code>), so timer
+ * methods should return quickly.
 
  * @author Ralf Biedert
  * @see Thread
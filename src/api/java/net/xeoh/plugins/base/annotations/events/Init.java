@@ -52,6 +52,13 @@ import net.xeoh.plugins.base.annotations.injections.InjectPlugin;
  * this plugin will be canceled, no &#064;{@link net.xeoh.plugins.base.annotations.Thread} or &#064;{@link Timer} will be started, no other 
  * &#064;{@link Init} methods will be called and the plugin will not be touched any more. <br/><br/>
  * 
+ * Plugins are spawned concurrently once their dependencies are available, so an init method
+ * doing I/O only delays the plugins depending on it. If init methods take longer than their 
+ * <code>timeout</code> (or <code>spawn.init.timeout</code>, see {@link net.xeoh.plugins.base.PluginManager}), 
+ * the initializing thread is interrupted and the plugin fails, even if the method returns later. 
+ * An init method ignoring the interrupt still blocks its spawn thread and all plugins depending 
+ * on it until it returns; the timeout only marks the plugin as failed afterwards.<br/><br/>
+ * 
  * Note: Methods annotated with this have to be PUBLIC, otherwise they won't be found.
  *
  * @author Ralf Biedert
@@ -60,5 +67,11 @@ import net.xeoh.plugins.base.annotations.injections.InjectPlugin;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface Init {
-    // Just a marker interface
+    /**
+     * Milliseconds the init methods of this plugin may take in total. If several init 
+     * methods specify it, the longest one is used. 0 uses the default timeout.
+     * 
+     * @return .
+     */
+    long timeout() default 0;
 }
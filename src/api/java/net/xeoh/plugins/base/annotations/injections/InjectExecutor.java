@@ -0,0 +1,61 @@
+package net.xeoh.plugins.base.annotations.injections;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Injects an executor managed by the plugin manager, so plugins don't have to create
+ * (and shut down) pools of their own. The field must be of type
+ * <code>ExecutorService</code> or <code>Executor</code>. For example, to run blocking
+ * requests in the background, you would write:<br/><br/>
+ *
+ * <code>
+ * &#064;InjectExecutor(name = "downloads", kind = Kind.IO)<br/>
+ * public ExecutorService executor;
+ * </code><br/><br/>
+ *
+ * Executors with the same name are shared by all plugins, but every plugin gets its own
+ * view, which counts the plugin's tasks. Shutting the view down only affects the tasks
+ * of that plugin. Views are shut down when the plugin is destroyed: running tasks are
+ * given some time to finish (see <code>executor.shutdown.grace</code>), then they are
+ * interrupted.<br/><br/>
+ *
+ * Executors are injected right after the plugin was constructed, so they can be used
+ * from &#064;Init methods.
+ *
+ * @see net.xeoh.plugins.base.annotations.Thread
+ */
+@Target(value = { ElementType.FIELD })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface InjectExecutor {
+    /**
+     * Kind of work an executor is made for.
+     */
+    public static enum Kind {
+        /**
+         * Computations, run on a work-stealing pool with one thread per processor.
+         */
+        CPU,
+        /**
+         * Blocking work, every task gets its own virtual thread (or pooled thread, where
+         * virtual threads are not available).
+         */
+        IO
+    }
+
+    /**
+     * Name of the shared executor.
+     *
+     * @return .
+     */
+    String name() default "default";
+
+    /**
+     * Kind of the executor, only considered by the plugin creating it.
+     *
+     * @return .
+     */
+    Kind kind() default Kind.CPU;
+}
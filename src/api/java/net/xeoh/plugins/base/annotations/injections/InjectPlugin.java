@@ -59,6 +59,12 @@ import net.xeoh.plugins.base.annotations.Capabilities;
  * or omitted then it is even ensured that this plugin will not be spawned unless the given service is available.
  * <br/><br/>
  * 
+ * If the plugin is not needed while initializing, it can be looked up on first use instead. 
+ * Either declare the variable as {@link net.xeoh.plugins.base.Provider} (or, on Java 8, 
+ * <code>Supplier</code>) of the plugin type, or set <code>lazy</code> to get a proxy of the 
+ * plugin interface. Lazy injections are no dependencies, the plugin is spawned without 
+ * waiting for them, so plugins may also use each other this way.<br/><br/>
+ * 
  * Please note: The annotated variable has to be <b>public</b>!
  *
  * @author Ralf Biedert
@@ -84,4 +90,13 @@ public @interface InjectPlugin {
      */
     boolean isOptional() default false;
 
+    /**
+     * If set to true, a proxy of the plugin interface is injected, which looks up the 
+     * plugin when it is first called. Calls fail with an IllegalStateException while the
+     * plugin is not there.
+     * 
+     * @return .
+     */
+    boolean lazy() default false;
+
 }
@@ -27,8 +27,6 @@
  */
 package net.xeoh.plugins.base.impl;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.logging.Logger;
@@ -36,7 +34,6 @@ import java.util.logging.Logger;
 import net.xeoh.plugins.base.Plugin;
 import net.xeoh.plugins.base.PluginInformation;
 import net.xeoh.plugins.base.PluginManager;
-import net.xeoh.plugins.base.annotations.Capabilities;
 import net.xeoh.plugins.base.annotations.PluginImplementation;
 import net.xeoh.plugins.base.annotations.injections.InjectPlugin;
 import net.xeoh.plugins.base.annotations.meta.Author;
@@ -44,6 +41,7 @@ import net.xeoh.plugins.base.annotations.meta.Stateless;
 import net.xeoh.plugins.base.annotations.meta.Version;
 import net.xeoh.plugins.base.impl.registry.PluginMetaInformation;
 import net.xeoh.plugins.base.impl.registry.PluginRegistry;
+import net.xeoh.plugins.base.impl.spawning.PluginDescriptor;
 
 /**
  * TODO: Make plugin threadsafe
@@ -81,7 +79,7 @@ public class PluginInformationImpl implements PluginInformation {
 
         case CAPABILITIES:
             // Caps are only supported for plugins currently
-            final String[] caps = getCaps(plugin);
+            final String[] caps = getCaps(pmi, plugin);
             for (final String string : caps) {
                 rval.add(string);
             }
@@ -115,36 +113,17 @@ public class PluginInformationImpl implements PluginInformation {
     }
 
     /**
+     * Returns the capabilities captured at spawn time, or queries the plugin if it
+     * is not registered.
+     * 
+     * @param pmi
      * @param plugin
      * @return
      */
-    private String[] getCaps(final Plugin plugin) {
-        final Class<? extends Plugin> spawnClass = plugin.getClass();
-
-        final Method[] methods = spawnClass.getMethods();
-
-        // Search for proper method
-        for (final Method method : methods) {
-
-            // Init methods will be marked by the corresponding annotation.
-            final Capabilities caps = method.getAnnotation(Capabilities.class);
-            if (caps != null) {
-
-                Object result = null;
-                try {
-                    result = method.invoke(plugin, new Object[0]);
-                } catch (final IllegalArgumentException e) {
-                    //
-                } catch (final IllegalAccessException e) {
-                    //
-                } catch (final InvocationTargetException e) {
-                    //
-                }
-                if (result != null && result instanceof String[])
-                    return (String[]) result;
-            }
-        }
+    private String[] getCaps(final PluginManagerImpl pmi, final Plugin plugin) {
+        final PluginMetaInformation metaInformation = pmi.getPluginRegistry().getMetaInformationFor(plugin);
+        if (metaInformation != null) return metaInformation.capabilities.toArray();
 
-        return new String[0];
+        return PluginDescriptor.of(plugin.getClass()).getCapabilities(plugin);
     }
 }
@@ -33,14 +33,15 @@ package net.xeoh.plugins.base.impl;
 
 import java.lang.reflect.*;
 import java.net.URI;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Properties;
 
 import net.xeoh.plugins.base.Plugin;
 import net.xeoh.plugins.base.PluginConfiguration;
 import net.xeoh.plugins.base.PluginInformation;
-import net.xeoh.plugins.base.PluginInformation.Information;
 import net.xeoh.plugins.base.PluginManager;
 import net.xeoh.plugins.base.annotations.PluginImplementation;
 import net.xeoh.plugins.base.annotations.meta.Author;
@@ -48,6 +49,7 @@ import net.xeoh.plugins.base.annotations.meta.RecognizesOption;
 import net.xeoh.plugins.base.annotations.meta.Version;
 import net.xeoh.plugins.base.diagnosis.channels.tracing.PluginManagerTracer;
 import net.xeoh.plugins.base.impl.classpath.ClassPathManager;
+import net.xeoh.plugins.base.impl.registry.CapabilitySet;
 import net.xeoh.plugins.base.impl.registry.PluginMetaInformation;
 import net.xeoh.plugins.base.impl.registry.PluginMetaInformation.PluginStatus;
 import net.xeoh.plugins.base.impl.registry.PluginRegistry;
@@ -62,6 +64,7 @@ import net.xeoh.plugins.base.options.getplugin.PluginSelector;
 import net.xeoh.plugins.base.util.OptionUtils;
 import net.xeoh.plugins.base.util.PluginConfigurationUtil;
 import net.xeoh.plugins.diagnosis.local.Diagnosis;
+import net.xeoh.plugins.diagnosis.local.DiagnosisChannel;
 import net.xeoh.plugins.diagnosis.local.impl.DiagnosisImpl;
 import net.xeoh.plugins.diagnosis.local.options.status.OptionInfo;
 
@@ -95,6 +98,9 @@ public class PluginManagerImpl implements PluginManager {
     /** Diagnostic facilities */
     Diagnosis diagnosis;
 
+    /** Our own diagnosis channel, cached once the diagnosis is initialized */
+    volatile DiagnosisChannel<String> tracer;
+
     /**
      * Construct new properties.
      * 
@@ -122,18 +128,42 @@ public class PluginManagerImpl implements PluginManager {
      * net.xeoh.plugins.base.options.AddPluginsFromOption[])
      */
     public void addPluginsFrom(final URI url, final AddPluginsFromOption... options) {
-        this.diagnosis.channel(PluginManagerTracer.class).status("add/start", new OptionInfo("url", url));
+        final boolean tracing = tracing();
+        if (tracing) this.tracer.status("add/start", new OptionInfo("url", url));
 
         // Add from the given location
         if (!this.classPathManager.addFromLocation(url)) {
-            this.diagnosis.channel(PluginManagerTracer.class).status("add/nohandler", new OptionInfo("url", url));
+            if (tracing) this.tracer.status("add/nohandler", new OptionInfo("url", url));
+        }
+
+        // Check if we should print a report?
+        if (new OptionUtils<AddPluginsFromOption>(options).contains(OptionReportAfter.class))
+            this.pluginRegistry.report();
+
+        if (tracing) this.tracer.status("add/end", new OptionInfo("url", url));
+        return;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see net.xeoh.plugins.base.PluginManager#addPluginsFrom(java.util.Collection,
+     * net.xeoh.plugins.base.options.AddPluginsFromOption[])
+     */
+    public void addPluginsFrom(final Collection<URI> urls, final AddPluginsFromOption... options) {
+        final boolean tracing = tracing();
+        if (tracing) this.tracer.status("add/start", new OptionInfo("urls", urls.toString()));
+
+        // Add from all locations in one go
+        for (URI url : this.classPathManager.addFromLocations(urls)) {
+            if (tracing) this.tracer.status("add/nohandler", new OptionInfo("url", url));
         }
 
         // Check if we should print a report?
-/*        if ($(options).get(OptionReportAfter.class, null) != null)
-            this.pluginRegistry.report();*/
+        if (new OptionUtils<AddPluginsFromOption>(options).contains(OptionReportAfter.class))
+            this.pluginRegistry.report();
 
-        this.diagnosis.channel(PluginManagerTracer.class).status("add/end", new OptionInfo("url", url));
+        if (tracing) this.tracer.status("add/end", new OptionInfo("urls", urls.toString()));
         return;
     }
 
@@ -198,21 +228,24 @@ public class PluginManagerImpl implements PluginManager {
     public <P extends Plugin> P getPlugin(final Class<P> requestedPlugin,
                                           GetPluginOption... options) {
         // Report our request.
-        if (this.diagnosis != null) {
+        final boolean tracing = tracing();
+        if (tracing) {
             String name = requestedPlugin == null ? "null" : requestedPlugin.getCanonicalName();
-            this.diagnosis.channel(PluginManagerTracer.class).status("get/start", new OptionInfo("plugin", name));
+            this.tracer.status("get/start", new OptionInfo("plugin", name));
         }
 
         // We don't handle null values.
         if (requestedPlugin == null) {
-            this.diagnosis.channel(PluginManagerTracer.class).status("get/end", new OptionInfo("return", null));
+            if (tracing) this.tracer.status("get/end", new OptionInfo("return", null));
             return null;
         }
 
         // Sanity check.
         if (!requestedPlugin.isInterface()) {
-            this.diagnosis.channel(PluginManagerTracer.class).status("get/onlyinterface", new OptionInfo("plugin", requestedPlugin.getCanonicalName()));
-            this.diagnosis.channel(PluginManagerTracer.class).status("get/end", new OptionInfo("return", null));
+            if (tracing) {
+                this.tracer.status("get/onlyinterface", new OptionInfo("plugin", requestedPlugin.getCanonicalName()));
+                this.tracer.status("get/end", new OptionInfo("return", null));
+            }
 
             System.err.println("YOU MUST NOT call getPlugin() with a concrete class; only interfaces are");
             System.err.println("supported for lookup. This means do not call getPlugin(MyPluginImpl.class),");
@@ -220,66 +253,142 @@ public class PluginManagerImpl implements PluginManager {
             return null;
         }
 
+        // Without options this is a plain type lookup
+        if (options.length == 0) {
+            final Plugin plugin = this.pluginRegistry.findPlugin(requestedPlugin);
+
+            if (tracing)
+                this.tracer.status("get/end", new OptionInfo("return", plugin == null ? null : plugin.toString()));
+            return (P) plugin;
+        }
+
         // Used to process the options
         final OptionUtils<GetPluginOption> ou = new OptionUtils<GetPluginOption>(options);
 
-        // We use this one to select the plugin
-        PluginSelector<P> pluginSelector = null;
-
         // Check our options. In case we have a plugin selector, only use the selector
         if (ou.contains(OptionPluginSelector.class)) {
-            pluginSelector = ou.get(OptionPluginSelector.class).getSelector();
-        } else {
-            // Capabilites we require
-            final String capabilites[] = ou.get(OptionCapabilities.class, new OptionCapabilities()).getCapabilities();
-
-            // Get caps as list
-            final Collection<String> caps = Arrays.asList(capabilites);
+            final PluginSelector<P> pluginSelector = ou.get(OptionPluginSelector.class).getSelector();
 
-            // Create our own selector
-            pluginSelector = new PluginSelector<P>() {
-                public boolean selectPlugin(final Plugin plugin) {
+            // Check for each plugin of the requested type if it matches
+            for (final Plugin plugin : this.pluginRegistry.getPluginsFor(requestedPlugin)) {
+                if (tracing)
+                    this.tracer.status("get/considering", new OptionInfo("plugin", plugin.toString()));
 
-                    // In case we have caps do special handling and don't return the next
-                    // best plugin
-                    if (caps.size() > 0) {
-                        Collection<String> pcaps = PluginManagerImpl.this.information.getInformation(Information.CAPABILITIES, plugin);
+                // Check the meta information for this plugin. We only want active classes
+                final PluginMetaInformation metaInformation = this.pluginRegistry.getMetaInformationFor(plugin);
 
-                        // Check the plugin has them all
-                        if (pcaps.containsAll(caps)) return true;
-                        return false;
-                    }
+                // Plugins not active are not considered
+                if (metaInformation == null || metaInformation.pluginStatus != PluginStatus.ACTIVE) continue;
 
-                    return true;
+                if (pluginSelector.selectPlugin((P) plugin)) {
+                    if (tracing)
+                        this.tracer.status("get/end", new OptionInfo("return", plugin.toString()));
+                    return (P) plugin;
                 }
-            };
+            }
+
+            if (tracing)
+                this.tracer.status("get/end", new OptionInfo("return", null));
+            return null;
         }
 
-        // Check for each plugin if it matches
-        for (final Plugin plugin : this.pluginRegistry.getAllPlugins()) {
-            if (this.diagnosis != null)
-                this.diagnosis.channel(PluginManagerTracer.class).status("get/considering", new OptionInfo("plugin", plugin.toString()));
+        // Capabilites we require
+        final String capabilites[] = ou.get(OptionCapabilities.class, new OptionCapabilities()).getCapabilities();
 
-            // Check the meta information for this plugin. We only want active classes
-            final PluginMetaInformation metaInformation = this.pluginRegistry.getMetaInformationFor(plugin);
+        // Intersect the type and capability indices of the registry
+        final Plugin plugin = this.pluginRegistry.findPlugin(requestedPlugin, capabilites);
 
-            // Plugins not active are not considered
-            if (metaInformation.pluginStatus != PluginStatus.ACTIVE) continue;
+        if (tracing)
+            this.tracer.status("get/end", new OptionInfo("return", plugin == null ? null : plugin.toString()));
+        //FIXME add proxy class
+        return (P) plugin;
+    }
 
-            // Check if the plugin can be assigned to the requested class
-            if (requestedPlugin.isAssignableFrom(plugin.getClass())) {
-                if (pluginSelector.selectPlugin((P) plugin)) {
-                    if (this.diagnosis != null)
-                        this.diagnosis.channel(PluginManagerTracer.class).status("get/end", new OptionInfo("return", plugin.toString()));
-                    //FIXME add proxy class
-                    return (P) plugin;
-                }
+    /*
+     * (non-Javadoc)
+     * 
+     * @see net.xeoh.plugins.base.PluginManager#getPlugins(java.lang.Class,
+     * net.xeoh.plugins.base.options.GetPluginOption[])
+     */
+    @SuppressWarnings({ "unchecked" })
+    @RecognizesOption(option = OptionPluginSelector.class)
+    public <P extends Plugin> Iterable<P> getPlugins(final Class<P> requestedPlugin,
+                                                     GetPluginOption... options) {
+        if (requestedPlugin == null) return Collections.emptyList();
+
+        final OptionUtils<GetPluginOption> ou = new OptionUtils<GetPluginOption>(options);
+        final PluginSelector<P> pluginSelector = ou.contains(OptionPluginSelector.class) ? ou.get(OptionPluginSelector.class).getSelector() : null;
+
+        final String capabilites[] = ou.get(OptionCapabilities.class, new OptionCapabilities()).getCapabilities();
+
+        final PluginRegistry registry = this.pluginRegistry;
+        return new Iterable<P>() {
+            public Iterator<P> iterator() {
+                // Capabilities no plugin ever reported cannot match
+                final CapabilitySet required = CapabilitySet.lookup(capabilites);
+                if (required == null) return Collections.<P> emptyList().iterator();
+
+                return new PluginIterator<P>(registry, registry.getPluginsFor(requestedPlugin).iterator(), required, pluginSelector);
+            }
+        };
+    }
+
+    /**
+     * Lazily filters plugins of the type index by status, capabilities and selector.
+     * 
+     * @param <P>
+     */
+    private static final class PluginIterator<P extends Plugin> implements Iterator<P> {
+        /** */
+        private final PluginRegistry registry;
+
+        /** */
+        private final Iterator<Plugin> candidates;
+
+        /** */
+        private final CapabilitySet required;
+
+        /** */
+        private final PluginSelector<P> selector;
+
+        /** The next plugin to return, or null if it has to be searched */
+        private P next;
+
+        PluginIterator(PluginRegistry registry, Iterator<Plugin> candidates,
+                       CapabilitySet required, PluginSelector<P> selector) {
+            this.registry = registry;
+            this.candidates = candidates;
+            this.required = required;
+            this.selector = selector;
+        }
+
+        @SuppressWarnings("unchecked")
+        public boolean hasNext() {
+            while (this.next == null && this.candidates.hasNext()) {
+                final Plugin plugin = this.candidates.next();
+                final PluginMetaInformation metaInformation = this.registry.getMetaInformationFor(plugin);
+
+                // Plugins not active are not considered
+                if (metaInformation == null || metaInformation.pluginStatus != PluginStatus.ACTIVE) continue;
+                if (!metaInformation.capabilities.containsAll(this.required)) continue;
+                if (this.selector != null && !this.selector.selectPlugin((P) plugin)) continue;
+
+                this.next = (P) plugin;
             }
+            return this.next != null;
+        }
+
+        public P next() {
+            if (!hasNext()) throw new NoSuchElementException();
+
+            final P rval = this.next;
+            this.next = null;
+            return rval;
         }
 
-        if (this.diagnosis != null)
-            this.diagnosis.channel(PluginManagerTracer.class).status("get/end", new OptionInfo("return", null));
-        return null;
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
     }
 
     /*
@@ -288,25 +397,38 @@ public class PluginManagerImpl implements PluginManager {
      * @see net.xeoh.plugins.base.PluginManager#shutdown()
      */
     public void shutdown() {
-        this.diagnosis.channel(PluginManagerTracer.class).status("shutdown/start");
+        final boolean tracing = tracing();
+        if (tracing) this.tracer.status("shutdown/start");
 
         // Only execute this method a single time.
         if (this.shutdownPerformed) {
-            this.diagnosis.channel(PluginManagerTracer.class).status("shutdown/end/alreadyperformed");
+            if (tracing) this.tracer.status("shutdown/end/alreadyperformed");
             return;
         }
 
         // Destroy plugins in a random order
         for (final Plugin p : this.pluginRegistry.getAllPlugins()) {
-            this.diagnosis.channel(PluginManagerTracer.class).status("shutdown/destroy", new OptionInfo("plugin", p.getClass().getCanonicalName()));
+            if (tracing) this.tracer.status("shutdown/destroy", new OptionInfo("plugin", p.getClass().getCanonicalName()));
             this.spawner.destroyPlugin(p, this.pluginRegistry.getMetaInformationFor(p));
         }
 
         // Curtains down, lights out.
         this.pluginRegistry.clear();
+        this.spawner.shutdown();
+        this.classPathManager.shutdown();
         this.shutdownPerformed = true;
 
-        this.diagnosis.channel(PluginManagerTracer.class).status("shutdown/end");
+        if (tracing) this.tracer.status("shutdown/end");
+    }
+
+    /**
+     * Returns true if our diagnosis channel records anything.
+     * 
+     * @return .
+     */
+    private boolean tracing() {
+        final DiagnosisChannel<String> channel = this.tracer;
+        return channel != null && channel.isEnabled();
     }
 
     /**
@@ -320,6 +442,12 @@ public class PluginManagerImpl implements PluginManager {
 
         this.classPathManager.getCache().setEnabled(pcu.getBoolean(PluginManager.class, "cache.enabled", false));
         this.classPathManager.getCache().setCachePath(cachePath);
+        this.classPathManager.getCache().setMaxEntries(pcu.getInt(PluginManager.class, "cache.entries.max", 512));
+        this.classPathManager.getCache().setMinUsage(pcu.getInt(PluginManager.class, "cache.entries.minusage", 2));
+        this.spawner.getScheduler().setThreads(pcu.getInt(PluginManager.class, "scheduler.threads", 2));
+        this.spawner.getExecutionService().setShutdownGrace(pcu.getInt(PluginManager.class, "executor.shutdown.grace", 1000));
+        this.spawner.setSpawnThreads(pcu.getInt(PluginManager.class, "spawn.threads", Runtime.getRuntime().availableProcessors()));
+        this.spawner.setInitTimeout(pcu.getInt(PluginManager.class, "spawn.init.timeout", 0));
 
         // Check if we should enable weak mode
         final String mode = pcu.getString(PluginManager.class, "cache.mode", "strong");
@@ -346,6 +474,7 @@ public class PluginManagerImpl implements PluginManager {
         //((PluginInformationImpl) this.information).pluginManager = this;
         ((DiagnosisImpl) this.diagnosis).configuration = this.configuration;
         ((DiagnosisImpl) this.diagnosis).init();
+        this.tracer = this.diagnosis.channel(PluginManagerTracer.class);
 
         hookPlugin(new SpawnResult(this.information));
         hookPlugin(new SpawnResult(this.diagnosis));
@@ -28,31 +28,45 @@
 package net.xeoh.plugins.base.impl.classpath;
 
 import java.io.InputStream;
-import java.net.MalformedURLException;
+import java.lang.annotation.Annotation;
 import java.net.URI;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
+import net.xeoh.plugins.base.Plugin;
+import net.xeoh.plugins.base.annotations.PluginImplementation;
 import net.xeoh.plugins.base.impl.PluginManagerImpl;
 import net.xeoh.plugins.base.impl.classpath.cache.JARCache;
 import net.xeoh.plugins.base.impl.classpath.cache.JARCache.JARInformation;
 import net.xeoh.plugins.base.impl.classpath.loader.AbstractLoader;
+import net.xeoh.plugins.base.impl.classpath.loader.DependencyResolver;
 import net.xeoh.plugins.base.impl.classpath.loader.FileLoader;
 import net.xeoh.plugins.base.impl.classpath.loader.HTTPLoader;
 import net.xeoh.plugins.base.impl.classpath.loader.InternalClasspathLoader;
 import net.xeoh.plugins.base.impl.classpath.locator.AbstractClassPathLocation;
+import net.xeoh.plugins.base.impl.classpath.locator.AbstractClassPathLocation.LocationType;
+import net.xeoh.plugins.base.impl.classpath.locator.ClassFilter;
 import net.xeoh.plugins.base.impl.classpath.locator.ClassPathLocator;
 import net.xeoh.plugins.base.impl.classpath.locator.locations.JARClasspathLocation;
-
-import org.codehaus.classworlds.ClassRealm;
-import org.codehaus.classworlds.ClassWorld;
-import org.codehaus.classworlds.DuplicateRealmException;
-import org.codehaus.classworlds.NoSuchRealmException;
+import net.xeoh.plugins.base.impl.classpath.realm.PluginRealm;
+import net.xeoh.plugins.base.impl.classpath.realm.PluginRealms;
+import net.xeoh.plugins.base.impl.classpath.scanner.ClassFileScanner;
 
 /**
  * Manages all our classpaths shared by different plugins.
@@ -63,6 +77,12 @@ public class ClassPathManager {
     /** Console and file logging */
     private final Logger logger = Logger.getLogger(this.getClass().getName());
 
+    /** */
+    private final PluginManagerImpl pluginManager;
+
+    /** Classes a running resolver spawns, nested resolvers leave them alone */
+    private final Set<Class<? extends Plugin>> resolving = new HashSet<Class<? extends Plugin>>();
+
     /** Blocks access to the file cache */
     private final Lock cacheLock = new ReentrantLock();
 
@@ -72,11 +92,14 @@ public class ClassPathManager {
     /** Locates possible classpaths */
     private final ClassPathLocator locator;
 
+    /** All registered locations, closed on shutdown */
+    private final Collection<AbstractClassPathLocation> locations = new ArrayList<AbstractClassPathLocation>();
+
     /** Loads plugins from various urls */
     private final Collection<AbstractLoader> pluginLoader = new ArrayList<AbstractLoader>();
 
-    /** Manages classpaths from URLs */
-    ClassWorld classWorld;
+    /** Class loaders of all realms */
+    PluginRealms realms;
 
     /**
      * Indicates if we're initialized properly (application mode) or if we had sandbox
@@ -89,6 +112,7 @@ public class ClassPathManager {
      */
     @SuppressWarnings("synthetic-access")
     public ClassPathManager(PluginManagerImpl pluginManager) {
+        this.pluginManager = pluginManager;
         this.locator = new ClassPathLocator(pluginManager, this.jarCache);
 
         // Register loader
@@ -100,14 +124,10 @@ public class ClassPathManager {
         AccessController.doPrivileged(new PrivilegedAction<Object>() {
             public Object run() {
                 try {
-                    // Try to create a new ClassWorld object
-                    ClassPathManager.this.classWorld = new ClassWorld();
-                    // Create a core realm (for internal and classpath://* plugins)
-                    try {
-                        ClassPathManager.this.classWorld.newRealm("core", getClass().getClassLoader());
-                    } catch (DuplicateRealmException e) {
-                        e.printStackTrace();
-                    }
+                    ClassPathManager.this.realms = new PluginRealms(ClassPathManager.class.getClassLoader());
+                    // Create a core realm (for internal and classpath://* plugins), this
+                    // also checks if we may create class loaders at all
+                    ClassPathManager.this.realms.addRealm("core", new URI[0]);
                     // Signal that we are okay.
                     ClassPathManager.this.initializedProperly = true;
                 } catch (SecurityException e) {
@@ -125,23 +145,114 @@ public class ClassPathManager {
      * @return .
      */
     public boolean addFromLocation(URI location) {
+        return addFromLocations(Collections.singletonList(location)).isEmpty();
+    }
+
+    /**
+     * Locates plugins at all given sources and adds them to the registry. The cache is
+     * loaded and saved once, the sources are scanned concurrently and all plugins found
+     * are spawned together afterwards.
+     * 
+     * @param locations
+     * @return The locations no loader handles.
+     */
+    public Collection<URI> addFromLocations(Collection<URI> locations) {
+        final Collection<URI> unhandled = new ArrayList<URI>();
+        final Map<AbstractLoader, List<URI>> batches = new LinkedHashMap<AbstractLoader, List<URI>>();
+
+        // Assign every URI to the first loader handling it
+        outer: for (URI location : locations) {
+            for (AbstractLoader loader : this.pluginLoader) {
+                if (!loader.handlesURI(location)) continue;
+
+                if (!batches.containsKey(loader)) batches.put(loader, new ArrayList<URI>());
+                batches.get(loader).add(location);
+                continue outer;
+            }
+            unhandled.add(location);
+        }
+
+        if (batches.isEmpty()) return unhandled;
+
         this.cacheLock.lock();
         try {
             // Load local cache
             this.jarCache.loadCache();
 
-            // Handle URI
-            for (AbstractLoader loader : this.pluginLoader) {
-                if (!loader.handlesURI(location)) continue;
-                loader.loadFrom(location);
-                return true;
+            for (Map.Entry<AbstractLoader, List<URI>> batch : batches.entrySet()) {
+                batch.getKey().prepare(batch.getValue());
             }
+
+            scan(batches);
+
+            // Classes depending on locations registered after them can be loaded now
+            for (AbstractLoader loader : batches.keySet()) {
+                loader.retryDeferred();
+            }
+
         } finally {
             this.jarCache.saveCache();
             this.cacheLock.unlock();
         }
 
-        return false;
+        // All classes are registered now, spawn them in one go. Not holding the lock,
+        // init methods may add plugins themselves from spawn threads.
+        processPending();
+
+        return unhandled;
+    }
+
+    /**
+     * Spawns all pending classes of the registry whose dependencies can be satisfied.
+     * Called once after all locations of a batch have been scanned.
+     */
+    private void processPending() {
+        new DependencyResolver(this.pluginManager, this.logger, this.resolving).resolve();
+    }
+
+    /**
+     * Calls the loaders for all their URIs, on up to one thread per processor.
+     * 
+     * @param batches
+     */
+    private void scan(Map<AbstractLoader, List<URI>> batches) {
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (final Map.Entry<AbstractLoader, List<URI>> batch : batches.entrySet()) {
+            for (final URI uri : batch.getValue()) {
+                tasks.add(new Callable<Object>() {
+                    public Object call() {
+                        batch.getKey().loadFrom(uri);
+                        return null;
+                    }
+                });
+            }
+        }
+
+        final int threads = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+        if (threads <= 1) {
+            for (Map.Entry<AbstractLoader, List<URI>> batch : batches.entrySet()) {
+                for (URI uri : batch.getValue()) {
+                    batch.getKey().loadFrom(uri);
+                }
+            }
+            return;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Object>> futures = executor.invokeAll(tasks);
+            for (Future<Object> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    this.logger.warning("Error adding plugins: " + e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
     }
 
     /**
@@ -157,22 +268,11 @@ public class ClassPathManager {
      */
     public Class<?> loadClass(AbstractClassPathLocation location, String name)
                                                                               throws ClassNotFoundException {
-        // In case no location is supplied ...
-        if (location == null) { return getClass().getClassLoader().loadClass(name); }
-
-        try {
-            if (this.initializedProperly) {
-                final ClassLoader classLoader = this.classWorld.getRealm(location.getRealm()).getClassLoader();
-                return classLoader.loadClass(name);
-            }
-        } catch (ClassNotFoundException e) {
-            return getClass().getClassLoader().loadClass(name);
-        } catch (NoSuchRealmException e) {
-            e.printStackTrace();
-        }
+        // In case no location is supplied, or we have not been inititalized properly ...
+        if (location == null || !this.initializedProperly) { return getClass().getClassLoader().loadClass(name); }
 
-        // And again, this time we run this code if we have not been inititalized properly
-        return getClass().getClassLoader().loadClass(name);
+        // Realms ask our class loader first anyway
+        return getClassLoader(location).loadClass(name);
     }
 
     /**
@@ -185,9 +285,41 @@ public class ClassPathManager {
      */
     public Collection<String> findSubclassesFor(AbstractClassPathLocation location,
                                                 Class<?> superclass) {
+        return findClassesFor(location, superclass, null);
+    }
 
-        final Collection<String> rval = new ArrayList<String>();
-        if (!this.initializedProperly) return rval;
+    /**
+     * Finds all classes implementing {@link Plugin} and annotated with
+     * {@link PluginImplementation}. Locations with a build-time index are not scanned,
+     * other classes of the location are not loaded.
+     * 
+     * @param location The location to search for.
+     * 
+     * @return A list of plugin implementation names.
+     */
+    public Collection<String> findPluginImplementationsFor(AbstractClassPathLocation location) {
+        final Collection<String> predefined = location.getPredefinedPluginList();
+        if (predefined != null) return predefined;
+
+        return findClassesFor(location, Plugin.class, PluginImplementation.class);
+    }
+
+    /**
+     * Finds all subclasses for the given superclass by their class file headers.
+     * 
+     * @param location The location to search for.
+     * @param superclass The superclass to obtain subclasses for.
+     * @param annotation Annotation the classes must carry, or <code>null</code>.
+     * 
+     * @return A list of class names extending <code>superclass</code>.
+     */
+    private Collection<String> findClassesFor(AbstractClassPathLocation location,
+                                              Class<?> superclass,
+                                              Class<? extends Annotation> annotation) {
+        if (!this.initializedProperly) return new ArrayList<String>();
+
+        String key = annotation == null ? superclass.getCanonicalName() : superclass.getCanonicalName() + "@" + annotation.getCanonicalName();
+        if (location.getFilter() != ClassFilter.ALL) key += location.getFilter();
 
         // Check if we can get the requested information out of the cache
         JARInformation cacheEntry = null;
@@ -197,62 +329,19 @@ public class ClassPathManager {
             cacheEntry = ((JARClasspathLocation) location).getCacheEntry();
 
             if (cacheEntry != null) {
-                final Collection<String> collection = cacheEntry.subclasses.get(superclass.getCanonicalName());
+                final Collection<String> collection = cacheEntry.subclasses.get(key);
                 if (collection != null) return collection;
             }
         }
 
-        // No? Okay, search the hard way ...
-        try {
-            final ClassLoader classLoader = this.classWorld.getRealm(location.getRealm()).getClassLoader();
-            final Collection<String> listClassNames = location.listToplevelClassNames();
-
-            for (String name : listClassNames) {
-                try {
-                    final Class<?> c = Class.forName(name, false, classLoader);
-
-                    // No interfaces please
-                    if (c.isInterface()) continue;
-
-                    if (superclass.isAssignableFrom(c) && !superclass.getCanonicalName().equals(c.getCanonicalName())) {
-                        rval.add(name);
-                    }
-                } catch (ClassNotFoundException e) {
-                    this.logger.fine("ClassNotFoundException. Unable to inspect class " + name + " although it appears to be one.");
-
-                    // Print all causes, helpful for debugging
-                    Throwable cause = e.getCause();
-                    while (cause != null) {
-                        this.logger.fine("Reason " + cause.getMessage());
-                        cause = cause.getCause();
-                    }
-                } catch (final NoClassDefFoundError e) {
-                    this.logger.finer("Ignored class " + name + " due to unresolved dependencies");
-
-                    // Print all causes, helpful for debugging
-                    Throwable cause = e.getCause();
-                    while (cause != null) {
-                        this.logger.fine("Reason " + cause.getMessage());
-                        cause = cause.getCause();
-                    }
-                } catch (SecurityException e) {
-                    this.logger.fine("SecurityException while trying to find subclasses. Cause of trouble: " + name + ". This does not neccessarily mean problems however.");
-
-                    // Print all causes, helpful for debugging
-                    Throwable cause = e.getCause();
-                    while (cause != null) {
-                        this.logger.fine("Reason " + cause.getMessage());
-                        cause = cause.getCause();
-                    }
-                }
-            }
-        } catch (NoSuchRealmException e1) {
-            e1.printStackTrace();
-        }
+        // No? Okay, read the class files ...
+        final ClassFileScanner scanner = new ClassFileScanner(getClassLoader(location));
+        scanner.scan(location);
+        final Collection<String> rval = scanner.findSubclassesOf(superclass, annotation);
 
         // Update the cache information
         if (cacheEntry != null) {
-            cacheEntry.subclasses.put(superclass.getCanonicalName(), rval);
+            cacheEntry.subclasses.put(key, rval);
         }
 
         return rval;
@@ -266,18 +355,12 @@ public class ClassPathManager {
     public void registerLocation(AbstractClassPathLocation location) {
         if (!this.initializedProperly) return;
 
-        try {
-            final ClassRealm newRealm = this.classWorld.newRealm(location.getRealm(), getClass().getClassLoader());
-            final URI[] classpathLocations = location.getClasspathLocations();
-            for (URI uri : classpathLocations) {
-                newRealm.addConstituent(uri.toURL());
-            }
-
-        } catch (DuplicateRealmException e) {
-            // Happens for #classpath realms ...
-        } catch (MalformedURLException e) {
-            e.printStackTrace();
+        synchronized (this.locations) {
+            this.locations.add(location);
         }
+
+        // Locations of #classpath realms share one realm
+        this.realms.addRealm(location.getRealm(), location.getClasspathLocations());
     }
 
     /**
@@ -292,13 +375,40 @@ public class ClassPathManager {
         // In case no location is supplied ...
         if (location == null) { return getClass().getClassLoader().getResourceAsStream(name); }
 
-        try {
-            final ClassLoader classLoader = this.classWorld.getRealm(location.getRealm()).getClassLoader();
-            return classLoader.getResourceAsStream(name);
-        } catch (NoSuchRealmException e) {
-            e.printStackTrace();
+        // JARs know their entries, so we can skip the class loader search
+        if (location.getType() == LocationType.JAR) {
+            final InputStream stream = location.getInputStream(name.startsWith("/") ? name.substring(1) : name);
+            if (stream != null) return stream;
         }
-        return null;
+
+        if (!this.initializedProperly) return getClass().getClassLoader().getResourceAsStream(name);
+
+        return getClassLoader(location).getResourceAsStream(name);
+    }
+
+    /**
+     * Returns the class loader of the given location's realm.
+     * 
+     * @param location
+     * @return The realm, or our class loader if the location was never registered.
+     */
+    private ClassLoader getClassLoader(AbstractClassPathLocation location) {
+        final PluginRealm realm = this.realms.getRealm(location.getRealm());
+        return realm == null ? this.realms.getParent() : realm;
+    }
+
+    /**
+     * Closes all files held open by registered locations and realms.
+     */
+    public void shutdown() {
+        synchronized (this.locations) {
+            for (AbstractClassPathLocation location : this.locations) {
+                location.close();
+            }
+            this.locations.clear();
+        }
+
+        if (this.initializedProperly) this.realms.close();
     }
 
     /**
@@ -310,6 +420,15 @@ public class ClassPathManager {
         return this.locator;
     }
 
+    /**
+     * Returns the class loaders of all realms.
+     * 
+     * @return The realms, or <code>null</code> if we could not create class loaders.
+     */
+    public PluginRealms getRealms() {
+        return this.realms;
+    }
+
     /**
      * Returns the JAR cache.
      * 
@@ -0,0 +1,612 @@
+package net.xeoh.plugins.base.impl.classpath.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.xeoh.plugins.base.impl.classpath.cache.JARCache.JARInformation;
+
+/**
+ * Binary, memory mapped representation of the JAR cache. The file starts with a string
+ * table for the index, followed by an index of JAR records by fingerprint and the file
+ * attributes each fingerprint was computed for. Only the index is decoded when the file
+ * is opened, records are decoded on request. Every record carries its own strings, so
+ * records can be copied from one file into the next without decoding them.<br/>
+ * <br/>
+ *
+ * Layout (all numbers big endian):
+ *
+ * <pre>
+ * magic "JSPFCACH", version
+ * string count, { length, UTF-8 bytes }
+ * record count, { key string, record offset, record length }
+ * fingerprint count, { path string, size, modified, file key string, hash string }
+ * records: last access, usage count, classes valid, strings, classes, subclass map, descriptor map
+ * </pre>
+ */
+final class CacheFile {
+
+    /**
+     * A record to write, either an entry to encode or a record to copy from another
+     * file.
+     */
+    static final class Record {
+
+        /** The entry to encode, or <code>null</code> to copy */
+        final JARInformation information;
+
+        /** The file to copy from */
+        final CacheFile source;
+
+        /** The key of the record in the source */
+        final String key;
+
+        /** */
+        final long lastAccess;
+
+        /** */
+        final int usageCount;
+
+        /**
+         * @param information
+         * @param source
+         * @param key
+         * @param lastAccess
+         * @param usageCount
+         */
+        private Record(JARInformation information, CacheFile source, String key,
+                       long lastAccess, int usageCount) {
+            this.information = information;
+            this.source = source;
+            this.key = key;
+            this.lastAccess = lastAccess;
+            this.usageCount = usageCount;
+        }
+
+        /**
+         * @param information The entry to encode.
+         * @return .
+         */
+        static Record encode(JARInformation information) {
+            return new Record(information, null, null, information.lastAccess, information.usageCount);
+        }
+
+        /**
+         * @param source The file holding the record.
+         * @param key Its key.
+         * @param lastAccess The access time to write instead of the stored one.
+         * @param usageCount The usage count to write instead of the stored one.
+         * @return .
+         */
+        static Record copy(CacheFile source, String key, long lastAccess, int usageCount) {
+            return new Record(null, source, key, lastAccess, usageCount);
+        }
+
+        /**
+         * @param source The file holding the record.
+         * @param key Its key.
+         * @return .
+         */
+        static Record copy(CacheFile source, String key) {
+            return copy(source, key, source.lastAccess(key), source.usageCount(key));
+        }
+    }
+
+    /** Start of every cache file */
+    private static final long MAGIC = 0x4A53504643414348L; // "JSPFCACH"
+
+    /** Increase whenever the layout changes */
+    private static final int VERSION = 4;
+
+    /** Bytes per fingerprint: path, size, modified, file key and hash */
+    private static final int FINGERPRINT_SIZE = 4 + 8 + 8 + 4 + 4;
+
+    /** Bytes per record index entry: key, offset and length */
+    private static final int INDEX_SIZE = 4 + 4 + 4;
+
+    /** Bytes of the usage statistics at the start of every record */
+    private static final int STATS_SIZE = 8 + 4;
+
+    /** */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The mapped file */
+    private final ByteBuffer buffer;
+
+    /** Position of every string in the string table */
+    private final int[] stringOffsets;
+
+    /** Strings decoded so far */
+    private final String[] strings;
+
+    /** Offset and length of every record by JAR fingerprint */
+    private final Map<String, int[]> records;
+
+    /** Position of every fingerprint by JAR path */
+    private final Map<String, Integer> fingerprints;
+
+    /**
+     * Indexes the given file content.
+     *
+     * @param buffer
+     * @throws IOException If the content is not a cache file of this version.
+     */
+    private CacheFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        final int limit = buffer.limit();
+        if (limit < 12 || buffer.getLong(0) != MAGIC) throw new IOException("Not a JSPF cache file");
+        if (buffer.getInt(8) != VERSION) throw new IOException("Unsupported JSPF cache version " + buffer.getInt(8));
+
+        int position = 12;
+
+        final int stringCount = count(position, 4);
+        position += 4;
+
+        this.stringOffsets = new int[stringCount];
+        this.strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            final int length = buffer.getInt(position);
+            if (length < 0 || length > limit - position - 4) throw new IOException("Corrupt string at " + position);
+            this.stringOffsets[i] = position;
+            position += 4 + length;
+        }
+
+        final int recordCount = count(position, INDEX_SIZE);
+        position += 4;
+
+        this.records = new LinkedHashMap<String, int[]>(recordCount * 2);
+        for (int i = 0; i < recordCount; i++) {
+            final int offset = buffer.getInt(position + 4);
+            final int length = buffer.getInt(position + 8);
+            if (offset < 0 || length < STATS_SIZE || offset > limit - length) throw new IOException("Corrupt record index at " + position);
+            checkId(buffer.getInt(position));
+            this.records.put(string(buffer.getInt(position)), new int[] { offset, length });
+            position += INDEX_SIZE;
+        }
+
+        final int fingerprintCount = count(position, FINGERPRINT_SIZE);
+        position += 4;
+
+        this.fingerprints = new HashMap<String, Integer>(fingerprintCount * 2);
+        for (int i = 0; i < fingerprintCount; i++) {
+            checkId(buffer.getInt(position));
+            checkId(buffer.getInt(position + 20));
+            checkId(buffer.getInt(position + 24));
+            this.fingerprints.put(string(buffer.getInt(position)), Integer.valueOf(position + 4));
+            position += FINGERPRINT_SIZE;
+        }
+    }
+
+    /**
+     * Reads a count at the given position and checks that that many elements of the
+     * given size fit into the rest of the file.
+     *
+     * @param position
+     * @param size
+     * @return .
+     * @throws IOException
+     */
+    private int count(int position, int size) throws IOException {
+        final int limit = this.buffer.limit();
+        if (position > limit - 4) throw new IOException("Truncated JSPF cache file");
+
+        final int rval = this.buffer.getInt(position);
+        if (rval < 0 || rval > (limit - position - 4) / size) throw new IOException("Corrupt count at " + position);
+        return rval;
+    }
+
+    /**
+     * @param id
+     * @throws IOException
+     */
+    private void checkId(int id) throws IOException {
+        if (id < 0 || id >= this.stringOffsets.length) throw new IOException("Corrupt string id " + id);
+    }
+
+    /**
+     * Opens the given cache file.
+     *
+     * @param file The file to open.
+     * @return The opened file, or <code>null</code> if it does not exist.
+     * @throws IOException If the file is not a cache file of this version.
+     */
+    static CacheFile open(File file) throws IOException {
+        if (!file.isFile()) return null;
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("JSPF cache file too large");
+
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new CacheFile(mapped);
+        } catch (final RuntimeException e) {
+            throw new IOException("Corrupt JSPF cache file " + file, e);
+        } finally {
+            // The mapping stays valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * @return The fingerprints of all JARs in this file.
+     */
+    Set<String> keys() {
+        return this.records.keySet();
+    }
+
+    /**
+     * @return The paths of all fingerprinted JARs in this file.
+     */
+    Set<String> paths() {
+        return this.fingerprints.keySet();
+    }
+
+    /**
+     * Decodes the fingerprint of the given JAR.
+     *
+     * @param path The absolute path of the JAR.
+     * @return The fingerprint, or <code>null</code> if the JAR is not in the file.
+     */
+    Fingerprint fingerprint(String path) {
+        final Integer offset = this.fingerprints.get(path);
+        if (offset == null) return null;
+
+        final int position = offset.intValue();
+        return new Fingerprint(this.buffer.getLong(position), this.buffer.getLong(position + 8), string(this.buffer.getInt(position + 16)), string(this.buffer.getInt(position + 20)));
+    }
+
+    /**
+     * @param key The fingerprint of a JAR in this file.
+     * @return When the record was last accessed.
+     */
+    long lastAccess(String key) {
+        return this.buffer.getLong(this.records.get(key)[0]);
+    }
+
+    /**
+     * @param key The fingerprint of a JAR in this file.
+     * @return How often the record was used.
+     */
+    int usageCount(String key) {
+        return this.buffer.getInt(this.records.get(key)[0] + 8);
+    }
+
+    /**
+     * Returns the raw bytes of a record.
+     *
+     * @param key The fingerprint of a JAR in this file.
+     * @return A buffer positioned at the start of the record, limited to its end.
+     */
+    private ByteBuffer record(String key) {
+        final int[] record = this.records.get(key);
+
+        final ByteBuffer rval = this.buffer.duplicate();
+        rval.limit(record[0] + record[1]);
+        rval.position(record[0]);
+        return rval;
+    }
+
+    /**
+     * Decodes the record of the given JAR.
+     *
+     * @param key The fingerprint.
+     * @return The information, or <code>null</code> if the JAR is not in the file.
+     * @throws IOException If the record is corrupt.
+     */
+    JARInformation decode(String key) throws IOException {
+        if (!this.records.containsKey(key)) return null;
+
+        final ByteBuffer in = record(key);
+        try {
+            final JARInformation rval = new JARInformation();
+            rval.lastAccess = in.getLong();
+            rval.usageCount = in.getInt();
+            rval.classesValid = in.get() != 0;
+
+            final String[] local = new String[count(in, 4)];
+            for (int i = 0; i < local.length; i++) {
+                final byte[] bytes = new byte[count(in, 1)];
+                in.get(bytes);
+                local[i] = new String(bytes, UTF8);
+            }
+
+            rval.classes = strings(in, local);
+            map(in, local, rval.subclasses);
+            map(in, local, rval.descriptors);
+
+            rval.stored();
+            return rval;
+        } catch (final RuntimeException e) {
+            throw new IOException("Corrupt JSPF cache record " + key, e);
+        }
+    }
+
+    /**
+     * Reads a count from a record and checks that that many elements of the given size
+     * fit into the rest of it.
+     *
+     * @param in
+     * @param size
+     * @return .
+     * @throws IOException
+     */
+    private static int count(ByteBuffer in, int size) throws IOException {
+        final int rval = in.getInt();
+        if (rval < 0 || rval > in.remaining() / size) throw new IOException("Corrupt count in record");
+        return rval;
+    }
+
+    /**
+     * Reads a map of string id lists by string id.
+     *
+     * @param in
+     * @param local The strings of the record.
+     * @param map
+     * @throws IOException
+     */
+    private static void map(ByteBuffer in, String[] local, Map<String, Collection<String>> map) throws IOException {
+        final int count = count(in, 8);
+        for (int i = 0; i < count; i++) {
+            final String key = local[in.getInt()];
+            map.put(key, strings(in, local));
+        }
+    }
+
+    /**
+     * Reads a list of string ids.
+     *
+     * @param in
+     * @param local The strings of the record.
+     * @return .
+     * @throws IOException
+     */
+    private static List<String> strings(ByteBuffer in, String[] local) throws IOException {
+        final int count = count(in, 4);
+        final List<String> rval = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            rval.add(local[in.getInt()]);
+        }
+        return rval;
+    }
+
+    /**
+     * Returns the string with the given id.
+     *
+     * @param id
+     * @return .
+     */
+    private synchronized String string(int id) {
+        String rval = this.strings[id];
+        if (rval != null) return rval;
+
+        final int offset = this.stringOffsets[id];
+        final byte[] bytes = new byte[this.buffer.getInt(offset)];
+
+        final ByteBuffer in = this.buffer.duplicate();
+        in.position(offset + 4);
+        in.get(bytes);
+
+        rval = new String(bytes, UTF8);
+        this.strings[id] = rval;
+        return rval;
+    }
+
+    /**
+     * Writes the usage statistics of the given entries into the file in place. Only valid
+     * while the caller holds the exclusive lock and the file is the one this object was
+     * opened from. A torn write can only garble the statistics of a record.
+     *
+     * @param file The file this object was opened from.
+     * @param entries Entries present in this file, by fingerprint.
+     * @throws IOException
+     */
+    void writeStats(File file, Map<String, JARInformation> entries) throws IOException {
+        final ByteBuffer stats = ByteBuffer.allocate(STATS_SIZE);
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            final FileChannel channel = raf.getChannel();
+            for (Map.Entry<String, JARInformation> entry : entries.entrySet()) {
+                stats.clear();
+                stats.putLong(entry.getValue().lastAccess);
+                stats.putInt(entry.getValue().usageCount);
+                stats.flip();
+
+                long position = this.records.get(entry.getKey())[0];
+                while (stats.hasRemaining()) {
+                    position += channel.write(stats, position);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes the given records to a file.
+     *
+     * @param file The target file.
+     * @param entries The records by fingerprint.
+     * @param fingerprints The fingerprints by JAR path.
+     * @throws IOException
+     */
+    static void write(File file, Map<String, Record> entries,
+                      Map<String, Fingerprint> fingerprints) throws IOException {
+        // Assign ids to the strings of the index first
+        final Map<String, Integer> ids = new LinkedHashMap<String, Integer>();
+        for (String key : entries.keySet()) {
+            id(ids, key);
+        }
+
+        for (Map.Entry<String, Fingerprint> entry : fingerprints.entrySet()) {
+            id(ids, entry.getKey());
+            id(ids, entry.getValue().fileKey);
+            id(ids, entry.getValue().hash);
+        }
+
+        // Records are written into their own buffer so we know their offsets
+        final Map<String, int[]> offsets = new HashMap<String, int[]>();
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        final DataOutputStream recordOut = new DataOutputStream(records);
+        for (Map.Entry<String, Record> entry : entries.entrySet()) {
+            final Record record = entry.getValue();
+            final int start = recordOut.size();
+
+            recordOut.writeLong(record.lastAccess);
+            recordOut.writeInt(record.usageCount);
+
+            if (record.information == null) {
+                // Copy everything behind the statistics
+                final ByteBuffer in = record.source.record(record.key);
+                in.position(in.position() + STATS_SIZE);
+
+                final byte[] bytes = new byte[in.remaining()];
+                in.get(bytes);
+                recordOut.write(bytes);
+            } else {
+                encode(recordOut, record.information);
+            }
+
+            offsets.put(entry.getKey(), new int[] { start, recordOut.size() - start });
+        }
+        recordOut.flush();
+
+        final FileOutputStream fos = new FileOutputStream(file);
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(ids.size());
+            for (String string : ids.keySet()) {
+                final byte[] bytes = string.getBytes(UTF8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            // Records start right after the indices
+            final int recordStart = out.size() + 4 + INDEX_SIZE * entries.size() + 4 + FINGERPRINT_SIZE * fingerprints.size();
+
+            out.writeInt(entries.size());
+            for (String key : entries.keySet()) {
+                final int[] offset = offsets.get(key);
+                out.writeInt(ids.get(key).intValue());
+                out.writeInt(recordStart + offset[0]);
+                out.writeInt(offset[1]);
+            }
+
+            out.writeInt(fingerprints.size());
+            for (Map.Entry<String, Fingerprint> entry : fingerprints.entrySet()) {
+                final Fingerprint fingerprint = entry.getValue();
+                out.writeInt(ids.get(entry.getKey()).intValue());
+                out.writeLong(fingerprint.size);
+                out.writeLong(fingerprint.modified);
+                out.writeInt(ids.get(fingerprint.fileKey).intValue());
+                out.writeInt(ids.get(fingerprint.hash).intValue());
+            }
+
+            records.writeTo(out);
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Encodes an entry behind its statistics.
+     *
+     * @param out
+     * @param information
+     * @throws IOException
+     */
+    private static void encode(DataOutputStream out, JARInformation information) throws IOException {
+        final Map<String, Integer> local = new LinkedHashMap<String, Integer>();
+        for (String name : information.classes) {
+            id(local, name);
+        }
+        ids(local, information.subclasses);
+        ids(local, information.descriptors);
+
+        out.writeByte(information.classesValid ? 1 : 0);
+
+        out.writeInt(local.size());
+        for (String string : local.keySet()) {
+            final byte[] bytes = string.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        writeIds(out, local, information.classes);
+        writeMap(out, local, information.subclasses);
+        writeMap(out, local, information.descriptors);
+    }
+
+    /**
+     * @param ids
+     * @param string
+     */
+    private static void id(Map<String, Integer> ids, String string) {
+        if (!ids.containsKey(string)) ids.put(string, Integer.valueOf(ids.size()));
+    }
+
+    /**
+     * @param ids
+     * @param map
+     */
+    private static void ids(Map<String, Integer> ids, Map<String, Collection<String>> map) {
+        for (Map.Entry<String, Collection<String>> entry : map.entrySet()) {
+            id(ids, entry.getKey());
+            for (String string : entry.getValue()) {
+                id(ids, string);
+            }
+        }
+    }
+
+    /**
+     * @param out
+     * @param ids
+     * @param map
+     * @throws IOException
+     */
+    private static void writeMap(DataOutputStream out, Map<String, Integer> ids,
+                                 Map<String, Collection<String>> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, Collection<String>> entry : map.entrySet()) {
+            out.writeInt(ids.get(entry.getKey()).intValue());
+            writeIds(out, ids, entry.getValue());
+        }
+    }
+
+    /**
+     * @param out
+     * @param ids
+     * @param strings
+     * @throws IOException
+     */
+    private static void writeIds(DataOutputStream out, Map<String, Integer> ids,
+                                 Collection<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeInt(ids.get(string).intValue());
+        }
+    }
+}
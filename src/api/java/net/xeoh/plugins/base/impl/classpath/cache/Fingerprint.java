@@ -0,0 +1,107 @@
+package net.xeoh.plugins.base.impl.classpath.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.CRC32;
+
+/**
+ * Identifies the content of a JAR. The content hash is expensive, so it is stored with
+ * the file's size, modification time and file key (the inode on most systems). As long
+ * as these match, the stored hash is still valid and the file is not read again.
+ */
+final class Fingerprint {
+
+    /** Size of the chunks we read while hashing */
+    private static final int CHUNK = 64 * 1024;
+
+    /** */
+    final long size;
+
+    /** */
+    final long modified;
+
+    /** File key, or an empty string if the file system has none */
+    final String fileKey;
+
+    /** The content hash, used as the cache key */
+    final String hash;
+
+    /**
+     * @param size
+     * @param modified
+     * @param fileKey
+     * @param hash
+     */
+    Fingerprint(long size, long modified, String fileKey, String hash) {
+        this.size = size;
+        this.modified = modified;
+        this.fileKey = fileKey;
+        this.hash = hash;
+    }
+
+    /**
+     * Reads the attributes we compare fingerprints by.
+     *
+     * @param file
+     * @return .
+     * @throws IOException
+     */
+    static BasicFileAttributes stat(File file) throws IOException {
+        return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    }
+
+    /**
+     * Checks if the file still looks like it did when the hash was computed.
+     *
+     * @param attributes Current attributes of the file.
+     * @return .
+     */
+    boolean matches(BasicFileAttributes attributes) {
+        return this.size == attributes.size() && this.modified == attributes.lastModifiedTime().toMillis() && this.fileKey.equals(fileKey(attributes));
+    }
+
+    /**
+     * Hashes the content of the given file.
+     *
+     * @param file The file to hash.
+     * @param attributes Its attributes as returned by stat().
+     * @return The new fingerprint.
+     * @throws IOException
+     */
+    static Fingerprint compute(File file, BasicFileAttributes attributes) throws IOException {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer chunk = ByteBuffer.allocate(CHUNK);
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+
+            long size = 0;
+            int read;
+            while ((read = channel.read(chunk)) != -1) {
+                crc.update(chunk.array(), 0, read);
+                size += read;
+                chunk.clear();
+            }
+
+            final String hash = "crc32:" + size + ":" + Long.toHexString(crc.getValue());
+            return new Fingerprint(attributes.size(), attributes.lastModifiedTime().toMillis(), fileKey(attributes), hash);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @param attributes
+     * @return .
+     */
+    private static String fileKey(BasicFileAttributes attributes) {
+        final Object key = attributes.fileKey();
+        return key == null ? "" : key.toString();
+    }
+}
@@ -27,25 +27,38 @@
  */
 package net.xeoh.plugins.base.impl.classpath.cache;
 
-import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.net.URI;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
+import net.xeoh.plugins.base.impl.classpath.index.PluginIndex;
+
 /**
  * Information about JAR files
  * 
@@ -66,8 +79,17 @@ public class JARCache {
 		/** List of valid classes in the jar */
 		public List<String> classes = new ArrayList<String>();
 
+		/** Key of {@link #subclasses} holding the classes named by the JAR's plugin index */
+		public static final String INDEX = PluginIndex.PATH;
+
+		/** Key of {@link #subclasses} present if the JAR has no plugin index */
+		public static final String NO_INDEX = "!" + PluginIndex.PATH;
+
 		/** List of valid plugins in the jar */
-		public Map<String, Collection<String>> subclasses = new HashMap<String, Collection<String>>();
+		public Map<String, Collection<String>> subclasses = new ConcurrentHashMap<String, Collection<String>>();
+
+		/** Annotated members of the plugins in the jar, by class name */
+		public Map<String, Collection<String>> descriptors = new ConcurrentHashMap<String, Collection<String>>();
 
 		/** */
 		public long lastAccess = System.currentTimeMillis();
@@ -78,6 +100,31 @@ public class JARCache {
 		/** Is the contents information valid? */
 		public boolean classesValid = false;
 
+		/** Content signature when the entry was last read or written */
+		private transient int stored = -1;
+
+		/**
+		 * Remembers the current content as the one in the cache file.
+		 */
+		void stored() {
+			this.stored = signature();
+		}
+
+		/**
+		 * @return True if the content changed since it was last read or written, usage
+		 *         statistics are not considered.
+		 */
+		boolean changed() {
+			return this.stored == -1 || this.stored != signature();
+		}
+
+		/**
+		 * @return .
+		 */
+		private int signature() {
+			final int rval = 31 * (31 * (31 * this.classes.hashCode() + this.subclasses.hashCode()) + this.descriptors.hashCode()) + (this.classesValid ? 1 : 0);
+			return rval == -1 ? 0 : rval;
+		}
 	}
 
 	/** */
@@ -86,66 +133,92 @@ public class JARCache {
 	/** Name of the default cache file */
 	private final static String DEFAULT_CACHE_FILE = "jspf.plugin.cache";
 
+	/** Orders saves of caches in this process, file locks only order processes */
+	private final static ConcurrentMap<String, Object> SAVE_MONITORS = new ConcurrentHashMap<String, Object>();
+
 	/** Is the cache enabled */
 	private boolean cacheEnabled = false;
 
-	/** maps a fingerprint to a jar information */
-	private Map<String, JARInformation> cacheMap = new HashMap<String, JARInformation>();
+	/** maps a fingerprint to a jar information, holds all entries decoded or created */
+	private final Map<String, JARInformation> cacheMap = new HashMap<String, JARInformation>();
+
+	/** The cache file as we last read or wrote it */
+	private volatile CacheFile mappedCache = null;
+
+	/** Modification stamp of the mapped cache file */
+	private long mappedStamp = 0;
+
+	/** Fingerprints computed or decoded so far, by JAR path */
+	private final Map<String, Fingerprint> fingerprints = new ConcurrentHashMap<String, Fingerprint>();
+
+	/** If we handed out entries or fingerprints since the last save */
+	private volatile boolean modified = false;
+
+	/** If we computed fingerprints since the last save */
+	private volatile boolean fingerprinted = false;
 
 	/** */
 	private boolean weakMode = false;
 
+	/** Number of JARs we keep on save */
+	private int maxEntries = 512;
+
+	/** JARs used less often are evicted first */
+	private int minUsage = 2;
+
+	/** Requests answered from the cache */
+	private long hits = 0;
+
+	/** Requests for unknown JARs */
+	private long misses = 0;
+
 	private String cachePath;
 
 	/**
-	 * Load cache
+	 * Load cache. Only the index of the cache file is read, JAR records are decoded
+	 * when they are requested.
 	 */
-	@SuppressWarnings("unchecked")
 	public void loadCache() {
 		if (!this.cacheEnabled)
 			return;
 
-		final String cacheFile = (this.cachePath == null) ? DEFAULT_CACHE_FILE : this.cachePath;
-
-		try {
-			// lock the lockfile
-			final FileInputStream fis = new FileInputStream(cacheFile);
-			final ObjectInputStream ois = new ObjectInputStream(fis);
-			final Object rval = ois.readObject(); // Loading caches can take
-												  // very long
-			                                      // (>250ms) for many entries
+		final File cacheFile = getCacheFile();
 
-			ois.close();
+		// Nothing to do if the file did not change since we mapped it
+		final long stamp = cacheFile.lastModified() ^ cacheFile.length();
+		if (this.mappedCache != null && stamp == this.mappedStamp)
+			return;
 
-			if (rval != null) {
-				this.cacheMap = (Map<String, JARInformation>) rval;
+		try {
+			final FileLock lock = lock(cacheFile, true);
+			try {
+				this.mappedCache = CacheFile.open(cacheFile);
+				this.mappedStamp = stamp;
+
+				if (this.mappedCache != null)
+					this.logger.fine("Loaded JSPF cache " + cacheFile + ": " + this.mappedCache.keys().size() + " entries");
+			} finally {
+				release(lock);
 			}
-		} catch (EOFException e) {
-			//
-		} catch (final FileNotFoundException e) {
-			// If file was not found, no problem ...
-			// e.printStackTrace();
 		} catch (final IOException e) {
-			e.printStackTrace();
-		} catch (final ClassNotFoundException e) {
-			this.logger
-			        .warning("Your JSPF cache is outdated, please delete it. It will be regenerated with the next run. The next exception reflects this, so don't be afraid.");
-			e.printStackTrace();
+			this.logger.fine("Ignoring unreadable JSPF cache " + cacheFile + ": " + e.getMessage());
+			this.mappedCache = null;
 		}
 	}
 
 	/**
+	 * May be called by several scanning threads at once.
+	 * 
 	 * @param uri
 	 * @return .
 	 */
-	public JARInformation getJARInformationFor(final URI uri) {
+	public synchronized JARInformation getJARInformationFor(final URI uri) {
 		// Just return a dummy when we are disabled
 		if (!this.cacheEnabled) {
 			return new JARInformation();
 		}
 
-		final File file = new File(uri);
-		final String hash = (this.weakMode) ? generateWeakHash(file) : generateStrongHash(file);
+		final String hash = fingerprint(new File(uri));
 
 		if (hash == null) {
 			this.logger.warning("Error generating hash. Caching won't work.");
@@ -153,119 +226,342 @@ public class JARCache {
 		}
 
 		// Create information if not already there.
-		if (!this.cacheMap.containsKey(hash)) {
-			this.cacheMap.put(hash, new JARInformation());
+		JARInformation jarInformation = this.cacheMap.get(hash);
+		if (jarInformation == null) {
+			jarInformation = decode(hash);
+			if (jarInformation == null) {
+				jarInformation = new JARInformation();
+				this.misses++;
+			} else {
+				this.hits++;
+			}
+			this.cacheMap.put(hash, jarInformation);
+		} else {
+			this.hits++;
 		}
 
-		final JARInformation jarInformation = this.cacheMap.get(hash);
 		jarInformation.lastAccess = System.currentTimeMillis();
 		jarInformation.usageCount++;
+		this.modified = true;
 		return jarInformation;
 	}
 
 	/**
-	 * Saves the cache
+	 * Decodes an entry of the mapped cache file.
+	 * 
+	 * @param hash
+	 * @return The entry, or <code>null</code> if it is not in the file or corrupt.
 	 */
-	public void saveCache() {
+	private JARInformation decode(final String hash) {
+		final CacheFile mapped = this.mappedCache;
+		if (mapped == null)
+			return null;
 
-		if (!this.cacheEnabled)
+		try {
+			return mapped.decode(hash);
+		} catch (final IOException e) {
+			this.logger.fine("Ignoring corrupt JSPF cache entry: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Saves the cache. If only usage statistics changed, they are updated in place.
+	 * Otherwise a new file replaces the old one atomically, keeping entries written by
+	 * other processes in the meantime. Records we did not change are copied without
+	 * decoding them. Entries exceeding the maximum are evicted, fingerprints of evicted
+	 * JARs and deleted files are dropped.
+	 */
+	public synchronized void saveCache() {
+		if (!this.cacheEnabled || !this.modified)
 			return;
-		String cacheFile = this.cachePath;
-		// String = this.configuration.getConfiguration(getClass(),
-		// "cacheFile");
-		if (cacheFile == null) {
-			cacheFile = DEFAULT_CACHE_FILE;
+
+		final File cacheFile = getCacheFile();
+		final File tempFile = new File(cacheFile.getPath() + ".tmp");
+
+		final String path = cacheFile.getAbsolutePath();
+		SAVE_MONITORS.putIfAbsent(path, new Object());
+
+		synchronized (SAVE_MONITORS.get(path)) {
+			save(cacheFile, tempFile);
 		}
+	}
 
+	/**
+	 * Saves the cache while holding the monitor of its file.
+	 * 
+	 * @param cacheFile
+	 * @param tempFile
+	 */
+	private void save(final File cacheFile, final File tempFile) {
 		try {
-			// lock the lockfile
-			final FileOutputStream fos = new FileOutputStream(cacheFile);
-			@SuppressWarnings("resource")
-			final ObjectOutputStream oos = new ObjectOutputStream(fos);
-
-			oos.writeObject(this.cacheMap);
-		} catch (final FileNotFoundException e) {
-			e.printStackTrace();
+			final FileLock lock = lock(cacheFile, false);
+			try {
+				CacheFile current = null;
+				try {
+					current = CacheFile.open(cacheFile);
+				} catch (final IOException e) {
+					this.logger.fine("Replacing unreadable JSPF cache " + cacheFile);
+				}
+
+				boolean rewrite = this.fingerprinted || current == null;
+				for (Map.Entry<String, JARInformation> entry : this.cacheMap.entrySet()) {
+					if (rewrite)
+						break;
+					rewrite = entry.getValue().changed() || !current.keys().contains(entry.getKey());
+				}
+
+				if (!rewrite) {
+					current.writeStats(cacheFile, this.cacheMap);
+					this.mappedCache = current;
+					this.mappedStamp = cacheFile.lastModified() ^ cacheFile.length();
+					this.modified = false;
+
+					this.logger.fine("Saved JSPF cache statistics to " + cacheFile + ", hit rate " + getHitRate());
+					return;
+				}
+
+				// Merge what is on disk now with what we mapped and what we changed
+				final Map<String, CacheFile.Record> entries = new LinkedHashMap<String, CacheFile.Record>();
+				for (CacheFile source : new CacheFile[] { current, this.mappedCache }) {
+					if (source == null)
+						continue;
+					for (String key : source.keys()) {
+						if (!entries.containsKey(key))
+							entries.put(key, CacheFile.Record.copy(source, key));
+					}
+				}
+				for (Map.Entry<String, JARInformation> entry : this.cacheMap.entrySet()) {
+					final JARInformation information = entry.getValue();
+					final CacheFile.Record record = entries.get(entry.getKey());
+					if (record != null && !information.changed())
+						entries.put(entry.getKey(), CacheFile.Record.copy(record.source, entry.getKey(), information.lastAccess, information.usageCount));
+					else
+						entries.put(entry.getKey(), CacheFile.Record.encode(information));
+				}
+
+				final Map<String, Fingerprint> fingerprints = new HashMap<String, Fingerprint>();
+				for (CacheFile source : new CacheFile[] { current, this.mappedCache }) {
+					if (source == null)
+						continue;
+					for (String path : source.paths()) {
+						if (!fingerprints.containsKey(path))
+							fingerprints.put(path, source.fingerprint(path));
+					}
+				}
+				fingerprints.putAll(this.fingerprints);
+
+				compact(entries, fingerprints);
+
+				CacheFile.write(tempFile, entries, fingerprints);
+				move(tempFile, cacheFile);
+
+				for (JARInformation information : this.cacheMap.values()) {
+					information.stored();
+				}
+
+				this.mappedCache = CacheFile.open(cacheFile);
+				this.mappedStamp = cacheFile.lastModified() ^ cacheFile.length();
+				this.modified = false;
+				this.fingerprinted = false;
+
+				this.logger.fine("Saved JSPF cache " + cacheFile + ": " + entries.size() + " entries, " + cacheFile.length() + " bytes, hit rate " + getHitRate());
+			} finally {
+				release(lock);
+			}
 		} catch (final IOException e) {
 			e.printStackTrace();
+			tempFile.delete();
 		}
 	}
 
 	/**
-	 * Weak hash mode.
+	 * Evicts the least recently used entries above the maximum, of entries used at the
+	 * same time those used fewer than minUsage times first. Entries used by this process
+	 * are kept, so new JARs can build up usage. Fingerprints no entry refers to anymore
+	 * are removed as well.
 	 * 
-	 * @param file
-	 * @return
+	 * @param entries The entries to save, will be modified.
+	 * @param fingerprints The fingerprints to save, will be modified.
 	 */
-	private String generateWeakHash(File file) {
-		final String name = file.getName();
-		final long length = file.length();
+	private void compact(final Map<String, CacheFile.Record> entries, final Map<String, Fingerprint> fingerprints) {
+		final int excess = entries.size() - this.maxEntries;
+		if (excess > 0) {
+			final List<Map.Entry<String, CacheFile.Record>> candidates = new ArrayList<Map.Entry<String, CacheFile.Record>>();
+			for (Map.Entry<String, CacheFile.Record> entry : entries.entrySet()) {
+				if (!this.cacheMap.containsKey(entry.getKey()))
+					candidates.add(entry);
+			}
 
-		final String hash = "weak:" + name + "@" + length;
-		return hash;
+			Collections.sort(candidates, new Comparator<Map.Entry<String, CacheFile.Record>>() {
+				public int compare(Map.Entry<String, CacheFile.Record> o1, Map.Entry<String, CacheFile.Record> o2) {
+					final long access1 = o1.getValue().lastAccess;
+					final long access2 = o2.getValue().lastAccess;
+					if (access1 != access2)
+						return access1 < access2 ? -1 : 1;
+
+					final boolean rare1 = o1.getValue().usageCount < JARCache.this.minUsage;
+					final boolean rare2 = o2.getValue().usageCount < JARCache.this.minUsage;
+					if (rare1 != rare2)
+						return rare1 ? -1 : 1;
+
+					return 0;
+				}
+			});
+
+			final List<String> evicted = new ArrayList<String>(excess);
+			for (Map.Entry<String, CacheFile.Record> candidate : candidates.subList(0, Math.min(excess, candidates.size()))) {
+				evicted.add(candidate.getKey());
+			}
+			for (String key : evicted) {
+				entries.remove(key);
+			}
+
+			this.logger.fine("Evicted " + evicted.size() + " entries from the JSPF cache");
+		}
+
+		final Iterator<Map.Entry<String, Fingerprint>> iterator = fingerprints.entrySet().iterator();
+		while (iterator.hasNext()) {
+			final Map.Entry<String, Fingerprint> fingerprint = iterator.next();
+			if (!entries.containsKey(fingerprint.getValue().hash) || !new File(fingerprint.getKey()).exists()) {
+				iterator.remove();
+				this.fingerprints.remove(fingerprint.getKey());
+			}
+		}
 	}
 
 	/**
-	 * Generate a hash for the given element.
-	 * 
-	 * @param element
+	 * Returns the cache file.
 	 * 
 	 * @return .
 	 */
-	@SuppressWarnings("boxing")
-	private String generateStrongHash(final File element) {
-		// Try to generate hash
+	private File getCacheFile() {
+		return new File((this.cachePath == null) ? DEFAULT_CACHE_FILE : this.cachePath);
+	}
 
-		boolean created = false;
+	/**
+	 * Locks the lock file belonging to the cache, so several processes can share it.
+	 * 
+	 * @param cacheFile
+	 * @param shared True for reading.
+	 * @return The lock, or <code>null</code> if the file system does not support locks.
+	 * @throws IOException
+	 */
+	@SuppressWarnings("resource")
+	private FileLock lock(File cacheFile, boolean shared) throws IOException {
+		final File lockFile = new File(cacheFile.getPath() + ".lock");
+		final FileChannel channel = new RandomAccessFile(lockFile, "rw").getChannel();
 
 		try {
-			this.logger.fine("Processing JAR " + element);
+			return channel.lock(0, Long.MAX_VALUE, shared);
+		} catch (final OverlappingFileLockException e) {
+			// Another cache of this process holds it, the caller's lock orders us
+			channel.close();
+			return null;
+		} catch (final IOException e) {
+			this.logger.fine("Unable to lock " + lockFile + ": " + e.getMessage());
+			channel.close();
+			return null;
+		}
+	}
 
-			final MessageDigest digest = java.security.MessageDigest.getInstance("MD5");
-			final FileInputStream fis = new FileInputStream(element);
+	/**
+	 * Releases a lock obtained by lock().
+	 * 
+	 * @param lock
+	 */
+	private static void release(FileLock lock) {
+		if (lock == null)
+			return;
 
-			// Read Data
-			final byte[] data = new byte[1024 * 1024];
-			int avail = fis.available();
+		try {
+			lock.release();
+			lock.channel().close();
+		} catch (final IOException e) {
+			e.printStackTrace();
+		}
+	}
 
-			// Update hash
-			while (avail > 0) {
-				avail = Math.min(avail, data.length);
+	/**
+	 * Replaces the target with the source, atomically if the file system allows it.
+	 * 
+	 * @param source
+	 * @param target
+	 * @throws IOException
+	 */
+	private static void move(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (final AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
 
-				fis.read(data, 0, avail);
+	/**
+	 * Returns the fingerprint hash of the given JAR. The content is only hashed if the
+	 * file's size, modification time or file key changed since we last hashed it.
+	 * 
+	 * @param file
+	 * @return The hash, or <code>null</code> if the file cannot be read.
+	 */
+	private String fingerprint(final File file) {
+		try {
+			final BasicFileAttributes attributes = Fingerprint.stat(file);
+			final String path = file.getAbsolutePath();
+			final CacheFile mapped = this.mappedCache;
+
+			Fingerprint fingerprint = this.fingerprints.get(path);
+			if (fingerprint == null && mapped != null)
+				fingerprint = mapped.fingerprint(path);
+			if (fingerprint != null && fingerprint.matches(attributes))
+				return fingerprint.hash;
+
+			this.logger.fine("Hashing JAR " + file);
+
+			fingerprint = Fingerprint.compute(file, attributes);
+			this.fingerprints.put(path, fingerprint);
+			this.fingerprinted = true;
+			this.modified = true;
+			return fingerprint.hash;
+		} catch (final IOException e) {
+			this.logger.warning("Error creating hash of " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
 
-				digest.update(data, 0, avail);
-				avail = fis.available();
-			}
+	/**
+	 * Computes the fingerprints of the given JARs in parallel, so later calls to
+	 * getJARInformationFor() only have to compare file attributes.
+	 * 
+	 * @param uris The JARs.
+	 */
+	public void fingerprint(final Collection<URI> uris) {
+		if (!this.cacheEnabled || uris.size() < 2)
+			return;
 
-			final byte[] hash = digest.digest();
+		final int threads = Math.min(Runtime.getRuntime().availableProcessors(), uris.size());
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
 
-			// Assemble hash string
-			final StringBuilder sb = new StringBuilder();
-			sb.append("md5:");
-			for (final byte b : hash) {
-				final String format = String.format("%02x", b);
-				sb.append(format);
+		try {
+			final List<Future<String>> futures = new ArrayList<Future<String>>();
+			for (final URI uri : uris) {
+				futures.add(executor.submit(new Callable<String>() {
+					public String call() {
+						return fingerprint(new File(uri));
+					}
+				}));
 			}
 
-			fis.close();
-
-			final String hashValue = sb.toString().substring(0, sb.toString().length());
-			created = true;
-			this.logger.fine("Hash of " + element + " is " + hashValue);
-			return hashValue;
-		} catch (final NoSuchAlgorithmException e) {
-			e.printStackTrace();
-		} catch (final FileNotFoundException e) {
-			// e.printStackTrace();
-		} catch (final IOException e) {
+			for (Future<String> future : futures) {
+				future.get();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (final ExecutionException e) {
 			e.printStackTrace();
 		} finally {
-			if (!created) {
-				this.logger.warning("Error creating hash of " + element);
-			}
+			executor.shutdown();
 		}
-		return null;
 	}
 
 	/**
@@ -278,7 +574,8 @@ public class JARCache {
 	}
 
 	/**
-	 * If true, weak caching will be enabled.
+	 * If true, weak caching will be enabled. Fingerprints are now only recomputed when
+	 * the file attributes of a JAR change, so both modes behave the same.
 	 * 
 	 * @param w
 	 */
@@ -295,4 +592,67 @@ public class JARCache {
 	public void setCachePath(String cachePath) {
 		this.cachePath = cachePath;
 	}
+
+	/**
+	 * Sets the number of JARs remembered.
+	 * 
+	 * @param maxEntries
+	 */
+	public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Sets the number of uses protecting an entry from early eviction.
+	 * 
+	 * @param minUsage
+	 */
+	public void setMinUsage(int minUsage) {
+		this.minUsage = minUsage;
+	}
+
+	/**
+	 * @return Number of requests answered from the cache.
+	 */
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	/**
+	 * @return Number of requests for JARs not in the cache.
+	 */
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * @return Fraction of requests answered from the cache, 0 if there were none.
+	 */
+	public synchronized double getHitRate() {
+		final long requests = this.hits + this.misses;
+		return requests == 0 ? 0 : (double) this.hits / requests;
+	}
+
+	/**
+	 * @return Number of entries in the cache file plus the new ones of this session.
+	 */
+	public synchronized int getEntryCount() {
+		final CacheFile mapped = this.mappedCache;
+		if (mapped == null)
+			return this.cacheMap.size();
+
+		int rval = mapped.keys().size();
+		for (String key : this.cacheMap.keySet()) {
+			if (!mapped.keys().contains(key))
+				rval++;
+		}
+		return rval;
+	}
+
+	/**
+	 * @return Size of the cache file in bytes.
+	 */
+	public long getFileSize() {
+		return getCacheFile().length();
+	}
 }
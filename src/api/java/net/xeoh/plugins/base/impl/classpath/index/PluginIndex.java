@@ -0,0 +1,146 @@
+package net.xeoh.plugins.base.impl.classpath.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Build-time list of the plugin implementations inside a JAR or directory, written by
+ * the {@link PluginIndexProcessor}. Locations shipping an index are not scanned.<br/>
+ * <br/>
+ *
+ * The index is a UTF-8 text file with one plugin per line. Fields are separated by tabs:
+ * the binary class name, its plugin interfaces, and its &#064;InjectPlugin dependencies.
+ * Lists are comma separated, required capabilities of a dependency follow its type in
+ * brackets (<code>a.B[cap1|cap2]</code>). Lines starting with <code>#</code> are
+ * comments.
+ */
+public final class PluginIndex {
+
+    /** Location of the index inside a JAR or directory */
+    public static final String PATH = "META-INF/core9/plugins.idx";
+
+    /** First line of every index */
+    private static final String HEADER = "# core9 plugin index v1";
+
+    /**
+     * A single plugin of the index.
+     */
+    public static final class Entry {
+        /** Binary name of the plugin implementation */
+        public final String className;
+
+        /** Plugin interfaces the class implements */
+        public final List<String> interfaces;
+
+        /** Required dependencies, with capabilities in brackets */
+        public final List<String> dependencies;
+
+        /**
+         * @param className
+         * @param interfaces
+         * @param dependencies
+         */
+        public Entry(String className, List<String> interfaces, List<String> dependencies) {
+            this.className = className;
+            this.interfaces = interfaces;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /** */
+    private PluginIndex() {
+        //
+    }
+
+    /**
+     * Reads an index.
+     *
+     * @param stream The index, will be closed.
+     * @return All entries.
+     * @throws IOException
+     */
+    public static List<Entry> read(InputStream stream) throws IOException {
+        final List<Entry> rval = new ArrayList<Entry>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) continue;
+
+                final String[] fields = line.split("\t", -1);
+                rval.add(new Entry(fields[0], list(fields, 1), list(fields, 2)));
+            }
+        } finally {
+            reader.close();
+        }
+
+        return rval;
+    }
+
+    /**
+     * Reads only the class names of an index.
+     *
+     * @param stream The index, will be closed.
+     * @return The binary names of all indexed plugins.
+     * @throws IOException
+     */
+    public static Collection<String> readClassNames(InputStream stream) throws IOException {
+        final Collection<String> rval = new ArrayList<String>();
+        for (Entry entry : read(stream)) {
+            rval.add(entry.className);
+        }
+        return rval;
+    }
+
+    /**
+     * Writes an index.
+     *
+     * @param writer The target, will not be closed.
+     * @param entries The entries to write.
+     */
+    public static void write(Writer writer, Collection<Entry> entries) {
+        final PrintWriter out = new PrintWriter(writer);
+        out.print(HEADER + "\n");
+
+        for (Entry entry : entries) {
+            out.print(entry.className + "\t" + join(entry.interfaces) + "\t" + join(entry.dependencies) + "\n");
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Splits the given field into a list.
+     *
+     * @param fields
+     * @param index
+     * @return .
+     */
+    private static List<String> list(String[] fields, int index) {
+        if (fields.length <= index || fields[index].length() == 0) return new ArrayList<String>();
+        return new ArrayList<String>(Arrays.asList(fields[index].split(",")));
+    }
+
+    /**
+     * @param values
+     * @return .
+     */
+    private static String join(List<String> values) {
+        final StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,208 @@
+package net.xeoh.plugins.base.impl.classpath.index;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import net.xeoh.plugins.base.Plugin;
+import net.xeoh.plugins.base.annotations.PluginImplementation;
+import net.xeoh.plugins.base.annotations.injections.InjectPlugin;
+
+/**
+ * Writes the {@link PluginIndex} of all &#064;{@link PluginImplementation} classes of a
+ * compilation. Enable it with <code>-processor</code> or by having this JAR on the
+ * annotation processor path. The processor runs for every compilation, not only for ones
+ * containing plugins, so an incremental build removing the last plugin also empties the
+ * index.
+ */
+@SupportedAnnotationTypes("*")
+public class PluginIndexProcessor extends AbstractProcessor {
+
+    /** All plugins seen so far, by class name */
+    private final Map<String, PluginIndex.Entry> entries = new LinkedHashMap<String, PluginIndex.Entry>();
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.annotation.processing.AbstractProcessor#getSupportedSourceVersion()
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.annotation.processing.AbstractProcessor#process(java.util.Set,
+     * javax.annotation.processing.RoundEnvironment)
+     */
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            // Rewrite an existing index even if it ends up empty, it may list removed plugins
+            if (mergeExistingIndex() || !this.entries.isEmpty()) writeIndex();
+            return false;
+        }
+
+        final TypeElement pluginElement = this.processingEnv.getElementUtils().getTypeElement(Plugin.class.getName());
+        if (pluginElement == null) return false;
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(PluginImplementation.class)) {
+            if (element.getKind() != ElementKind.CLASS) continue;
+
+            final TypeElement type = (TypeElement) element;
+            final String name = this.processingEnv.getElementUtils().getBinaryName(type).toString();
+
+            this.entries.put(name, new PluginIndex.Entry(name, pluginInterfaces(type, pluginElement.asType()), dependencies(type)));
+        }
+
+        return false;
+    }
+
+    /**
+     * Collects all plugin interfaces of the given class.
+     *
+     * @param type
+     * @param plugin
+     * @return .
+     */
+    private List<String> pluginInterfaces(TypeElement type, TypeMirror plugin) {
+        final Types types = this.processingEnv.getTypeUtils();
+        final Set<String> rval = new LinkedHashSet<String>();
+        final List<TypeMirror> todo = new ArrayList<TypeMirror>(types.directSupertypes(type.asType()));
+
+        while (!todo.isEmpty()) {
+            final TypeMirror current = todo.remove(0);
+            final Element element = types.asElement(current);
+
+            if (element != null && element.getKind() == ElementKind.INTERFACE && types.isAssignable(types.erasure(current), plugin)) {
+                rval.add(this.processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+            }
+
+            todo.addAll(types.directSupertypes(current));
+        }
+
+        return new ArrayList<String>(rval);
+    }
+
+    /**
+     * Collects the required &#064;InjectPlugin dependencies, like
+     * <code>Spawner.getDependencies()</code> does at runtime.
+     *
+     * @param type
+     * @return .
+     */
+    private List<String> dependencies(TypeElement type) {
+        final Types types = this.processingEnv.getTypeUtils();
+        final List<String> rval = new ArrayList<String>();
+
+        for (TypeElement current = type; current != null; current = superclass(current)) {
+            for (VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+                final InjectPlugin annotation = field.getAnnotation(InjectPlugin.class);
+                if (annotation == null || annotation.isOptional() || annotation.lazy()) continue;
+                if (!field.getModifiers().contains(Modifier.PUBLIC)) continue;
+
+                final Element fieldType = types.asElement(field.asType());
+                if (!(fieldType instanceof TypeElement)) continue;
+
+                // Handles are resolved on first use, they are no dependencies
+                final String name = ((TypeElement) fieldType).getQualifiedName().toString();
+                if (name.equals("net.xeoh.plugins.base.Provider") || name.equals("java.util.function.Supplier")) continue;
+
+                final StringBuilder sb = new StringBuilder(this.processingEnv.getElementUtils().getBinaryName((TypeElement) fieldType));
+                final String[] capabilities = annotation.requiredCapabilities();
+                if (capabilities.length > 0) {
+                    sb.append('[');
+                    for (int i = 0; i < capabilities.length; i++) {
+                        if (i > 0) sb.append('|');
+                        sb.append(capabilities[i]);
+                    }
+                    sb.append(']');
+                }
+
+                rval.add(sb.toString());
+            }
+        }
+
+        return rval;
+    }
+
+    /**
+     * @param type
+     * @return The super class, or <code>null</code>.
+     */
+    private TypeElement superclass(TypeElement type) {
+        final TypeMirror superclass = type.getSuperclass();
+        if (!(superclass instanceof DeclaredType)) return null;
+        return (TypeElement) ((DeclaredType) superclass).asElement();
+    }
+
+    /**
+     * Adds the entries of an index written by an earlier, incremental compilation, as
+     * long as their classes still exist and are still plugins.
+     *
+     * @return True if there was an index.
+     */
+    private boolean mergeExistingIndex() {
+        final List<PluginIndex.Entry> existing;
+        try {
+            final FileObject resource = this.processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", PluginIndex.PATH);
+            existing = PluginIndex.read(resource.openInputStream());
+        } catch (IOException e) {
+            return false;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+
+        for (PluginIndex.Entry entry : existing) {
+            if (this.entries.containsKey(entry.className)) continue;
+
+            final TypeElement type = this.processingEnv.getElementUtils().getTypeElement(entry.className.replace('$', '.'));
+            if (type == null || type.getAnnotation(PluginImplementation.class) == null) continue;
+
+            this.entries.put(entry.className, entry);
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes the collected entries.
+     */
+    private void writeIndex() {
+        try {
+            final FileObject resource = this.processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", PluginIndex.PATH);
+            final Writer writer = resource.openWriter();
+            try {
+                PluginIndex.write(writer, this.entries.values());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            this.processingEnv.getMessager().printMessage(Kind.WARNING, "Unable to write " + PluginIndex.PATH + ": " + e.getMessage());
+        }
+    }
+}
@@ -30,8 +30,11 @@ package net.xeoh.plugins.base.impl.classpath.loader;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.logging.Logger;
@@ -42,15 +45,14 @@ import net.xeoh.plugins.base.annotations.configuration.ConfigurationFile;
 import net.xeoh.plugins.base.annotations.configuration.IsDisabled;
 import net.xeoh.plugins.base.impl.PluginManagerImpl;
 import net.xeoh.plugins.base.impl.classpath.ClassPathManager;
+import net.xeoh.plugins.base.impl.classpath.cache.JARCache.JARInformation;
 import net.xeoh.plugins.base.impl.classpath.locator.AbstractClassPathLocation;
+import net.xeoh.plugins.base.impl.classpath.locator.locations.JARClasspathLocation;
 import net.xeoh.plugins.base.impl.registry.PluginClassMetaInformation;
-import net.xeoh.plugins.base.impl.registry.PluginClassMetaInformation.Dependency;
 import net.xeoh.plugins.base.impl.registry.PluginClassMetaInformation.PluginClassStatus;
-import net.xeoh.plugins.base.impl.registry.PluginMetaInformation.PluginStatus;
 import net.xeoh.plugins.base.impl.registry.PluginRegistry;
-import net.xeoh.plugins.base.impl.spawning.SpawnResult;
+import net.xeoh.plugins.base.impl.spawning.PluginDescriptor;
 import net.xeoh.plugins.base.impl.spawning.Spawner;
-import net.xeoh.plugins.base.options.getplugin.OptionCapabilities;
 import net.xeoh.plugins.base.util.PluginConfigurationUtil;
 
 /**
@@ -67,6 +69,12 @@ public abstract class AbstractLoader {
 	/** Grants access to various shared variables. */
 	protected final PluginManagerImpl pluginManager;
 
+	/** Classes that missed a dependency while their batch was scanned */
+	private final List<Map.Entry<AbstractClassPathLocation, String>> deferred = new ArrayList<Map.Entry<AbstractClassPathLocation, String>>();
+
+	/** Set while deferred classes are retried, they are not deferred again */
+	private volatile boolean retrying;
+
 	/**
 	 * @param pluginManager
 	 */
@@ -87,9 +95,20 @@ public abstract class AbstractLoader {
 	 */
 	public abstract void loadFrom(URI uri);
 
+	/**
+	 * Called with all URIs of a batch this loader handles before loadFrom() is called
+	 * for each of them, so work like downloads can be done in parallel.
+	 * 
+	 * @param uris
+	 */
+	public void prepare(Collection<URI> uris) {
+		//
+	}
+
 	/**
 	 * Tries to load a class from a given source. If it is a plugin, it will be
-	 * registered.
+	 * registered. Spawning happens once the whole batch was scanned, see
+	 * {@link ClassPathManager#addFromLocations(Collection)}.
 	 * 
 	 * @param location
 	 * @param name
@@ -123,25 +142,33 @@ public abstract class AbstractLoader {
 				return;
 			}
 
-			// Don't load classes already loaded from this location
-			final PluginClassMetaInformation preexistingMeta = pluginRegistry
-			        .getMetaInformationFor((Class<? extends Plugin>) possiblePlugin);
-			if (preexistingMeta != null) {
-				this.logger.info("Skipping plugin " + possiblePlugin
-				        + " because we already have it ");
-				return;
-			}
-
 			// Register class at registry
-			final PluginClassMetaInformation metaInformation = new PluginClassMetaInformation();
+			PluginClassMetaInformation metaInformation = new PluginClassMetaInformation();
 			metaInformation.pluginClassStatus = PluginClassStatus.ACCEPTED;
 			if (location != null) {
 				metaInformation.pluginOrigin = location.getToplevelLocation();
 			} else {
 				metaInformation.pluginOrigin = new URI("classpath://UNDEFINED");
 			}
-			pluginRegistry.registerPluginClass((Class<? extends Plugin>) possiblePlugin,
-			        metaInformation);
+
+			// Don't load classes already loaded from this location (locations of a
+			// batch are scanned concurrently, so check and register at once)
+			synchronized (pluginRegistry) {
+				final PluginClassMetaInformation preexistingMeta = pluginRegistry
+				        .getMetaInformationFor((Class<? extends Plugin>) possiblePlugin);
+				// A deferred class was registered before it missed its dependency
+				if (preexistingMeta != null && this.retrying
+				        && preexistingMeta.pluginClassStatus == PluginClassStatus.ACCEPTED) {
+					metaInformation = preexistingMeta;
+				} else if (preexistingMeta != null) {
+					this.logger.info("Skipping plugin " + possiblePlugin
+					        + " because we already have it ");
+					return;
+				} else {
+					pluginRegistry.registerPluginClass((Class<? extends Plugin>) possiblePlugin,
+					        metaInformation);
+				}
+			}
 
 			// Update the class information of the corresponding cache entry
 			this.logger.finer("Updating cache information");
@@ -191,6 +218,12 @@ public abstract class AbstractLoader {
 				}
 			}
 
+			// Describe the class once, members of JAR plugins are remembered by the cache
+			final JARInformation cacheEntry = location instanceof JARClasspathLocation ? ((JARClasspathLocation) location)
+			        .getCacheEntry() : null;
+			PluginDescriptor.of((Class<? extends Plugin>) possiblePlugin,
+			        cacheEntry == null ? null : cacheEntry.descriptors);
+
 			// Obtain dependencies
 			metaInformation.dependencies = spawner
 			        .getDependencies((Class<? extends Plugin>) possiblePlugin);
@@ -206,124 +239,41 @@ public abstract class AbstractLoader {
 			this.logger.warning("ClassNotFoundException. Unable to inspect class " + name
 			        + " although it appears to be one.");
 		} catch (final NoClassDefFoundError e) {
+			// The missing class may be in a location of the batch not registered yet
+			if (!this.retrying) {
+				synchronized (this.deferred) {
+					this.deferred.add(new AbstractMap.SimpleImmutableEntry<AbstractClassPathLocation, String>(location, name));
+				}
+				this.logger.finer("Deferred class " + name + " until all locations are registered");
+				return;
+			}
+
 			this.logger.warning("Stacktrace : " + e.getMessage());
 			this.logger.finer("Ignored class " + name + " due to unresolved dependencies");
 		} catch (URISyntaxException e) {
 			this.logger.warning("Stacktrace : " + e.getMessage());
 		}
-
-		// We always try to load pending classes ...
-		processPending();
 	}
 
 	/**
-	 * Try to load a pending class.
+	 * Tries once more to load the classes that missed a dependency while the batch was
+	 * scanned. Called after all locations of the batch have been registered, so a
+	 * plugin may depend on a location listed after its own.
 	 */
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	protected void processPending() {
-
-		// Obtain shared objects
-		final PluginRegistry pluginRegistry = this.pluginManager.getPluginRegistry();
-		final Spawner spawner = this.pluginManager.getSpawner();
-
-		// All classes we want to spawn
-		final Collection<Class<? extends Plugin>> toSpawn = new ArrayList<Class<? extends Plugin>>();
-		toSpawn.addAll(pluginRegistry
-		        .getPluginClassesWithStatus(PluginClassStatus.CONTAINS_UNRESOLVED_DEPENDENCIES));
-		toSpawn.addAll(pluginRegistry.getPluginClassesWithStatus(PluginClassStatus.SPAWNABLE));
-
-		// Check if there is work to do.
-		if (toSpawn.size() == 0)
-			return;
-
-		boolean loopAgain;
-
-		do {
-			// Classes we want to spawn
-			final Collection<Class<? extends Plugin>> spawned = new ArrayList<Class<? extends Plugin>>();
-
-			// Reset hasLoaded flag
-			loopAgain = false;
-
-			// Check all known classes ...
-			for (final Class c : toSpawn) {
-				this.logger.fine("Trying to load pending " + c);
-
-				final PluginClassMetaInformation metaInformation = pluginRegistry
-				        .getMetaInformationFor(c);
-
-				// If the class is spawnable, spawn it ...
-				if (metaInformation.pluginClassStatus == PluginClassStatus.SPAWNABLE) {
-					this.logger.fine("Class found as SPAWNABLE. Trying to spawn it now " + c);
-
-					//
-					// The magic line: spawn it.
-					//
-					final SpawnResult p = spawner.spawnPlugin(c);
-
-					// In case we were successful ...
-					if (p != null && p.metaInformation.pluginStatus != PluginStatus.FAILED) {
-
-						// Link the parent class meta information
-						p.metaInformation.classMeta = metaInformation;
-
-						// Check if the class is active or only lazy spawned
-						if (p.metaInformation.pluginStatus == PluginStatus.ACTIVE) {
-							// Mark the class a spawned
-							metaInformation.pluginClassStatus = PluginClassStatus.SPAWNED;
-							spawned.add(c);
-
-							this.pluginManager.hookPlugin(p);
-						}
-
-						// Lazy spawn ...
-						if (p.metaInformation.pluginStatus == PluginStatus.SPAWNED) {
-							metaInformation.pluginClassStatus = PluginClassStatus.LAZY_SPAWNED;
-							throw new IllegalStateException("Lazy spawning not supported yet!");
-						}
-
-						// And loop once more.
-						loopAgain = true;
-						break;
-					}
-
-					// This case is bad ...
-					this.logger.warning("Failed to spawn class  " + c);
-					metaInformation.pluginClassStatus = PluginClassStatus.FAILED;
-				}
-
-				// Check if we can switch the class to SPAWNABLE
-				if (metaInformation.pluginClassStatus == PluginClassStatus.CONTAINS_UNRESOLVED_DEPENDENCIES) {
-					this.logger.fine("Trying to solve dependencies for class " + c);
-					boolean resolvedAll = true;
-
-					// Check all dependencies
-					for (Dependency d : metaInformation.dependencies) {
-						if (d.isOptional) {
-							this.logger.finest("Skipping dependency as optional " + d.pluginClass);
-							continue;
-						}
-
-						if (this.pluginManager.getPlugin(d.pluginClass, new OptionCapabilities(
-						        d.capabilites)) == null) {
-							resolvedAll = false;
-						}
-
-					}
+	public void retryDeferred() {
+		final List<Map.Entry<AbstractClassPathLocation, String>> pending;
+		synchronized (this.deferred) {
+			pending = new ArrayList<Map.Entry<AbstractClassPathLocation, String>>(this.deferred);
+			this.deferred.clear();
+		}
 
-					// Nice. So this class will be spawned in one of the next
-					// rounds ...
-					if (resolvedAll) {
-						metaInformation.pluginClassStatus = PluginClassStatus.SPAWNABLE;
-						loopAgain = true;
-						break;
-					}
-				}
+		this.retrying = true;
+		try {
+			for (Map.Entry<AbstractClassPathLocation, String> entry : pending) {
+				tryToLoadClassAsPlugin(entry.getKey(), entry.getValue());
 			}
-
-			// Remove all spawned from the list (not really necessary, is it?)
-			toSpawn.removeAll(spawned);
-
-		} while (loopAgain && toSpawn.size() > 0);
+		} finally {
+			this.retrying = false;
+		}
 	}
 }
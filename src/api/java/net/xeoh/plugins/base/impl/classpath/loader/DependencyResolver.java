@@ -0,0 +1,478 @@
+package net.xeoh.plugins.base.impl.classpath.loader;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.xeoh.plugins.base.Plugin;
+import net.xeoh.plugins.base.impl.PluginManagerImpl;
+import net.xeoh.plugins.base.impl.registry.PluginClassMetaInformation;
+import net.xeoh.plugins.base.impl.registry.PluginClassMetaInformation.Dependency;
+import net.xeoh.plugins.base.impl.registry.PluginClassMetaInformation.PluginClassStatus;
+import net.xeoh.plugins.base.impl.registry.PluginMetaInformation.PluginStatus;
+import net.xeoh.plugins.base.impl.registry.PluginRegistry;
+import net.xeoh.plugins.base.impl.spawning.SpawnResult;
+import net.xeoh.plugins.base.impl.spawning.Spawner;
+
+/**
+ * Spawns pending plugin classes in dependency order. The &#064;InjectPlugin graph of all
+ * pending classes is built once and processed topologically, so every class and every
+ * dependency is looked at a constant number of times. Classes that don't depend on each
+ * other are spawned concurrently (see <code>spawn.threads</code>). Classes whose
+ * dependencies are missing or part of a cycle are reported and stay pending.
+ */
+public final class DependencyResolver {
+
+    /** */
+    private final Logger logger;
+
+    /** */
+    private final PluginManagerImpl pluginManager;
+
+    /** */
+    private final PluginRegistry registry;
+
+    /** Classes claimed by all running resolvers of the plugin manager */
+    private final Set<Class<? extends Plugin>> claimed;
+
+    /** Pending classes and their meta information, in registration order */
+    private final Map<Class<? extends Plugin>, PluginClassMetaInformation> pending = new LinkedHashMap<Class<? extends Plugin>, PluginClassMetaInformation>();
+
+    /**
+     * A dependency of a pending class that pending classes may provide. It is released
+     * once one of them satisfies it, or all of them are done.
+     */
+    private static final class Wait {
+        /** */
+        final Class<? extends Plugin> dependent;
+
+        /** */
+        final Dependency dependency;
+
+        /** Pending classes implementing the dependency */
+        final List<Class<? extends Plugin>> providers;
+
+        /** Number of providers not done yet */
+        int remaining;
+
+        /** */
+        boolean released = false;
+
+        /**
+         * @param dependent
+         * @param dependency
+         * @param providers
+         */
+        Wait(Class<? extends Plugin> dependent, Dependency dependency, List<Class<? extends Plugin>> providers) {
+            this.dependent = dependent;
+            this.dependency = dependency;
+            this.providers = providers;
+            this.remaining = providers.size();
+        }
+    }
+
+    /** Waits of other classes by the pending class that may release them */
+    private final Map<Class<? extends Plugin>, List<Wait>> dependents = new HashMap<Class<? extends Plugin>, List<Wait>>();
+
+    /** Waits of a pending class by the class */
+    private final Map<Class<? extends Plugin>, List<Wait>> waits = new HashMap<Class<? extends Plugin>, List<Wait>>();
+
+    /** Number of waits of a class not released yet */
+    private final Map<Class<? extends Plugin>, int[]> waitingFor = new HashMap<Class<? extends Plugin>, int[]>();
+
+    /** Classes that were spawned or given up */
+    private final Set<Class<? extends Plugin>> done = new HashSet<Class<? extends Plugin>>();
+
+    /**
+     * @param pluginManager
+     * @param logger
+     * @param claimed Classes claimed by running resolvers, shared by all resolvers of
+     * the plugin manager.
+     */
+    public DependencyResolver(PluginManagerImpl pluginManager, Logger logger, Set<Class<? extends Plugin>> claimed) {
+        this.pluginManager = pluginManager;
+        this.registry = pluginManager.getPluginRegistry();
+        this.logger = logger;
+        this.claimed = claimed;
+    }
+
+    /**
+     * Spawns all classes that are pending in the registry and whose dependencies can be
+     * satisfied. An init method adding plugins starts another resolver while this one
+     * runs, it only spawns the classes not claimed by us.
+     */
+    public void resolve() {
+        synchronized (this.claimed) {
+            for (PluginClassStatus status : new PluginClassStatus[] { PluginClassStatus.CONTAINS_UNRESOLVED_DEPENDENCIES, PluginClassStatus.SPAWNABLE }) {
+                for (Class<? extends Plugin> c : this.registry.getPluginClassesWithStatus(status)) {
+                    if (this.claimed.add(c)) this.pending.put(c, this.registry.getMetaInformationFor(c));
+                }
+            }
+        }
+
+        // Check if there is work to do.
+        if (this.pending.isEmpty()) return;
+
+        try {
+            buildGraph();
+            spawnInOrder();
+        } finally {
+            synchronized (this.claimed) {
+                this.claimed.removeAll(this.pending.keySet());
+            }
+        }
+    }
+
+    /**
+     * Links every pending class to the pending classes that could provide one of its
+     * unsatisfied dependencies.
+     */
+    private void buildGraph() {
+        // Index pending classes by the plugin interfaces they implement
+        final Map<Class<?>, List<Class<? extends Plugin>>> providers = new HashMap<Class<?>, List<Class<? extends Plugin>>>();
+        for (Class<? extends Plugin> c : this.pending.keySet()) {
+            for (Class<?> type : pluginInterfaces(c)) {
+                List<Class<? extends Plugin>> list = providers.get(type);
+                if (list == null) {
+                    list = new ArrayList<Class<? extends Plugin>>();
+                    providers.put(type, list);
+                }
+                list.add(c);
+            }
+        }
+
+        for (Map.Entry<Class<? extends Plugin>, PluginClassMetaInformation> entry : this.pending.entrySet()) {
+            final Class<? extends Plugin> c = entry.getKey();
+            final List<Wait> list = new ArrayList<Wait>();
+
+            for (Dependency d : entry.getValue().dependencies) {
+                if (d.isOptional) continue;
+
+                // Dependencies already satisfied by active plugins need no edge
+                if (this.registry.findPlugin(d.pluginClass, d.capabilites) != null) continue;
+
+                final List<Class<? extends Plugin>> candidates = providers.get(d.pluginClass);
+                if (candidates == null) continue;
+
+                final List<Class<? extends Plugin>> others = new ArrayList<Class<? extends Plugin>>(candidates);
+                others.remove(c);
+                if (others.isEmpty()) continue;
+
+                // Capabilities are only known after spawning, so any candidate may be the one
+                final Wait wait = new Wait(c, d, others);
+                for (Class<? extends Plugin> provider : others) {
+                    List<Wait> waiting = this.dependents.get(provider);
+                    if (waiting == null) {
+                        waiting = new ArrayList<Wait>();
+                        this.dependents.put(provider, waiting);
+                    }
+                    waiting.add(wait);
+                }
+                list.add(wait);
+            }
+
+            this.waits.put(c, list);
+            this.waitingFor.put(c, new int[] { list.size() });
+        }
+    }
+
+    /**
+     * Processes the graph in topological order (Kahn's algorithm). Classes whose
+     * providers are done are spawned concurrently on a bounded pool, while their results
+     * are hooked and the graph is updated by this thread only.
+     */
+    private void spawnInOrder() {
+        final int threads = Math.min(this.pluginManager.getSpawner().getSpawnThreads(), this.pending.size());
+        final ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "jspf-spawn-" + this.counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        }) : null;
+
+        // Without a pool we spawn on this thread, the order stays the same
+        final CompletionService<SpawnResult> spawning = new ExecutorCompletionService<SpawnResult>(pool != null ? pool : new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+
+        final Map<Future<SpawnResult>, Class<? extends Plugin>> running = new HashMap<Future<SpawnResult>, Class<? extends Plugin>>();
+        final Deque<Class<? extends Plugin>> ready = new ArrayDeque<Class<? extends Plugin>>();
+        for (Class<? extends Plugin> c : this.pending.keySet()) {
+            if (this.waitingFor.get(c)[0] == 0) ready.add(c);
+        }
+
+        int processed = 0;
+        try {
+            while (!ready.isEmpty() || !running.isEmpty()) {
+                // Start everything that is ready, classes we can't spawn are done at once
+                while (!ready.isEmpty()) {
+                    final Class<? extends Plugin> c = ready.poll();
+                    final PluginClassMetaInformation metaInformation = this.pending.get(c);
+
+                    if (isSpawnable(c, metaInformation)) {
+                        running.put(spawning.submit(spawnTask(c, metaInformation)), c);
+
+                        // Spawning inline, so hook it before looking at the next one
+                        if (pool == null) break;
+                        continue;
+                    }
+
+                    processed++;
+                    release(c, ready);
+                }
+
+                if (running.isEmpty()) break;
+
+                // Wait for the next spawn to finish
+                final Future<SpawnResult> future = spawning.take();
+                final Class<? extends Plugin> c = running.remove(future);
+                processed++;
+
+                SpawnResult p = null;
+                try {
+                    p = future.get();
+                } catch (ExecutionException e) {
+                    this.logger.warning("Exception while spawning class " + c + ": " + e.getCause());
+                }
+
+                hook(c, this.pending.get(c), p);
+
+                // Whatever happened, the dependents may be looked at now
+                release(c, ready);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.logger.warning("Interrupted while spawning plugins, " + running.size() + " spawns abandoned");
+        } finally {
+            if (pool != null) pool.shutdownNow();
+        }
+
+        logCriticalPath();
+
+        // Everything not processed waits for a cycle, or is part of it
+        if (processed == this.pending.size() || Thread.currentThread().isInterrupted()) return;
+
+        final Collection<Class<? extends Plugin>> cyclic = new ArrayList<Class<? extends Plugin>>();
+        final Collection<Class<? extends Plugin>> blocked = new ArrayList<Class<? extends Plugin>>();
+        for (Class<? extends Plugin> c : this.pending.keySet()) {
+            if (this.done.contains(c)) continue;
+            if (reachesItself(c)) cyclic.add(c);
+            else blocked.add(c);
+        }
+
+        this.logger.warning("Unable to spawn plugins with cyclic dependencies: " + cyclic);
+        if (!blocked.isEmpty()) this.logger.fine("Plugins waiting for plugins with cyclic dependencies: " + blocked);
+    }
+
+    /**
+     * Checks if the given class waits for itself through providers that are not done.
+     *
+     * @param c
+     * @return .
+     */
+    private boolean reachesItself(Class<? extends Plugin> c) {
+        final Set<Class<? extends Plugin>> seen = new HashSet<Class<? extends Plugin>>();
+        final Deque<Class<? extends Plugin>> todo = new ArrayDeque<Class<? extends Plugin>>();
+        todo.add(c);
+
+        while (!todo.isEmpty()) {
+            for (Wait wait : this.waits.get(todo.poll())) {
+                if (wait.released) continue;
+
+                for (Class<? extends Plugin> provider : wait.providers) {
+                    if (provider == c) return true;
+                    if (!this.done.contains(provider) && seen.add(provider)) todo.add(provider);
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Marks the given class as done and queues all dependents that wait for nothing else.
+     * A dependency is released by the first provider satisfying it, or by the last one.
+     *
+     * @param c
+     * @param ready
+     */
+    private void release(Class<? extends Plugin> c, Deque<Class<? extends Plugin>> ready) {
+        this.done.add(c);
+
+        final List<Wait> list = this.dependents.get(c);
+        if (list == null) return;
+
+        final boolean spawned = this.pending.get(c).spawnEnd != 0;
+        for (Wait wait : list) {
+            if (wait.released) continue;
+
+            wait.remaining--;
+            if (wait.remaining > 0 && this.registry.findPlugin(wait.dependency.pluginClass, wait.dependency.capabilites) == null) continue;
+
+            wait.released = true;
+            if (--this.waitingFor.get(wait.dependent)[0] != 0) continue;
+
+            // The provider finishing last is the one the dependent had to wait for
+            if (spawned) this.pending.get(wait.dependent).spawnedAfter = c;
+            ready.add(wait.dependent);
+        }
+    }
+
+    /**
+     * Checks if the given class can be spawned now, i.e., if all its dependencies are
+     * satisfied.
+     *
+     * @param c
+     * @param metaInformation
+     * @return .
+     */
+    private boolean isSpawnable(Class<? extends Plugin> c, PluginClassMetaInformation metaInformation) {
+        if (metaInformation.pluginClassStatus == PluginClassStatus.CONTAINS_UNRESOLVED_DEPENDENCIES) {
+            this.logger.fine("Trying to solve dependencies for class " + c);
+
+            for (Dependency d : metaInformation.dependencies) {
+                if (d.isOptional) {
+                    this.logger.finest("Skipping dependency as optional " + d.pluginClass);
+                    continue;
+                }
+
+                if (this.registry.findPlugin(d.pluginClass, d.capabilites) == null) {
+                    this.logger.fine("Class " + c + " has a missing dependency " + d.pluginClass);
+                    return false;
+                }
+            }
+
+            metaInformation.pluginClassStatus = PluginClassStatus.SPAWNABLE;
+        }
+
+        return metaInformation.pluginClassStatus == PluginClassStatus.SPAWNABLE;
+    }
+
+    /**
+     * Creates the task spawning the given class, which may run on any thread.
+     *
+     * @param c
+     * @param metaInformation
+     * @return .
+     */
+    private Callable<SpawnResult> spawnTask(final Class<? extends Plugin> c,
+                                            final PluginClassMetaInformation metaInformation) {
+        final Spawner spawner = this.pluginManager.getSpawner();
+
+        return new Callable<SpawnResult>() {
+            public SpawnResult call() {
+                DependencyResolver.this.logger.fine("Class found as SPAWNABLE. Trying to spawn it now " + c);
+
+                metaInformation.spawnStart = System.nanoTime();
+                try {
+                    //
+                    // The magic line: spawn it.
+                    //
+                    return spawner.spawnPlugin(c);
+                } finally {
+                    metaInformation.spawnEnd = System.nanoTime();
+                }
+            }
+        };
+    }
+
+    /**
+     * Hooks the result of a spawn into the plugin manager.
+     *
+     * @param c
+     * @param metaInformation
+     * @param p
+     */
+    private void hook(Class<? extends Plugin> c, PluginClassMetaInformation metaInformation, SpawnResult p) {
+        // In case we were successful ...
+        if (p != null && p.metaInformation.pluginStatus != PluginStatus.FAILED) {
+
+            // Link the parent class meta information
+            p.metaInformation.classMeta = metaInformation;
+
+            // Check if the class is active or only lazy spawned
+            if (p.metaInformation.pluginStatus == PluginStatus.ACTIVE) {
+                // Mark the class a spawned
+                metaInformation.pluginClassStatus = PluginClassStatus.SPAWNED;
+                this.pluginManager.hookPlugin(p);
+            }
+
+            // Lazy spawn ...
+            if (p.metaInformation.pluginStatus == PluginStatus.SPAWNED) {
+                metaInformation.pluginClassStatus = PluginClassStatus.LAZY_SPAWNED;
+                throw new IllegalStateException("Lazy spawning not supported yet!");
+            }
+
+            return;
+        }
+
+        // This case is bad ...
+        this.logger.warning("Failed to spawn class  " + c);
+        metaInformation.pluginClassStatus = PluginClassStatus.FAILED;
+    }
+
+    /**
+     * Logs the chain of spawns that determined how long this round took.
+     */
+    private void logCriticalPath() {
+        if (!this.logger.isLoggable(Level.FINE)) return;
+
+        final List<Class<? extends Plugin>> path = PluginRegistry.criticalPath(this.pending);
+        if (path.isEmpty()) return;
+
+        final StringBuilder sb = new StringBuilder("Critical spawn path:");
+        for (Class<? extends Plugin> c : path) {
+            final PluginClassMetaInformation meta = this.pending.get(c);
+            sb.append(" ").append(c.getSimpleName()).append(" (").append((meta.spawnEnd - meta.spawnStart) / 1000000).append("ms)");
+        }
+
+        this.logger.fine(sb.toString());
+    }
+
+    /**
+     * Returns all plugin interfaces the given class implements, including inherited ones.
+     *
+     * @param c
+     * @return .
+     */
+    private static Collection<Class<?>> pluginInterfaces(Class<?> c) {
+        final Set<Class<?>> rval = new HashSet<Class<?>>();
+        final Deque<Class<?>> todo = new ArrayDeque<Class<?>>();
+
+        for (Class<?> current = c; current != null; current = current.getSuperclass()) {
+            todo.add(current);
+        }
+
+        while (!todo.isEmpty()) {
+            for (Class<?> type : todo.poll().getInterfaces()) {
+                if (Plugin.class.isAssignableFrom(type) && rval.add(type)) todo.add(type);
+            }
+        }
+
+        return rval;
+    }
+}
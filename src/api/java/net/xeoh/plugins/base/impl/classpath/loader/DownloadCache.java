@@ -0,0 +1,388 @@
+package net.xeoh.plugins.base.impl.classpath.loader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Local cache of downloaded plugin JARs. Downloads are stored by the SHA-1 of their
+ * content, next to a small record per URL holding the ETag and Last-Modified header we
+ * got. Known URLs are revalidated with a conditional GET, so an unchanged JAR costs a
+ * single request and no transfer. Cached copies are hashed again before they are used,
+ * and content no record refers to anymore is removed.
+ */
+public class DownloadCache {
+    /** */
+    private final Logger logger = Logger.getLogger(this.getClass().getName());
+
+    /** Transfer buffer size */
+    private static final int BUFFER = 256 * 1024;
+
+    /** */
+    private final File directory;
+
+    /**
+     * @param directory The cache directory, will be created if needed and is then only
+     * accessible by the current user.
+     */
+    public DownloadCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Downloads the given URIs in parallel.
+     *
+     * @param uris The URIs to fetch.
+     * @return The local files by URI, URIs which could not be fetched are missing.
+     */
+    public Map<URI, File> fetch(Collection<URI> uris) {
+        final Map<URI, File> rval = new LinkedHashMap<URI, File>();
+        if (uris.isEmpty()) return rval;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(8, uris.size()));
+        try {
+            final List<Future<File>> futures = new ArrayList<Future<File>>();
+            for (final URI uri : uris) {
+                futures.add(executor.submit(new Callable<File>() {
+                    public File call() throws IOException {
+                        return fetch(uri);
+                    }
+                }));
+            }
+
+            int i = 0;
+            for (URI uri : uris) {
+                try {
+                    rval.put(uri, futures.get(i++).get());
+                } catch (ExecutionException e) {
+                    this.logger.warning("Error downloading plugins from " + uri + ": " + e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+
+        return rval;
+    }
+
+    /**
+     * Downloads the given URI, unless the cached copy is still current. The cached copy is
+     * also used if the server cannot be reached or answers with an error.
+     *
+     * @param uri The URI to fetch.
+     * @return The local copy.
+     * @throws IOException If the URI could not be fetched and there is no cached copy.
+     */
+    public File fetch(URI uri) throws IOException {
+        createDirectory();
+
+        final File temp = File.createTempFile("download", ".tmp", this.directory);
+        try {
+            return fetch(uri, temp);
+        } finally {
+            if (temp.exists()) temp.delete();
+        }
+    }
+
+    /**
+     * @param uri
+     * @param temp File to download to.
+     * @return The local copy.
+     * @throws IOException
+     */
+    private File fetch(URI uri, File temp) throws IOException {
+        final File recordFile = new File(this.directory, sha1(uri.toString().getBytes("UTF-8")) + ".url");
+        final Properties record = readRecord(recordFile);
+        final String content = record.getProperty("content");
+        final File cached = content == null ? null : new File(this.directory, content + ".jar");
+        final boolean haveCopy = cached != null && isIntact(cached, content);
+
+        final URLConnection connection;
+        final String hash;
+        try {
+            connection = uri.toURL().openConnection();
+            connection.setUseCaches(false);
+            if (haveCopy) {
+                if (record.getProperty("etag") != null) connection.setRequestProperty("If-None-Match", record.getProperty("etag"));
+                if (record.getProperty("modified") != null) connection.setIfModifiedSince(Long.parseLong(record.getProperty("modified")));
+            }
+
+            if (connection instanceof HttpURLConnection) {
+                final HttpURLConnection http = (HttpURLConnection) connection;
+                final int status = http.getResponseCode();
+
+                if (haveCopy && status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    this.logger.fine(uri + " not modified, using " + cached);
+                    http.disconnect();
+                    return cached;
+                }
+
+                if (status < 200 || status >= 300) {
+                    http.disconnect();
+                    throw new IOException("Server returned HTTP " + status + " for " + uri);
+                }
+            }
+
+            hash = download(connection, temp);
+        } catch (IOException e) {
+            if (!haveCopy) throw e;
+
+            this.logger.warning("Unable to revalidate " + uri + ", using the cached copy: " + e.getMessage());
+            return cached;
+        }
+
+        record.clear();
+        record.setProperty("uri", uri.toString());
+        record.setProperty("content", hash);
+        if (connection.getHeaderField("ETag") != null) record.setProperty("etag", connection.getHeaderField("ETag"));
+        if (connection.getLastModified() != 0) record.setProperty("modified", Long.toString(connection.getLastModified()));
+
+        // Moving the download in place and recording it must not interleave with pruning
+        synchronized (this) {
+            final File rval = new File(this.directory, hash + ".jar");
+            if (!rval.isFile() || !isIntact(rval, hash)) {
+                move(temp, rval);
+            }
+
+            writeRecord(recordFile, record);
+            if (content != null && !content.equals(hash)) prune();
+
+            return rval;
+        }
+    }
+
+    /**
+     * Creates the cache directory, only accessible by the current user.
+     *
+     * @throws IOException
+     */
+    private void createDirectory() throws IOException {
+        if (this.directory.isDirectory()) return;
+
+        if (!this.directory.mkdirs() && !this.directory.isDirectory())
+            throw new IOException("Unable to create download cache " + this.directory);
+
+        // Other users must not be able to replace the JARs we load
+        this.directory.setReadable(false, false);
+        this.directory.setWritable(false, false);
+        this.directory.setExecutable(false, false);
+        this.directory.setReadable(true, true);
+        this.directory.setWritable(true, true);
+        this.directory.setExecutable(true, true);
+    }
+
+    /**
+     * Streams the response into the given file.
+     *
+     * @param connection
+     * @param file
+     * @return The SHA-1 of the content.
+     * @throws IOException
+     */
+    private String download(URLConnection connection, File file) throws IOException {
+        final MessageDigest digest = newDigest();
+        final InputStream in = connection.getInputStream();
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            final ReadableByteChannel source = Channels.newChannel(in);
+            final FileChannel target = out.getChannel();
+            final ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+
+            while (source.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer.array(), 0, buffer.limit());
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                buffer.clear();
+            }
+
+            target.force(false);
+        } finally {
+            out.close();
+            in.close();
+        }
+
+        return hex(digest.digest());
+    }
+
+    /**
+     * Checks the file still has the given content hash. Damaged or modified copies are
+     * deleted.
+     *
+     * @param file
+     * @param hash
+     * @return True if the file can be used.
+     */
+    private boolean isIntact(File file, String hash) {
+        if (!file.isFile()) return false;
+
+        final MessageDigest digest = newDigest();
+        try {
+            final InputStream in = new FileInputStream(file);
+            try {
+                final byte[] buffer = new byte[BUFFER];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    digest.update(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            this.logger.warning("Unable to verify cached download " + file + ": " + e.getMessage());
+            return false;
+        }
+
+        if (hex(digest.digest()).equals(hash)) return true;
+
+        this.logger.warning("Cached download " + file + " does not match its hash, discarding it");
+        file.delete();
+        return false;
+    }
+
+    /**
+     * Deletes all downloads no record refers to anymore.
+     */
+    private synchronized void prune() {
+        final File[] files = this.directory.listFiles();
+        if (files == null) return;
+
+        final Set<String> referenced = new HashSet<String>();
+        for (File file : files) {
+            if (!file.getName().endsWith(".url")) continue;
+
+            final String content = readRecord(file).getProperty("content");
+            if (content != null) referenced.add(content + ".jar");
+        }
+
+        for (File file : files) {
+            if (file.getName().endsWith(".jar") && !referenced.contains(file.getName())) {
+                this.logger.fine("Removing unused download " + file);
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * @param file
+     * @return The record, empty if there is none.
+     */
+    private Properties readRecord(File file) {
+        final Properties rval = new Properties();
+        if (!file.isFile()) return rval;
+
+        try {
+            final InputStream in = new FileInputStream(file);
+            try {
+                rval.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            this.logger.fine("Ignoring unreadable download record " + file);
+            rval.clear();
+        }
+        return rval;
+    }
+
+    /**
+     * Writes the record atomically.
+     *
+     * @param file
+     * @param record
+     * @throws IOException
+     */
+    private void writeRecord(File file, Properties record) throws IOException {
+        final File temp = File.createTempFile("record", ".tmp", this.directory);
+        try {
+            final OutputStream out = new FileOutputStream(temp);
+            try {
+                record.store(out, null);
+            } finally {
+                out.close();
+            }
+            move(temp, file);
+        } finally {
+            if (temp.exists()) temp.delete();
+        }
+    }
+
+    /**
+     * @param source
+     * @param target
+     * @throws IOException
+     */
+    private static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return A new SHA-1 digest.
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param data
+     * @return .
+     */
+    private static String sha1(byte[] data) {
+        return hex(newDigest().digest(data));
+    }
+
+    /**
+     * @param bytes
+     * @return .
+     */
+    private static String hex(byte[] bytes) {
+        final char[] digits = "0123456789abcdef".toCharArray();
+        final char[] rval = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            rval[2 * i] = digits[(bytes[i] >> 4) & 0xf];
+            rval[2 * i + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(rval);
+    }
+}
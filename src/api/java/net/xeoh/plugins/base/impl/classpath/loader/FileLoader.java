@@ -33,12 +33,10 @@ import java.net.URI;
 import java.net.URLDecoder;
 import java.util.Collection;
 
-import net.xeoh.plugins.base.Plugin;
 import net.xeoh.plugins.base.impl.PluginManagerImpl;
 import net.xeoh.plugins.base.impl.classpath.ClassPathManager;
 import net.xeoh.plugins.base.impl.classpath.locator.AbstractClassPathLocation;
 import net.xeoh.plugins.base.impl.classpath.locator.ClassPathLocator;
-import net.xeoh.plugins.base.impl.classpath.locator.locations.JARClasspathLocation;
 
 /**
  * @author rb
@@ -120,22 +118,16 @@ public class FileLoader extends AbstractLoader {
         for (AbstractClassPathLocation location : locations) {
             manager.registerLocation(location);
 
-            Collection<String> subclasses = null;
-
-            // Check if it has a list of plugins
-            if (location instanceof JARClasspathLocation) {
-                final JARClasspathLocation jarLocation = (JARClasspathLocation) location;
-                subclasses = jarLocation.getPredefinedPluginList();
-            }
-
-            // Add all found files ... if we have no predefined list
-            if (subclasses == null)
-                subclasses = manager.findSubclassesFor(location, Plugin.class);
+            // Use the predefined list of plugins, or add all found files
+            final Collection<String> subclasses = manager.findPluginImplementationsFor(location);
 
             // Try to load them
             for (String string : subclasses) {
                 tryToLoadClassAsPlugin(location, string);
             }
+
+            // Resources are opened on demand from now on
+            location.close();
         }
     }
 }
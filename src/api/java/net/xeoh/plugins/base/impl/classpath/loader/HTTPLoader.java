@@ -27,12 +27,16 @@
  */
 package net.xeoh.plugins.base.impl.classpath.loader;
 
-import java.io.FileOutputStream;
-import java.io.InputStream;
+import java.io.File;
+import java.io.IOException;
 import java.net.URI;
-import java.net.URL;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import net.xeoh.plugins.base.PluginManager;
 import net.xeoh.plugins.base.impl.PluginManagerImpl;
+import net.xeoh.plugins.base.util.PluginConfigurationUtil;
 
 /**
  * @author rb
@@ -40,6 +44,12 @@ import net.xeoh.plugins.base.impl.PluginManagerImpl;
  */
 public class HTTPLoader extends FileLoader {
 
+    /** Created on first use, as the configuration is not there before */
+    private DownloadCache downloadCache;
+
+    /** Files fetched by prepare() but not loaded yet */
+    private final Map<URI, File> prepared = new ConcurrentHashMap<URI, File>();
+
     /**
      * @param pluginManager
      */
@@ -57,6 +67,14 @@ public class HTTPLoader extends FileLoader {
         return false;
     }
 
+    /* (non-Javadoc)
+     * @see net.xeoh.plugins.base.impl.classpath.loader.AbstractLoader#prepare(java.util.Collection)
+     */
+    @Override
+    public void prepare(Collection<URI> uris) {
+        this.prepared.putAll(getDownloadCache().fetch(uris));
+    }
+
     /* (non-Javadoc)
      * @see net.xeoh.plugins.base.impl.loader.AbstractLoader#loadFrom(java.net.URI)
      */
@@ -64,33 +82,32 @@ public class HTTPLoader extends FileLoader {
     public void loadFrom(URI url) {
         // Handle http files
         if (url.getScheme().equals("http")) {
+            File file = this.prepared.remove(url);
 
             try {
-                // download the file (TODO: download could be improved a bit ...)
-                java.io.File tmpFile = java.io.File.createTempFile("jspfplugindownload", ".jar");
-                final FileOutputStream fos = new FileOutputStream(tmpFile);
-
-                final URL url2 = url.toURL();
-                final InputStream openStream = url2.openStream();
-
-                int read = 0;
-                byte buf[] = new byte[1024];
-
-                while ((read = openStream.read(buf)) > 0) {
-                    fos.write(buf, 0, read);
-                }
-
-                fos.close();
-                openStream.close();
-
-                // BIG FAT TODO: Do signature check!!!
-                locateAllPluginsAt(tmpFile);
+                if (file == null) file = getDownloadCache().fetch(url);
+            } catch (IOException e) {
+                this.logger.warning("Error downloading plugins from " + url + ": " + e.getMessage());
                 return;
-            } catch (Exception e) {
-                e.printStackTrace();
-                this.logger.warning("Error downloading plugins from " + url);
             }
+
+            // BIG FAT TODO: Do signature check!!!
+            locateAllPluginsAt(file);
         }
     }
 
+    /**
+     * Returns the download cache, configured by <code>cache.downloads.dir</code>.
+     * 
+     * @return .
+     */
+    private synchronized DownloadCache getDownloadCache() {
+        if (this.downloadCache == null) {
+            final String defaultDir = new File(System.getProperty("user.home"), ".jspf/downloads").getPath();
+            final String dir = new PluginConfigurationUtil(this.pluginManager.getPluginConfiguration()).getString(PluginManager.class, "cache.downloads.dir", defaultDir);
+            this.downloadCache = new DownloadCache(new File(dir));
+        }
+
+        return this.downloadCache;
+    }
 }
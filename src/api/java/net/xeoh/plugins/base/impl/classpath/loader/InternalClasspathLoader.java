@@ -29,13 +29,11 @@ package net.xeoh.plugins.base.impl.classpath.loader;
 
 import java.net.URI;
 import java.util.Collection;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import net.xeoh.plugins.base.Plugin;
 import net.xeoh.plugins.base.impl.PluginManagerImpl;
 import net.xeoh.plugins.base.impl.classpath.ClassPathManager;
 import net.xeoh.plugins.base.impl.classpath.locator.AbstractClassPathLocation;
+import net.xeoh.plugins.base.impl.classpath.locator.ClassFilter;
 import net.xeoh.plugins.base.impl.classpath.locator.ClassPathLocator;
 
 /**
@@ -77,11 +75,7 @@ public class InternalClasspathLoader extends AbstractLoader {
             if (url.toString().equals("classpath://*")) {
                 loadAllClasspathPluginClasses(null);
             } else {
-                String pattern = url.toString();
-                pattern = pattern.replace("**", ".+");
-                pattern = pattern.replace("*", "[^\\.]*");
-                pattern = pattern.replace("classpath://", "");
-                loadAllClasspathPluginClasses(pattern);
+                loadAllClasspathPluginClasses(url.toString().replace("classpath://", ""));
             }
             return;
         }
@@ -108,9 +102,10 @@ public class InternalClasspathLoader extends AbstractLoader {
     }
 
     /**
-     * Load all plugins from the classpath that match a given pattern.
+     * Load all plugins from the classpath that match a given pattern. The pattern is
+     * added to the filter of every location, so other packages are not even scanned.
      * 
-     * @param pattern
+     * @param pattern A class name glob (see {@link ClassFilter}), or <code>null</code>.
      */
     private void loadAllClasspathPluginClasses(String pattern) {
         // Start the classpath search
@@ -123,27 +118,21 @@ public class InternalClasspathLoader extends AbstractLoader {
 
         // Process all locations
         for (AbstractClassPathLocation location : locations) {
+            if (pattern != null) location.setFilter(location.getFilter().including(pattern));
+
             manager.registerLocation(location);
 
-            final Collection<String> candidates = manager.findSubclassesFor(location, Plugin.class);
+            final Collection<String> candidates = manager.findPluginImplementationsFor(location);
 
             this.logger.finer("Found " + candidates.size() + " candidates.");
 
             // Check all candidates
             for (String string : candidates) {
-
-                // Either try to add them all, or only those who match a given pattern
-                if (pattern == null) tryToLoadClassAsPlugin(location, string);
-                else {
-                    final Pattern p = Pattern.compile(pattern);
-                    final Matcher m = p.matcher(string);
-
-                    this.logger.finest(string + " " + m.matches());
-                    if (m.matches()) {
-                        tryToLoadClassAsPlugin(location, string);
-                    }
-                }
+                tryToLoadClassAsPlugin(location, string);
             }
+
+            // Resources are opened on demand from now on
+            location.close();
         }
 
         return;
@@ -36,6 +36,7 @@ import java.util.logging.Logger;
 
 import net.xeoh.plugins.base.impl.classpath.cache.JARCache;
 import net.xeoh.plugins.base.impl.classpath.cache.JARCache.JARInformation;
+import net.xeoh.plugins.base.impl.classpath.index.PluginIndex;
 import net.xeoh.plugins.base.impl.classpath.locator.locations.FileClasspathLocation;
 import net.xeoh.plugins.base.impl.classpath.locator.locations.JARClasspathLocation;
 import net.xeoh.plugins.base.impl.classpath.locator.locations.MultiPluginClasspathLocation;
@@ -80,6 +81,9 @@ public abstract class AbstractClassPathLocation {
     /** Information for this location entry */
     protected JARInformation cacheEntry = null;
 
+    /** Classes to consider in this location */
+    protected ClassFilter filter = ClassFilter.ALL;
+
     /**
      * @param cache
      * @param realm
@@ -138,6 +142,22 @@ public abstract class AbstractClassPathLocation {
         return this.realm;
     }
 
+    /**
+     * Sets which classes are listed by this location. Filtered classes are never read.
+     * 
+     * @param filter The filter.
+     */
+    public void setFilter(ClassFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * @return The filter of this location.
+     */
+    public ClassFilter getFilter() {
+        return this.filter;
+    }
+
     /**
      * Get the type of this entry
      * 
@@ -146,7 +166,7 @@ public abstract class AbstractClassPathLocation {
     public abstract LocationType getType();
 
     /**
-     * Lists the name of all classes inside this classpath element
+     * Lists the name of all classes inside this classpath element accepted by the filter
      * 
      * @return .
      */
@@ -159,6 +179,16 @@ public abstract class AbstractClassPathLocation {
      */
     public abstract Collection<String> listAllEntries();
 
+    /**
+     * Returns the plugins listed in the build-time index of this location (see
+     * {@link PluginIndex}) accepted by the filter.
+     * 
+     * @return The plugin class names, or <code>null</code> if there is no index.
+     */
+    public Collection<String> getPredefinedPluginList() {
+        return null;
+    }
+
     /**
      * Creates an input stream for the requested item
      * 
@@ -168,4 +198,12 @@ public abstract class AbstractClassPathLocation {
      */
     public abstract InputStream getInputStream(String entry);
 
+    /**
+     * Releases files this location keeps open. The location may be used again
+     * afterwards, it reopens them on demand.
+     */
+    public void close() {
+        //
+    }
+
 }
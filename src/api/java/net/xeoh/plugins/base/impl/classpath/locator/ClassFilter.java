@@ -0,0 +1,224 @@
+package net.xeoh.plugins.base.impl.classpath.locator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which classes of a location are considered at all. Filters are made of class
+ * name globs, where <code>*</code> matches within a package name and <code>**</code>
+ * matches across packages (e.g., <code>com.acme.**</code>). A class must match one glob of
+ * every include list and no exclude glob. Patterns are compiled once, and whole packages
+ * can be skipped before their entries are read.
+ */
+public final class ClassFilter {
+
+    /** Accepts everything */
+    public static final ClassFilter ALL = new ClassFilter(Collections.<Group> emptyList(), null);
+
+    /**
+     * A list of globs, compiled into a single pattern.
+     */
+    private static final class Group {
+        /** */
+        final List<String> globs;
+
+        /** */
+        final Pattern pattern;
+
+        /**
+         * @param globs
+         */
+        Group(List<String> globs) {
+            this.globs = globs;
+
+            final StringBuilder sb = new StringBuilder();
+            for (String glob : globs) {
+                if (sb.length() > 0) sb.append('|');
+                sb.append(regex(glob));
+            }
+            this.pattern = Pattern.compile(sb.toString());
+        }
+    }
+
+    /** All of them must match */
+    private final List<Group> includes;
+
+    /** None of them may match, or <code>null</code> */
+    private final Group excludes;
+
+    /**
+     * @param includes
+     * @param excludes
+     */
+    private ClassFilter(List<Group> includes, Group excludes) {
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    /**
+     * Compiles a filter.
+     *
+     * @param includes Globs of accepted classes, everything is accepted if empty.
+     * @param excludes Globs of rejected classes.
+     * @return The filter.
+     */
+    public static ClassFilter compile(Collection<String> includes, Collection<String> excludes) {
+        final List<String> in = clean(includes);
+        final List<String> ex = clean(excludes);
+
+        if (in.isEmpty() && ex.isEmpty()) return ALL;
+
+        final List<Group> groups = new ArrayList<Group>();
+        if (!in.isEmpty()) groups.add(new Group(in));
+
+        return new ClassFilter(groups, ex.isEmpty() ? null : new Group(ex));
+    }
+
+    /**
+     * Returns a filter that in addition only accepts classes matching the given glob.
+     *
+     * @param glob The glob.
+     * @return The new filter.
+     */
+    public ClassFilter including(String glob) {
+        final List<Group> groups = new ArrayList<Group>(this.includes);
+        groups.add(new Group(Collections.singletonList(glob)));
+        return new ClassFilter(groups, this.excludes);
+    }
+
+    /**
+     * Checks the given class.
+     *
+     * @param className The binary class name.
+     * @return True if the class should be considered.
+     */
+    public boolean accepts(String className) {
+        if (this.excludes != null && this.excludes.pattern.matcher(className).matches()) return false;
+
+        for (Group group : this.includes) {
+            if (!group.pattern.matcher(className).matches()) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks if the given package or one of its subpackages may contain accepted classes.
+     *
+     * @param packageName The package, "" for the default package.
+     * @return False if the package can be skipped.
+     */
+    public boolean mayContain(String packageName) {
+        if (packageName.length() == 0) return true;
+
+        final String prefix = packageName + ".";
+
+        if (this.excludes != null) {
+            for (String glob : this.excludes.globs) {
+                // Only "a.b.**" excludes whole subtrees
+                if (!glob.endsWith(".**")) continue;
+
+                final String excluded = glob.substring(0, glob.length() - 2);
+                if (excluded.indexOf('*') < 0 && prefix.startsWith(excluded)) return false;
+            }
+        }
+
+        for (Group group : this.includes) {
+            boolean possible = false;
+            for (String glob : group.globs) {
+                final int wildcard = glob.indexOf('*');
+                final String literal = wildcard < 0 ? glob : glob.substring(0, wildcard);
+
+                // A glob without wildcards names one class, only the packages above it
+                // may contain it
+                if (literal.startsWith(prefix) || (wildcard >= 0 && prefix.startsWith(literal))) {
+                    possible = true;
+                    break;
+                }
+            }
+            if (!possible) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Filters the given class names.
+     *
+     * @param classNames
+     * @return The accepted names.
+     */
+    public Collection<String> filter(Collection<String> classNames) {
+        if (this == ALL) return classNames;
+
+        final Collection<String> rval = new ArrayList<String>();
+        for (String name : classNames) {
+            if (accepts(name)) rval.add(name);
+        }
+        return rval;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (Group group : this.includes) {
+            sb.append("+").append(group.globs);
+        }
+        if (this.excludes != null) sb.append("-").append(this.excludes.globs);
+        return sb.toString();
+    }
+
+    /**
+     * Converts a glob into a regular expression.
+     *
+     * @param glob
+     * @return .
+     */
+    private static String regex(String glob) {
+        final StringBuilder sb = new StringBuilder();
+        int literal = 0;
+
+        for (int i = 0; i < glob.length(); i++) {
+            if (glob.charAt(i) != '*') continue;
+
+            if (i > literal) sb.append(Pattern.quote(glob.substring(literal, i)));
+
+            if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                sb.append(".+");
+                i++;
+            } else {
+                sb.append("[^\\.]*");
+            }
+
+            literal = i + 1;
+        }
+
+        if (literal < glob.length()) sb.append(Pattern.quote(glob.substring(literal)));
+        return sb.toString();
+    }
+
+    /**
+     * Trims the given globs and drops empty ones.
+     *
+     * @param globs
+     * @return .
+     */
+    private static List<String> clean(Collection<String> globs) {
+        final List<String> rval = new ArrayList<String>();
+        if (globs == null) return rval;
+
+        for (String glob : globs) {
+            final String trimmed = glob.trim();
+            if (trimmed.length() > 0) rval.add(trimmed);
+        }
+        return rval;
+    }
+}
@@ -35,13 +35,16 @@ import java.net.URI;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 import net.xeoh.plugins.base.PluginManager;
 import net.xeoh.plugins.base.impl.PluginManagerImpl;
 import net.xeoh.plugins.base.impl.classpath.cache.JARCache;
+import net.xeoh.plugins.base.impl.classpath.locator.AbstractClassPathLocation.LocationType;
 import net.xeoh.plugins.base.util.PluginConfigurationUtil;
 
 /**
@@ -107,7 +110,10 @@ public class ClassPathLocator {
             }
 
             // If we have JARs, we already added them
-            if (hasJARs) return rval;
+            if (hasJARs) {
+                fingerprintJARs(rval);
+                return rval;
+            }
 
             // If we have no JARs, this is probably a classpath, in this case warn that
             // the method is not recommended
@@ -138,8 +144,12 @@ public class ClassPathLocator {
 
         // Get our current classpath (TODO: Better get this using
         // ClassLoader.getSystemClassLoader()?)
-        final boolean filter = new PluginConfigurationUtil(this.pluginManager.getPluginConfiguration()).getBoolean(PluginManager.class, "classpath.filter.default.enabled", true);
-        final String blacklist[] = new PluginConfigurationUtil(this.pluginManager.getPluginConfiguration()).getString(PluginManager.class, "classpath.filter.default.pattern", "/jre/lib/;/jdk/lib/;/lib/rt.jar").split(";");
+        final PluginConfigurationUtil pcu = new PluginConfigurationUtil(this.pluginManager.getPluginConfiguration());
+        final boolean filter = pcu.getBoolean(PluginManager.class, "classpath.filter.default.enabled", true);
+        final String blacklist[] = pcu.getString(PluginManager.class, "classpath.filter.default.pattern", "/jre/lib/;/jdk/lib/;/lib/rt.jar").split(";");
+        final Pattern blacklistPattern = substrings(blacklist);
+        final Pattern excludedJARs = fileGlobs(pcu.getString(PluginManager.class, "classpath.filter.jars.exclude", "").split(";"));
+        final ClassFilter classFilter = ClassFilter.compile(Arrays.asList(pcu.getString(PluginManager.class, "classpath.filter.packages.include", "").split(";")), Arrays.asList(pcu.getString(PluginManager.class, "classpath.filter.packages.exclude", "").split(";")));
         final String pathSep = System.getProperty("path.separator");
         final String classpath = System.getProperty("java.class.path");
         final String[] split = classpath.split(pathSep);
@@ -180,38 +190,90 @@ public class ClassPathLocator {
                 this.logger.fine("Converted to " + url);
 
                 // Check if the url was already contained
-                if (toFilter.contains(url) || blacklisted(blacklist, url)) {
+                if (toFilter.contains(url) || blacklisted(blacklistPattern, url)) {
                     this.logger.fine("But it was filtered because it was in our list or blacklisted.");
                     continue;
                 }
 
+                if (excludedJARs != null && string.endsWith(".jar") && excludedJARs.matcher(new File(string).getName()).matches()) {
+                    this.logger.fine("But it was filtered because the JAR is excluded.");
+                    continue;
+                }
+
                 // And eventually add the location
-                rval.add(AbstractClassPathLocation.newClasspathLocation(this.cache, "#classpath", new File(string).toURI()));
+                final AbstractClassPathLocation location = AbstractClassPathLocation.newClasspathLocation(this.cache, "#classpath", new File(string).toURI());
+                location.setFilter(classFilter);
+                rval.add(location);
             } catch (MalformedURLException e) {
                 e.printStackTrace();
             }
         }
 
+        fingerprintJARs(rval);
         return rval;
     }
 
+    /**
+     * Lets the cache fingerprint all JARs among the given locations at once.
+     * 
+     * @param locations
+     */
+    private void fingerprintJARs(Collection<AbstractClassPathLocation> locations) {
+        if (this.cache == null) return;
+
+        final Collection<URI> jars = new ArrayList<URI>();
+        for (AbstractClassPathLocation location : locations) {
+            if (location.getType() == LocationType.JAR) jars.add(location.getToplevelLocation());
+        }
+
+        this.cache.fingerprint(jars);
+    }
+
     /**
      * Checks if the given URL is blacklisted
      * 
-     * @param blacklist
+     * @param blacklist Pattern of all blacklist entries, or <code>null</code>.
      * @param url
      * @return
      */
-    private boolean blacklisted(String[] blacklist, URL url) {
-        // Default sanity check
-        if (blacklist == null || blacklist.length == 0 || blacklist[0].length() == 0)
-            return false;
-
-        // Go thorugh blacklist
-        for (String string : blacklist) {
-            if (url.toString().contains(string)) return true;
+    private boolean blacklisted(Pattern blacklist, URL url) {
+        if (blacklist == null) return false;
+
+        return blacklist.matcher(url.toString()).find();
+    }
+
+    /**
+     * Compiles a pattern finding any of the given substrings.
+     * 
+     * @param substrings
+     * @return The pattern, or <code>null</code> if there are no substrings.
+     */
+    private static Pattern substrings(String[] substrings) {
+        final StringBuilder sb = new StringBuilder();
+        for (String string : substrings) {
+            if (string.length() == 0) continue;
+            if (sb.length() > 0) sb.append('|');
+            sb.append(Pattern.quote(string));
+        }
+
+        return sb.length() == 0 ? null : Pattern.compile(sb.toString());
+    }
+
+    /**
+     * Compiles a pattern matching file names against any of the given globs.
+     * 
+     * @param globs Globs like <code>log4j-*.jar</code>.
+     * @return The pattern, or <code>null</code> if there are no globs.
+     */
+    private static Pattern fileGlobs(String[] globs) {
+        final StringBuilder sb = new StringBuilder();
+        for (String glob : globs) {
+            final String trimmed = glob.trim();
+            if (trimmed.length() == 0) continue;
+            if (sb.length() > 0) sb.append('|');
+            sb.append(Pattern.quote(trimmed).replace("*", "\\E.*\\Q"));
         }
 
-        return false;
+        return sb.length() == 0 ? null : Pattern.compile(sb.toString());
     }
 }
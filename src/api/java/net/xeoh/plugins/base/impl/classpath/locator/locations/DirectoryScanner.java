@@ -0,0 +1,169 @@
+package net.xeoh.plugins.base.impl.classpath.locator.locations;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Logger;
+
+import net.xeoh.plugins.base.impl.classpath.locator.ClassFilter;
+
+/**
+ * Lists all files below a directory. Subdirectories are listed in parallel, directories
+ * reached twice (through links) are detected by their file key and only listed once.
+ * Directories of packages the filter rejects are not entered.
+ */
+final class DirectoryScanner {
+
+	/** Shared by all scans, its threads are daemons */
+	private static final ForkJoinPool pool = new ForkJoinPool();
+
+	/** System directories we never descend into, they may recurse endlessly (Android) */
+	private static final String[] IGNORED = new String[] { "/dev/", "/sys/", "/proc/" };
+
+	/** */
+	private static final Logger logger = Logger.getLogger(DirectoryScanner.class.getName());
+
+	/** */
+	private DirectoryScanner() {
+		//
+	}
+
+	/**
+	 * Lists all files below the given directory.
+	 *
+	 * @param root The directory.
+	 * @param filter Decides which package directories are entered.
+	 * @return The names of all files relative to the root, separated by '/'.
+	 */
+	static List<String> list(File root, ClassFilter filter) {
+		if (!root.isDirectory())
+			return new ArrayList<String>();
+
+		logger.fine("Obtaining file listing for: " + root);
+
+		final Set<Object> visited = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+		return pool.invoke(new ListTask(root.toPath(), "", filter, visited));
+	}
+
+	/**
+	 * Lists a single directory and forks a task for every subdirectory.
+	 */
+	private static final class ListTask extends RecursiveTask<List<String>> {
+		/** */
+		private static final long serialVersionUID = -4412349207624452262L;
+
+		/** */
+		private final Path directory;
+
+		/** Name of the directory relative to the root, ending with '/' */
+		private final String prefix;
+
+		/** */
+		private final ClassFilter filter;
+
+		/** Keys of all directories seen so far */
+		private final Set<Object> visited;
+
+		/**
+		 * @param directory
+		 * @param prefix
+		 * @param filter
+		 * @param visited
+		 */
+		ListTask(Path directory, String prefix, ClassFilter filter, Set<Object> visited) {
+			this.directory = directory;
+			this.prefix = prefix;
+			this.filter = filter;
+			this.visited = visited;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.concurrent.RecursiveTask#compute()
+		 */
+		@Override
+		protected List<String> compute() {
+			final List<String> rval = new ArrayList<String>();
+			final List<ListTask> subtasks = new ArrayList<ListTask>();
+
+			try {
+				if (!this.visited.add(key(this.directory)))
+					return rval;
+
+				final DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory);
+				try {
+					for (Path path : stream) {
+						final String name = this.prefix + path.getFileName().toString();
+						final BasicFileAttributes attributes;
+						try {
+							attributes = Files.readAttributes(path, BasicFileAttributes.class);
+						} catch (IOException e) {
+							// Dangling links and the like
+							continue;
+						}
+
+						if (!attributes.isDirectory()) {
+							rval.add(name);
+							continue;
+						}
+
+						if (isIgnored(path) || !this.filter.mayContain(name.replace('/', '.')))
+							continue;
+
+						final ListTask subtask = new ListTask(path, name + "/", this.filter, this.visited);
+						subtask.fork();
+						subtasks.add(subtask);
+					}
+				} finally {
+					stream.close();
+				}
+			} catch (IOException e) {
+				logger.fine("Unable to list " + this.directory + ": " + e.getMessage());
+			}
+
+			for (ListTask subtask : subtasks) {
+				rval.addAll(subtask.join());
+			}
+
+			return rval;
+		}
+
+		/**
+		 * Returns a key identifying the directory, even if it is reached through a link.
+		 *
+		 * @param path
+		 * @return .
+		 * @throws IOException
+		 */
+		private static Object key(Path path) throws IOException {
+			final Object key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+			return key != null ? key : path.toRealPath();
+		}
+
+		/**
+		 * @param path
+		 * @return .
+		 */
+		private static boolean isIgnored(Path path) {
+			final String absolute = path.toAbsolutePath().toString().replace('\\', '/') + "/";
+			for (String ignore : IGNORED) {
+				if (absolute.startsWith(ignore)) {
+					logger.warning("Android hack actve. Ignoring directory containing " + ignore);
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
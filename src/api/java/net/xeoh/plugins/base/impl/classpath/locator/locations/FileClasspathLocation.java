@@ -35,11 +35,11 @@ import java.io.InputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
-import java.util.regex.Pattern;
 
 import net.xeoh.plugins.base.impl.classpath.cache.JARCache;
+import net.xeoh.plugins.base.impl.classpath.index.PluginIndex;
 import net.xeoh.plugins.base.impl.classpath.locator.AbstractClassPathLocation;
+import net.xeoh.plugins.base.impl.classpath.locator.ClassFilter;
 
 /**
  * @author rb
@@ -76,6 +76,28 @@ public class FileClasspathLocation extends AbstractClassPathLocation {
 		return null;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.xeoh.plugins.base.impl.classpath.locator.AbstractClassPathLocation
+	 * #getPredefinedPluginList()
+	 */
+	@Override
+	public Collection<String> getPredefinedPluginList() {
+		final File index = new File(new File(this.location), PluginIndex.PATH);
+		if (!index.isFile())
+			return null;
+
+		try {
+			return this.filter.filter(PluginIndex.readClassNames(new FileInputStream(index)));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		return null;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -97,30 +119,7 @@ public class FileClasspathLocation extends AbstractClassPathLocation {
 	 */
 	@Override
 	public Collection<String> listAllEntries() {
-		final Collection<String> rval = new ArrayList<String>();
-		final File toplevel = new File(this.location);
-
-		try {
-			List<File> fileListing = getFileListing(toplevel, new ArrayList<String>());
-			for (File file : fileListing) {
-				// Only accept true files
-				if (file.isDirectory())
-					continue;
-
-				final String path = Pattern.quote(toplevel.getAbsolutePath());
-
-				String name = "";
-				name = file.getAbsolutePath().replaceAll(path, "");
-				name = name.substring(1);
-				name = name.replace("\\", "/");
-
-				rval.add(name);
-			}
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		}
-
-		return rval;
+		return DirectoryScanner.list(new File(this.location), ClassFilter.ALL);
 	}
 
 	/*
@@ -133,104 +132,17 @@ public class FileClasspathLocation extends AbstractClassPathLocation {
 	@Override
 	public Collection<String> listToplevelClassNames() {
 		final Collection<String> rval = new ArrayList<String>();
-		final File toplevel = new File(this.location);
 
-		try {
-			List<File> fileListing = getFileListing(toplevel, new ArrayList<String>());
-			for (File file : fileListing) {
-				// Only accept class files
-				if (!file.getAbsolutePath().endsWith(".class")) {
-					continue;
-				}
-
-				final String path = Pattern.quote(toplevel.getAbsolutePath());
-
-				String name = "";
-				name = file.getAbsolutePath().replaceAll(path, "");
-				name = name.substring(1);
-				name = name.replace("\\", "/");
-				name = name.replace("/", ".");
-
-				// Remove trailing .class
-				if (name.endsWith("class")) {
-					name = name.substring(0, name.length() - 6);
-				}
-
-				rval.add(name);
-			}
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		}
-
-		return rval;
-	}
-
-	/**
-	 * List all files
-	 * 
-	 * @param aStartingDir
-	 * @return
-	 * @throws FileNotFoundException
-	 */
-	private List<File> getFileListing(File aStartingDir, List<String> visited)
-	        throws FileNotFoundException {
-		// Sanity check
-		if (aStartingDir == null || aStartingDir.listFiles() == null)
-			return new ArrayList<File>();
-
-		this.logger.fine("Obtaining file listing for: " + aStartingDir);
-
-		final String[] ignoreList = new String[] { "/dev/", "/sys/", "/proc/" };
-		final List<File> result = new ArrayList<File>();
-		for (File file : aStartingDir.listFiles()) {
-
-			boolean skip = false;
-
-			// Very ugly Android related hack, remove this if we have a better
-			// solution to detect a recursion.
-			for (String ignore : ignoreList) {
-				if (file.getAbsolutePath().contains(ignore)) {
-					this.logger.warning("Android hack actve. Ignoring directory containing "
-					        + ignore);
-					skip = true;
-				}
-			}
-
-			// Now skip
-			if (skip)
+		for (String name : DirectoryScanner.list(new File(this.location), this.filter)) {
+			// Only accept class files
+			if (!name.endsWith(".class"))
 				continue;
 
-			result.add(file);
-
-			// TODO: Is it possible that this doen't work as expected? Check if
-			// there is a better
-			// recursion test ...
-			{
-				String canonical = null;
-
-				// Why can this fail?
-				try {
-					canonical = file.getCanonicalPath();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-
-				// Anyway, safteycheck: Only process this path if it hasn't
-				// already been seen
-				if (canonical != null) {
-					if (visited.contains(canonical))
-						continue;
-					visited.add(canonical);
-				}
-			}
-
-			// Okay, in here the sub element must have been new, inspect it.
-			if (file.isDirectory()) {
-				List<File> deeperList = getFileListing(file, visited);
-				result.addAll(deeperList);
-			}
+			final String className = name.substring(0, name.length() - 6).replace('/', '.');
+			if (this.filter.accepts(className))
+				rval.add(className);
 		}
-		return result;
-	}
 
+		return rval;
+	}
 }
@@ -29,18 +29,13 @@ package net.xeoh.plugins.base.impl.classpath.locator.locations;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.JarURLConnection;
-import java.net.MalformedURLException;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Enumeration;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
 import net.xeoh.plugins.base.impl.classpath.cache.JARCache;
 import net.xeoh.plugins.base.impl.classpath.cache.JARCache.JARInformation;
+import net.xeoh.plugins.base.impl.classpath.index.PluginIndex;
 import net.xeoh.plugins.base.impl.classpath.locator.AbstractClassPathLocation;
 
 /**
@@ -50,6 +45,9 @@ import net.xeoh.plugins.base.impl.classpath.locator.AbstractClassPathLocation;
  */
 public class JARClasspathLocation extends AbstractClassPathLocation {
 
+	/** The opened JAR, held from the first listing until the location is closed */
+	private PooledJARFile jarFile = null;
+
 	/**
 	 * @param cache
 	 * @param realm
@@ -70,6 +68,23 @@ public class JARClasspathLocation extends AbstractClassPathLocation {
 		return this.cacheEntry;
 	}
 
+	/**
+	 * Returns the opened JAR.
+	 * 
+	 * @return The JAR, or <code>null</code> if it cannot be opened.
+	 */
+	private synchronized PooledJARFile jarFile() {
+		if (this.jarFile == null) {
+			try {
+				this.jarFile = PooledJARFile.acquire(this.location);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		return this.jarFile;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -91,32 +106,11 @@ public class JARClasspathLocation extends AbstractClassPathLocation {
 	 */
 	@Override
 	public InputStream getInputStream(String file) {
-
+		// Shares the JAR while we scan it, opens it just for this stream otherwise
 		try {
-			final JarURLConnection connection = (JarURLConnection) new URI("jar:" + this.location
-			        + "!/").toURL().openConnection();
-			final JarFile jarFile = connection.getJarFile();
-
-			final Enumeration<JarEntry> entries = jarFile.entries();
-
-			while (entries.hasMoreElements()) {
-				final JarEntry entry = entries.nextElement();
-
-				// We only search for class file entries
-				if (entry.isDirectory())
-					continue;
-
-				String name = entry.getName();
-
-				if (name.equals(file))
-					return jarFile.getInputStream(entry);
-			}
-		} catch (MalformedURLException e) {
-			e.printStackTrace();
+			return PooledJARFile.openEntry(this.location, file);
 		} catch (IOException e) {
 			e.printStackTrace();
-		} catch (URISyntaxException e) {
-			e.printStackTrace();
 		}
 
 		return null;
@@ -127,7 +121,35 @@ public class JARClasspathLocation extends AbstractClassPathLocation {
 	 * 
 	 * @return .
 	 */
+	@Override
 	public Collection<String> getPredefinedPluginList() {
+		// The cache knows if the JAR has an index, so we don't have to open it
+		final JARInformation entry = this.cacheEntry != null ? this.cacheEntry : getCacheEntry();
+		if (entry != null) {
+			if (entry.subclasses.containsKey(JARInformation.NO_INDEX))
+				return null;
+
+			final Collection<String> names = entry.subclasses.get(JARInformation.INDEX);
+			if (names != null)
+				return this.filter.filter(names);
+		}
+
+		final InputStream index = getInputStream(PluginIndex.PATH);
+		if (index == null) {
+			if (entry != null)
+				entry.subclasses.put(JARInformation.NO_INDEX, new ArrayList<String>());
+			return null;
+		}
+
+		try {
+			final Collection<String> names = PluginIndex.readClassNames(index);
+			if (entry != null)
+				entry.subclasses.put(JARInformation.INDEX, names);
+			return this.filter.filter(names);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
 		return null;
 	}
 
@@ -140,7 +162,8 @@ public class JARClasspathLocation extends AbstractClassPathLocation {
 	 */
 	@Override
 	public Collection<String> listAllEntries() {
-		return listAllEntriesFor(this.location);
+		final PooledJARFile jar = jarFile();
+		return jar == null ? new ArrayList<String>() : jar.listAllEntries();
 	}
 
 	/*
@@ -152,12 +175,29 @@ public class JARClasspathLocation extends AbstractClassPathLocation {
 	 */
 	@Override
 	public Collection<String> listToplevelClassNames() {
-		final Collection<String> rval = listToplevelClassNamesForURI(this.location);
+		final PooledJARFile jar = jarFile();
+		final Collection<String> rval = jar == null ? new ArrayList<String>() : this.filter.filter(jar.listToplevelClassNames());
 		if (this.cacheEntry != null)
 			this.cacheEntry.classesValid = true;
 		return rval;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * net.xeoh.plugins.base.impl.classpath.locator.AbstractClassPathLocation
+	 * #close()
+	 */
+	@Override
+	public synchronized void close() {
+		if (this.jarFile == null)
+			return;
+
+		this.jarFile.release();
+		this.jarFile = null;
+	}
+
 	/**
 	 * Lists all entries for the given JAR.
 	 * 
@@ -165,34 +205,13 @@ public class JARClasspathLocation extends AbstractClassPathLocation {
 	 * @return .
 	 */
 	public static Collection<String> listAllEntriesFor(URI uri) {
-		final Collection<String> rval = new ArrayList<String>();
-
 		try {
-			final JarURLConnection connection = (JarURLConnection) new URI("jar:" + uri + "!/")
-			        .toURL().openConnection();
-			final JarFile jarFile = connection.getJarFile();
-
-			final Enumeration<JarEntry> entries = jarFile.entries();
-
-			while (entries.hasMoreElements()) {
-				final JarEntry entry = entries.nextElement();
-
-				// We only search for class file entries
-				if (entry.isDirectory())
-					continue;
-
-				String name = entry.getName();
-
-				rval.add(name);
-			}
-		} catch (MalformedURLException e) {
-			e.printStackTrace();
+			return PooledJARFile.listAllEntries(uri);
 		} catch (IOException e) {
 			e.printStackTrace();
-		} catch (URISyntaxException e) {
-			e.printStackTrace();
 		}
-		return rval;
+
+		return new ArrayList<String>();
 	}
 
 	/**
@@ -202,61 +221,12 @@ public class JARClasspathLocation extends AbstractClassPathLocation {
 	 * @return .
 	 */
 	public static Collection<String> listToplevelClassNamesForURI(URI uri) {
-		final Collection<String> rval = new ArrayList<String>();
-
-		// Ensure we have a proper cache entry ...
-		// getCacheEntry();
-
-		// Disabled: Not really necessary, is it? And not storing/retrieving
-		// these items
-		// makes the cache file smaller and saves several ms (~200) loading and
-		// storing it
-		// if (this.cacheEntry.classesValid) { return this.cacheEntry.classes; }
-
 		try {
-			final JarURLConnection connection = (JarURLConnection) new URI("jar:" + uri + "!/")
-			        .toURL().openConnection();
-			final JarFile jarFile = connection.getJarFile();
-
-			final Enumeration<JarEntry> entries = jarFile.entries();
-
-			while (entries.hasMoreElements()) {
-				final JarEntry entry = entries.nextElement();
-
-				// We only search for class file entries
-				if (entry.isDirectory()) {
-					continue;
-				}
-				if (!entry.getName().endsWith(".class")) {
-					continue;
-				}
-
-				String name = entry.getName();
-				name = name.replaceAll("/", ".");
-
-				// Remove trailing .class
-				if (name.endsWith("class")) {
-					name = name.substring(0, name.length() - 6);
-				}
-
-				// Disabled: Not really necessary, is it? And not
-				// storing/retrieving these items
-				// makes the cache file smaller and saves several ms (~200)
-				// loading and storing it
-				// Only store something if we have a cache entry
-				// if (this.cacheEntry != null)
-				// this.cacheEntry.classes.add(name);
-
-				rval.add(name);
-			}
-		} catch (MalformedURLException e) {
-			e.printStackTrace();
+			return PooledJARFile.listToplevelClassNames(uri);
 		} catch (IOException e) {
 			e.printStackTrace();
-		} catch (URISyntaxException e) {
-			e.printStackTrace();
 		}
 
-		return rval;
+		return new ArrayList<String>();
 	}
 }
@@ -32,17 +32,11 @@ package net.xeoh.plugins.base.impl.classpath.locator.locations;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.JarURLConnection;
-import java.net.MalformedURLException;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
 import net.xeoh.plugins.base.impl.classpath.cache.JARCache;
 import net.xeoh.plugins.base.impl.classpath.locator.AbstractClassPathLocation;
@@ -58,6 +52,9 @@ public class MultiPluginClasspathLocation extends AbstractClassPathLocation {
     /** Maps our returned entries to contained JARs (so we know where too look if we want to resolve them) */
     final Map<String, String> entryMapping = new HashMap<String, String>();
 
+    /** JARs we opened to read entries from, released on close */
+    final Map<String, PooledJARFile> openJARs = new HashMap<String, PooledJARFile>();
+
     /** All the JARs we handle */
     final Collection<String> allJARs;
 
@@ -99,27 +96,18 @@ public class MultiPluginClasspathLocation extends AbstractClassPathLocation {
         if (uri == null) return null;
 
         try {
-            final JarURLConnection connection = (JarURLConnection) new URI("jar:" + new File(uri).toURI() + "!/").toURL().openConnection();
-            final JarFile jarFile = connection.getJarFile();
-
-            final Enumeration<JarEntry> entries = jarFile.entries();
-
-            while (entries.hasMoreElements()) {
-                final JarEntry entry = entries.nextElement();
-
-                // We only search for class file entries
-                if (entry.isDirectory()) continue;
-
-                String name = entry.getName();
-
-                if (name.equals(file)) return jarFile.getInputStream(entry);
+            PooledJARFile jar;
+            synchronized (this.openJARs) {
+                jar = this.openJARs.get(uri);
+                if (jar == null) {
+                    jar = PooledJARFile.acquire(new File(uri).toURI());
+                    this.openJARs.put(uri, jar);
+                }
             }
-        } catch (MalformedURLException e) {
-            e.printStackTrace();
+
+            return jar.getInputStream(file);
         } catch (IOException e) {
             e.printStackTrace();
-        } catch (URISyntaxException e) {
-            e.printStackTrace();
         }
 
         return null;
@@ -163,4 +151,16 @@ public class MultiPluginClasspathLocation extends AbstractClassPathLocation {
         return rval;
     }
 
+    /* (non-Javadoc)
+     * @see net.xeoh.plugins.base.impl.classpath.locator.AbstractClassPathLocation#close()
+     */
+    @Override
+    public void close() {
+        synchronized (this.openJARs) {
+            for (PooledJARFile jar : this.openJARs.values()) {
+                jar.release();
+            }
+            this.openJARs.clear();
+        }
+    }
 }
@@ -0,0 +1,325 @@
+package net.xeoh.plugins.base.impl.classpath.locator.locations;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * An open JAR shared by everyone reading it. The file is closed when the last user
+ * released it. The entries are only enumerated when the JAR is listed, and the listings
+ * outlive the open file, so listing a JAR again does not read it again as long as it is
+ * unchanged.
+ */
+public final class PooledJARFile {
+
+	/**
+	 * Entry names of a JAR as of its last modification.
+	 */
+	private static final class Listing {
+
+		/** */
+		final long modified;
+
+		/** */
+		final long length;
+
+		/** Names of all file entries */
+		final List<String> entries;
+
+		/** Names of all top level classes */
+		final List<String> classNames;
+
+		/**
+		 * @param file
+		 * @param entries
+		 * @param classNames
+		 */
+		Listing(File file, List<String> entries, List<String> classNames) {
+			this.modified = file.lastModified();
+			this.length = file.length();
+			this.entries = entries;
+			this.classNames = classNames;
+		}
+
+		/**
+		 * @param file
+		 * @return True if the file did not change since it was listed.
+		 */
+		boolean isCurrent(File file) {
+			return this.modified == file.lastModified() && this.length == file.length();
+		}
+	}
+
+	/** Number of listings we keep for JARs that are not open */
+	private static final int MAX_LISTINGS = 256;
+
+	/** All open JARs by absolute path */
+	private static final Map<String, PooledJARFile> pool = new HashMap<String, PooledJARFile>();
+
+	/** Listings of recently opened JARs by absolute path, least recently used first */
+	private static final Map<String, Listing> listings = new LinkedHashMap<String, Listing>(16, 0.75f, true) {
+		private static final long serialVersionUID = 2217464593384021307L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) {
+			return size() > MAX_LISTINGS;
+		}
+	};
+
+	/** */
+	private final String path;
+
+	/** The open file, set by open() */
+	private JarFile jarFile;
+
+	/** Names of all file entries and top level classes, read on first use */
+	private Listing listing;
+
+	/** Number of users, guarded by the pool */
+	private int references = 0;
+
+	/**
+	 * @param path
+	 */
+	private PooledJARFile(String path) {
+		this.path = path;
+	}
+
+	/**
+	 * Opens the JAR unless an earlier user did. Only users of this JAR wait for each
+	 * other here, other JARs are opened in parallel.
+	 *
+	 * @throws IOException
+	 */
+	private synchronized void open() throws IOException {
+		if (this.jarFile != null)
+			return;
+
+		this.jarFile = new JarFile(new File(this.path));
+	}
+
+	/**
+	 * Lists the entries of the open JAR once and remembers the listing, also for
+	 * users that don't keep the JAR open.
+	 *
+	 * @return .
+	 */
+	private synchronized Listing listing() {
+		if (this.listing != null)
+			return this.listing;
+
+		final List<String> names = new ArrayList<String>();
+		final List<String> classNames = new ArrayList<String>();
+
+		final Enumeration<JarEntry> enumeration = this.jarFile.entries();
+		while (enumeration.hasMoreElements()) {
+			final JarEntry entry = enumeration.nextElement();
+			if (entry.isDirectory())
+				continue;
+
+			final String name = entry.getName();
+			names.add(name);
+
+			if (name.endsWith(".class"))
+				classNames.add(name.substring(0, name.length() - 6).replace('/', '.'));
+		}
+
+		this.listing = new Listing(new File(this.path), names, classNames);
+
+		synchronized (listings) {
+			listings.put(this.path, this.listing);
+		}
+
+		return this.listing;
+	}
+
+	/**
+	 * Closes the file if it was opened.
+	 */
+	private synchronized void close() {
+		if (this.jarFile == null)
+			return;
+
+		try {
+			this.jarFile.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Opens the given JAR, or returns the already open instance. Every call must be
+	 * matched by a call to release().
+	 *
+	 * @param uri The JAR.
+	 * @return The open JAR.
+	 * @throws IOException If the JAR cannot be opened.
+	 */
+	public static PooledJARFile acquire(URI uri) throws IOException {
+		final String path = new File(uri).getAbsolutePath();
+
+		final PooledJARFile rval;
+		synchronized (pool) {
+			PooledJARFile existing = pool.get(path);
+			if (existing == null) {
+				existing = new PooledJARFile(path);
+				pool.put(path, existing);
+			}
+
+			existing.references++;
+			rval = existing;
+		}
+
+		try {
+			rval.open();
+		} catch (IOException e) {
+			rval.release();
+			throw e;
+		}
+
+		return rval;
+	}
+
+	/**
+	 * Releases the JAR, it is closed if nobody else uses it.
+	 */
+	public void release() {
+		synchronized (pool) {
+			if (--this.references > 0)
+				return;
+
+			pool.remove(this.path);
+		}
+
+		close();
+	}
+
+	/**
+	 * Returns the listing of the given JAR, reading the JAR only if it changed since it
+	 * was last opened.
+	 *
+	 * @param uri
+	 * @return .
+	 * @throws IOException
+	 */
+	private static Listing listing(URI uri) throws IOException {
+		final File file = new File(uri);
+		final String path = file.getAbsolutePath();
+
+		synchronized (listings) {
+			final Listing listing = listings.get(path);
+			if (listing != null && listing.isCurrent(file))
+				return listing;
+		}
+
+		final PooledJARFile jar = acquire(uri);
+		try {
+			return jar.listing();
+		} finally {
+			jar.release();
+		}
+	}
+
+	/**
+	 * Opens an entry of the given JAR. The JAR is kept open until the returned stream
+	 * is closed.
+	 *
+	 * @param uri The JAR.
+	 * @param name The entry name.
+	 * @return The stream, or <code>null</code> if there is no such entry.
+	 * @throws IOException If the JAR cannot be opened.
+	 */
+	public static InputStream openEntry(URI uri, String name) throws IOException {
+		final PooledJARFile jar = acquire(uri);
+
+		InputStream stream = null;
+		try {
+			stream = jar.getInputStream(name);
+		} finally {
+			if (stream == null)
+				jar.release();
+		}
+		if (stream == null)
+			return null;
+
+		return new FilterInputStream(stream) {
+			private boolean released = false;
+
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					synchronized (this) {
+						if (!this.released) {
+							this.released = true;
+							jar.release();
+						}
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Lists the file entries of the given JAR.
+	 *
+	 * @param uri The JAR.
+	 * @return The names of all file entries.
+	 * @throws IOException If the JAR cannot be opened.
+	 */
+	public static Collection<String> listAllEntries(URI uri) throws IOException {
+		return new ArrayList<String>(listing(uri).entries);
+	}
+
+	/**
+	 * Lists the top level classes of the given JAR.
+	 *
+	 * @param uri The JAR.
+	 * @return The binary names of all classes.
+	 * @throws IOException If the JAR cannot be opened.
+	 */
+	public static Collection<String> listToplevelClassNames(URI uri) throws IOException {
+		return new ArrayList<String>(listing(uri).classNames);
+	}
+
+	/**
+	 * Opens the given entry.
+	 *
+	 * @param name The entry name.
+	 * @return The stream, or <code>null</code> if there is no such entry.
+	 * @throws IOException
+	 */
+	public InputStream getInputStream(String name) throws IOException {
+		final JarEntry entry = this.jarFile.getJarEntry(name);
+		if (entry == null || entry.isDirectory())
+			return null;
+
+		return this.jarFile.getInputStream(entry);
+	}
+
+	/**
+	 * @return The names of all file entries.
+	 */
+	public Collection<String> listAllEntries() {
+		return new ArrayList<String>(listing().entries);
+	}
+
+	/**
+	 * @return The binary names of all classes.
+	 */
+	public Collection<String> listToplevelClassNames() {
+		return new ArrayList<String>(listing().classNames);
+	}
+}
@@ -0,0 +1,136 @@
+package net.xeoh.plugins.base.impl.classpath.realm;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+
+/**
+ * Loads the classes of one realm, i.e., of the locations sharing a realm name. Classes
+ * are first requested from the shared parent, then from the realm's own locations, and
+ * finally from the realm owning the class's package. The loader is parallel capable, so
+ * different classes are loaded concurrently.
+ */
+public class PluginRealm extends URLClassLoader {
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    /** */
+    private final String id;
+
+    /** Used to find classes of other realms */
+    private final PluginRealms realms;
+
+    /**
+     * @param id
+     * @param parent
+     * @param realms
+     */
+    PluginRealm(String id, ClassLoader parent, PluginRealms realms) {
+        super(new URL[0], parent);
+        this.id = id;
+        this.realms = realms;
+    }
+
+    /**
+     * Adds a location to this realm, unless it is already part of it.
+     * 
+     * @param url
+     */
+    synchronized void addLocation(URL url) {
+        if (!Arrays.asList(getURLs()).contains(url)) addURL(url);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.ClassLoader#loadClass(java.lang.String, boolean)
+     */
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        final ResolutionCache cache = this.realms.getResolutionCache();
+        final Object cached = cache.lookupClass(this.id, name);
+        if (cached == ResolutionCache.MISSING) throw new ClassNotFoundException(name);
+
+        Class<?> rval = (Class<?>) cached;
+        if (rval == null) {
+            final int generation = cache.generation();
+            rval = findOwnClass(name, true);
+
+            // Not holding our own lock here, the other realm might be waiting for it
+            if (rval == null) rval = this.realms.findInOtherRealm(this, name);
+
+            cache.storeClass(this.id, name, rval, generation);
+            if (rval == null) throw new ClassNotFoundException(name);
+        }
+
+        if (resolve) resolveClass(rval);
+        return rval;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.ClassLoader#getResource(java.lang.String)
+     */
+    @Override
+    public URL getResource(String name) {
+        final ResolutionCache cache = this.realms.getResolutionCache();
+        final Object cached = cache.lookupResource(this.id, name);
+        if (cached == ResolutionCache.MISSING) return null;
+        if (cached != null) return (URL) cached;
+
+        final int generation = cache.generation();
+        final URL rval = super.getResource(name);
+        cache.storeResource(this.id, name, rval, generation);
+        return rval;
+    }
+
+    /**
+     * Finds a class without asking other realms.
+     * 
+     * @param name The binary name.
+     * @param parentFirst If the parent should be asked first.
+     * @return The class, or <code>null</code> if neither we nor the parent have it.
+     */
+    Class<?> findOwnClass(String name, boolean parentFirst) {
+        synchronized (getClassLoadingLock(name)) {
+            final Class<?> loaded = findLoadedClass(name);
+            if (loaded != null) return loaded;
+
+            if (parentFirst) {
+                try {
+                    return getParent().loadClass(name);
+                } catch (ClassNotFoundException e) {
+                    // Not a core class
+                }
+            }
+
+            try {
+                final Class<?> rval = findClass(name);
+                this.realms.registerPackage(name, this);
+                return rval;
+            } catch (ClassNotFoundException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return The name of this realm.
+     */
+    public String getId() {
+        return this.id;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "PluginRealm[" + this.id + "]";
+    }
+}
@@ -0,0 +1,162 @@
+package net.xeoh.plugins.base.impl.classpath.realm;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * All realms of a plugin manager. Realms share a parent for the core API. Packages are
+ * indexed by the realm that defined their first class, so a realm missing a class asks
+ * the owner of its package directly instead of searching all realms.
+ */
+public class PluginRealms {
+    /** */
+    private final Logger logger = Logger.getLogger(this.getClass().getName());
+
+    /** Parent of all realms */
+    private final ClassLoader parent;
+
+    /** All realms by name */
+    private final ConcurrentMap<String, PluginRealm> realms = new ConcurrentHashMap<String, PluginRealm>();
+
+    /** */
+    private final ResolutionCache resolutionCache = new ResolutionCache();
+
+    /** Realm that defined the classes of a package */
+    private final ConcurrentMap<String, PluginRealm> packages = new ConcurrentHashMap<String, PluginRealm>();
+
+    /**
+     * @param parent The loader of the core API.
+     */
+    public PluginRealms(ClassLoader parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Adds locations to a realm, the realm is created if needed. Invalidates the
+     * resolution cache, misses might resolve now.
+     * 
+     * @param id Name of the realm.
+     * @param locations The locations to add.
+     * @return The realm.
+     */
+    public PluginRealm addRealm(String id, URI[] locations) {
+        PluginRealm realm = this.realms.get(id);
+        if (realm == null) {
+            final PluginRealm created = new PluginRealm(id, this.parent, this);
+            realm = this.realms.putIfAbsent(id, created);
+            if (realm == null) {
+                realm = created;
+            } else {
+                close(created);
+            }
+        }
+
+        for (URI uri : locations) {
+            try {
+                realm.addLocation(uri.toURL());
+            } catch (MalformedURLException e) {
+                e.printStackTrace();
+            }
+        }
+
+        this.resolutionCache.invalidate();
+        return realm;
+    }
+
+    /**
+     * Returns a realm.
+     * 
+     * @param id Name of the realm.
+     * @return The realm, or <code>null</code> if there is none.
+     */
+    public PluginRealm getRealm(String id) {
+        return this.realms.get(id);
+    }
+
+    /**
+     * @return The cache of class and resource lookups of all realms.
+     */
+    public ResolutionCache getResolutionCache() {
+        return this.resolutionCache;
+    }
+
+    /**
+     * @return The parent of all realms.
+     */
+    public ClassLoader getParent() {
+        return this.parent;
+    }
+
+    /**
+     * Closes all realms. Classes already loaded stay usable.
+     */
+    public void close() {
+        for (PluginRealm realm : this.realms.values()) {
+            close(realm);
+        }
+        this.realms.clear();
+        this.packages.clear();
+        this.resolutionCache.invalidate();
+    }
+
+    /**
+     * Remembers the realm defining the classes of the given class's package.
+     * 
+     * @param className
+     * @param realm
+     */
+    void registerPackage(String className, PluginRealm realm) {
+        this.packages.putIfAbsent(packageOf(className), realm);
+    }
+
+    /**
+     * Finds a class in any realm but the requesting one.
+     * 
+     * @param requester The realm which does not have the class.
+     * @param name The binary name.
+     * @return The class, or <code>null</code>.
+     */
+    Class<?> findInOtherRealm(PluginRealm requester, String name) {
+        final PluginRealm owner = this.packages.get(packageOf(name));
+        if (owner != null && owner != requester) {
+            final Class<?> rval = owner.findOwnClass(name, false);
+            if (rval != null) return rval;
+        }
+
+        // Package not defined yet (or split), look for the class file
+        final String resource = name.replace('.', '/') + ".class";
+        for (PluginRealm realm : this.realms.values()) {
+            if (realm == requester || realm == owner) continue;
+            if (realm.findResource(resource) == null) continue;
+
+            final Class<?> rval = realm.findOwnClass(name, false);
+            if (rval != null) return rval;
+        }
+
+        return null;
+    }
+
+    /**
+     * @param realm
+     */
+    private void close(PluginRealm realm) {
+        try {
+            realm.close();
+        } catch (IOException e) {
+            this.logger.fine("Unable to close " + realm + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param className
+     * @return .
+     */
+    private static String packageOf(String className) {
+        final int dot = className.lastIndexOf('.');
+        return dot < 0 ? "" : className.substring(0, dot);
+    }
+}
@@ -0,0 +1,127 @@
+package net.xeoh.plugins.base.impl.classpath.realm;
+
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers how classes and resources were resolved by each realm, including known
+ * misses, so probing for optional classes does not search all loaders again. The cache
+ * is invalidated whenever the locations of a realm change.
+ */
+public class ResolutionCache {
+
+    /** Marks names a realm could not resolve */
+    static final Object MISSING = new Object();
+
+    /** Resolved classes by realm and name */
+    private final ConcurrentMap<String, Object> classes = new ConcurrentHashMap<String, Object>();
+
+    /** Resolved resources by realm and name */
+    private final ConcurrentMap<String, Object> resources = new ConcurrentHashMap<String, Object>();
+
+    /** Increased on invalidation, results computed before are dropped */
+    private final AtomicInteger generation = new AtomicInteger();
+
+    /** */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @return The current generation, pass it to the store methods.
+     */
+    int generation() {
+        return this.generation.get();
+    }
+
+    /**
+     * @param realm
+     * @param name
+     * @return The class, {@link #MISSING}, or <code>null</code> if unknown.
+     */
+    Object lookupClass(String realm, String name) {
+        return count(this.classes.get(realm + '\0' + name));
+    }
+
+    /**
+     * @param realm
+     * @param name
+     * @param resolved The class, or <code>null</code> if the realm does not have it.
+     * @param generation The generation before the class was resolved.
+     */
+    void storeClass(String realm, String name, Class<?> resolved, int generation) {
+        store(this.classes, realm + '\0' + name, resolved, generation);
+    }
+
+    /**
+     * @param realm
+     * @param name
+     * @return The URL, {@link #MISSING}, or <code>null</code> if unknown.
+     */
+    Object lookupResource(String realm, String name) {
+        return count(this.resources.get(realm + '\0' + name));
+    }
+
+    /**
+     * @param realm
+     * @param name
+     * @param resolved The URL, or <code>null</code> if the realm does not have it.
+     * @param generation The generation before the resource was resolved.
+     */
+    void storeResource(String realm, String name, URL resolved, int generation) {
+        store(this.resources, realm + '\0' + name, resolved, generation);
+    }
+
+    /**
+     * Drops all entries, called when locations are added or removed.
+     */
+    public void invalidate() {
+        this.generation.incrementAndGet();
+        this.classes.clear();
+        this.resources.clear();
+    }
+
+    /**
+     * @return Number of lookups answered by the cache, including known misses.
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return Number of lookups that had to ask the class loaders.
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @param value
+     * @return The value.
+     */
+    private Object count(Object value) {
+        if (value == null) this.misses.incrementAndGet();
+        else this.hits.incrementAndGet();
+        return value;
+    }
+
+    /**
+     * @param map
+     * @param key
+     * @param resolved
+     * @param generation
+     */
+    private void store(ConcurrentMap<String, Object> map, String key, Object resolved,
+                       int generation) {
+        if (generation != this.generation.get()) return;
+
+        map.put(key, resolved == null ? MISSING : resolved);
+
+        // Invalidated while we stored, we might have put a stale entry
+        if (generation != this.generation.get()) map.remove(key);
+    }
+}
@@ -0,0 +1,274 @@
+package net.xeoh.plugins.base.impl.classpath.scanner;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * The parts of a class file we need to find plugins: name, super class, interfaces and
+ * class level runtime annotations. All names are in internal form (<code>a/b/C</code>).
+ * Reading a header never loads or defines the class.
+ */
+public final class ClassFileHeader {
+
+    /** Access flag of interfaces (and annotations) */
+    private static final int ACC_INTERFACE = 0x0200;
+
+    /** Access flag of abstract classes */
+    private static final int ACC_ABSTRACT = 0x0400;
+
+    /** */
+    private final String name;
+
+    /** Super class, or <code>null</code> for java/lang/Object */
+    private final String superName;
+
+    /** */
+    private final String[] interfaces;
+
+    /** Descriptors of all runtime visible class annotations */
+    private final Collection<String> annotations;
+
+    /** */
+    private final int access;
+
+    /**
+     * @param name
+     * @param superName
+     * @param interfaces
+     * @param annotations
+     * @param access
+     */
+    private ClassFileHeader(String name, String superName, String[] interfaces,
+                            Collection<String> annotations, int access) {
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces;
+        this.annotations = annotations;
+        this.access = access;
+    }
+
+    /**
+     * Parses the header of the given class file. Fields and methods are skipped, only
+     * the class attributes are inspected for annotations.
+     *
+     * @param stream The class file, will not be closed.
+     * @return The header.
+     * @throws IOException If the stream is not a valid class file.
+     */
+    public static ClassFileHeader read(InputStream stream) throws IOException {
+        final DataInputStream in = new DataInputStream(stream);
+
+        if (in.readInt() != 0xCAFEBABE) throw new IOException("Not a class file");
+        in.readUnsignedShort(); // minor
+        in.readUnsignedShort(); // major
+
+        // We only keep UTF8 entries and the name index of class entries
+        final int poolSize = in.readUnsignedShort();
+        final String[] utf8 = new String[poolSize];
+        final int[] classes = new int[poolSize];
+
+        for (int i = 1; i < poolSize; i++) {
+            final int tag = in.readUnsignedByte();
+            switch (tag) {
+            case 1: // Utf8
+                utf8[i] = in.readUTF();
+                break;
+            case 7: // Class
+                classes[i] = in.readUnsignedShort();
+                break;
+            case 8: // String
+            case 16: // MethodType
+            case 19: // Module
+            case 20: // Package
+                skip(in, 2);
+                break;
+            case 15: // MethodHandle
+                skip(in, 3);
+                break;
+            case 3: // Integer
+            case 4: // Float
+            case 9: // Fieldref
+            case 10: // Methodref
+            case 11: // InterfaceMethodref
+            case 12: // NameAndType
+            case 17: // Dynamic
+            case 18: // InvokeDynamic
+                skip(in, 4);
+                break;
+            case 5: // Long
+            case 6: // Double
+                skip(in, 8);
+                i++;
+                break;
+            default:
+                throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        final int access = in.readUnsignedShort();
+        final String name = utf8[classes[in.readUnsignedShort()]];
+        final int superIndex = in.readUnsignedShort();
+        final String superName = superIndex == 0 ? null : utf8[classes[superIndex]];
+
+        final String[] interfaces = new String[in.readUnsignedShort()];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = utf8[classes[in.readUnsignedShort()]];
+        }
+
+        skipMembers(in); // fields
+        skipMembers(in); // methods
+
+        Collection<String> annotations = Collections.emptyList();
+
+        final int attributes = in.readUnsignedShort();
+        for (int i = 0; i < attributes; i++) {
+            final String attribute = utf8[in.readUnsignedShort()];
+            final int length = in.readInt();
+
+            if (!"RuntimeVisibleAnnotations".equals(attribute)) {
+                skip(in, length);
+                continue;
+            }
+
+            final int count = in.readUnsignedShort();
+            annotations = new ArrayList<String>(count);
+            for (int j = 0; j < count; j++) {
+                annotations.add(utf8[in.readUnsignedShort()]);
+                skipAnnotationBody(in);
+            }
+        }
+
+        return new ClassFileHeader(name, superName, interfaces, annotations, access);
+    }
+
+    /**
+     * Skips all fields or methods.
+     *
+     * @param in
+     * @throws IOException
+     */
+    private static void skipMembers(DataInputStream in) throws IOException {
+        final int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            skip(in, 6); // access, name, descriptor
+            final int attributes = in.readUnsignedShort();
+            for (int j = 0; j < attributes; j++) {
+                skip(in, 2);
+                skip(in, in.readInt());
+            }
+        }
+    }
+
+    /**
+     * Skips the element value pairs of an annotation whose type was already read.
+     *
+     * @param in
+     * @throws IOException
+     */
+    private static void skipAnnotationBody(DataInputStream in) throws IOException {
+        final int pairs = in.readUnsignedShort();
+        for (int i = 0; i < pairs; i++) {
+            skip(in, 2);
+            skipElementValue(in);
+        }
+    }
+
+    /**
+     * Skips a single annotation element value.
+     *
+     * @param in
+     * @throws IOException
+     */
+    private static void skipElementValue(DataInputStream in) throws IOException {
+        final int tag = in.readUnsignedByte();
+        switch (tag) {
+        case 'e':
+            skip(in, 4);
+            break;
+        case '@':
+            skip(in, 2);
+            skipAnnotationBody(in);
+            break;
+        case '[':
+            final int values = in.readUnsignedShort();
+            for (int i = 0; i < values; i++) {
+                skipElementValue(in);
+            }
+            break;
+        default:
+            // Constants, strings and classes
+            skip(in, 2);
+        }
+    }
+
+    /**
+     * Skips exactly the given number of bytes.
+     *
+     * @param in
+     * @param bytes
+     * @throws IOException
+     */
+    private static void skip(DataInputStream in, int bytes) throws IOException {
+        int left = bytes;
+        while (left > 0) {
+            final int skipped = in.skipBytes(left);
+            if (skipped <= 0) {
+                // skipBytes() may give up early, read() tells us about the end
+                if (in.read() < 0) throw new EOFException();
+                left--;
+            } else {
+                left -= skipped;
+            }
+        }
+    }
+
+    /**
+     * @return The name in internal form.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return The super class in internal form, or <code>null</code>.
+     */
+    public String getSuperName() {
+        return this.superName;
+    }
+
+    /**
+     * @return The directly implemented interfaces in internal form.
+     */
+    public String[] getInterfaces() {
+        return this.interfaces;
+    }
+
+    /**
+     * Checks if the class carries the given annotation.
+     *
+     * @param annotation The annotation class.
+     * @return .
+     */
+    public boolean isAnnotatedWith(Class<?> annotation) {
+        return this.annotations.contains("L" + annotation.getName().replace('.', '/') + ";");
+    }
+
+    /**
+     * @return True if this is an interface or annotation.
+     */
+    public boolean isInterface() {
+        return (this.access & ACC_INTERFACE) != 0;
+    }
+
+    /**
+     * @return True if the class is abstract.
+     */
+    public boolean isAbstract() {
+        return (this.access & ACC_ABSTRACT) != 0;
+    }
+}
@@ -0,0 +1,232 @@
+package net.xeoh.plugins.base.impl.classpath.scanner;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import net.xeoh.plugins.base.impl.classpath.locator.AbstractClassPathLocation;
+import net.xeoh.plugins.base.impl.classpath.locator.AbstractClassPathLocation.LocationType;
+
+/**
+ * Finds subclasses inside a classpath location by reading class file headers instead of
+ * loading the classes. Headers are read in parallel on a pool shared by all scanners, the
+ * type hierarchy is then resolved in memory. Only super types outside of the location
+ * are looked up with the class loader.
+ */
+public class ClassFileScanner {
+    /**
+     * Reads headers for all scanners. Locations may be scanned concurrently, they share
+     * these threads instead of each starting their own. Idle threads time out.
+     */
+    private static final ThreadPoolExecutor POOL;
+
+    static {
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final AtomicInteger counter = new AtomicInteger();
+        POOL = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "jspf-scanner-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        POOL.allowCoreThreadTimeOut(true);
+    }
+
+    /** */
+    private final Logger logger = Logger.getLogger(this.getClass().getName());
+
+    /** Used for super types not inside the scanned location */
+    private final ClassLoader classLoader;
+
+    /** Headers of all scanned classes by internal name */
+    private final Map<String, ClassFileHeader> headers = new ConcurrentHashMap<String, ClassFileHeader>();
+
+    /**
+     * @param classLoader The class loader of the location.
+     */
+    public ClassFileScanner(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Reads the headers of all classes in the given location.
+     *
+     * @param location The location to scan.
+     */
+    public void scan(final AbstractClassPathLocation location) {
+        final List<String> names = new ArrayList<String>(location.listToplevelClassNames());
+        if (names.isEmpty()) return;
+
+        final int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), names.size() / 64));
+        final int slice = (names.size() + threads - 1) / threads;
+
+        // Every worker reads a contiguous slice of the entries, we read the first one
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try {
+            for (int i = slice; i < names.size(); i += slice) {
+                final List<String> part = names.subList(i, Math.min(names.size(), i + slice));
+
+                futures.add(POOL.submit(new Callable<Void>() {
+                    public Void call() {
+                        for (String name : part) {
+                            readHeader(location, name);
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            for (String name : names.subList(0, Math.min(names.size(), slice))) {
+                readHeader(location, name);
+            }
+
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads a single class header.
+     *
+     * @param location
+     * @param name Name of the class.
+     */
+    void readHeader(AbstractClassPathLocation location, String name) {
+        final String entry = name.replace('.', '/') + ".class";
+
+        InputStream stream = null;
+        try {
+            if (location.getType() == LocationType.DIRECTORY) {
+                stream = new FileInputStream(new File(new File(location.getToplevelLocation()), entry));
+            } else {
+                stream = location.getInputStream(entry);
+            }
+
+            if (stream == null) return;
+
+            final ClassFileHeader header = ClassFileHeader.read(new BufferedInputStream(stream));
+            this.headers.put(header.getName(), header);
+        } catch (Exception e) {
+            this.logger.fine("Unable to inspect class " + name + " although it appears to be one: " + e.getMessage());
+        } finally {
+            try {
+                if (stream != null) stream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Returns all classes (but no interfaces) of the scanned locations that extend or
+     * implement the given super class.
+     *
+     * @param superclass The super class or interface.
+     * @param annotation If not <code>null</code>, only classes carrying this annotation
+     * are returned.
+     * @return The binary names of all matching classes.
+     */
+    public Collection<String> findSubclassesOf(Class<?> superclass,
+                                               Class<? extends Annotation> annotation) {
+        final String target = superclass.getName().replace('.', '/');
+        final Map<String, Boolean> known = new HashMap<String, Boolean>();
+        final Collection<String> rval = new ArrayList<String>();
+
+        for (ClassFileHeader header : this.headers.values()) {
+            // No interfaces please
+            if (header.isInterface()) continue;
+            if (header.getName().equals(target)) continue;
+            if (annotation != null && !header.isAnnotatedWith(annotation)) continue;
+
+            if (isSubtype(header.getName(), target, superclass, known))
+                rval.add(header.getName().replace('/', '.'));
+        }
+
+        return rval;
+    }
+
+    /**
+     * Checks if the given type is the target or one of its subtypes.
+     *
+     * @param name Type in internal form.
+     * @param target The target in internal form.
+     * @param superclass The target.
+     * @param known Memoized results.
+     * @return .
+     */
+    private boolean isSubtype(String name, String target, Class<?> superclass,
+                              Map<String, Boolean> known) {
+        if (name == null) return false;
+        if (name.equals(target)) return true;
+
+        final Boolean memo = known.get(name);
+        if (memo != null) return memo.booleanValue();
+
+        boolean rval = false;
+
+        final ClassFileHeader header = this.headers.get(name);
+        if (header == null) {
+            rval = isExternalSubtype(name, superclass);
+        } else {
+            rval = isSubtype(header.getSuperName(), target, superclass, known);
+            for (String type : header.getInterfaces()) {
+                if (rval) break;
+                rval = isSubtype(type, target, superclass, known);
+            }
+        }
+
+        known.put(name, Boolean.valueOf(rval));
+        return rval;
+    }
+
+    /**
+     * Checks a type outside of the scanned locations by loading it.
+     *
+     * @param name Type in internal form.
+     * @param superclass The target.
+     * @return .
+     */
+    private boolean isExternalSubtype(String name, Class<?> superclass) {
+        // The platform never implements our types
+        if (name.startsWith("java/") || name.startsWith("javax/")) return false;
+
+        try {
+            return superclass.isAssignableFrom(Class.forName(name.replace('/', '.'), false, this.classLoader));
+        } catch (ClassNotFoundException e) {
+            this.logger.finer("Unable to resolve super type " + name);
+        } catch (LinkageError e) {
+            this.logger.finer("Ignored super type " + name + " due to unresolved dependencies");
+        } catch (SecurityException e) {
+            this.logger.fine("SecurityException while resolving super type " + name);
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,129 @@
+package net.xeoh.plugins.base.impl.registry;
+
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable set of plugin capabilities. Capability strings are interned into a global
+ * dictionary, so each set is a bitset over dictionary ids and <code>containsAll</code>
+ * is a subset test.
+ */
+public final class CapabilitySet {
+
+    /** The set without any capability */
+    public static final CapabilitySet EMPTY = new CapabilitySet(new String[0], new BitSet());
+
+    /** Maps capability strings to their dictionary id */
+    private static final ConcurrentMap<String, Integer> dictionary = new ConcurrentHashMap<String, Integer>();
+
+    /** Next free dictionary id, guarded by the dictionary */
+    private static int nextId = 0;
+
+    /** The capabilities as reported by the plugin */
+    private final String[] capabilities;
+
+    /** Dictionary ids of all capabilities */
+    private final BitSet bits;
+
+    /**
+     * @param capabilities
+     * @param bits
+     */
+    private CapabilitySet(String[] capabilities, BitSet bits) {
+        this.capabilities = capabilities;
+        this.bits = bits;
+    }
+
+    /**
+     * Creates a capability set, interning all capabilities that are not yet known.
+     *
+     * @param capabilities The capabilities as reported by a plugin.
+     * @return The set.
+     */
+    public static CapabilitySet of(String... capabilities) {
+        if (capabilities == null || capabilities.length == 0) return EMPTY;
+
+        final BitSet bits = new BitSet();
+        for (String capability : capabilities) {
+            if (capability == null) continue;
+            bits.set(intern(capability));
+        }
+
+        return new CapabilitySet(capabilities.clone(), bits);
+    }
+
+    /**
+     * Creates a capability set for a query. Unlike {@link #of(String...)} this never grows
+     * the dictionary.
+     *
+     * @param capabilities The requested capabilities.
+     * @return The set, or <code>null</code> if one of the capabilities is not provided by
+     * any plugin. <code>null</code> capabilities are ignored, as in {@link #of(String...)}.
+     */
+    public static CapabilitySet lookup(String... capabilities) {
+        if (capabilities == null || capabilities.length == 0) return EMPTY;
+
+        final BitSet bits = new BitSet();
+        for (String capability : capabilities) {
+            if (capability == null) continue;
+            final Integer id = dictionary.get(capability);
+            if (id == null) return null;
+            bits.set(id.intValue());
+        }
+
+        return new CapabilitySet(capabilities, bits);
+    }
+
+    /**
+     * Returns the dictionary id of the given capability, assigning a new one if needed.
+     *
+     * @param capability
+     * @return .
+     */
+    private static int intern(String capability) {
+        final Integer id = dictionary.get(capability);
+        if (id != null) return id.intValue();
+
+        synchronized (dictionary) {
+            final Integer existing = dictionary.get(capability);
+            if (existing != null) return existing.intValue();
+
+            final int newId = nextId++;
+            dictionary.put(capability, Integer.valueOf(newId));
+            return newId;
+        }
+    }
+
+    /**
+     * Checks if this set contains all capabilities of the other set.
+     *
+     * @param other
+     * @return .
+     */
+    public boolean containsAll(CapabilitySet other) {
+        final BitSet required = other.bits;
+        for (int i = required.nextSetBit(0); i >= 0; i = required.nextSetBit(i + 1)) {
+            if (!this.bits.get(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the set contains no capability.
+     *
+     * @return .
+     */
+    public boolean isEmpty() {
+        return this.bits.isEmpty();
+    }
+
+    /**
+     * Returns the capabilities as reported by the plugin.
+     *
+     * @return A copy of the capabilities.
+     */
+    public String[] toArray() {
+        return this.capabilities.clone();
+    }
+}
@@ -97,4 +97,10 @@ public class PluginClassMetaInformation {
     /** The dependencies of this class */
     public Collection<Dependency> dependencies = new ArrayList<Dependency>();
 
+    /** When spawning started and ended (System.nanoTime()), 0 if it was never spawned */
+    public long spawnStart, spawnEnd;
+
+    /** The class whose spawn released this one, the previous step on the critical path */
+    public Class<? extends Plugin> spawnedAfter;
+
 }
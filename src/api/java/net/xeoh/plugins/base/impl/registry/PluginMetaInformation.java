@@ -29,11 +29,15 @@ package net.xeoh.plugins.base.impl.registry;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import net.xeoh.plugins.base.Plugin;
+import net.xeoh.plugins.base.impl.spawning.PluginDescriptor;
+import net.xeoh.plugins.base.impl.spawning.PluginExecutor;
+import net.xeoh.plugins.base.impl.spawning.Scheduler.PeriodicTask;
 
 /**
  * Meta information of the given plugin.
@@ -47,11 +51,20 @@ public class PluginMetaInformation {
         /** Annotated method */
         public Method method;
 
+        /** The bound method */
+        public PluginDescriptor.Invoker invoker;
+
+        /** The plugin declaring the method */
+        public Plugin plugin;
+
         /** Base type to call with */
         public Class<? extends Plugin> baseType;
 
-        /** Items already put into the method */
-        public List<Plugin> calledWith = new ArrayList<Plugin>();
+        /**
+         * Items already put into the method, so none is put in twice. Held weakly, so it
+         * never grows beyond the plugins still alive.
+         */
+        public final Set<Plugin> calledWith = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<Plugin, Boolean>()));
     }
 
     /**
@@ -89,11 +102,11 @@ public class PluginMetaInformation {
     /** List of declared threads, managed by the Spawner */
     public final List<Thread> threads = new ArrayList<Thread>();
 
-    /** List of declared timer tasks, managed by the Spawner */
-    public final List<TimerTask> timerTasks = new ArrayList<TimerTask>();
+    /** List of declared timers, managed by the Spawner */
+    public final List<PeriodicTask> timers = new ArrayList<PeriodicTask>();
 
-    /** List of declared timer tasks, managed by the Spawner */
-    public final List<Timer> timers = new ArrayList<Timer>();
+    /** Executors injected into the plugin, managed by the Spawner */
+    public final List<PluginExecutor> executors = new ArrayList<PluginExecutor>();
 
     /** Handles plugin loaded information */
     public final List<PluginLoadedInformation> pluginLoadedInformation = new ArrayList<PluginLoadedInformation>();
@@ -101,4 +114,7 @@ public class PluginMetaInformation {
     /** Time this pluggable has been spawned. */
     public long spawnTime;
 
+    /** Capabilities reported by the plugin, captured by the Spawner after init */
+    public volatile CapabilitySet capabilities = CapabilitySet.EMPTY;
+
 }
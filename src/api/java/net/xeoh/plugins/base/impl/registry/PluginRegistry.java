@@ -30,16 +30,24 @@ package net.xeoh.plugins.base.impl.registry;
 //import static net.jcores.jre.CoreKeeper.$;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 //import net.jcores.jre.interfaces.functions.F1;
 import net.xeoh.plugins.base.Plugin;
 import net.xeoh.plugins.base.impl.registry.PluginClassMetaInformation.Dependency;
 import net.xeoh.plugins.base.impl.registry.PluginClassMetaInformation.PluginClassStatus;
+import net.xeoh.plugins.base.impl.registry.PluginMetaInformation.PluginLoadedInformation;
+import net.xeoh.plugins.base.impl.registry.PluginMetaInformation.PluginStatus;
+import net.xeoh.plugins.base.util.PluginUtil;
 
 /**
  * The registry keeps track of all instantiated plugins.
@@ -54,12 +62,27 @@ public class PluginRegistry {
     /** Stores meta information related to a plugin class */
     private final Map<Class<? extends Plugin>, PluginClassMetaInformation> pluginClassMetaInformation;
 
+    /** Maps every implemented interface to its plugins, in registration order */
+    private final ConcurrentMap<Class<?>, List<Plugin>> typeIndex;
+
+    /**
+     * Memoized results of findPlugin(), dropped whenever the registry changes. Lookups
+     * without capabilities are keyed by the type itself, all others by a LookupKey.
+     */
+    private final Map<Object, Plugin> lookupCache;
+
+    /** &#064;PluginLoaded methods by the type they listen for, in subscription order */
+    private final ConcurrentMap<Class<?>, List<PluginLoadedInformation>> listeners;
+
     /**
      * Creates a new registry
      */
     public PluginRegistry() {
         this.pluginMetaInformation = new ConcurrentHashMap<Plugin, PluginMetaInformation>();
         this.pluginClassMetaInformation = new ConcurrentHashMap<Class<? extends Plugin>, PluginClassMetaInformation>();
+        this.typeIndex = new ConcurrentHashMap<Class<?>, List<Plugin>>();
+        this.lookupCache = new ConcurrentHashMap<Object, Plugin>();
+        this.listeners = new ConcurrentHashMap<Class<?>, List<PluginLoadedInformation>>();
     }
 
     /**
@@ -97,6 +120,9 @@ public class PluginRegistry {
     public void clear() {
         this.pluginClassMetaInformation.clear();
         this.pluginMetaInformation.clear();
+        this.typeIndex.clear();
+        this.lookupCache.clear();
+        this.listeners.clear();
     }
 
     /**
@@ -107,6 +133,124 @@ public class PluginRegistry {
      */
     public void registerPlugin(Plugin plugin, PluginMetaInformation metaInformation) {
         this.pluginMetaInformation.put(plugin, metaInformation);
+
+        // Index the plugin by all its interfaces
+        for (Class<?> type : new PluginUtil(plugin).getAllPluginInterfaces()) {
+            List<Plugin> plugins = this.typeIndex.get(type);
+            if (plugins == null) {
+                plugins = new CopyOnWriteArrayList<Plugin>();
+                final List<Plugin> existing = this.typeIndex.putIfAbsent(type, plugins);
+                if (existing != null) plugins = existing;
+            }
+            plugins.add(plugin);
+        }
+
+        this.lookupCache.clear();
+    }
+
+    /**
+     * Subscribes a &#064;PluginLoaded method to plugins of its base type registered from
+     * now on.
+     * 
+     * @param pli The method to subscribe.
+     */
+    public void subscribe(PluginLoadedInformation pli) {
+        List<PluginLoadedInformation> list = this.listeners.get(pli.baseType);
+        if (list == null) {
+            list = new CopyOnWriteArrayList<PluginLoadedInformation>();
+            final List<PluginLoadedInformation> existing = this.listeners.putIfAbsent(pli.baseType, list);
+            if (existing != null) list = existing;
+        }
+        list.add(pli);
+    }
+
+    /**
+     * Returns all &#064;PluginLoaded methods listening for one of the interfaces the given
+     * plugin implements.
+     * 
+     * @param plugin The plugin to look up.
+     * @return The methods, or an empty list.
+     */
+    public List<PluginLoadedInformation> getListenersFor(Plugin plugin) {
+        if (this.listeners.isEmpty()) return Collections.emptyList();
+
+        final List<PluginLoadedInformation> rval = new ArrayList<PluginLoadedInformation>();
+        for (Class<?> type : new PluginUtil(plugin).getAllPluginInterfaces()) {
+            final List<PluginLoadedInformation> list = this.listeners.get(type);
+            if (list != null) rval.addAll(list);
+        }
+
+        return rval;
+    }
+
+    /**
+     * Returns all plugins implementing the given interface, regardless of their status.
+     * 
+     * @param type The interface to look up.
+     * @return The plugins in registration order, or an empty list.
+     */
+    public List<Plugin> getPluginsFor(Class<?> type) {
+        final List<Plugin> plugins = this.typeIndex.get(type);
+        if (plugins == null) return Collections.emptyList();
+        return plugins;
+    }
+
+    /**
+     * Returns the first active plugin implementing the given interface and providing all
+     * the given capabilities. Results are memoized until the registry changes.
+     * 
+     * @param type The interface to look up.
+     * @param capabilities The required capabilities, may be empty.
+     * @return The plugin, or <code>null</code> if none matched.
+     */
+    public Plugin findPlugin(Class<?> type, String... capabilities) {
+        final Object key = capabilities.length == 0 ? type : new LookupKey(type, capabilities);
+
+        // A memoized plugin is only valid as long as it stays active
+        final Plugin cached = this.lookupCache.get(key);
+        if (cached != null && isActive(cached)) return cached;
+
+        // Capabilities no plugin ever reported cannot match
+        final CapabilitySet required = CapabilitySet.lookup(capabilities);
+        if (required == null) return null;
+
+        // Filter the type index by a bitset subset test
+        for (Plugin plugin : getPluginsFor(type)) {
+            final PluginMetaInformation metaInformation = this.pluginMetaInformation.get(plugin);
+            if (metaInformation == null || metaInformation.pluginStatus != PluginStatus.ACTIVE) continue;
+
+            if (metaInformation.capabilities.containsAll(required)) {
+                this.lookupCache.put(capabilities.length == 0 ? type : new LookupKey(type, capabilities.clone()), plugin);
+                return plugin;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Queries the capabilities of the given plugin again. Use this for plugins whose
+     * capabilities change after they have been spawned.
+     * 
+     * @param plugin The plugin to refresh.
+     */
+    public void refreshCapabilities(Plugin plugin) {
+        final PluginMetaInformation metaInformation = this.pluginMetaInformation.get(plugin);
+        if (metaInformation == null) return;
+
+        metaInformation.capabilities = CapabilitySet.of(new PluginUtil(plugin).getCapabilities());
+        this.lookupCache.clear();
+    }
+
+    /**
+     * Checks if the given plugin is registered and active.
+     * 
+     * @param plugin
+     * @return .
+     */
+    private boolean isActive(Plugin plugin) {
+        final PluginMetaInformation metaInformation = this.pluginMetaInformation.get(plugin);
+        return metaInformation != null && metaInformation.pluginStatus == PluginStatus.ACTIVE;
     }
 
     /**
@@ -137,6 +281,65 @@ public class PluginRegistry {
         return rval;
     }
 
+    /**
+     * Key of memoized lookups.
+     */
+    private static final class LookupKey {
+        /** */
+        private final Class<?> type;
+
+        /** */
+        private final String[] capabilities;
+
+        /** */
+        private final int hash;
+
+        LookupKey(Class<?> type, String[] capabilities) {
+            this.type = type;
+            this.capabilities = capabilities;
+            this.hash = 31 * type.hashCode() + Arrays.hashCode(capabilities);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof LookupKey)) return false;
+            final LookupKey other = (LookupKey) obj;
+            return this.type == other.type && Arrays.equals(this.capabilities, other.capabilities);
+        }
+    }
+
+    /**
+     * Returns the chain of spawns that finished last, i.e., the classes whose spawning
+     * determined how long loading took. Every class in the chain had to wait for the
+     * one before it.
+     * 
+     * @param classes Classes and their meta information.
+     * @return The chain in spawning order, or an empty list if nothing was spawned.
+     */
+    public static List<Class<? extends Plugin>> criticalPath(Map<Class<? extends Plugin>, PluginClassMetaInformation> classes) {
+        Class<? extends Plugin> last = null;
+        long end = 0;
+        for (Map.Entry<Class<? extends Plugin>, PluginClassMetaInformation> entry : classes.entrySet()) {
+            final long spawnEnd = entry.getValue().spawnEnd;
+            if (spawnEnd != 0 && (last == null || spawnEnd - end > 0)) {
+                last = entry.getKey();
+                end = spawnEnd;
+            }
+        }
+
+        final LinkedList<Class<? extends Plugin>> rval = new LinkedList<Class<? extends Plugin>>();
+        for (Class<? extends Plugin> c = last; c != null && classes.containsKey(c) && !rval.contains(c); c = classes.get(c).spawnedAfter) {
+            rval.addFirst(c);
+        }
+
+        return rval;
+    }
+
     /**
      * Prints a report of this registry.
      */
@@ -156,6 +359,18 @@ public class PluginRegistry {
             System.out.println();
         }
 
+        final List<Class<? extends Plugin>> path = criticalPath(this.pluginClassMetaInformation);
+        if (!path.isEmpty()) {
+            final long start = this.pluginClassMetaInformation.get(path.get(0)).spawnStart;
+
+            System.out.println();
+            System.out.println(">>> Critical Path <<<");
+            for (Class<? extends Plugin> c : path) {
+                final PluginClassMetaInformation meta = this.pluginClassMetaInformation.get(c);
+                System.out.println("    " + c.getCanonicalName() + " (start:'+" + (meta.spawnStart - start) / 1000000 + "ms'; took:'" + (meta.spawnEnd - meta.spawnStart) / 1000000 + "ms')");
+            }
+        }
+
         System.out.println();
         System.out.println(">>> Object Report <<<");
         final Set<Plugin> keySet2 = this.pluginMetaInformation.keySet();
@@ -0,0 +1,168 @@
+package net.xeoh.plugins.base.impl.spawning;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import net.xeoh.plugins.base.annotations.injections.InjectExecutor.Kind;
+
+/**
+ * Owns the threads and executors of all plugins. Virtual threads are used where the
+ * platform has them (Java 21 and later), they are looked up reflectively so we still
+ * run on older VMs.
+ */
+public class ExecutionService {
+
+	/** Thread.ofVirtual(), or null */
+	private static final Method ofVirtual;
+
+	/** Thread.Builder.name(String), or null */
+	private static final Method builderName;
+
+	/** Thread.Builder.unstarted(Runnable), or null */
+	private static final Method builderUnstarted;
+
+	/** Executors.newVirtualThreadPerTaskExecutor(), or null */
+	private static final Method newVirtualExecutor;
+
+	static {
+		Method of = null, name = null, unstarted = null, executor = null;
+		try {
+			final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			of = java.lang.Thread.class.getMethod("ofVirtual");
+			name = builder.getMethod("name", String.class);
+			unstarted = builder.getMethod("unstarted", Runnable.class);
+			executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (Exception e) {
+			of = name = unstarted = executor = null;
+		}
+		ofVirtual = of;
+		builderName = name;
+		builderUnstarted = unstarted;
+		newVirtualExecutor = executor;
+	}
+
+	/** */
+	private final Logger logger = Logger.getLogger(this.getClass().getName());
+
+	/** Shared executors by name */
+	private final Map<String, ExecutorService> executors = new ConcurrentHashMap<String, ExecutorService>();
+
+	/** How long destroyed plugins may take to finish their tasks, in milliseconds */
+	private volatile long shutdownGrace = 1000;
+
+	/**
+	 * @return True if we can create virtual threads.
+	 */
+	public static boolean hasVirtualThreads() {
+		return ofVirtual != null;
+	}
+
+	/**
+	 * Creates a thread, which still has to be started.
+	 *
+	 * @param name Name of the thread.
+	 * @param runnable What to run.
+	 * @param virtual If a virtual thread should be created. Ignored if they are not
+	 * available.
+	 * @param daemon If the thread should be daemonic, virtual threads always are.
+	 * @return The new thread.
+	 */
+	public java.lang.Thread newThread(String name, Runnable runnable, boolean virtual, boolean daemon) {
+		if (virtual && ofVirtual != null) {
+			try {
+				final Object builder = builderName.invoke(ofVirtual.invoke(null), name);
+				return (java.lang.Thread) builderUnstarted.invoke(builder, runnable);
+			} catch (Exception e) {
+				this.logger.warning("Unable to create virtual thread " + name + ", using a platform thread: " + e);
+			}
+		}
+
+		final java.lang.Thread rval = new java.lang.Thread(runnable, name);
+		rval.setDaemon(daemon);
+		return rval;
+	}
+
+	/**
+	 * Returns a plugin's view of the shared executor with the given name, which is created
+	 * if needed.
+	 *
+	 * @param name Name of the executor.
+	 * @param kind Kind of the executor, in case we have to create it.
+	 * @return A new view.
+	 */
+	public PluginExecutor getExecutor(String name, Kind kind) {
+		ExecutorService shared = this.executors.get(name);
+		if (shared == null) {
+			synchronized (this.executors) {
+				shared = this.executors.get(name);
+				if (shared == null) {
+					shared = create(name, kind);
+					this.executors.put(name, shared);
+				}
+			}
+		}
+
+		return new PluginExecutor(name, shared);
+	}
+
+	/**
+	 * @param name
+	 * @param kind
+	 * @return .
+	 */
+	private ExecutorService create(final String name, Kind kind) {
+		if (kind == Kind.CPU)
+			return new ForkJoinPool();
+
+		if (newVirtualExecutor != null) {
+			try {
+				return (ExecutorService) newVirtualExecutor.invoke(null);
+			} catch (Exception e) {
+				this.logger.warning("Unable to create virtual thread executor " + name + ", using a thread pool: " + e);
+			}
+		}
+
+		final AtomicInteger counter = new AtomicInteger();
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			public java.lang.Thread newThread(Runnable r) {
+				final java.lang.Thread t = new java.lang.Thread(r, "jspf-" + name + "-" + counter.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * @param shutdownGrace How long destroyed plugins may take to finish their tasks, in
+	 * milliseconds.
+	 */
+	public void setShutdownGrace(long shutdownGrace) {
+		this.shutdownGrace = shutdownGrace;
+	}
+
+	/**
+	 * @return How long destroyed plugins may take to finish their tasks, in milliseconds.
+	 */
+	public long getShutdownGrace() {
+		return this.shutdownGrace;
+	}
+
+	/**
+	 * Stops all shared executors, called after all plugins were destroyed.
+	 */
+	public void shutdown() {
+		synchronized (this.executors) {
+			for (ExecutorService executor : this.executors.values()) {
+				executor.shutdownNow();
+			}
+			this.executors.clear();
+		}
+	}
+}
@@ -0,0 +1,544 @@
+package net.xeoh.plugins.base.impl.spawning;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.xeoh.plugins.base.Plugin;
+import net.xeoh.plugins.base.annotations.Capabilities;
+import net.xeoh.plugins.base.annotations.Thread;
+import net.xeoh.plugins.base.annotations.Timer;
+import net.xeoh.plugins.base.annotations.events.Init;
+import net.xeoh.plugins.base.annotations.events.PluginLoaded;
+import net.xeoh.plugins.base.annotations.events.Shutdown;
+import net.xeoh.plugins.base.annotations.injections.InjectExecutor;
+import net.xeoh.plugins.base.annotations.injections.InjectPlugin;
+import net.xeoh.plugins.base.impl.registry.PluginClassMetaInformation.Dependency;
+import net.xeoh.plugins.base.impl.spawning.handler.LazyPlugin;
+
+/**
+ * Everything the spawner needs to know about a plugin class, reflected once and bound to
+ * method handles. Descriptors are cached per class.<br/>
+ * <br/>
+ *
+ * Method handles cannot be stored, but the members they were bound to can: see
+ * {@link #of(Class, Map)}. Binding named members only looks up these members instead of
+ * reading the annotations of all methods and fields.
+ */
+public final class PluginDescriptor {
+
+	/**
+	 * A bound method of the plugin.
+	 */
+	public static final class Invoker {
+		/** */
+		private final Method method;
+
+		/** Takes the plugin and the arguments as objects, returns an object */
+		private final MethodHandle handle;
+
+		/**
+		 * @param method
+		 * @throws IllegalAccessException
+		 */
+		Invoker(Method method) throws IllegalAccessException {
+			this.method = method;
+			MethodHandle bound = lookup(method);
+			// Static methods ignore the plugin
+			if (Modifier.isStatic(method.getModifiers()))
+				bound = MethodHandles.dropArguments(bound, 0, Object.class);
+			this.handle = bound.asType(MethodType.genericMethodType(method.getParameterTypes().length + 1));
+		}
+
+		/**
+		 * @return The method.
+		 */
+		public Method getMethod() {
+			return this.method;
+		}
+
+		/**
+		 * @param <A>
+		 * @param type
+		 * @return The annotation of the given type.
+		 */
+		public <A extends java.lang.annotation.Annotation> A getAnnotation(Class<A> type) {
+			return this.method.getAnnotation(type);
+		}
+
+		/**
+		 * Calls the method.
+		 *
+		 * @param plugin
+		 * @return The result, or <code>null</code> for void methods.
+		 * @throws InvocationTargetException If the method threw.
+		 */
+		public Object invoke(Plugin plugin) throws InvocationTargetException {
+			try {
+				return this.handle.invokeExact((Object) plugin);
+			} catch (Throwable t) {
+				throw new InvocationTargetException(t);
+			}
+		}
+
+		/**
+		 * Calls the method with a single argument.
+		 *
+		 * @param plugin
+		 * @param argument
+		 * @return The result, or <code>null</code> for void methods.
+		 * @throws InvocationTargetException If the method threw.
+		 */
+		public Object invoke(Plugin plugin, Object argument) throws InvocationTargetException {
+			try {
+				return this.handle.invokeExact((Object) plugin, argument);
+			} catch (Throwable t) {
+				throw new InvocationTargetException(t);
+			}
+		}
+	}
+
+	/**
+	 * A bound field of the plugin.
+	 */
+	public static final class Setter {
+		/** */
+		private final Field field;
+
+		/** Takes the plugin and the value as objects */
+		private final MethodHandle handle;
+
+		/**
+		 * @param field
+		 * @throws IllegalAccessException
+		 */
+		Setter(Field field) throws IllegalAccessException {
+			this.field = field;
+			field.setAccessible(true);
+			MethodHandle bound = MethodHandles.lookup().unreflectSetter(field);
+			// Static fields ignore the plugin
+			if (Modifier.isStatic(field.getModifiers()))
+				bound = MethodHandles.dropArguments(bound, 0, Object.class);
+			this.handle = bound.asType(MethodType.methodType(void.class, Object.class, Object.class));
+		}
+
+		/**
+		 * @return The field.
+		 */
+		public Field getField() {
+			return this.field;
+		}
+
+		/**
+		 * Sets the field.
+		 *
+		 * @param plugin
+		 * @param value
+		 */
+		public void set(Plugin plugin, Object value) {
+			try {
+				this.handle.invokeExact((Object) plugin, value);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable t) {
+				// Setters don't throw checked exceptions
+				throw new IllegalStateException(t);
+			}
+		}
+	}
+
+	/** Descriptors by class, filled on first use */
+	private static final ClassValue<AtomicReference<PluginDescriptor>> descriptors = new ClassValue<AtomicReference<PluginDescriptor>>() {
+		@Override
+		protected AtomicReference<PluginDescriptor> computeValue(Class<?> type) {
+			return new AtomicReference<PluginDescriptor>();
+		}
+	};
+
+	/** */
+	private final Class<? extends Plugin> pluginClass;
+
+	/** The default constructor, or <code>null</code> */
+	private final MethodHandle constructor;
+
+	/** */
+	final List<Invoker> init = new ArrayList<Invoker>();
+
+	/** */
+	final List<Invoker> shutdown = new ArrayList<Invoker>();
+
+	/** */
+	final List<Invoker> threads = new ArrayList<Invoker>();
+
+	/** */
+	final List<Invoker> timers = new ArrayList<Invoker>();
+
+	/** */
+	final List<Invoker> pluginLoaded = new ArrayList<Invoker>();
+
+	/** */
+	final List<Invoker> capabilities = new ArrayList<Invoker>();
+
+	/** Declared &#064;InjectPlugin fields */
+	final List<Setter> injectFields = new ArrayList<Setter>();
+
+	/** Public &#064;InjectPlugin methods */
+	final List<Invoker> injectMethods = new ArrayList<Invoker>();
+
+	/** Declared &#064;InjectExecutor fields */
+	final List<Setter> executors = new ArrayList<Setter>();
+
+	/** Public, non optional &#064;InjectPlugin fields */
+	final List<Field> dependencies = new ArrayList<Field>();
+
+	/** Members the descriptor was bound to, see {@link #of(Class, Map)} */
+	private final List<String> members = new ArrayList<String>();
+
+	/** Set if a member is declared by a class of another location, see {@link #isOwn(Class)} */
+	private boolean foreign;
+
+	/**
+	 * @param pluginClass
+	 */
+	private PluginDescriptor(Class<? extends Plugin> pluginClass) {
+		this.pluginClass = pluginClass;
+
+		MethodHandle c = null;
+		try {
+			final Constructor<? extends Plugin> declared = pluginClass.getDeclaredConstructor();
+			declared.setAccessible(true);
+			c = MethodHandles.lookup().unreflectConstructor(declared)
+			        .asType(MethodType.methodType(Object.class));
+		} catch (Exception e) {
+			// Abstract, or no default constructor; newInstance() will tell
+		}
+		this.constructor = c;
+	}
+
+	/**
+	 * Returns the descriptor of the given class.
+	 *
+	 * @param pluginClass
+	 * @return The descriptor.
+	 */
+	public static PluginDescriptor of(Class<? extends Plugin> pluginClass) {
+		return of(pluginClass, null);
+	}
+
+	/**
+	 * Returns the descriptor of the given class. If the class is not known yet, it is
+	 * bound to the members stored for it in the given store, or reflected and its members
+	 * are stored. Classes with members declared in another location, e.g. a base class
+	 * in another JAR, are always reflected.
+	 *
+	 * @param pluginClass
+	 * @param store Members by class name, e.g. of a JAR cache entry, or <code>null</code>.
+	 * @return The descriptor.
+	 */
+	public static PluginDescriptor of(Class<? extends Plugin> pluginClass, Map<String, Collection<String>> store) {
+		final AtomicReference<PluginDescriptor> reference = descriptors.get(pluginClass);
+
+		PluginDescriptor rval = reference.get();
+		if (rval != null)
+			return rval;
+
+		final Collection<String> stored = store == null ? null : store.get(pluginClass.getName());
+		if (stored != null)
+			rval = bind(pluginClass, stored);
+		if (rval == null) {
+			rval = reflect(pluginClass);
+
+			// The store is only valid as long as the plugin's own location is unchanged
+			if (store != null && rval.foreign)
+				store.remove(pluginClass.getName());
+			else if (store != null)
+				store.put(pluginClass.getName(), rval.members);
+		}
+
+		return reference.compareAndSet(null, rval) ? rval : reference.get();
+	}
+
+	/**
+	 * Reads the annotations of all public methods and all fields.
+	 *
+	 * @param pluginClass
+	 * @return .
+	 */
+	private static PluginDescriptor reflect(Class<? extends Plugin> pluginClass) {
+		final PluginDescriptor rval = new PluginDescriptor(pluginClass);
+
+		for (Method method : pluginClass.getMethods()) {
+			if (method.getAnnotation(Init.class) != null)
+				rval.add("init", method);
+			if (method.getAnnotation(Shutdown.class) != null)
+				rval.add("shutdown", method);
+			if (method.getAnnotation(Thread.class) != null)
+				rval.add("thread", method);
+			if (method.getAnnotation(Timer.class) != null)
+				rval.add("timer", method);
+			if (method.getAnnotation(PluginLoaded.class) != null)
+				rval.add("loaded", method);
+			if (method.getAnnotation(Capabilities.class) != null)
+				rval.add("capabilities", method);
+			if (method.getAnnotation(InjectPlugin.class) != null)
+				rval.add("injectmethod", method);
+		}
+
+		for (Field field : pluginClass.getDeclaredFields()) {
+			if (field.getAnnotation(InjectPlugin.class) != null)
+				rval.add("inject", field);
+			if (field.getAnnotation(InjectExecutor.class) != null)
+				rval.add("executor", field);
+		}
+
+		for (Field field : pluginClass.getFields()) {
+			final InjectPlugin annotation = field.getAnnotation(InjectPlugin.class);
+			if (annotation != null && !annotation.isOptional()
+			        && !LazyPlugin.isLazy(annotation, field.getType()))
+				rval.add("dependency", field);
+		}
+
+		return rval;
+	}
+
+	/**
+	 * Looks up the given members.
+	 *
+	 * @param pluginClass
+	 * @param members
+	 * @return The descriptor, or <code>null</code> if a member is gone.
+	 */
+	private static PluginDescriptor bind(Class<? extends Plugin> pluginClass, Collection<String> members) {
+		final PluginDescriptor rval = new PluginDescriptor(pluginClass);
+		final ClassLoader loader = pluginClass.getClassLoader();
+
+		try {
+			for (String member : members) {
+				// kind ' ' declaring class ' ' name [' ' parameter type]
+				final String[] parts = member.split(" ");
+				final Class<?> declaring = Class.forName(parts[1], false, loader);
+
+				if (parts.length == 4) {
+					rval.add(parts[0], declaring.getMethod(parts[2], Class.forName(parts[3], false, loader)));
+				} else if (isField(parts[0])) {
+					rval.add(parts[0], declaring.getDeclaredField(parts[2]));
+				} else {
+					rval.add(parts[0], declaring.getMethod(parts[2]));
+				}
+			}
+		} catch (Exception e) {
+			return null;
+		}
+
+		return rval.foreign ? null : rval;
+	}
+
+	/**
+	 * @param kind
+	 * @return .
+	 */
+	private static boolean isField(String kind) {
+		return kind.equals("inject") || kind.equals("executor") || kind.equals("dependency");
+	}
+
+	/**
+	 * @param kind
+	 * @param member
+	 */
+	private void add(String kind, AccessibleObject member) {
+		try {
+			if (kind.equals("init")) this.init.add(new Invoker((Method) member));
+			if (kind.equals("shutdown")) this.shutdown.add(new Invoker((Method) member));
+			if (kind.equals("thread")) this.threads.add(new Invoker((Method) member));
+			if (kind.equals("timer")) this.timers.add(new Invoker((Method) member));
+			if (kind.equals("loaded")) this.pluginLoaded.add(new Invoker((Method) member));
+			if (kind.equals("capabilities")) this.capabilities.add(new Invoker((Method) member));
+			if (kind.equals("injectmethod")) this.injectMethods.add(new Invoker((Method) member));
+			if (kind.equals("inject")) this.injectFields.add(new Setter((Field) member));
+			if (kind.equals("executor")) this.executors.add(new Setter((Field) member));
+			if (kind.equals("dependency")) this.dependencies.add((Field) member);
+		} catch (IllegalAccessException e) {
+			// Can't happen, members are public or made accessible
+			throw new IllegalStateException(e);
+		}
+
+		final Member m = (Member) member;
+		if (!isOwn(m.getDeclaringClass()))
+			this.foreign = true;
+
+		final StringBuilder sb = new StringBuilder();
+		sb.append(kind).append(' ').append(m.getDeclaringClass().getName()).append(' ').append(m.getName());
+		if (member instanceof Method && ((Method) member).getParameterTypes().length == 1)
+			sb.append(' ').append(((Method) member).getParameterTypes()[0].getName());
+		this.members.add(sb.toString());
+	}
+
+	/**
+	 * Checks if the given class comes from the same location as the plugin, members of
+	 * other classes may change while the plugin's JAR does not.
+	 *
+	 * @param declaring
+	 * @return .
+	 */
+	private boolean isOwn(Class<?> declaring) {
+		if (declaring == this.pluginClass)
+			return true;
+
+		final String location = location(declaring);
+		return location != null && location.equals(location(this.pluginClass));
+	}
+
+	/**
+	 * @param type
+	 * @return The location the class was loaded from, or <code>null</code> if unknown.
+	 */
+	private static String location(Class<?> type) {
+		try {
+			final CodeSource source = type.getProtectionDomain().getCodeSource();
+			return source == null || source.getLocation() == null ? null : source.getLocation().toString();
+		} catch (SecurityException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param method
+	 * @return .
+	 * @throws IllegalAccessException
+	 */
+	static MethodHandle lookup(Method method) throws IllegalAccessException {
+		method.setAccessible(true);
+		return MethodHandles.lookup().unreflect(method);
+	}
+
+	/**
+	 * Creates a new instance of the plugin.
+	 *
+	 * @return The instance.
+	 * @throws InstantiationException If the class has no default constructor.
+	 * @throws InvocationTargetException If the constructor threw.
+	 */
+	public Plugin newInstance() throws InstantiationException, InvocationTargetException {
+		if (this.constructor == null)
+			throw new InstantiationException(this.pluginClass.getName());
+
+		try {
+			final Object rval = this.constructor.invokeExact();
+			return (Plugin) rval;
+		} catch (Throwable t) {
+			throw new InvocationTargetException(t);
+		}
+	}
+
+	/**
+	 * Queries the plugin's &#064;Capabilities method.
+	 *
+	 * @param plugin
+	 * @return The reported capabilities, or an empty array if there are none.
+	 */
+	public String[] getCapabilities(Plugin plugin) {
+		for (Invoker invoker : this.capabilities) {
+			try {
+				final Object result = invoker.invoke(plugin);
+				if (result instanceof String[])
+					return (String[]) result;
+			} catch (InvocationTargetException e) {
+				//
+			}
+		}
+
+		return new String[0];
+	}
+
+	/**
+	 * Returns the list of all dependencies the plugin has.
+	 *
+	 * @return .
+	 */
+	@SuppressWarnings("unchecked")
+	public Collection<Dependency> getDependencies() {
+		final Collection<Dependency> rval = new ArrayList<Dependency>();
+		for (Field field : this.dependencies) {
+			final InjectPlugin annotation = field.getAnnotation(InjectPlugin.class);
+
+			final Dependency d = new Dependency();
+			d.capabilites = annotation.requiredCapabilities();
+			d.pluginClass = (Class<? extends Plugin>) field.getType();
+			d.isOptional = annotation.isOptional();
+			rval.add(d);
+		}
+		return rval;
+	}
+
+	/**
+	 * @return The &#064;Init methods.
+	 */
+	public List<Invoker> getInitMethods() {
+		return Collections.unmodifiableList(this.init);
+	}
+
+	/**
+	 * @return The &#064;Shutdown methods.
+	 */
+	public List<Invoker> getShutdownMethods() {
+		return Collections.unmodifiableList(this.shutdown);
+	}
+
+	/**
+	 * @return The &#064;Thread methods.
+	 */
+	public List<Invoker> getThreadMethods() {
+		return Collections.unmodifiableList(this.threads);
+	}
+
+	/**
+	 * @return The &#064;Timer methods.
+	 */
+	public List<Invoker> getTimerMethods() {
+		return Collections.unmodifiableList(this.timers);
+	}
+
+	/**
+	 * @return The &#064;PluginLoaded methods.
+	 */
+	public List<Invoker> getPluginLoadedMethods() {
+		return Collections.unmodifiableList(this.pluginLoaded);
+	}
+
+	/**
+	 * @return The declared &#064;InjectPlugin fields.
+	 */
+	public List<Setter> getInjectFields() {
+		return Collections.unmodifiableList(this.injectFields);
+	}
+
+	/**
+	 * @return The public &#064;InjectPlugin methods.
+	 */
+	public List<Invoker> getInjectMethods() {
+		return Collections.unmodifiableList(this.injectMethods);
+	}
+
+	/**
+	 * @return The declared &#064;InjectExecutor fields.
+	 */
+	public List<Setter> getExecutorFields() {
+		return Collections.unmodifiableList(this.executors);
+	}
+}
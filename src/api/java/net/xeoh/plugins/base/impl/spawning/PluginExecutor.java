@@ -0,0 +1,247 @@
+package net.xeoh.plugins.base.impl.spawning;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A plugin's view of a shared executor. Counts the plugin's tasks and can be shut down
+ * without affecting other plugins using the same executor.
+ */
+public class PluginExecutor extends AbstractExecutorService {
+
+	/**
+	 * Runs a task, unless the view was shut down in the meantime.
+	 */
+	private final class Task implements Runnable {
+		/** */
+		private final Runnable command;
+
+		/**
+		 * @param command
+		 */
+		Task(Runnable command) {
+			this.command = command;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run() {
+			synchronized (PluginExecutor.this) {
+				// Dropped by shutdownNow()
+				if (!PluginExecutor.this.pending.remove(this))
+					return;
+				PluginExecutor.this.running.add(java.lang.Thread.currentThread());
+			}
+
+			try {
+				this.command.run();
+				PluginExecutor.this.completed.incrementAndGet();
+			} catch (RuntimeException e) {
+				PluginExecutor.this.failed.incrementAndGet();
+				throw e;
+			} catch (Error e) {
+				PluginExecutor.this.failed.incrementAndGet();
+				throw e;
+			} finally {
+				synchronized (PluginExecutor.this) {
+					PluginExecutor.this.running.remove(java.lang.Thread.currentThread());
+					PluginExecutor.this.notifyAll();
+				}
+			}
+		}
+	}
+
+	/** */
+	private final String name;
+
+	/** The shared executor */
+	private final ExecutorService delegate;
+
+	/** Tasks submitted, but not started */
+	final Set<Task> pending = new LinkedHashSet<Task>();
+
+	/** Threads currently running one of our tasks */
+	final Set<java.lang.Thread> running = new HashSet<java.lang.Thread>();
+
+	/** */
+	private boolean shutdown = false;
+
+	/** */
+	private final AtomicLong submitted = new AtomicLong();
+
+	/** */
+	final AtomicLong completed = new AtomicLong();
+
+	/** */
+	final AtomicLong failed = new AtomicLong();
+
+	/**
+	 * @param name
+	 * @param delegate
+	 */
+	PluginExecutor(String name, ExecutorService delegate) {
+		this.name = name;
+		this.delegate = delegate;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+	 */
+	public void execute(Runnable command) {
+		final Task task = new Task(command);
+
+		synchronized (this) {
+			if (this.shutdown)
+				throw new RejectedExecutionException(this.name + " has been shut down");
+			this.pending.add(task);
+		}
+
+		this.submitted.incrementAndGet();
+
+		try {
+			this.delegate.execute(task);
+		} catch (RejectedExecutionException e) {
+			synchronized (this) {
+				this.pending.remove(task);
+				notifyAll();
+			}
+			throw e;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.concurrent.ExecutorService#shutdown()
+	 */
+	public synchronized void shutdown() {
+		this.shutdown = true;
+		notifyAll();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.concurrent.ExecutorService#shutdownNow()
+	 */
+	public synchronized List<Runnable> shutdownNow() {
+		this.shutdown = true;
+
+		final List<Runnable> rval = new ArrayList<Runnable>();
+		for (Task task : this.pending) {
+			rval.add(task.command);
+		}
+		this.pending.clear();
+
+		for (java.lang.Thread thread : this.running) {
+			thread.interrupt();
+		}
+
+		notifyAll();
+		return rval;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.concurrent.ExecutorService#isShutdown()
+	 */
+	public synchronized boolean isShutdown() {
+		return this.shutdown;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.concurrent.ExecutorService#isTerminated()
+	 */
+	public synchronized boolean isTerminated() {
+		return this.shutdown && this.pending.isEmpty() && this.running.isEmpty();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.util.concurrent.ExecutorService#awaitTermination(long,
+	 * java.util.concurrent.TimeUnit)
+	 */
+	public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+		while (!isTerminated()) {
+			final long left = deadline - System.nanoTime();
+			if (left <= 0)
+				return false;
+			TimeUnit.NANOSECONDS.timedWait(this, left);
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return Name of the shared executor.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * @return Number of tasks submitted so far.
+	 */
+	public long getSubmitted() {
+		return this.submitted.get();
+	}
+
+	/**
+	 * @return Number of tasks that completed normally.
+	 */
+	public long getCompleted() {
+		return this.completed.get();
+	}
+
+	/**
+	 * @return Number of tasks that threw, tasks passed to submit() report failures
+	 * through their future instead.
+	 */
+	public long getFailed() {
+		return this.failed.get();
+	}
+
+	/**
+	 * @return Number of tasks running right now.
+	 */
+	public synchronized int getActive() {
+		return this.running.size();
+	}
+
+	/**
+	 * @return Number of tasks waiting to be run.
+	 */
+	public synchronized int getQueued() {
+		return this.pending.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return this.name + " (submitted " + getSubmitted() + ", completed " + getCompleted()
+		        + ", failed " + getFailed() + ", active " + getActive() + ")";
+	}
+}
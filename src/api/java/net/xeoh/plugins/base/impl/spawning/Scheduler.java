@@ -0,0 +1,249 @@
+package net.xeoh.plugins.base.impl.spawning;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs all &#064;Timer methods and spawn watchdogs of a plugin manager on a small shared
+ * pool, instead of one timer thread each. Threads are daemons and are only kept while
+ * there is something scheduled.
+ */
+public class Scheduler {
+
+	/**
+	 * A periodic task, see {@link Scheduler#schedule(String, Callable, long, long, boolean)}.
+	 * Keeps track of how late and how long its runs were.
+	 */
+	public static class PeriodicTask implements Runnable {
+		/** */
+		private final String name;
+
+		/** */
+		private final Callable<Boolean> task;
+
+		/** */
+		private final long period;
+
+		/** */
+		private final boolean rateBased;
+
+		/** When the next run should start, in nanoseconds */
+		private long expected;
+
+		/** */
+		private volatile ScheduledFuture<?> future;
+
+		/** */
+		private volatile boolean cancelled = false;
+
+		/** Only written by the run in progress, runs never overlap */
+		private volatile long runs = 0;
+
+		/** */
+		private volatile long overruns = 0;
+
+		/** */
+		private volatile long totalLateness = 0;
+
+		/** */
+		private volatile long maxLateness = 0;
+
+		/**
+		 * @param name
+		 * @param task
+		 * @param delay
+		 * @param period
+		 * @param rateBased
+		 */
+		PeriodicTask(String name, Callable<Boolean> task, long delay, long period, boolean rateBased) {
+			this.name = name;
+			this.task = task;
+			this.period = TimeUnit.MILLISECONDS.toNanos(period);
+			this.rateBased = rateBased;
+			this.expected = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run() {
+			if (this.cancelled)
+				return;
+
+			final long start = System.nanoTime();
+			final long lateness = Math.max(0, start - this.expected);
+			this.totalLateness += lateness;
+			this.maxLateness = Math.max(this.maxLateness, lateness);
+			this.runs++;
+
+			boolean done = false;
+			try {
+				final Boolean result = this.task.call();
+				done = result != null && result.booleanValue();
+			} catch (Exception e) {
+				// The task reports its own errors, a failing run doesn't stop the timer
+				e.printStackTrace();
+			}
+
+			final long end = System.nanoTime();
+			if (end - start > this.period)
+				this.overruns++;
+
+			// Rate based timers keep their schedule, delay based ones restart after each run
+			this.expected = this.rateBased ? this.expected + this.period : end + this.period;
+
+			if (done)
+				cancel();
+		}
+
+		/**
+		 * Stops the task, a run in progress is completed.
+		 */
+		public void cancel() {
+			this.cancelled = true;
+
+			final ScheduledFuture<?> f = this.future;
+			if (f != null)
+				f.cancel(false);
+		}
+
+		/**
+		 * @param future
+		 */
+		void setFuture(ScheduledFuture<?> future) {
+			this.future = future;
+
+			// We might have been cancelled by our first run already
+			if (this.cancelled)
+				future.cancel(false);
+		}
+
+		/**
+		 * @return True if the task will not run anymore.
+		 */
+		public boolean isCancelled() {
+			return this.cancelled;
+		}
+
+		/**
+		 * @return The name given when scheduling.
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * @return Number of runs so far.
+		 */
+		public long getRuns() {
+			return this.runs;
+		}
+
+		/**
+		 * @return Number of runs that took longer than the period.
+		 */
+		public long getOverruns() {
+			return this.overruns;
+		}
+
+		/**
+		 * @return The largest delay of a run behind its schedule, in milliseconds.
+		 */
+		public long getMaxLateness() {
+			return TimeUnit.NANOSECONDS.toMillis(this.maxLateness);
+		}
+
+		/**
+		 * @return The average delay of runs behind their schedule, in milliseconds.
+		 */
+		public double getAverageLateness() {
+			final long r = this.runs;
+			return r == 0 ? 0 : (double) this.totalLateness / r / 1000000;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return this.name + " (runs " + this.runs + ", overruns " + this.overruns + ", max lateness "
+			        + getMaxLateness() + "ms)";
+		}
+	}
+
+	/** */
+	private final ScheduledThreadPoolExecutor executor;
+
+	/**
+	 * @param threads Number of threads to use at most.
+	 */
+	public Scheduler(int threads) {
+		final AtomicInteger counter = new AtomicInteger();
+		this.executor = new ScheduledThreadPoolExecutor(Math.max(1, threads), new ThreadFactory() {
+			public java.lang.Thread newThread(Runnable r) {
+				final java.lang.Thread t = new java.lang.Thread(r, "jspf-scheduler-" + counter.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this.executor.setRemoveOnCancelPolicy(true);
+		this.executor.setKeepAliveTime(10, TimeUnit.SECONDS);
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Runs the given task once after the given delay.
+	 *
+	 * @param task
+	 * @param delay In milliseconds.
+	 * @return The future to cancel the task with.
+	 */
+	public ScheduledFuture<?> schedule(Runnable task, long delay) {
+		return this.executor.schedule(task, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Runs the given task periodically until it returns true or is cancelled.
+	 *
+	 * @param name Name of the task.
+	 * @param task The task.
+	 * @param delay Delay of the first run, in milliseconds.
+	 * @param period The period in milliseconds.
+	 * @param rateBased If true, runs are scheduled relative to the first run (like
+	 * {@link java.util.Timer#scheduleAtFixedRate(java.util.TimerTask, long, long)}),
+	 * otherwise relative to the end of the previous run.
+	 * @return The task.
+	 */
+	public PeriodicTask schedule(String name, Callable<Boolean> task, long delay, long period,
+	        boolean rateBased) {
+		final PeriodicTask rval = new PeriodicTask(name, task, delay, period, rateBased);
+		if (rateBased) {
+			rval.setFuture(this.executor.scheduleAtFixedRate(rval, delay, period, TimeUnit.MILLISECONDS));
+		} else {
+			rval.setFuture(this.executor.scheduleWithFixedDelay(rval, delay, period, TimeUnit.MILLISECONDS));
+		}
+		return rval;
+	}
+
+	/**
+	 * @param threads Number of threads to use at most.
+	 */
+	public void setThreads(int threads) {
+		this.executor.setCorePoolSize(Math.max(1, threads));
+	}
+
+	/**
+	 * Cancels everything scheduled.
+	 */
+	public void shutdown() {
+		this.executor.shutdownNow();
+	}
+}
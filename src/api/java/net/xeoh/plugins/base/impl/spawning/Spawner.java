@@ -30,25 +30,26 @@ package net.xeoh.plugins.base.impl.spawning;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.xeoh.plugins.base.Plugin;
 import net.xeoh.plugins.base.annotations.Thread;
 import net.xeoh.plugins.base.annotations.Timer;
 import net.xeoh.plugins.base.annotations.events.Init;
 import net.xeoh.plugins.base.annotations.events.PluginLoaded;
-import net.xeoh.plugins.base.annotations.events.Shutdown;
-import net.xeoh.plugins.base.annotations.injections.InjectPlugin;
+import net.xeoh.plugins.base.annotations.injections.InjectExecutor;
 import net.xeoh.plugins.base.diagnosis.channels.tracing.SpawnerTracer;
 import net.xeoh.plugins.base.impl.PluginManagerImpl;
+import net.xeoh.plugins.base.impl.registry.CapabilitySet;
 import net.xeoh.plugins.base.impl.registry.PluginClassMetaInformation.Dependency;
 import net.xeoh.plugins.base.impl.registry.PluginMetaInformation;
 import net.xeoh.plugins.base.impl.registry.PluginMetaInformation.PluginLoadedInformation;
 import net.xeoh.plugins.base.impl.registry.PluginMetaInformation.PluginStatus;
 //import net.xeoh.plugins.base.impl.spawning.handler.InjectHandler;
-import net.xeoh.plugins.base.util.PluginManagerUtil;
 import net.xeoh.plugins.diagnosis.local.Diagnosis;
 import net.xeoh.plugins.diagnosis.local.DiagnosisChannel;
 import net.xeoh.plugins.diagnosis.local.options.StatusOption;
@@ -63,12 +64,24 @@ public class Spawner {
 	/** */
 	// final Logger logger = Logger.getLogger(this.getClass().getName());
 
-	/** Used for diagnosic messages */
-	DiagnosisChannel<String> diagnosis;
+	/** Used for diagnosic messages, plugins may be spawned by several threads */
+	volatile DiagnosisChannel<String> diagnosis;
 
 	/** Main plugin manager */
 	private final PluginManagerImpl pluginManager;
 
+	/** Runs timers and spawn watchdogs */
+	private final Scheduler scheduler = new Scheduler(2);
+
+	/** Creates threads and executors of plugins */
+	private final ExecutionService execution = new ExecutionService();
+
+	/** Number of threads spawning independent plugins */
+	private volatile int spawnThreads = Runtime.getRuntime().availableProcessors();
+
+	/** Default time the init methods of a plugin may take, in milliseconds, 0 for no limit */
+	private volatile long initTimeout = 0;
+
 	/**
 	 * Creates a new spawner with the given PluginManager.
 	 * 
@@ -87,18 +100,19 @@ public class Spawner {
 	 */
 	public void destroyPlugin(final Plugin plugin, final PluginMetaInformation metaInformation) {
 
-		log("destroy/start", new OptionInfo("plugin", plugin.getClass().getCanonicalName()));
-
-		// Halt all timer tasks
-		for (final TimerTask timerTask : metaInformation.timerTasks) {
-			timerTask.cancel();
-		}
+		if (tracing())
+			log("destroy/start", new OptionInfo("plugin", plugin.getClass().getCanonicalName()));
 
 		// Halt all timers
-		for (final java.util.Timer timer : metaInformation.timers) {
+		for (final Scheduler.PeriodicTask timer : metaInformation.timers) {
 			timer.cancel();
 		}
 
+		// Accept no more tasks, running ones may finish
+		for (final PluginExecutor executor : metaInformation.executors) {
+			executor.shutdown();
+		}
+
 		// Halt all threads
 		for (final java.lang.Thread thread : metaInformation.threads) {
 			// TODO: Maybe not the best way to terminate.
@@ -111,12 +125,16 @@ public class Spawner {
 
 		// Call shutdown hooks
 		callShutdownMethods(plugin);
-		log("destroy/end", new OptionInfo("plugin", plugin.getClass().getCanonicalName()));
+
+		// Give tasks and threads some time, then interrupt what is left
+		awaitTermination(plugin, metaInformation);
+		if (tracing())
+			log("destroy/end", new OptionInfo("plugin", plugin.getClass().getCanonicalName()));
 	}
 
 	/**
-	 * Destroys a given plugin, halt all timers and threads, calls shutdown
-	 * methods.
+	 * Calls the {@link PluginLoaded} methods of the given plugin with all plugins
+	 * already there, and subscribes them to plugins registered later.
 	 * 
 	 * @param plugin
 	 * @param metaInformation
@@ -126,58 +144,45 @@ public class Spawner {
 
 		// Get all our annotations.
 		for (PluginLoadedInformation pli : metaInformation.pluginLoadedInformation) {
-			final Collection<? extends Plugin> plugins = new PluginManagerUtil(this.pluginManager)
-			        .getPlugins(pli.baseType);
-
 			// For each plugin we have a request, call this plugin.
-			for (Plugin p : plugins) {
-				try {
-					pli.method.invoke(plugin, p);
-				} catch (IllegalArgumentException e) {
-					e.printStackTrace();
-				} catch (IllegalAccessException e) {
-					e.printStackTrace();
-				} catch (InvocationTargetException e) {
-					e.printStackTrace();
-				}
+			for (Plugin p : this.pluginManager.getPlugins(pli.baseType)) {
+				callPluginLoaded(pli, p);
 			}
 
-			pli.calledWith.addAll(plugins);
+			this.pluginManager.getPluginRegistry().subscribe(pli);
 		}
 	}
 
 	/**
 	 * Processes the {@link PluginLoaded} annotation for other plugins for this
-	 * plugin.
+	 * plugin. Only the methods subscribed to one of its interfaces are looked at.
 	 * 
 	 * @param newPlugin
 	 *            Newly creatd pluign
 	 */
 	public void processOtherPluginLoadedAnnotation(Plugin newPlugin) {
+		for (PluginLoadedInformation pli : this.pluginManager.getPluginRegistry().getListenersFor(newPlugin)) {
+			callPluginLoaded(pli, newPlugin);
+		}
+	}
 
-		for (Plugin plugin : this.pluginManager.getPluginRegistry().getAllPlugins()) {
-			final PluginMetaInformation pmi = this.pluginManager.getPluginRegistry()
-			        .getMetaInformationFor(plugin);
-
-			for (PluginLoadedInformation pli : pmi.pluginLoadedInformation) {
-				final Collection<? extends Plugin> plins = new PluginManagerUtil(this.pluginManager)
-				        .getPlugins(pli.baseType);
-
-				// Check if the new plugin is returned upon request
-				if (plins.contains(newPlugin)) {
-					try {
-						pli.method.invoke(plugin, newPlugin);
-					} catch (IllegalArgumentException e) {
-						e.printStackTrace();
-					} catch (IllegalAccessException e) {
-						e.printStackTrace();
-					} catch (InvocationTargetException e) {
-						e.printStackTrace();
-					}
+	/**
+	 * Puts the given plugin into a {@link PluginLoaded} method, unless it was put in
+	 * before.
+	 * 
+	 * @param pli
+	 * @param p
+	 */
+	private void callPluginLoaded(PluginLoadedInformation pli, Plugin p) {
+		if (!pli.calledWith.add(p))
+			return;
 
-					pli.calledWith.add(newPlugin);
-				}
-			}
+		try {
+			pli.invoker.invoke(pli.plugin, p);
+		} catch (IllegalArgumentException e) {
+			e.printStackTrace();
+		} catch (InvocationTargetException e) {
+			e.printStackTrace();
 		}
 	}
 
@@ -190,31 +195,36 @@ public class Spawner {
 	 */
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public SpawnResult spawnPlugin(final Class c) {
-		log("spawn/start", new OptionInfo("plugin", c.getCanonicalName()));
+		if (tracing())
+			log("spawn/start", new OptionInfo("plugin", c.getCanonicalName()));
 
 		// Used for time measurements.
 		final long startTime = System.nanoTime();
-		final java.util.Timer timer = new java.util.Timer();
-		final TimerTask lateMessage = new TimerTask() {
-			@Override
+		final Runnable lateMessage = new Runnable() {
 			public void run() {
-				log("spawn/timeout/toolong", new OptionInfo("plugin", c.getCanonicalName()));
+				if (tracing())
+					log("spawn/timeout/toolong", new OptionInfo("plugin", c.getCanonicalName()));
 			}
 		};
 
+		// Schedule late message. (TODO: Make this configurable)
+		final ScheduledFuture<?> watchdog = this.scheduler.schedule(lateMessage, 250);
+
 		// Finally load and register plugin
 		try {
-			// Schedule late message. (TODO: Make this configurable)
-			timer.schedule(lateMessage, 250);
 
 			// Instanciate the plugin
-			final Plugin spawnedPlugin = (Plugin) c.newInstance();
+			final PluginDescriptor descriptor = PluginDescriptor.of(c);
+			final Plugin spawnedPlugin = descriptor.newInstance();
 
 			// In here spawning of the plugin worked
 			final SpawnResult spawnResult = new SpawnResult(spawnedPlugin);
 			spawnResult.metaInformation.pluginStatus = PluginStatus.SPAWNED;
 			spawnResult.metaInformation.spawnTime = System.currentTimeMillis();
 
+			// Executors may already be used by init methods
+			injectExecutors(spawnResult, descriptor);
+
 			// Finally load and register plugin
 			try {
 
@@ -222,35 +232,46 @@ public class Spawner {
 				// early!!!!!!!!!!!!!!!!!!!!!
 				// new InjectHandler(this.pluginManager).init(spawnedPlugin);
 
-				// Obtain all methods
-				final Method[] methods = getMethods(c);
-
-				// 2. Call all init methods
-				final boolean initStatus = callInitMethods(spawnedPlugin, methods);
+				// 2. Call all init methods, failing the plugin if they take too long
+				final InitWatchdog initWatchdog = watchInit(c, descriptor);
+				boolean initStatus = callInitMethods(spawnedPlugin, descriptor);
+				if (!initWatchdog.finish()) {
+					if (tracing())
+						log("spawn/timeout/failed", new OptionInfo("plugin", c.getCanonicalName()));
+					initStatus = false;
+				}
 				if (initStatus == false) {
 					spawnResult.metaInformation.pluginStatus = PluginStatus.FAILED;
+					for (final PluginExecutor executor : spawnResult.metaInformation.executors) {
+						executor.shutdownNow();
+					}
 					return spawnResult;
 				}
 
 				// Initialization complete
 				spawnResult.metaInformation.pluginStatus = PluginStatus.INITIALIZED;
 
+				// Capabilities must be operational after init, so capture them once
+				obtainCapabilities(spawnResult, descriptor);
+
 				// 3. Spawn all threads
-				spawnThreads(spawnResult, methods);
+				spawnThreads(spawnResult, descriptor);
 
 				// 4. Spawn timer
-				spawnTimer(spawnResult, methods);
+				spawnTimer(spawnResult, descriptor);
 
 				// 5. Obtain PluginLoaded methods
-				obtainPluginLoadedMethods(spawnResult, methods);
+				obtainPluginLoadedMethods(spawnResult, descriptor);
 
 				// Currently running
 				spawnResult.metaInformation.pluginStatus = PluginStatus.ACTIVE;
 
-				log("spawn/end", new OptionInfo("plugin", c.getCanonicalName()));
+				if (tracing())
+					log("spawn/end", new OptionInfo("plugin", c.getCanonicalName()));
 				return spawnResult;
 			} catch (final Exception e) {
-				log("spawn/exception/init", new OptionInfo("plugin", c.getCanonicalName()));
+				if (tracing())
+					log("spawn/exception/init", new OptionInfo("plugin", c.getCanonicalName()));
 				e.printStackTrace();
 				Throwable cause = e.getCause();
 				while (cause != null) {
@@ -261,7 +282,8 @@ public class Spawner {
 			return null;
 
 		} catch (final Exception e) {
-			log("spawn/exception/construct", new OptionInfo("plugin", c.getCanonicalName()));
+			if (tracing())
+				log("spawn/exception/construct", new OptionInfo("plugin", c.getCanonicalName()));
 			e.printStackTrace();
 			Throwable cause = e.getCause();
 			while (cause != null) {
@@ -270,73 +292,152 @@ public class Spawner {
 			}
 		} finally {
 			// Halt the late message
-			timer.cancel();
+			watchdog.cancel(false);
 
 			final long stopTime = System.nanoTime();
 			final long delta = (stopTime - startTime) / 1000;
-			log("spawn/duration", new OptionInfo("plugin", c.getCanonicalName()), new OptionInfo(
-			        "time", "" + delta));
+			if (tracing())
+				log("spawn/duration", new OptionInfo("plugin", c.getCanonicalName()), new OptionInfo(
+				        "time", "" + delta));
 		}
 
-		log("spawn/end/abnormal", new OptionInfo("plugin", c.getCanonicalName()));
+		if (tracing())
+			log("spawn/end/abnormal", new OptionInfo("plugin", c.getCanonicalName()));
 		return null;
 	}
 
+	/**
+	 * Interrupts the thread calling the init methods of a plugin once they took longer
+	 * than allowed. Init methods ignoring the interrupt still block their spawn thread
+	 * and the plugins depending on them until they return; the plugin only fails then.
+	 */
+	private static final class InitWatchdog implements Runnable {
+		/** EXPIRED is set before, INTERRUPTED after the thread was interrupted */
+		private static final int RUNNING = 0, FINISHED = 1, EXPIRED = 2, INTERRUPTED = 3;
+
+		/** */
+		private final AtomicInteger state = new AtomicInteger(RUNNING);
+
+		/** */
+		private final java.lang.Thread thread = java.lang.Thread.currentThread();
+
+		/** */
+		private ScheduledFuture<?> future;
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run() {
+			if (this.state.compareAndSet(RUNNING, EXPIRED)) {
+				this.thread.interrupt();
+				this.state.set(INTERRUPTED);
+			}
+		}
+
+		/**
+		 * Called by the spawning thread after the init methods returned.
+		 * 
+		 * @return False if the init methods took too long.
+		 */
+		boolean finish() {
+			if (this.future != null)
+				this.future.cancel(false);
+			if (this.state.compareAndSet(RUNNING, FINISHED))
+				return true;
+
+			// Our interrupt is not meant for whatever the thread does next, so wait
+			// until it was delivered before clearing it
+			while (this.state.get() != INTERRUPTED)
+				java.lang.Thread.yield();
+			java.lang.Thread.interrupted();
+			return false;
+		}
+	}
+
+	/**
+	 * Starts watching the init methods of the given class. The longest timeout of its
+	 * &#064;Init methods is used, or the default one if none specifies it.
+	 * 
+	 * @param c
+	 * @param descriptor
+	 * @return The watchdog, which has to be finished.
+	 */
+	private InitWatchdog watchInit(final Class<?> c, final PluginDescriptor descriptor) {
+		long timeout = 0;
+		for (final PluginDescriptor.Invoker invoker : descriptor.getInitMethods()) {
+			timeout = Math.max(timeout, invoker.getAnnotation(Init.class).timeout());
+		}
+		if (timeout == 0)
+			timeout = this.initTimeout;
+
+		final InitWatchdog rval = new InitWatchdog();
+		if (timeout > 0 && !descriptor.getInitMethods().isEmpty())
+			rval.future = this.scheduler.schedule(rval, timeout);
+		return rval;
+	}
+
 	/**
 	 * 
-	 * @param methods
+	 * @param descriptor
 	 * @returns True if initialization was successful.
-	 * @throws IllegalAccessException
 	 * 
 	 * 
 	 */
-	private boolean callInitMethods(final Plugin spawnedPlugin, final Method[] methods)
-	        throws IllegalAccessException {
-		log("callinit/start", new OptionInfo("plugin", spawnedPlugin.getClass().getCanonicalName()));
+	private boolean callInitMethods(final Plugin spawnedPlugin, final PluginDescriptor descriptor) {
+		if (tracing())
+			log("callinit/start", new OptionInfo("plugin", spawnedPlugin.getClass().getCanonicalName()));
 
 
-		for (final Method method : methods) {
-			log("callinit/method", new OptionInfo("method", method.getName()));
+		for (final PluginDescriptor.Invoker invoker : descriptor.getInitMethods()) {
+			final Method method = invoker.getMethod();
+			if (tracing())
+				log("callinit/method", new OptionInfo("method", method.getName()));
 
-			// Init methods will be marked by the corresponding annotation.
-			final Init annotation = method.getAnnotation(Init.class);
-			if (annotation != null) {
+			if (tracing())
 				log("callinit/method/initannotation", new OptionInfo("method", method.getName()));
 
-				try {
-					final Object invoke = method.invoke(spawnedPlugin, new Object[0]);
-					if (invoke != null && invoke instanceof Boolean) {
-						// Check if any init method returns false.
-						if (((Boolean) invoke).booleanValue() == false)
-							return false;
-					}
-				} catch (final IllegalArgumentException e) {
+			try {
+				final Object invoke = invoker.invoke(spawnedPlugin);
+				if (invoke != null && invoke instanceof Boolean) {
+					// Check if any init method returns false.
+					if (((Boolean) invoke).booleanValue() == false)
+						return false;
+				}
+			} catch (final IllegalArgumentException e) {
+				if (tracing())
 					log("callinit/exception/illegalargument",
 					        new OptionInfo("method", method.getName()),
 					        new OptionInfo("message", e.getMessage()));
+				if (tracing())
 					log("callinit/end/abnormal", new OptionInfo("plugin", spawnedPlugin.getClass()
 					        .getCanonicalName()));
-					e.printStackTrace();
-					return false;
-				} catch (final InvocationTargetException e) {
+				e.printStackTrace();
+				return false;
+			} catch (final InvocationTargetException e) {
+				if (tracing())
 					log("callinit/exception/invocationtargetexception", new OptionInfo("method",
 					        method.getName()), new OptionInfo("message", e.getMessage()));
+				if (tracing())
 					log("callinit/end/abnormal", new OptionInfo("plugin", spawnedPlugin.getClass()
 					        .getCanonicalName()));
-					e.printStackTrace();
-					return false;
-				} catch (final Exception e) {
+				e.printStackTrace();
+				return false;
+			} catch (final Exception e) {
+				if (tracing())
 					log("callinit/exception/exception", new OptionInfo("method", method.getName()),
 					        new OptionInfo("message", e.getMessage()));
+				if (tracing())
 					log("callinit/end/abnormal", new OptionInfo("plugin", spawnedPlugin.getClass()
 					        .getCanonicalName()));
-					e.printStackTrace();
-					return false;
-				}
+				e.printStackTrace();
+				return false;
 			}
 		}
 
-		log("callinit/end", new OptionInfo("plugin", spawnedPlugin.getClass().getCanonicalName()));
+		if (tracing())
+			log("callinit/end", new OptionInfo("plugin", spawnedPlugin.getClass().getCanonicalName()));
 		return true;
 	}
 
@@ -344,238 +445,336 @@ public class Spawner {
 	 * @param plugin
 	 */
 	private void callShutdownMethods(final Plugin plugin) {
-		log("callshutdown/start", new OptionInfo("plugin", plugin.getClass().getCanonicalName()));
-		final Class<? extends Plugin> spawnClass = plugin.getClass();
-		final Method[] methods = spawnClass.getMethods();
+		if (tracing())
+			log("callshutdown/start", new OptionInfo("plugin", plugin.getClass().getCanonicalName()));
+		final PluginDescriptor descriptor = PluginDescriptor.of(plugin.getClass());
 
-		for (final Method method : methods) {
-			log("callshutdown/method", new OptionInfo("method", method.getName()));
+		for (final PluginDescriptor.Invoker invoker : descriptor.getShutdownMethods()) {
+			final Method method = invoker.getMethod();
+			if (tracing())
+				log("callshutdown/method", new OptionInfo("method", method.getName()));
 
-			// Init methods will be marked by the corresponding annotation.
-			final Shutdown annotation = method.getAnnotation(Shutdown.class);
-			if (annotation != null) {
+			if (tracing())
 				log("callshutdown/method/shutdownannotation",
 				        new OptionInfo("method", method.getName()));
 
-				try {
-					method.invoke(plugin, new Object[0]);
-				} catch (final IllegalArgumentException e) {
+			try {
+				invoker.invoke(plugin);
+			} catch (final IllegalArgumentException e) {
+				if (tracing())
 					log("callshutdown/exception/illegalargument",
 					        new OptionInfo("method", method.getName()),
 					        new OptionInfo("message", e.getMessage()));
-					e.printStackTrace();
-				} catch (final InvocationTargetException e) {
+				e.printStackTrace();
+			} catch (final InvocationTargetException e) {
+				if (tracing())
 					log("callinit/exception/invocationtargetexception", new OptionInfo("method",
 					        method.getName()), new OptionInfo("message", e.getMessage()));
-					e.printStackTrace();
-				} catch (final Exception e) {
+				e.printStackTrace();
+			} catch (final Exception e) {
+				if (tracing())
 					log("callshutdown/exception/exception",
 					        new OptionInfo("method", method.getName()),
 					        new OptionInfo("message", e.getMessage()));
-					e.printStackTrace();
-				}
+				e.printStackTrace();
 			}
 		}
 
-		log("callshutdown/end", new OptionInfo("plugin", plugin.getClass().getCanonicalName()));
+		if (tracing())
+			log("callshutdown/end", new OptionInfo("plugin", plugin.getClass().getCanonicalName()));
 		return;
 	}
 
-	/**
-	 * @param c
-	 * @return
-	 */
-	private Method[] getMethods(final Class<? extends Plugin> c) {
-		final Method[] methods = c.getMethods();
-		return methods;
-	}
-
 	/**
 	 * @param spawnResult
-	 * @param methods
+	 * @param descriptor
 	 */
-	private void spawnThreads(final SpawnResult spawnResult, final Method[] methods) {
-		log("spawnthreads/start", new OptionInfo("plugin", spawnResult.plugin.getClass()
-		        .getCanonicalName()));
-		for (final Method method : methods) {
-			method.setAccessible(true);
-			final net.xeoh.plugins.base.annotations.Thread annotation = method
+	private void spawnThreads(final SpawnResult spawnResult, final PluginDescriptor descriptor) {
+		if (tracing())
+			log("spawnthreads/start", new OptionInfo("plugin", spawnResult.plugin.getClass()
+			        .getCanonicalName()));
+		for (final PluginDescriptor.Invoker invoker : descriptor.getThreadMethods()) {
+			final Method method = invoker.getMethod();
+			final net.xeoh.plugins.base.annotations.Thread annotation = invoker
 			        .getAnnotation(Thread.class);
-			if (annotation != null) {
-				final java.lang.Thread t = new java.lang.Thread(new Runnable() {
-					public void run() {
-						try {
-							method.invoke(spawnResult.plugin, new Object[0]);
-						} catch (final IllegalArgumentException e) {
+			final String name = spawnResult.plugin.getClass().getName() + "."
+			        + method.getName() + "()";
+			final java.lang.Thread t = this.execution.newThread(name, new Runnable() {
+				public void run() {
+					try {
+						invoker.invoke(spawnResult.plugin);
+					} catch (final IllegalArgumentException e) {
+						if (tracing())
 							log("spawnthreads/exception/illegalargument", new OptionInfo("method",
 							        method.getName()), new OptionInfo("message", e.getMessage()));
-							e.printStackTrace();
-						} catch (final IllegalAccessException e) {
-							log("spawnthreads/exception/illegalaccess", new OptionInfo("method",
-							        method.getName()), new OptionInfo("message", e.getMessage()));
-							e.printStackTrace();
-						} catch (final InvocationTargetException e) {
+						e.printStackTrace();
+					} catch (final InvocationTargetException e) {
+						if (tracing())
 							log("spawnthreads/exception/invocationtargetexception", new OptionInfo(
 							        "method", method.getName()),
 							        new OptionInfo("message", e.getMessage()));
-							e.printStackTrace();
-						}
+						e.printStackTrace();
 					}
-				});
-				final String name = spawnResult.plugin.getClass().getName() + "."
-				        + method.getName() + "()";
+				}
+			}, annotation.isVirtual(), annotation.isDaemonic());
+			if (tracing())
 				log("spawnthreads/threadstart", new OptionInfo("plugin", spawnResult.plugin
 				        .getClass().getCanonicalName()), new OptionInfo("threadname", name));
-				t.setName(name);
-				t.setDaemon(annotation.isDaemonic());
-				t.start();
-				spawnResult.metaInformation.threads.add(t);
-			}
+			t.start();
+			spawnResult.metaInformation.threads.add(t);
 		}
-		log("spawnthreads/end", new OptionInfo("plugin", spawnResult.plugin.getClass()
-		        .getCanonicalName()));
+		if (tracing())
+			log("spawnthreads/end", new OptionInfo("plugin", spawnResult.plugin.getClass()
+			        .getCanonicalName()));
 	}
 
 	/**
 	 * @param spawnResult
-	 * @param methods
+	 * @param descriptor
 	 */
 	@SuppressWarnings("unchecked")
-	private void obtainPluginLoadedMethods(SpawnResult spawnResult, Method[] methods) {
-		for (final Method method : methods) {
-			method.setAccessible(true);
-			final PluginLoaded annotation = method.getAnnotation(PluginLoaded.class);
-			if (annotation != null) {
-				final PluginLoadedInformation pli = new PluginLoadedInformation();
-				final Class<?>[] parameterTypes = method.getParameterTypes();
-				if (parameterTypes.length != 1) {
+	private void obtainPluginLoadedMethods(SpawnResult spawnResult, PluginDescriptor descriptor) {
+		for (final PluginDescriptor.Invoker invoker : descriptor.getPluginLoadedMethods()) {
+			final Method method = invoker.getMethod();
+			final PluginLoadedInformation pli = new PluginLoadedInformation();
+			final Class<?>[] parameterTypes = method.getParameterTypes();
+			if (parameterTypes.length != 1) {
+				if (tracing())
 					log("pluginloadedmethods/wrongnumberofparams", new OptionInfo("plugin",
 					        spawnResult.plugin.getClass().getCanonicalName()), new OptionInfo(
 					        "method", method.getName()));
-					continue;
-				}
-				pli.method = method;
-				pli.baseType = (Class<? extends Plugin>) parameterTypes[0];
-				spawnResult.metaInformation.pluginLoadedInformation.add(pli);
+				continue;
 			}
+			pli.method = method;
+			pli.invoker = invoker;
+			pli.plugin = spawnResult.plugin;
+			pli.baseType = (Class<? extends Plugin>) parameterTypes[0];
+			spawnResult.metaInformation.pluginLoadedInformation.add(pli);
 		}
 
 	}
 
+	/**
+	 * Queries the &#064;Capabilities method once and stores the result in the
+	 * meta information.
+	 * 
+	 * @param spawnResult
+	 * @param descriptor
+	 */
+	private void obtainCapabilities(SpawnResult spawnResult, PluginDescriptor descriptor) {
+		for (final PluginDescriptor.Invoker invoker : descriptor.capabilities) {
+			try {
+				final Object result = invoker.invoke(spawnResult.plugin);
+				if (result instanceof String[]) {
+					spawnResult.metaInformation.capabilities = CapabilitySet.of((String[]) result);
+					return;
+				}
+			} catch (final IllegalArgumentException e) {
+				if (tracing())
+					log("capabilities/exception/illegalargument", new OptionInfo("method",
+					        invoker.getMethod().getName()), new OptionInfo("message", e.getMessage()));
+			} catch (final InvocationTargetException e) {
+				if (tracing())
+					log("capabilities/exception/invocationtargetexception", new OptionInfo("method",
+					        invoker.getMethod().getName()), new OptionInfo("message", e.getMessage()));
+			}
+		}
+	}
+
 	/**
 	 * @param spawnResult
-	 * @param methods
+	 * @param descriptor
 	 */
-	private void spawnTimer(final SpawnResult spawnResult, final Method[] methods) {
-		log("spawntimers/start", new OptionInfo("plugin", spawnResult.plugin.getClass()
-		        .getCanonicalName()));
-		for (final Method method : methods) {
-			method.setAccessible(true);
-			final net.xeoh.plugins.base.annotations.Timer annotation = method
+	private void spawnTimer(final SpawnResult spawnResult, final PluginDescriptor descriptor) {
+		if (tracing())
+			log("spawntimers/start", new OptionInfo("plugin", spawnResult.plugin.getClass()
+			        .getCanonicalName()));
+		for (final PluginDescriptor.Invoker invoker : descriptor.getTimerMethods()) {
+			final Method method = invoker.getMethod();
+			final net.xeoh.plugins.base.annotations.Timer annotation = invoker
 			        .getAnnotation(Timer.class);
-			if (annotation != null) {
-				final java.util.Timer t = new java.util.Timer();
-				final TimerTask tt = new TimerTask() {
-					@Override
-					public void run() {
-						try {
-							final Object invoke = method.invoke(spawnResult.plugin, new Object[0]);
-							if (invoke != null && invoke instanceof Boolean) {
-								if (((Boolean) invoke).booleanValue()) {
-									t.cancel();
-								}
-							}
-						} catch (final IllegalArgumentException e) {
+			final Callable<Boolean> task = new Callable<Boolean>() {
+				public Boolean call() {
+					try {
+						final Object invoke = invoker.invoke(spawnResult.plugin);
+						if (invoke != null && invoke instanceof Boolean) {
+							return (Boolean) invoke;
+						}
+					} catch (final IllegalArgumentException e) {
+						if (tracing())
 							log("spawntimers/exception/illegalargument", new OptionInfo("method",
 							        method.getName()), new OptionInfo("message", e.getMessage()));
-							e.printStackTrace();
-						} catch (final IllegalAccessException e) {
-							log("spawntimers/exception/illegalaccessexception", new OptionInfo(
-							        "method", method.getName()),
-							        new OptionInfo("message", e.getMessage()));
-							e.printStackTrace();
-						} catch (final InvocationTargetException e) {
+						e.printStackTrace();
+					} catch (final InvocationTargetException e) {
+						if (tracing())
 							log("spawntimers/exception/invocationtargetexception", new OptionInfo(
 							        "method", method.getName()),
 							        new OptionInfo("message", e.getMessage()));
-							e.printStackTrace();
-						}
+						e.printStackTrace();
 					}
-				};
-				if (annotation.timerType() == Timer.TimerType.RATE_BASED) {
-					t.scheduleAtFixedRate(tt, annotation.startupDelay(), annotation.period());
+					return Boolean.FALSE;
 				}
-				if (annotation.timerType() == Timer.TimerType.DELAY_BASED) {
-					t.schedule(tt, annotation.startupDelay(), annotation.period());
-				}
-				spawnResult.metaInformation.timerTasks.add(tt);
-				spawnResult.metaInformation.timers.add(t);
+			};
+			final String name = spawnResult.plugin.getClass().getName() + "."
+			        + method.getName() + "()";
+			final Scheduler.PeriodicTask t = this.scheduler.schedule(name, task,
+			        annotation.startupDelay(), annotation.period(),
+			        annotation.timerType() == Timer.TimerType.RATE_BASED);
+			spawnResult.metaInformation.timers.add(t);
+		}
+		if (tracing())
+			log("spawntimers/end", new OptionInfo("plugin", spawnResult.plugin.getClass()
+			        .getCanonicalName()));
+	}
+
+	/**
+	 * Injects the executors requested by &#064;InjectExecutor fields.
+	 * 
+	 * @param spawnResult
+	 * @param descriptor
+	 */
+	private void injectExecutors(final SpawnResult spawnResult, final PluginDescriptor descriptor) {
+		for (final PluginDescriptor.Setter setter : descriptor.getExecutorFields()) {
+			final Field field = setter.getField();
+			final InjectExecutor annotation = field.getAnnotation(InjectExecutor.class);
+
+			if (!field.getType().isAssignableFrom(PluginExecutor.class) || field.getType() == Object.class) {
+				if (tracing())
+					log("injectexecutors/wrongtype", new OptionInfo("plugin", spawnResult.plugin.getClass()
+					        .getCanonicalName()), new OptionInfo("field", field.getName()));
+				continue;
 			}
+
+			final PluginExecutor executor = this.execution.getExecutor(annotation.name(), annotation.kind());
+			setter.set(spawnResult.plugin, executor);
+			spawnResult.metaInformation.executors.add(executor);
 		}
-		log("spawntimers/end", new OptionInfo("plugin", spawnResult.plugin.getClass()
-		        .getCanonicalName()));
 	}
 
 	/**
-	 * Returns the list of all dependencies the plugin has .
+	 * Waits for the executors and threads of a destroyed plugin, interrupts all tasks
+	 * still running after the grace period.
 	 * 
-	 * @param pluginClass
-	 * @return .
+	 * @param plugin
+	 * @param metaInformation
 	 */
-	@SuppressWarnings("unchecked")
-	public Collection<Dependency> getDependencies(Class<? extends Plugin> pluginClass) {
-		final Collection<Dependency> rval = new ArrayList<Dependency>();
+	private void awaitTermination(final Plugin plugin, final PluginMetaInformation metaInformation) {
+		final long deadline = System.nanoTime()
+		        + TimeUnit.MILLISECONDS.toNanos(this.execution.getShutdownGrace());
 
-		// All fields we have a look at
-		final Field[] fields = pluginClass.getFields();
+		try {
+			for (final PluginExecutor executor : metaInformation.executors) {
+				if (!executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+					if (tracing())
+						log("destroy/executor/interrupt", new OptionInfo("plugin", plugin.getClass()
+						        .getCanonicalName()), new OptionInfo("executor", executor.toString()));
+					executor.shutdownNow();
+				}
+			}
 
-		// Process every field
-		for (final Field field : fields) {
-			// Try to get inject annotation. New: also turn on extended
-			// accessibility,
-			// so elements don't have to be public anymore.
-			field.setAccessible(true);
-			final InjectPlugin ipannotation = field.getAnnotation(InjectPlugin.class);
+			for (final java.lang.Thread thread : metaInformation.threads) {
+				final long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (left <= 0)
+					break;
+				thread.join(left);
+			}
+		} catch (final InterruptedException e) {
+			java.lang.Thread.currentThread().interrupt();
+			for (final PluginExecutor executor : metaInformation.executors) {
+				executor.shutdownNow();
+			}
+		}
+	}
 
-			// If there is one ..
-			if (ipannotation == null)
-				continue;
+	/**
+	 * Returns the service creating threads and executors of plugins.
+	 * 
+	 * @return The service.
+	 */
+	public ExecutionService getExecutionService() {
+		return this.execution;
+	}
 
-			// Don't recognize optional fields as dependencies.
-			if (ipannotation.isOptional())
-				continue;
+	/**
+	 * @param spawnThreads Number of threads spawning independent plugins.
+	 */
+	public void setSpawnThreads(int spawnThreads) {
+		this.spawnThreads = Math.max(1, spawnThreads);
+	}
 
-			// Obtain capabilities
+	/**
+	 * @return Number of threads spawning independent plugins.
+	 */
+	public int getSpawnThreads() {
+		return this.spawnThreads;
+	}
 
-			final Dependency d = new Dependency();
-			d.capabilites = ipannotation.requiredCapabilities();
-			d.pluginClass = (Class<? extends Plugin>) field.getType();
-			d.isOptional = ipannotation.isOptional();
+	/**
+	 * @param initTimeout Time the init methods of a plugin may take if they don't specify
+	 * it, in milliseconds, 0 for no limit.
+	 */
+	public void setInitTimeout(long initTimeout) {
+		this.initTimeout = initTimeout;
+	}
 
-			rval.add(d);
-		}
+	/**
+	 * Returns the scheduler running all timers.
+	 * 
+	 * @return The scheduler.
+	 */
+	public Scheduler getScheduler() {
+		return this.scheduler;
+	}
 
-		return rval;
+	/**
+	 * Stops all timers and executors, called after all plugins were destroyed.
+	 */
+	public void shutdown() {
+		this.scheduler.shutdown();
+		this.execution.shutdown();
 	}
 
 	/**
-	 * Logs the given message.
+	 * Returns the list of all dependencies the plugin has .
 	 * 
-	 * @param message
-	 * @param options
+	 * @param pluginClass
+	 * @return .
 	 */
-	void log(String message, StatusOption... options) {
+	public Collection<Dependency> getDependencies(Class<? extends Plugin> pluginClass) {
+		return PluginDescriptor.of(pluginClass).getDependencies();
+	}
+
+	/**
+	 * Returns true if our diagnosis channel records anything. Callers check this
+	 * before building the options for {@link #log(String, StatusOption...)}.
+	 * 
+	 * @return .
+	 */
+	boolean tracing() {
 		// Try to get the diagnosis
 		if (this.diagnosis == null) {
 			// Check if the diagnosis is already there
 			final Diagnosis diag = this.pluginManager.getDiagnosis();
 			if (diag == null)
-				return;
+				return false;
 
 			// If yes, get the main channel
 			this.diagnosis = diag.channel(SpawnerTracer.class);
 		}
 
+		return this.diagnosis.isEnabled();
+	}
+
+	/**
+	 * Logs the given message.
+	 * 
+	 * @param message
+	 * @param options
+	 */
+	void log(String message, StatusOption... options) {
+		if (!tracing())
+			return;
+
 		this.diagnosis.status(message, options);
 	}
 }
@@ -34,6 +34,7 @@ import java.lang.reflect.Method;
 import net.xeoh.plugins.base.Plugin;
 import net.xeoh.plugins.base.PluginManager;
 import net.xeoh.plugins.base.annotations.injections.InjectPlugin;
+import net.xeoh.plugins.base.impl.spawning.PluginDescriptor;
 import net.xeoh.plugins.base.options.getplugin.OptionCapabilities;
 
 public class InjectHandler extends AbstractHandler {
@@ -56,66 +57,66 @@ public class InjectHandler extends AbstractHandler {
     @Override
     public void init(Plugin plugin) throws Exception {
 
-        // All fields we have a look at
-        final Field[] fields = plugin.getClass().getDeclaredFields();
-        final Method[] methods = plugin.getClass().getMethods();
+        final PluginDescriptor descriptor = PluginDescriptor.of(plugin.getClass());
 
         // Process every field
-        for (final Field field : fields) {
-            // this is not working with .getFields needs to be .getDeclaredFields 
-            // Try to get inject annotation. New: also turn on extended accessibility, so
-            // elements don't have to be public anymore.
-            field.setAccessible(true);
+        for (final PluginDescriptor.Setter setter : descriptor.getInjectFields()) {
+            final Field field = setter.getField();
             final InjectPlugin ipannotation = field.getAnnotation(InjectPlugin.class);
 
-            // If there is one ..
-            if (ipannotation != null) {
+            // Obtain capabilities
+            final String[] capabilities = ipannotation.requiredCapabilities();
 
-                // Obtain capabilities
-                final String[] capabilities = ipannotation.requiredCapabilities();
+            // Handle the plugin-parameter part
+            // In the default case do an auto-detection ...
+            final Class<? extends Plugin> typeOfField = (Class<? extends Plugin>) field.getType();
 
-                // Handle the plugin-parameter part
-                // In the default case do an auto-detection ...
-                final Class<? extends Plugin> typeOfField = (Class<? extends Plugin>) field.getType();
+            this.logger.fine("Injecting plugin by autodetection (" + typeOfField.getName() + ") into " + plugin.getClass().getName());
 
-                this.logger.fine("Injecting plugin by autodetection (" + typeOfField.getName() + ") into " + plugin.getClass().getName());
-
-                field.setAccessible(true);
-                //FIXME pluginmanager has not all plugins!!!
-                field.set(plugin, this.pluginManager.getPlugin(typeOfField, new OptionCapabilities(capabilities)));
+            // Lazy injections are resolved on first use
+            if (LazyPlugin.isLazy(ipannotation, typeOfField)) {
+                final Object lazy = LazyPlugin.create(this.pluginManager, ipannotation, typeOfField, field.getGenericType());
+                if (lazy == null) this.logger.warning("Unable to inject lazily into field " + field + ", plugin type unknown");
+                setter.set(plugin, lazy);
+                continue;
+            }
 
-                this.logger.info("Injecting plugin by autodetection (" + typeOfField.getName() + ") into " + plugin.getClass().getName());
+            //FIXME pluginmanager has not all plugins!!!
+            setter.set(plugin, this.pluginManager.getPlugin(typeOfField, new OptionCapabilities(capabilities)));
 
-            }
+            this.logger.info("Injecting plugin by autodetection (" + typeOfField.getName() + ") into " + plugin.getClass().getName());
         }
 
         // And setter methods as well (aka Scala hack)
-        for (Method method : methods) {
-            // Try to get inject annotation. New: also turn on extended accessibility, so
-            // elements don't have to be public anymore.
-            method.setAccessible(true);
+        for (final PluginDescriptor.Invoker invoker : descriptor.getInjectMethods()) {
+            final Method method = invoker.getMethod();
             final InjectPlugin ipannotation = method.getAnnotation(InjectPlugin.class);
 
-            if (ipannotation != null) {
+            // Obtain capabilities
+            final String[] capabilities = ipannotation.requiredCapabilities();
 
-                // Obtain capabilities
-                final String[] capabilities = ipannotation.requiredCapabilities();
+            // Handle the plugin-parameter part
+            // In the default case do an auto-detection ...
+            final Class<? extends Plugin> typeOfMethod = (Class<? extends Plugin>) method.getParameterTypes()[0];
 
-                // Handle the plugin-parameter part
-                // In the default case do an auto-detection ...
-                final Class<? extends Plugin> typeOfMethod = (Class<? extends Plugin>) method.getParameterTypes()[0];
+            this.logger.fine("Injecting plugin by autodetection (" + typeOfMethod.getName() + ") into " + plugin.getClass().getName());
 
-                this.logger.fine("Injecting plugin by autodetection (" + typeOfMethod.getName() + ") into " + plugin.getClass().getName());
-
-                try {
-                    method.invoke(plugin, this.pluginManager.getPlugin(typeOfMethod, new OptionCapabilities(capabilities)));
-                } catch (IllegalArgumentException e) {
-                    this.logger.warning("Unable to inject plugin " + typeOfMethod + " into method " + method);
-                    e.printStackTrace();
-                } catch (InvocationTargetException e) {
-                    this.logger.warning("Unable to inject plugin " + typeOfMethod + " into method " + method);
-                    e.printStackTrace();
+            try {
+                // Lazy injections are resolved on first use
+                if (LazyPlugin.isLazy(ipannotation, typeOfMethod)) {
+                    final Object lazy = LazyPlugin.create(this.pluginManager, ipannotation, typeOfMethod, method.getGenericParameterTypes()[0]);
+                    if (lazy == null) this.logger.warning("Unable to inject lazily into method " + method + ", plugin type unknown");
+                    invoker.invoke(plugin, lazy);
+                    continue;
                 }
+
+                invoker.invoke(plugin, this.pluginManager.getPlugin(typeOfMethod, new OptionCapabilities(capabilities)));
+            } catch (IllegalArgumentException e) {
+                this.logger.warning("Unable to inject plugin " + typeOfMethod + " into method " + method);
+                e.printStackTrace();
+            } catch (InvocationTargetException e) {
+                this.logger.warning("Unable to inject plugin " + typeOfMethod + " into method " + method);
+                e.printStackTrace();
             }
         }
     }
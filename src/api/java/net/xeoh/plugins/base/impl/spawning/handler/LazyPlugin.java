@@ -0,0 +1,141 @@
+package net.xeoh.plugins.base.impl.spawning.handler;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+
+import net.xeoh.plugins.base.Plugin;
+import net.xeoh.plugins.base.PluginManager;
+import net.xeoh.plugins.base.Provider;
+import net.xeoh.plugins.base.annotations.injections.InjectPlugin;
+import net.xeoh.plugins.base.options.getplugin.OptionCapabilities;
+
+/**
+ * Looks up a plugin on first use and remembers it. Injected either as {@link Provider},
+ * as <code>java.util.function.Supplier</code>, or as proxy of the plugin interface for
+ * <code>&#064;InjectPlugin(lazy = true)</code>.
+ * 
+ * @param <P>
+ */
+public class LazyPlugin<P extends Plugin> implements Provider<P>, InvocationHandler {
+
+    /** Name of the supplier interface, which is only there on Java 8 and later */
+    private static final String SUPPLIER = "java.util.function.Supplier";
+
+    /** */
+    private final PluginManager pluginManager;
+
+    /** */
+    private final Class<P> type;
+
+    /** */
+    private final String[] capabilities;
+
+    /** The plugin, once it was found */
+    private volatile P plugin;
+
+    /**
+     * @param pluginManager
+     * @param type
+     * @param capabilities
+     */
+    public LazyPlugin(PluginManager pluginManager, Class<P> type, String[] capabilities) {
+        this.pluginManager = pluginManager;
+        this.type = type;
+        this.capabilities = capabilities;
+    }
+
+    /**
+     * Checks if an injection point of the given type is resolved lazily.
+     * 
+     * @param annotation
+     * @param type Type of the field or the setter's parameter.
+     * @return .
+     */
+    public static boolean isLazy(InjectPlugin annotation, Class<?> type) {
+        return annotation.lazy() || type == Provider.class || type.getName().equals(SUPPLIER);
+    }
+
+    /**
+     * Creates the value to inject into a lazy injection point.
+     * 
+     * @param pluginManager
+     * @param annotation
+     * @param type Type of the field or the setter's parameter.
+     * @param genericType Its generic type.
+     * @return The value to inject, or <code>null</code> if the plugin type cannot be told.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static Object create(PluginManager pluginManager, InjectPlugin annotation, Class<?> type, Type genericType) {
+        final boolean handle = type == Provider.class || type.getName().equals(SUPPLIER);
+
+        // Handles carry the plugin type as their argument
+        Type pluginType = type;
+        if (handle) {
+            if (!(genericType instanceof ParameterizedType)) return null;
+            pluginType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+        }
+
+        if (!(pluginType instanceof Class) || !Plugin.class.isAssignableFrom((Class<?>) pluginType)) return null;
+        if (!handle && !((Class<?>) pluginType).isInterface()) return null;
+
+        final LazyPlugin<?> rval = new LazyPlugin(pluginManager, (Class<?>) pluginType, annotation.requiredCapabilities());
+        if (type == Provider.class) return rval;
+
+        return Proxy.newProxyInstance(type.getClassLoader() != null ? type.getClassLoader() : LazyPlugin.class.getClassLoader(), new Class<?>[] { type }, rval);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see net.xeoh.plugins.base.Provider#get()
+     */
+    public P get() {
+        P rval = this.plugin;
+        if (rval != null) return rval;
+
+        // Not cached if missing, the plugin may still come
+        rval = this.pluginManager.getPlugin(this.type, new OptionCapabilities(this.capabilities));
+        this.plugin = rval;
+        return rval;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object,
+     * java.lang.reflect.Method, java.lang.Object[])
+     */
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            if (method.getName().equals("equals")) return Boolean.valueOf(proxy == args[0]);
+            if (method.getName().equals("hashCode")) return Integer.valueOf(System.identityHashCode(proxy));
+            if (method.getName().equals("toString")) return "Lazy " + this.type.getName();
+        }
+
+        // Supplier.get()
+        if (method.getDeclaringClass().getName().equals(SUPPLIER)) return get();
+
+        final P target = get();
+        if (target == null) throw new IllegalStateException("Plugin " + this.type.getName() + " is not available");
+
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "Lazy " + this.type.getName();
+    }
+}
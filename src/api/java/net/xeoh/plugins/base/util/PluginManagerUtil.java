@@ -71,12 +71,13 @@ public class PluginManagerUtil {
      * @return A collection of all plugins implementing the given interface.
      */
     public <P extends Plugin> Collection<P> getPlugins(final Class<P> plugin) {
-        return getPlugins(plugin, new PluginSelector<P>() {
+        final Collection<P> allPlugins = new ArrayList<P>();
+
+        for (P p : this.pluginManager.getPlugins(plugin)) {
+            allPlugins.add(p);
+        }
 
-            public boolean selectPlugin(final P p) {
-                return true;
-            }
-        });
+        return allPlugins;
     }
 
     /**
@@ -95,15 +96,9 @@ public class PluginManagerUtil {
                                                        final PluginSelector<P> selector) {
         final Collection<P> allPlugins = new ArrayList<P>();
 
-        this.pluginManager.getPlugin(plugin, new OptionPluginSelector<P>(new PluginSelector<P>() {
-
-            public boolean selectPlugin(final P p) {
-                if (selector.selectPlugin(p)) {
-                    allPlugins.add(p);
-                }
-                return false;
-            }
-        }));
+        for (P p : this.pluginManager.getPlugins(plugin, new OptionPluginSelector<P>(selector))) {
+            allPlugins.add(p);
+        }
 
         return allPlugins;
     }
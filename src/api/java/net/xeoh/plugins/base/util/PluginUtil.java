@@ -27,12 +27,15 @@
  */
 package net.xeoh.plugins.base.util;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
 import net.xeoh.plugins.base.Plugin;
+import net.xeoh.plugins.base.annotations.Capabilities;
 
 /**
  * A set of inspection methods for an existing plugin. Should only be required 
@@ -159,4 +162,37 @@ public class PluginUtil {
 
         return rval;
     }
+
+    /**
+     * Queries the plugin's &#064;{@link Capabilities} method.
+     * 
+     * @return The reported capabilities, or an empty array if there are none.
+     */
+    public String[] getCapabilities() {
+        final Method[] methods = this.plugin.getClass().getMethods();
+
+        // Search for proper method
+        for (final Method method : methods) {
+
+            // Capability methods will be marked by the corresponding annotation.
+            final Capabilities caps = method.getAnnotation(Capabilities.class);
+            if (caps != null) {
+
+                Object result = null;
+                try {
+                    result = method.invoke(this.plugin, new Object[0]);
+                } catch (final IllegalArgumentException e) {
+                    //
+                } catch (final IllegalAccessException e) {
+                    //
+                } catch (final InvocationTargetException e) {
+                    //
+                }
+                if (result != null && result instanceof String[])
+                    return (String[]) result;
+            }
+        }
+
+        return new String[0];
+    }
 }
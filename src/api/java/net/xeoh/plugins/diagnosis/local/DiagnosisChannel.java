@@ -40,4 +40,20 @@ public interface DiagnosisChannel<T> {
      * @param options 
      */
     public void status(T value, StatusOption... options);
+
+    /**
+     * Records the status provided by the supplier. The supplier is only called if the
+     * channel is enabled.
+     * 
+     * @param supplier
+     */
+    public void status(StatusSupplier<T> supplier);
+
+    /**
+     * Returns true if this channel records anything. Callers should check this before
+     * building expensive status values or options.
+     * 
+     * @return .
+     */
+    public boolean isEnabled();
 }
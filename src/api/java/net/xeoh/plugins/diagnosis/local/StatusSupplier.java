@@ -0,0 +1,21 @@
+package net.xeoh.plugins.diagnosis.local;
+
+import net.xeoh.plugins.diagnosis.local.options.StatusOption;
+
+/**
+ * Lazily provides a status for a {@link DiagnosisChannel}, so that nothing has to be
+ * computed when the channel is disabled.
+ * 
+ * @param <T>
+ */
+public interface StatusSupplier<T> {
+    /**
+     * @return The value to record.
+     */
+    public T getValue();
+
+    /**
+     * @return The options to record with the value.
+     */
+    public StatusOption[] getOptions();
+}
@@ -29,10 +29,14 @@ package net.xeoh.plugins.diagnosis.local.impl;
 
 import net.xeoh.plugins.diagnosis.local.DiagnosisChannel;
 import net.xeoh.plugins.diagnosis.local.DiagnosisChannelID;
+import net.xeoh.plugins.diagnosis.local.StatusSupplier;
 import net.xeoh.plugins.diagnosis.local.options.StatusOption;
 
 public class DiagnosisChannelDummyImpl implements DiagnosisChannel<Object> {
 
+    /** Shared by all disabled channels, as the dummy has no state */
+    public static final DiagnosisChannelDummyImpl DISABLED = new DiagnosisChannelDummyImpl(null, null);
+
     /**
      * @param diagnosis
      * @param channel
@@ -51,4 +55,26 @@ public class DiagnosisChannelDummyImpl implements DiagnosisChannel<Object> {
     public void status(Object value, StatusOption... options) {
         //
     }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * net.xeoh.plugins.diagnosis.local.DiagnosisChannel#status(net.xeoh.plugins.diagnosis
+     * .local.StatusSupplier)
+     */
+    @Override
+    public void status(StatusSupplier<Object> supplier) {
+        //
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see net.xeoh.plugins.diagnosis.local.DiagnosisChannel#isEnabled()
+     */
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
 }
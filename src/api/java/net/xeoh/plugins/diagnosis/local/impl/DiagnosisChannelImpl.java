@@ -30,6 +30,7 @@ package net.xeoh.plugins.diagnosis.local.impl;
 //import static net.jcores.jre.CoreKeeper.$;
 import net.xeoh.plugins.diagnosis.local.DiagnosisChannel;
 import net.xeoh.plugins.diagnosis.local.DiagnosisChannelID;
+import net.xeoh.plugins.diagnosis.local.StatusSupplier;
 import net.xeoh.plugins.diagnosis.local.impl.serialization.java.Entry;
 import net.xeoh.plugins.diagnosis.local.options.StatusOption;
 import net.xeoh.plugins.diagnosis.local.options.status.OptionInfo;
@@ -87,4 +88,26 @@ public class DiagnosisChannelImpl implements DiagnosisChannel<Object> {
         
         this.diagnosis.recordEntry(entry);
     }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * net.xeoh.plugins.diagnosis.local.DiagnosisChannel#status(net.xeoh.plugins.diagnosis
+     * .local.StatusSupplier)
+     */
+    @Override
+    public void status(StatusSupplier<Object> supplier) {
+        status(supplier.getValue(), supplier.getOptions());
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see net.xeoh.plugins.diagnosis.local.DiagnosisChannel#isEnabled()
+     */
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
 }
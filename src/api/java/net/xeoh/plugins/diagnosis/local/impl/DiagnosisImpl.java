@@ -28,6 +28,8 @@
 package net.xeoh.plugins.diagnosis.local.impl;
 
 import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import net.xeoh.plugins.base.PluginConfiguration;
 import net.xeoh.plugins.base.annotations.PluginImplementation;
@@ -64,6 +66,9 @@ public class DiagnosisImpl implements Diagnosis {
     /** The actual serializer we use */
     volatile LogFileWriter serializer = null;
 
+    /** Channels handed out so far */
+    final ConcurrentMap<Class<?>, DiagnosisChannel<?>> channels = new ConcurrentHashMap<Class<?>, DiagnosisChannel<?>>();
+
     /*
      * (non-Javadoc)
      * 
@@ -74,12 +79,16 @@ public class DiagnosisImpl implements Diagnosis {
     @Override
     public <T extends Serializable> DiagnosisChannel<T> channel(Class<? extends DiagnosisChannelID<T>> channel,
                                                                 ChannelOption... options) {
-        // In case we are disabled, return a dummy
+        // In case we are disabled, return the dummy
         if (this.isDisabled) {
-            final DiagnosisChannel<?> impl = new DiagnosisChannelDummyImpl(this, channel);
+            final DiagnosisChannel<?> impl = DiagnosisChannelDummyImpl.DISABLED;
             return (DiagnosisChannel<T>) impl;
         }
 
+        // Channels are stateless, so we hand out one per ID
+        final DiagnosisChannel<?> cached = this.channels.get(channel);
+        if (cached != null) return (DiagnosisChannel<T>) cached;
+
         // In case this was the first call, create a serializer
         synchronized (this) {
             try {
@@ -89,13 +98,14 @@ public class DiagnosisImpl implements Diagnosis {
             } catch (Exception e) {
                 // In case something goes wrong, return a dummy
                 e.printStackTrace();
-                final DiagnosisChannel<?> impl = new DiagnosisChannelDummyImpl(this, channel);
+                final DiagnosisChannel<?> impl = DiagnosisChannelDummyImpl.DISABLED;
                 return (DiagnosisChannel<T>) impl;
             }
         }
 
         final DiagnosisChannel<?> impl = new DiagnosisChannelImpl(this, channel);
-        return (DiagnosisChannel<T>) impl;
+        final DiagnosisChannel<?> existing = this.channels.putIfAbsent(channel, impl);
+        return (DiagnosisChannel<T>) (existing == null ? impl : existing);
     }
 
     /**
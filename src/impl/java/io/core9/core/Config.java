@@ -6,6 +6,8 @@ public final class Config {
 
 	private String[] pluginDirs;
 
+	private boolean freezeAfterBoot = false;
+
 	private static Config instance;
 
 	public void setPluginDirs(String[] addedPluginDirs) {
@@ -21,6 +23,18 @@ public final class Config {
 		return pluginDirs;
 	}
 
+	/**
+	 * Freeze the plugin registry once all strategies have run
+	 * @param freezeAfterBoot
+	 */
+	public void setFreezeAfterBoot(boolean freezeAfterBoot) {
+		this.freezeAfterBoot = freezeAfterBoot;
+	}
+
+	public boolean isFreezeAfterBoot() {
+		return freezeAfterBoot;
+	}
+
 	private Config() {
 		pluginDirs = new String[] { "plugins/" };
 	}
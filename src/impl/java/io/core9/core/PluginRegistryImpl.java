@@ -1,9 +1,19 @@
 package io.core9.core;
 
 import io.core9.core.PluginRegistry;
+import io.core9.core.commands.CommandProvider;
+import io.core9.core.hooks.HookProvider;
+import io.core9.core.proxy.InvocationHandlerProvider;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.ConstantCallSite;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import net.xeoh.plugins.base.Plugin;
@@ -12,29 +22,121 @@ import net.xeoh.plugins.base.impl.PluginManagerFactory;
 import net.xeoh.plugins.base.impl.PluginManagerImpl;
 import net.xeoh.plugins.base.util.JSPFProperties;
 
+import org.apache.commons.lang3.ClassUtils;
+
+/**
+ * Thread-safe plugin registry
+ * 
+ * Every write publishes a new immutable snapshot, so readers never lock and
+ * iterating over getPlugins() cannot fail while plugins are (re)registered.
+ * Writes are serialized and copy the snapshot, so they cost O(n) in the
+ * number of plugins; register plugins in batches through registerPlugins().
+ * Plugins can be looked up by implementation class or by any interface
+ * they implement.
+ */
 public class PluginRegistryImpl implements PluginRegistry {
 	
 	private static PluginRegistry singleton;
-	private Map<Class<? extends Plugin>,Plugin> registry = new HashMap<Class<? extends Plugin>, Plugin>();
+	private volatile Snapshot snapshot = Snapshot.EMPTY;
+	private Map<Class<? extends Plugin>, CallSite> callSites;
+	private volatile boolean frozen = false;
 	private PluginManagerImpl pm; 
 	
 	@Override
 	public void registerPlugin(Class<? extends Plugin> clazz, Plugin plugin) {
-		this.registry.put(clazz, plugin);
+		Map<Class<? extends Plugin>, Plugin> added = new LinkedHashMap<Class<? extends Plugin>, Plugin>();
+		added.put(clazz, plugin);
+		publish(added);
 	}
 	
 	@Override
 	public Plugin getPlugin(Class<? extends Plugin> className) {
-		return registry.get(className);
+		Snapshot current = snapshot;
+		Plugin plugin = current.byClass.get(className);
+		if(plugin == null) {
+			List<Plugin> implementations = current.byInterface.get(className);
+			if(implementations != null) {
+				plugin = implementations.get(0);
+			}
+		}
+		return plugin;
+	}
+
+	@Override
+	public Collection<Plugin> getPlugins(Class<?> pluginInterface) {
+		List<Plugin> implementations = snapshot.byInterface.get(pluginInterface);
+		if(implementations == null) {
+			return Collections.emptyList();
+		}
+		return implementations;
 	}
 	
 	@Override
 	public void registerPlugins(Collection<Plugin> plugins) {
+		Map<Class<? extends Plugin>, Plugin> added = new LinkedHashMap<Class<? extends Plugin>, Plugin>();
+		for(Plugin plugin : plugins) {
+			added.put(plugin.getClass(), plugin);
+		}
+		publish(added);
+	}
+	
+	@Override
+	public void registerPlugins(Map<Class<? extends Plugin>, Plugin> plugins) {
+		publish(new LinkedHashMap<Class<? extends Plugin>, Plugin>(plugins));
 	}
 	
 	@Override
 	public Collection<Plugin> getPlugins() {
-		return registry.values();
+		return snapshot.plugins;
+	}
+
+	@Override
+	public synchronized void freeze() {
+		if(frozen) {
+			return;
+		}
+		Map<Class<? extends Plugin>, CallSite> sites = new HashMap<Class<? extends Plugin>, CallSite>();
+		for(Map.Entry<Class<? extends Plugin>, Plugin> entry : snapshot.byClass.entrySet()) {
+			sites.put(entry.getKey(), new ConstantCallSite(MethodHandles.constant(Plugin.class, entry.getValue())));
+		}
+		this.callSites = Collections.unmodifiableMap(sites);
+		freezeProviders();
+		this.frozen = true;
+	}
+
+	/**
+	 * Freezes the hook, command and invocation handler providers
+	 */
+	void freezeProviders() {
+		HookProvider.getInstance().freeze();
+		CommandProvider.getInstance().freeze();
+		InvocationHandlerProvider.getInstance().freeze();
+	}
+
+	@Override
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	@Override
+	public CallSite getPluginCallSite(Class<? extends Plugin> className) {
+		if(!frozen) {
+			throw new IllegalStateException("Plugin call sites are only available after the registry has been frozen");
+		}
+		return callSites.get(className);
+	}
+
+	/**
+	 * Publishes a new snapshot containing the added plugins. Writers hold the
+	 * same lock as freeze(), so no registration can slip in after the call
+	 * sites were built; readers still never lock.
+	 * @param added
+	 */
+	private synchronized void publish(Map<Class<? extends Plugin>, Plugin> added) {
+		if(frozen) {
+			throw new IllegalStateException("Registry is frozen, plugins cannot be registered anymore");
+		}
+		snapshot = snapshot.with(added);
 	}
 
 	public static PluginRegistry getInstance() {
@@ -54,9 +156,78 @@ public class PluginRegistryImpl implements PluginRegistry {
 	    pm = (PluginManagerImpl) PluginManagerFactory.createPluginManager(props);
 	}
 
+	/**
+	 * Creates a registry around the given manager, used by tests
+	 * @param pm
+	 */
+	PluginRegistryImpl(PluginManagerImpl pm) {
+		this.pm = pm;
+	}
+
 	@Override
 	public PluginManagerImpl getManager() {
 		return pm;
 	}
 
+	/**
+	 * Immutable view of the registry contents
+	 */
+	private static final class Snapshot {
+		static final Snapshot EMPTY = new Snapshot(new LinkedHashMap<Class<? extends Plugin>, Plugin>(), new HashMap<Class<?>, List<Plugin>>());
+
+		final Map<Class<? extends Plugin>, Plugin> byClass;
+		final Map<Class<?>, List<Plugin>> byInterface;
+		final Collection<Plugin> plugins;
+
+		private Snapshot(LinkedHashMap<Class<? extends Plugin>, Plugin> byClass, Map<Class<?>, List<Plugin>> byInterface) {
+			this.byClass = Collections.unmodifiableMap(byClass);
+			this.byInterface = byInterface;
+			this.plugins = Collections.unmodifiableList(new ArrayList<Plugin>(byClass.values()));
+		}
+
+		/**
+		 * Copies the snapshot and adds the plugins. The class map and plugin
+		 * list are copied whole, of the interface index only the lists of
+		 * interfaces the added plugins implement
+		 * @param added
+		 * @return Snapshot
+		 */
+		Snapshot with(Map<Class<? extends Plugin>, Plugin> added) {
+			LinkedHashMap<Class<? extends Plugin>, Plugin> copy = new LinkedHashMap<Class<? extends Plugin>, Plugin>(byClass);
+			Map<Class<?>, List<Plugin>> index = new HashMap<Class<?>, List<Plugin>>(byInterface);
+			Map<Class<?>, List<Plugin>> touched = new HashMap<Class<?>, List<Plugin>>();
+			for(Map.Entry<Class<? extends Plugin>, Plugin> entry : added.entrySet()) {
+				Plugin replaced = copy.put(entry.getKey(), entry.getValue());
+				for(Class<?> inf : ClassUtils.getAllInterfaces(entry.getKey())) {
+					List<Plugin> implementations = touched.get(inf);
+					if(implementations == null) {
+						List<Plugin> existing = index.get(inf);
+						implementations = existing == null ? new ArrayList<Plugin>(1) : new ArrayList<Plugin>(existing);
+						touched.put(inf, implementations);
+					}
+					// A re-registered class keeps its position
+					int position = replaced == null ? -1 : indexOf(implementations, replaced);
+					if(position >= 0) {
+						implementations.set(position, entry.getValue());
+					} else {
+						implementations.add(entry.getValue());
+					}
+				}
+			}
+			for(Map.Entry<Class<?>, List<Plugin>> entry : touched.entrySet()) {
+				index.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+			}
+			return new Snapshot(copy, index);
+		}
+
+		private static int indexOf(List<Plugin> implementations, Plugin plugin) {
+			for(int i = 0; i < implementations.size(); i++) {
+				if(implementations.get(i) == plugin) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
 }
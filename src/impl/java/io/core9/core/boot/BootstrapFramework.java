@@ -2,6 +2,7 @@ package io.core9.core.boot;
 
 import java.util.List;
 
+import io.core9.core.Config;
 import io.core9.core.PluginRegistry;
 import io.core9.core.PluginRegistryImpl;
 
@@ -24,6 +25,7 @@ public class BootstrapFramework {
 		log.info("Starting Core9 Framework");
 		bootstrapPlugins();
 		bootstrapStrategies();
+		freezeRegistry();
 		log.info("Core9 Framework started");
 	}
 	
@@ -31,9 +33,17 @@ public class BootstrapFramework {
 		log.info("Starting Core9 Framework");
 		bootstrapPlugins();
 		bootstrapStrategies();
+		freezeRegistry();
 		log.info("Core9 Framework started");
 	}
 	
+	private static void freezeRegistry() {
+		if(Config.getInstance().isFreezeAfterBoot()) {
+			log.info("Freezing plugin registry");
+			registry.freeze();
+		}
+	}
+	
 	private static void bootstrapPlugins() {
 		BootstrapPlugins plugins = new BootstrapPluginsImpl();
 		plugins.setRegistry(registry);
@@ -8,7 +8,9 @@ import java.lang.reflect.Method;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import net.xeoh.plugins.base.Plugin;
 import net.xeoh.plugins.base.PluginManager;
@@ -31,21 +33,25 @@ public class BootstrapPluginsImpl implements BootstrapPlugins {
 
 		Config config = Config.getInstance();
 		
+		// Add all plugin dirs and the classpath in one batch, so the plugin cache is
+		// read and written once and the locations are scanned in parallel
 		String[] pluginDirs = config.getPluginDirs();
+		List<URI> locations = new ArrayList<URI>();
 		for (int i = 0; i < pluginDirs.length; i++) {
-			registry.getManager().addPluginsFrom(new File(pluginDirs[i]).toURI(), new OptionReportAfter()); 	
+			locations.add(new File(pluginDirs[i]).toURI());
 		}
 		try {
-			registry.getManager().addPluginsFrom(new URI("classpath://*"), new OptionReportAfter());
+			locations.add(new URI("classpath://*"));
 		} catch (Exception e) {	
 			e.printStackTrace();
 		}
+		registry.getManager().addPluginsFrom(locations, new OptionReportAfter());
 
 		
 		plugins = registry.getManager().getPluginRegistry().getAllPlugins();
+		registry.registerPlugins(plugins);
 				
 		for (Plugin plugin : plugins) {
-			registry.registerPlugin(plugin.getClass(), plugin);
 			PluginManager pluginManager = registry.getManager();
 			try {
 				// this is only possible when all plugins are loaded
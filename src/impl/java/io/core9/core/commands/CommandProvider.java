@@ -1,7 +1,9 @@
 package io.core9.core.commands;
 
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
@@ -10,8 +12,9 @@ import java.util.TreeMap;
 public class CommandProvider {
 	private static CommandProvider instance;
 	private Map<String, HashMap<String, TreeMap<Integer, Command>>> commands;
+	private volatile Map<String, Map<String, Collection<Command>>> frozenCommands;
 	
-	private CommandProvider() {
+	CommandProvider() {
 		commands = new HashMap<String, HashMap<String, TreeMap<Integer, Command>>>();
 	}
 	
@@ -24,6 +27,9 @@ public class CommandProvider {
 	}
 
 	public void registerCommands(Collection<Command> commands) {
+		if(frozenCommands != null) {
+			throw new IllegalStateException("CommandProvider is frozen, commands cannot be registered anymore");
+		}
 		for(Command command : commands) {
 			if(!this.commands.containsKey(command.getClassName())) {
 				this.commands.put(command.getClassName(), new HashMap<String,TreeMap<Integer, Command>>());
@@ -36,10 +42,38 @@ public class CommandProvider {
 	}
 	
 	public Collection<Command> getCommands(String plugin, String method) {
+		Map<String, Map<String, Collection<Command>>> frozen = frozenCommands;
+		if(frozen != null) {
+			Map<String, Collection<Command>> methods = frozen.get(plugin);
+			return methods == null ? null : methods.get(method);
+		}
 		try {
 			return this.commands.get(plugin).get(method).values();
 		} catch (NullPointerException e) {
 			return null;
 		}
 	}
+
+	/**
+	 * Replaces the command tables by immutable, priority ordered copies.
+	 * Registering commands afterwards fails.
+	 */
+	public synchronized void freeze() {
+		if(frozenCommands != null) {
+			return;
+		}
+		Map<String, Map<String, Collection<Command>>> frozen = new HashMap<String, Map<String, Collection<Command>>>();
+		for(Map.Entry<String, HashMap<String, TreeMap<Integer, Command>>> plugin : commands.entrySet()) {
+			Map<String, Collection<Command>> methods = new HashMap<String, Collection<Command>>();
+			for(Map.Entry<String, TreeMap<Integer, Command>> method : plugin.getValue().entrySet()) {
+				methods.put(method.getKey(), Collections.unmodifiableList(new ArrayList<Command>(method.getValue().values())));
+			}
+			frozen.put(plugin.getKey(), Collections.unmodifiableMap(methods));
+		}
+		frozenCommands = Collections.unmodifiableMap(frozen);
+	}
+
+	public boolean isFrozen() {
+		return frozenCommands != null;
+	}
 }
@@ -2,7 +2,9 @@ package io.core9.core.hooks;
 
 import io.core9.core.hooks.Hook;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
@@ -11,8 +13,9 @@ import java.util.TreeMap;
 public class HookProvider {
 	private static HookProvider instance;
 	private Map<String, HashMap<String, TreeMap<Integer, Hook>>> hooks;
+	private volatile Map<String, Map<String, Collection<Hook>>> frozenHooks;
 	
-	private HookProvider() {
+	HookProvider() {
 		hooks = new HashMap<String, HashMap<String, TreeMap<Integer, Hook>>>();
 	}
 	
@@ -25,6 +28,9 @@ public class HookProvider {
 	}
 
 	public void registerHooks(Collection<Hook> hooks) {
+		if(frozenHooks != null) {
+			throw new IllegalStateException("HookProvider is frozen, hooks cannot be registered anymore");
+		}
 		for(Hook hook : hooks) {
 			if(!this.hooks.containsKey(hook.getClassName())) {
 				this.hooks.put(hook.getClassName(), new HashMap<String,TreeMap<Integer, Hook>>());
@@ -37,10 +43,38 @@ public class HookProvider {
 	}
 	
 	public Collection<Hook> getHooks(String plugin, String method) {
+		Map<String, Map<String, Collection<Hook>>> frozen = frozenHooks;
+		if(frozen != null) {
+			Map<String, Collection<Hook>> methods = frozen.get(plugin);
+			return methods == null ? null : methods.get(method);
+		}
 		try {
 			return this.hooks.get(plugin).get(method).values();
 		} catch (NullPointerException e) {
 			return null;
 		}
 	}
+
+	/**
+	 * Replaces the hook tables by immutable, priority ordered copies.
+	 * Registering hooks afterwards fails.
+	 */
+	public synchronized void freeze() {
+		if(frozenHooks != null) {
+			return;
+		}
+		Map<String, Map<String, Collection<Hook>>> frozen = new HashMap<String, Map<String, Collection<Hook>>>();
+		for(Map.Entry<String, HashMap<String, TreeMap<Integer, Hook>>> plugin : hooks.entrySet()) {
+			Map<String, Collection<Hook>> methods = new HashMap<String, Collection<Hook>>();
+			for(Map.Entry<String, TreeMap<Integer, Hook>> method : plugin.getValue().entrySet()) {
+				methods.put(method.getKey(), Collections.unmodifiableList(new ArrayList<Hook>(method.getValue().values())));
+			}
+			frozen.put(plugin.getKey(), Collections.unmodifiableMap(methods));
+		}
+		frozenHooks = Collections.unmodifiableMap(frozen);
+	}
+
+	public boolean isFrozen() {
+		return frozenHooks != null;
+	}
 }
@@ -1,6 +1,7 @@
 package io.core9.core.proxy;
 
 import java.lang.reflect.InvocationHandler;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.SortedMap;
@@ -14,15 +15,23 @@ public class InvocationHandlerProvider {
 
 	private Map<String, SortedMap<Integer, Class<? extends InvocationHandler>>> invocationHandlers;
 
-	private InvocationHandlerProvider() {
+	private volatile Map<String, Class<? extends InvocationHandler>> frozenHandlers;
+
+	InvocationHandlerProvider() {
 		invocationHandlers = new HashMap<String, SortedMap<Integer,Class<? extends InvocationHandler>>>();
 	}
 	
 	public void addInvocationHandler(Class<? extends Plugin> plugin, Integer priority, Class<? extends InvocationHandler> handler){
+		checkNotFrozen();
 		this.invocationHandlers.get(plugin).put(priority, handler);
 	}
 
 	public Class<? extends InvocationHandler> getInvocationHandler(Class<? extends Plugin> plugin) {
+		Map<String, Class<? extends InvocationHandler>> frozen = frozenHandlers;
+		if(frozen != null) {
+			Class<? extends InvocationHandler> handler = frozen.get(plugin.getName());
+			return handler == null ? DefaultInvocationHandler.class : handler;
+		}
 		
 		String tmp = plugin.getName();
 		SortedMap<Integer, Class<? extends InvocationHandler>> ihp = invocationHandlers.get(tmp);
@@ -45,10 +54,38 @@ public class InvocationHandlerProvider {
 
 
 	public void setDefaultInvocationHandler(Class<?> plugin, Class<? extends InvocationHandler> handler) {
+		checkNotFrozen();
 		if(!invocationHandlers.containsKey(plugin.getName())) {
 			invocationHandlers.put(plugin.getName(), new TreeMap<Integer,Class<? extends InvocationHandler>>());
 		}
 		invocationHandlers.get(plugin.getName()).put(2, handler);
 	}
 
+	/**
+	 * Resolves the highest priority handler of every plugin once and keeps
+	 * the result in an immutable table. Adding handlers afterwards fails.
+	 */
+	public synchronized void freeze() {
+		if(frozenHandlers != null) {
+			return;
+		}
+		Map<String, Class<? extends InvocationHandler>> frozen = new HashMap<String, Class<? extends InvocationHandler>>();
+		for(Map.Entry<String, SortedMap<Integer, Class<? extends InvocationHandler>>> entry : invocationHandlers.entrySet()) {
+			if(!entry.getValue().isEmpty()) {
+				frozen.put(entry.getKey(), entry.getValue().get(entry.getValue().lastKey()));
+			}
+		}
+		frozenHandlers = Collections.unmodifiableMap(frozen);
+	}
+
+	public boolean isFrozen() {
+		return frozenHandlers != null;
+	}
+
+	private void checkNotFrozen() {
+		if(frozenHandlers != null) {
+			throw new IllegalStateException("InvocationHandlerProvider is frozen, handlers cannot be added anymore");
+		}
+	}
+
 }
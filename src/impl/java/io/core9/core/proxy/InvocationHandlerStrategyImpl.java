@@ -3,7 +3,9 @@ package io.core9.core.proxy;
 import io.core9.core.boot.CoreBootStrategy;
 
 import java.lang.reflect.InvocationHandler;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import net.xeoh.plugins.base.Plugin;
 import net.xeoh.plugins.base.annotations.PluginImplementation;
@@ -25,13 +27,15 @@ public class InvocationHandlerStrategyImpl extends CoreBootStrategy implements I
 			}
 		}
 		
+		// Replace all plugins by their proxies in one write
+		Map<Class<? extends Plugin>, Plugin> wrapped = new LinkedHashMap<Class<? extends Plugin>, Plugin>();
 		for(Plugin plugin : this.registry.getPlugins()) {
 			//FIXME What if the plugin implements 2 interfaces?
 			@SuppressWarnings("unchecked")
 			Class<? extends Plugin> inf = (Class<? extends Plugin>) plugin.getClass().getInterfaces()[0];
-			Plugin wrapped = (Plugin) this.registry.getManager().getPlugin(inf, provider.getInvocationHandler(inf));
-			registry.registerPlugin(plugin.getClass(), wrapped);
+			wrapped.put(plugin.getClass(), (Plugin) this.registry.getManager().getPlugin(inf, provider.getInvocationHandler(inf)));
 		}
+		registry.registerPlugins(wrapped);
 	}
 
 	@Override
@@ -0,0 +1,82 @@
+package io.core9.core;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.invoke.CallSite;
+import java.util.Collections;
+
+import net.xeoh.plugins.base.Plugin;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PluginRegistryFreezeTest {
+
+	public static class FrozenPlugin implements Plugin {
+	}
+
+	public static class LatePlugin implements Plugin {
+	}
+
+	PluginRegistryImpl registry;
+
+	boolean providersFrozen;
+
+	@Before
+	public void setUp() {
+		providersFrozen = false;
+		registry = new PluginRegistryImpl(null) {
+			@Override
+			void freezeProviders() {
+				providersFrozen = true;
+			}
+		};
+	}
+
+	@Test
+	public void testCallSitesOnlyAfterFreeze() throws Throwable {
+		FrozenPlugin plugin = new FrozenPlugin();
+		registry.registerPlugin(FrozenPlugin.class, plugin);
+		assertFalse(registry.isFrozen());
+
+		try {
+			registry.getPluginCallSite(FrozenPlugin.class);
+			fail("Call sites must not be available before freeze");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		registry.freeze();
+		assertTrue(registry.isFrozen());
+		assertTrue(providersFrozen);
+
+		CallSite site = registry.getPluginCallSite(FrozenPlugin.class);
+		assertSame(plugin, site.dynamicInvoker().invoke());
+		assertNull(registry.getPluginCallSite(LatePlugin.class));
+	}
+
+	@Test
+	public void testWritesFailAfterFreeze() {
+		registry.freeze();
+
+		try {
+			registry.registerPlugin(LatePlugin.class, new LatePlugin());
+			fail("Registering after freeze must fail");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			registry.registerPlugins(Collections.<Plugin> singletonList(new LatePlugin()));
+			fail("Registering after freeze must fail");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		assertNull(registry.getPlugin(LatePlugin.class));
+		assertTrue(registry.getPlugins().isEmpty());
+	}
+}
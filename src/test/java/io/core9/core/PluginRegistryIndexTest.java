@@ -0,0 +1,43 @@
+package io.core9.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.xeoh.plugins.base.Plugin;
+
+import org.junit.Test;
+
+public class PluginRegistryIndexTest {
+
+	public interface Indexed extends Plugin {
+	}
+
+	public static class First implements Indexed {
+	}
+
+	public static class Second implements Indexed {
+	}
+
+	@Test
+	public void testReplacedPluginKeepsItsPosition() {
+		PluginRegistryImpl registry = new PluginRegistryImpl(null);
+		First first = new First();
+		Second second = new Second();
+		registry.registerPlugin(First.class, first);
+		registry.registerPlugin(Second.class, second);
+
+		Indexed proxy = new First();
+		Map<Class<? extends Plugin>, Plugin> replaced = new LinkedHashMap<Class<? extends Plugin>, Plugin>();
+		replaced.put(First.class, proxy);
+		registry.registerPlugins(replaced);
+
+		assertEquals(Arrays.<Plugin> asList(proxy, second), registry.getPlugins(Indexed.class));
+		assertEquals(Arrays.<Plugin> asList(proxy, second), registry.getPlugins());
+		assertSame(proxy, registry.getPlugin(First.class));
+		assertSame(proxy, registry.getPlugin(Indexed.class));
+	}
+}
@@ -0,0 +1,317 @@
+package io.core9.core.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import net.xeoh.plugins.base.Plugin;
+import net.xeoh.plugins.base.PluginManager;
+import net.xeoh.plugins.base.impl.PluginManagerFactory;
+import net.xeoh.plugins.base.impl.classpath.cache.JARCache;
+import net.xeoh.plugins.base.impl.spawning.handler.InjectHandler;
+import net.xeoh.plugins.base.options.addpluginsfrom.OptionReportAfter;
+import net.xeoh.plugins.base.util.JSPFProperties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchAddTest {
+
+	File dir;
+
+	File providerJar;
+
+	File consumerJar;
+
+	File adderJar;
+
+	/** Used by the compiled AdderImpl */
+	static volatile PluginManager current;
+
+	/** Used by the compiled AdderImpl */
+	static volatile URI nested;
+
+	final List<String> cacheMessages = new ArrayList<String>();
+
+	final Handler handler = new Handler() {
+		@Override
+		public void publish(LogRecord record) {
+			if (record.getMessage().contains("JSPF cache")) {
+				synchronized (cacheMessages) {
+					cacheMessages.add(record.getMessage());
+				}
+			}
+		}
+
+		@Override
+		public void flush() {
+			//
+		}
+
+		@Override
+		public void close() {
+			//
+		}
+	};
+
+	Logger cacheLogger;
+
+	Level cacheLevel;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("batch").toFile();
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			return;
+		}
+
+		File provider = compile(compiler, "provider", "",
+		        "batch/provider/Provider.java", "package batch.provider; public interface Provider extends net.xeoh.plugins.base.Plugin { String name(); }",
+		        "batch/provider/ProviderImpl.java", "package batch.provider; @net.xeoh.plugins.base.annotations.PluginImplementation public class ProviderImpl implements Provider { public String name() { return \"provider\"; } }");
+		File consumer = compile(compiler, "consumer", provider.getPath(),
+		        "batch/consumer/ConsumerImpl.java", "package batch.consumer; @net.xeoh.plugins.base.annotations.PluginImplementation public class ConsumerImpl implements net.xeoh.plugins.base.Plugin { @net.xeoh.plugins.base.annotations.injections.InjectPlugin public batch.provider.Provider provider; }");
+
+		File adder = compile(compiler, "adder", "",
+		        "batch/adder/AdderImpl.java", "package batch.adder; @net.xeoh.plugins.base.annotations.PluginImplementation public class AdderImpl implements net.xeoh.plugins.base.Plugin { @net.xeoh.plugins.base.annotations.events.Init public void init() { io.core9.core.batch.BatchAddTest.addNested(); } }",
+		        "batch/adder/OtherImpl.java", "package batch.adder; @net.xeoh.plugins.base.annotations.PluginImplementation public class OtherImpl implements net.xeoh.plugins.base.Plugin {}");
+
+		providerJar = jar(provider, new File(dir, "provider.jar"));
+		consumerJar = jar(consumer, new File(dir, "consumer.jar"));
+		adderJar = jar(adder, new File(dir, "adder.jar"));
+
+		cacheLogger = Logger.getLogger(JARCache.class.getName());
+		cacheLevel = cacheLogger.getLevel();
+		cacheLogger.setLevel(Level.FINE);
+		cacheLogger.addHandler(handler);
+	}
+
+	@After
+	public void tearDown() {
+		if (cacheLogger != null) {
+			cacheLogger.removeHandler(handler);
+			cacheLogger.setLevel(cacheLevel);
+		}
+		delete(dir);
+	}
+
+	@Test
+	public void testDependencyAcrossLocationsIsInjected() throws Exception {
+		if (providerJar == null) {
+			return;
+		}
+
+		PluginManager manager = manager();
+		try {
+			// The consumer comes first, its provider is in a later location
+			manager.addPluginsFrom(Arrays.asList(consumerJar.toURI(), providerJar.toURI()));
+
+			Plugin consumer = plugin(manager, "batch.consumer.ConsumerImpl");
+			Plugin provider = plugin(manager, "batch.provider.ProviderImpl");
+			assertNotNull(consumer);
+			assertNotNull(provider);
+
+			// Injection happens after spawning, as the bootstrap does it
+			new InjectHandler(manager).init(consumer);
+			assertSame(provider, consumer.getClass().getField("provider").get(consumer));
+		} finally {
+			manager.shutdown();
+		}
+	}
+
+	@Test
+	public void testCacheIsLoadedAndSavedOncePerBatch() throws Exception {
+		if (providerJar == null) {
+			return;
+		}
+
+		PluginManager first = manager();
+		try {
+			first.addPluginsFrom(Arrays.asList(providerJar.toURI(), consumerJar.toURI()));
+		} finally {
+			first.shutdown();
+		}
+		// No cache file exists yet
+		assertEquals(0, count("Loaded"));
+		assertEquals(1, count("Saved"));
+
+		cacheMessages.clear();
+		PluginManager second = manager();
+		try {
+			second.addPluginsFrom(Arrays.asList(providerJar.toURI(), consumerJar.toURI()));
+			assertNotNull(plugin(second, "batch.consumer.ConsumerImpl"));
+		} finally {
+			second.shutdown();
+		}
+		assertEquals(1, count("Loaded"));
+		assertEquals(1, count("Saved"));
+	}
+
+	@Test
+	public void testReportAfterBatch() throws Exception {
+		if (providerJar == null) {
+			return;
+		}
+
+		PrintStream out = System.out;
+		ByteArrayOutputStream captured = new ByteArrayOutputStream();
+		PluginManager manager = manager();
+		try {
+			System.setOut(new PrintStream(captured, true));
+			manager.addPluginsFrom(Arrays.asList(providerJar.toURI(), consumerJar.toURI()), new OptionReportAfter());
+		} finally {
+			System.setOut(out);
+			manager.shutdown();
+		}
+
+		String report = captured.toString();
+		assertTrue(report.contains(">>> Class Report <<<"));
+		assertTrue(report.contains("batch.consumer.ConsumerImpl"));
+		assertTrue(report.contains("batch.provider.ProviderImpl"));
+	}
+
+	@Test
+	public void testInitMayAddPlugins() throws Exception {
+		if (providerJar == null) {
+			return;
+		}
+
+		final PluginManager manager = manager();
+		current = manager;
+		nested = providerJar.toURI();
+		try {
+			// Spawns on a pool, the init runs on another thread than the batch
+			Thread adding = new Thread() {
+				@Override
+				public void run() {
+					manager.addPluginsFrom(adderJar.toURI());
+				}
+			};
+			adding.setDaemon(true);
+			adding.start();
+			adding.join(10000);
+
+			assertFalse(adding.isAlive());
+			assertNotNull(plugin(manager, "batch.adder.AdderImpl"));
+			assertNotNull(plugin(manager, "batch.provider.ProviderImpl"));
+		} finally {
+			current = null;
+			manager.shutdown();
+		}
+	}
+
+	public static void addNested() {
+		current.addPluginsFrom(nested);
+	}
+
+	private PluginManager manager() {
+		JSPFProperties properties = new JSPFProperties();
+		properties.setProperty(PluginManager.class, "cache.enabled", "true");
+		properties.setProperty(PluginManager.class, "cache.file", new File(dir, "jspf.cache").getPath());
+		properties.setProperty(PluginManager.class, "spawn.threads", "4");
+		return PluginManagerFactory.createPluginManager(properties);
+	}
+
+	private static Plugin plugin(PluginManager manager, String className) {
+		for (Plugin plugin : manager.getPlugins(Plugin.class)) {
+			if (plugin.getClass().getName().equals(className)) {
+				return plugin;
+			}
+		}
+		return null;
+	}
+
+	private int count(String prefix) {
+		int rval = 0;
+		synchronized (cacheMessages) {
+			for (String message : cacheMessages) {
+				if (message.startsWith(prefix)) {
+					rval++;
+				}
+			}
+		}
+		return rval;
+	}
+
+	private File compile(JavaCompiler compiler, String name, String classpath, String... sources) throws IOException {
+		File out = new File(dir, name);
+		out.mkdirs();
+
+		List<String> args = new ArrayList<String>(Arrays.asList("-d", out.getPath(), "-cp", classpath + File.pathSeparator + System.getProperty("java.class.path")));
+		for (int i = 0; i < sources.length; i += 2) {
+			File file = new File(dir, "src/" + sources[i]);
+			file.getParentFile().mkdirs();
+			Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+			try {
+				writer.write(sources[i + 1]);
+			} finally {
+				writer.close();
+			}
+			args.add(file.getPath());
+		}
+
+		if (compiler.run(null, null, null, args.toArray(new String[args.size()])) != 0) {
+			throw new IOException("Unable to compile " + name);
+		}
+		return out;
+	}
+
+	private static File jar(File directory, File target) throws IOException {
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(target));
+		try {
+			add(out, directory, "");
+		} finally {
+			out.close();
+		}
+		return target;
+	}
+
+	private static void add(JarOutputStream out, File directory, String prefix) throws IOException {
+		for (File file : directory.listFiles()) {
+			String name = prefix + file.getName();
+			if (file.isDirectory()) {
+				add(out, file, name + "/");
+				continue;
+			}
+			out.putNextEntry(new JarEntry(name));
+			Files.copy(file.toPath(), out);
+			out.closeEntry();
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,334 @@
+package io.core9.core.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collection;
+
+import net.xeoh.plugins.base.impl.classpath.cache.JARCache;
+import net.xeoh.plugins.base.impl.classpath.cache.JARCache.JARInformation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JARCacheTest {
+
+	File directory;
+
+	File cacheFile;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("jarcache").toFile();
+		cacheFile = new File(directory, "jspf.plugin.cache");
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testEntriesSurviveRoundTrip() throws IOException {
+		File jar = jar("a.jar");
+
+		JARCache first = cache();
+		JARInformation information = first.getJARInformationFor(jar.toURI());
+		information.classesValid = true;
+		information.classes.add("a.A");
+		information.subclasses.put("a.Plugin", Arrays.asList("a.A", "a.B"));
+		information.descriptors.put("a.A", Arrays.asList("field:x", "method:init"));
+		first.saveCache();
+
+		JARCache second = cache();
+		JARInformation loaded = second.getJARInformationFor(jar.toURI());
+
+		assertEquals(1, second.getHits());
+		assertEquals(0, second.getMisses());
+		assertTrue(loaded.classesValid);
+		assertEquals(Arrays.asList("a.A"), loaded.classes);
+		assertEquals(Arrays.asList("a.A", "a.B"), loaded.subclasses.get("a.Plugin"));
+		assertEquals(Arrays.asList("field:x", "method:init"), loaded.descriptors.get("a.A"));
+		assertEquals(2, loaded.usageCount);
+	}
+
+	@Test
+	public void testOtherVersionIsReplaced() throws IOException {
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(cacheFile));
+		out.writeLong(0x4A53504643414348L);
+		out.writeInt(99);
+		out.writeInt(0);
+		out.close();
+
+		File jar = jar("a.jar");
+		JARCache first = cache();
+		first.getJARInformationFor(jar.toURI()).subclasses.put("a.Plugin", Arrays.asList("a.A"));
+
+		assertEquals(1, first.getMisses());
+		first.saveCache();
+
+		JARCache second = cache();
+		assertEquals(Arrays.asList("a.A"), second.getJARInformationFor(jar.toURI()).subclasses.get("a.Plugin"));
+		assertEquals(1, second.getHits());
+	}
+
+	@Test
+	public void testTruncatedFileIsIgnored() throws IOException {
+		File jar = jar("a.jar");
+		JARCache first = cache();
+		first.getJARInformationFor(jar.toURI()).subclasses.put("a.Plugin", Arrays.asList("a.A"));
+		first.saveCache();
+
+		for (long length = cacheFile.length() - 1; length > 0; length /= 2) {
+			RandomAccessFile raf = new RandomAccessFile(cacheFile, "rw");
+			raf.setLength(length);
+			raf.close();
+
+			JARCache truncated = cache();
+			truncated.getJARInformationFor(jar.toURI());
+			assertEquals(1, truncated.getMisses());
+		}
+	}
+
+	@Test
+	public void testEntriesOfOtherCachesAreMerged() throws IOException {
+		File a = jar("a.jar");
+		File b = jar("b.jar");
+
+		JARCache first = cache();
+		JARCache second = cache();
+
+		first.getJARInformationFor(a.toURI()).subclasses.put("Plugin", Arrays.asList("a.A"));
+		second.getJARInformationFor(b.toURI()).subclasses.put("Plugin", Arrays.asList("b.B"));
+		first.saveCache();
+		second.saveCache();
+
+		JARCache third = cache();
+		assertEquals(Arrays.asList("a.A"), third.getJARInformationFor(a.toURI()).subclasses.get("Plugin"));
+		assertEquals(Arrays.asList("b.B"), third.getJARInformationFor(b.toURI()).subclasses.get("Plugin"));
+		assertEquals(2, third.getEntryCount());
+	}
+
+	@Test
+	public void testConcurrentSavesKeepAllEntries() throws Exception {
+		final File[] jars = new File[8];
+		final JARCache[] caches = new JARCache[jars.length];
+		for (int i = 0; i < jars.length; i++) {
+			jars[i] = jar(i + ".jar");
+			caches[i] = cache();
+			caches[i].getJARInformationFor(jars[i].toURI()).subclasses.put("Plugin", Arrays.asList("c" + i));
+		}
+
+		Thread[] threads = new Thread[jars.length];
+		for (int i = 0; i < jars.length; i++) {
+			final JARCache cache = caches[i];
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					cache.saveCache();
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		JARCache merged = cache();
+		for (int i = 0; i < jars.length; i++) {
+			assertEquals(Arrays.asList("c" + i), merged.getJARInformationFor(jars[i].toURI()).subclasses.get("Plugin"));
+		}
+		assertFalse(new File(cacheFile.getPath() + ".tmp").exists());
+		assertTrue(new File(cacheFile.getPath() + ".lock").exists());
+	}
+
+	@Test
+	public void testAccessOnlyUpdatesFileInPlace() throws IOException {
+		File jar = jar("a.jar");
+		JARCache first = cache();
+		first.getJARInformationFor(jar.toURI()).subclasses.put("Plugin", Arrays.asList("a.A"));
+		first.saveCache();
+
+		Object fileKey = fileKey();
+		long length = cacheFile.length();
+
+		JARCache second = cache();
+		second.getJARInformationFor(jar.toURI());
+		second.saveCache();
+
+		assertEquals(fileKey, fileKey());
+		assertEquals(length, cacheFile.length());
+		assertEquals(3, cache().getJARInformationFor(jar.toURI()).usageCount);
+
+		// A changed entry is written to a new file, which replaces the old one
+		JARCache third = cache();
+		third.getJARInformationFor(jar.toURI()).subclasses.put("Other", Arrays.asList("a.B"));
+		third.saveCache();
+
+		assertFalse(fileKey.equals(fileKey()));
+		Collection<String> other = cache().getJARInformationFor(jar.toURI()).subclasses.get("Other");
+		assertEquals(Arrays.asList("a.B"), other);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEntriesAreEvicted() throws IOException {
+		JARCache first = cache();
+		access(first, jar("a.jar"), 1000, 1);
+		access(first, jar("b.jar"), 3000, 1);
+		access(first, jar("c.jar"), 2000, 1);
+		first.saveCache();
+
+		JARCache second = cache();
+		second.setMaxEntries(3);
+		second.getJARInformationFor(jar("d.jar").toURI());
+		second.saveCache();
+
+		JARCache third = cache();
+		assertEquals(3, third.getEntryCount());
+		assertEquals(1, third.getJARInformationFor(new File(directory, "a.jar").toURI()).usageCount);
+		for (String name : new String[] { "b.jar", "c.jar", "d.jar" }) {
+			third.getJARInformationFor(new File(directory, name).toURI());
+		}
+		assertEquals(3, third.getHits());
+		assertEquals(1, third.getMisses());
+	}
+
+	@Test
+	public void testRarelyUsedEntriesBreakTies() throws IOException {
+		JARCache first = cache();
+		access(first, jar("a.jar"), 1000, 5);
+		access(first, jar("b.jar"), 1000, 1);
+		access(first, jar("c.jar"), 500, 5);
+		first.saveCache();
+
+		JARCache second = cache();
+		second.setMaxEntries(2);
+		second.setMinUsage(3);
+		second.getJARInformationFor(jar("d.jar").toURI());
+		second.saveCache();
+
+		// c is the oldest, b is used rarely
+		JARCache third = cache();
+		assertTrue(third.getJARInformationFor(new File(directory, "a.jar").toURI()).usageCount > 5);
+		assertEquals(1, third.getJARInformationFor(new File(directory, "b.jar").toURI()).usageCount);
+		assertEquals(1, third.getJARInformationFor(new File(directory, "c.jar").toURI()).usageCount);
+		assertEquals(1, third.getHits());
+	}
+
+	@Test
+	public void testEntriesOfThisProcessAreKept() throws IOException {
+		JARCache first = cache();
+		access(first, jar("a.jar"), System.currentTimeMillis(), 100);
+		access(first, jar("b.jar"), System.currentTimeMillis(), 100);
+		first.saveCache();
+
+		// New JARs stay although the cache is full of frequently used ones
+		JARCache second = cache();
+		second.setMaxEntries(1);
+		second.getJARInformationFor(jar("c.jar").toURI());
+		second.getJARInformationFor(jar("d.jar").toURI());
+		second.saveCache();
+
+		JARCache third = cache();
+		assertEquals(2, third.getEntryCount());
+		third.getJARInformationFor(new File(directory, "c.jar").toURI());
+		third.getJARInformationFor(new File(directory, "d.jar").toURI());
+		assertEquals(2, third.getHits());
+	}
+
+	@Test
+	public void testHitRate() throws IOException {
+		File a = jar("a.jar");
+		File b = jar("b.jar");
+
+		JARCache first = cache();
+		assertEquals(0, first.getHitRate(), 0);
+		first.getJARInformationFor(a.toURI());
+		first.getJARInformationFor(a.toURI());
+		first.getJARInformationFor(a.toURI());
+		first.getJARInformationFor(b.toURI());
+		assertEquals(2, first.getHits());
+		assertEquals(0.5, first.getHitRate(), 0);
+
+		first.saveCache();
+
+		JARCache second = cache();
+		second.getJARInformationFor(a.toURI());
+		second.getJARInformationFor(b.toURI());
+		assertEquals(2, second.getHits());
+		assertEquals(0, second.getMisses());
+		assertEquals(1, second.getHitRate(), 0);
+	}
+
+	@Test
+	public void testSaveWhileScanning() throws Exception {
+		final File[] jars = new File[16];
+		for (int i = 0; i < jars.length; i++) {
+			jars[i] = jar(i + ".jar");
+		}
+
+		final JARCache cache = cache();
+		cache.setMaxEntries(4);
+
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 100; i++) {
+						cache.getJARInformationFor(jars[i % jars.length].toURI()).subclasses.put("Plugin" + i, Arrays.asList("p"));
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (int i = 0; i < 20; i++) {
+			cache.saveCache();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		cache.saveCache();
+
+		assertEquals(400, cache.getHits() + cache.getMisses());
+		// All JARs were used by this process, so none is evicted
+		assertEquals(jars.length, cache().getEntryCount());
+	}
+
+	private void access(JARCache cache, File jar, long lastAccess, int usageCount) {
+		JARInformation information = cache.getJARInformationFor(jar.toURI());
+		information.lastAccess = lastAccess;
+		information.usageCount = usageCount;
+	}
+
+	private JARCache cache() {
+		JARCache rval = new JARCache();
+		rval.setEnabled(true);
+		rval.setCachePath(cacheFile.getPath());
+		rval.loadCache();
+		return rval;
+	}
+
+	private File jar(String name) throws IOException {
+		File rval = new File(directory, name);
+		Files.write(rval.toPath(), name.getBytes());
+		return rval;
+	}
+
+	private Object fileKey() throws IOException {
+		return Files.readAttributes(cacheFile.toPath(), BasicFileAttributes.class).fileKey();
+	}
+}
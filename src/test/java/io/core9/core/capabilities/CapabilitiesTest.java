@@ -0,0 +1,49 @@
+package io.core9.core.capabilities;
+
+import static org.junit.Assert.assertTrue;
+import io.core9.core.PluginRegistry;
+import io.core9.core.PluginRegistryImpl;
+import io.core9.core.boot.BootstrapFramework;
+import net.xeoh.plugins.base.PluginManager;
+import net.xeoh.plugins.base.options.getplugin.OptionCapabilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CapabilitiesTest {
+
+	PluginRegistry registry;
+		
+	@Before
+	public void setUp() {
+		BootstrapFramework.run();
+		registry = PluginRegistryImpl.getInstance();
+	}
+	
+
+	@Test
+	public void testPluginWithCapabilities() {
+		PluginManager manager = registry.getManager();
+		assertTrue(manager.getPlugin(TestPlugin.class, new OptionCapabilities("language:english")) != null);
+		assertTrue(manager.getPlugin(TestPlugin.class, new OptionCapabilities("language:english", "language:swahili")) == null);
+	}
+
+	@Test
+	public void testNullCapabilitiesAreIgnored() {
+		PluginManager manager = registry.getManager();
+		assertTrue(manager.getPlugin(TestPlugin.class, new OptionCapabilities("language:english", null)) != null);
+		assertTrue(manager.getPlugin(TestPlugin.class, new OptionCapabilities((String) null)) != null);
+	}
+
+	@Test
+	public void testRefreshCapabilities() {
+		PluginManager manager = registry.getManager();
+		TestPlugin plugin = manager.getPlugin(TestPlugin.class);
+		plugin.addCapability("language:german");
+		assertTrue(manager.getPlugin(TestPlugin.class, new OptionCapabilities("language:german")) == null);
+		
+		manager.getPluginRegistry().refreshCapabilities(plugin);
+		assertTrue(manager.getPlugin(TestPlugin.class, new OptionCapabilities("language:german")) == plugin);
+	}
+
+}
@@ -0,0 +1,7 @@
+package io.core9.core.capabilities;
+
+import io.core9.core.plugin.Core9Plugin;
+
+public interface TestPlugin extends Core9Plugin {
+	void addCapability(String capability);
+}
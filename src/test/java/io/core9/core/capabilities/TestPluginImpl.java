@@ -0,0 +1,27 @@
+package io.core9.core.capabilities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.xeoh.plugins.base.annotations.Capabilities;
+import net.xeoh.plugins.base.annotations.PluginImplementation;
+
+@PluginImplementation
+public class TestPluginImpl implements TestPlugin {
+	
+	private List<String> capabilities = new ArrayList<String>();
+	
+	public TestPluginImpl() {
+		capabilities.add("language:english");
+	}
+
+	@Capabilities
+	public String[] getCapabilities() {
+		return capabilities.toArray(new String[capabilities.size()]);
+	}
+
+	@Override
+	public void addCapability(String capability) {
+		capabilities.add(capability);
+	}
+}
@@ -0,0 +1,140 @@
+package io.core9.core.classpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import net.xeoh.plugins.base.impl.classpath.locator.ClassFilter;
+
+import org.junit.Test;
+
+public class ClassFilterTest {
+
+	@Test
+	public void testEmptyFilterIsAll() {
+		assertSame(ClassFilter.ALL, ClassFilter.compile(null, Arrays.asList(" ", "")));
+		assertTrue(ClassFilter.ALL.accepts("a.b.C"));
+		assertTrue(ClassFilter.ALL.mayContain("a.b"));
+
+		Collection<String> names = Arrays.asList("a.A", "b.B");
+		assertSame(names, ClassFilter.ALL.filter(names));
+	}
+
+	@Test
+	public void testSingleStarStaysInPackage() {
+		ClassFilter filter = ClassFilter.compile(Arrays.asList("a.b.*"), null);
+
+		assertTrue(filter.accepts("a.b.C"));
+		assertTrue(filter.accepts("a.b.C$Inner"));
+		assertFalse(filter.accepts("a.b.c.D"));
+		assertFalse(filter.accepts("a.bC"));
+	}
+
+	@Test
+	public void testDoubleStarCrossesPackages() {
+		ClassFilter filter = ClassFilter.compile(Arrays.asList("a.**"), null);
+
+		assertTrue(filter.accepts("a.B"));
+		assertTrue(filter.accepts("a.b.c.D"));
+		assertFalse(filter.accepts("a"));
+		assertFalse(filter.accepts("ab.C"));
+	}
+
+	@Test
+	public void testDotsAndRegexCharactersAreLiteral() {
+		ClassFilter filter = ClassFilter.compile(Arrays.asList("a.b$C", "x.y+*"), null);
+
+		assertTrue(filter.accepts("a.b$C"));
+		assertFalse(filter.accepts("aXb$C"));
+		assertTrue(filter.accepts("x.y+Z"));
+		assertFalse(filter.accepts("x.yyZ"));
+	}
+
+	@Test
+	public void testExcludesWinOverIncludes() {
+		ClassFilter filter = ClassFilter.compile(Arrays.asList("a.**"), Arrays.asList("a.b.**", "*Test"));
+
+		assertTrue(filter.accepts("a.C"));
+		assertFalse(filter.accepts("a.b.C"));
+		assertFalse(filter.accepts("a.b.c.D"));
+		assertTrue(filter.accepts("a.bc.D"));
+		assertFalse(filter.accepts("FooTest"));
+		assertTrue(filter.accepts("a.FooTest"));
+	}
+
+	@Test
+	public void testExcludedSubtreesAreSkipped() {
+		ClassFilter filter = ClassFilter.compile(null, Arrays.asList("a.b.**", "x.*.internal.**"));
+
+		assertTrue(filter.mayContain(""));
+		assertTrue(filter.mayContain("a"));
+		assertFalse(filter.mayContain("a.b"));
+		assertFalse(filter.mayContain("a.b.c"));
+		assertTrue(filter.mayContain("a.bc"));
+
+		// Wildcards before the last segment cannot be decided by package name
+		assertTrue(filter.mayContain("x.y.internal"));
+		assertFalse(filter.accepts("x.y.internal.Z"));
+	}
+
+	@Test
+	public void testIncludesLimitPackages() {
+		ClassFilter filter = ClassFilter.compile(Arrays.asList("com.acme.**"), null);
+
+		assertTrue(filter.mayContain("com"));
+		assertTrue(filter.mayContain("com.acme"));
+		assertTrue(filter.mayContain("com.acme.deep.er"));
+		assertFalse(filter.mayContain("org"));
+		assertFalse(filter.mayContain("com.other"));
+	}
+
+	@Test
+	public void testIncludeWithoutWildcardNamesOneClass() {
+		ClassFilter filter = ClassFilter.compile(Arrays.asList("a.b.C"), null);
+
+		assertTrue(filter.accepts("a.b.C"));
+		assertFalse(filter.accepts("a.b.CD"));
+		assertFalse(filter.accepts("a.b.C.D"));
+
+		assertTrue(filter.mayContain("a"));
+		assertTrue(filter.mayContain("a.b"));
+		assertFalse(filter.mayContain("a.b.C"));
+		assertFalse(filter.mayContain("a.bx"));
+		assertFalse(filter.mayContain("a.b.c"));
+	}
+
+	@Test
+	public void testIncludingAddsAnotherRequiredGroup() {
+		ClassFilter filter = ClassFilter.compile(Arrays.asList("a.**", "b.**"), null).including("*.Plugin*");
+
+		assertTrue(filter.accepts("a.PluginImpl"));
+		assertTrue(filter.accepts("b.Plugin"));
+		assertFalse(filter.accepts("a.Other"));
+		assertFalse(filter.accepts("c.Plugin"));
+
+		assertTrue(filter.mayContain("a"));
+		assertFalse(filter.mayContain("c"));
+	}
+
+	@Test
+	public void testFilter() {
+		ClassFilter filter = ClassFilter.compile(Arrays.asList("a.**"), Arrays.asList("a.internal.**"));
+
+		assertEquals(Arrays.asList("a.A", "a.b.B"), filter.filter(Arrays.asList("a.A", "b.B", "a.internal.I", "a.b.B")));
+		assertEquals(Collections.<String> emptyList(), filter.filter(Collections.<String> emptyList()));
+	}
+
+	@Test
+	public void testToStringDiffersByFilter() {
+		ClassFilter first = ClassFilter.compile(Arrays.asList("a.**"), null);
+		ClassFilter second = ClassFilter.compile(Arrays.asList("a.**"), Arrays.asList("a.b.**"));
+
+		assertFalse(first.toString().equals(second.toString()));
+		assertEquals("", ClassFilter.ALL.toString());
+	}
+}
@@ -0,0 +1,100 @@
+package io.core9.core.classpath;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import net.xeoh.plugins.base.impl.classpath.locator.locations.FileClasspathLocation;
+
+/**
+ * Lists an exploded directory of class files with FileClasspathLocation and with the
+ * recursive File.listFiles() walk it used before. Arguments: number of classes (50000),
+ * number of packages (500), number of runs (5).
+ */
+public class DirectoryScannerBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int classes = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		int packages = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		File root = Files.createTempDirectory("scanner").toFile();
+		try {
+			for (int i = 0; i < classes; i++) {
+				File directory = new File(root, "p" + (i % 10) + "/q" + (i % packages));
+				directory.mkdirs();
+				new File(directory, "C" + i + ".class").createNewFile();
+			}
+
+			FileClasspathLocation location = new FileClasspathLocation(null, "benchmark", root.toURI());
+			for (int run = 0; run < runs; run++) {
+				long start = System.nanoTime();
+				int legacy = legacyListing(root).size();
+				long middle = System.nanoTime();
+				int current = location.listToplevelClassNames().size();
+				long end = System.nanoTime();
+
+				System.out.println("run " + run + ": legacy " + legacy + " classes in " + (middle - start) / 1000000 + " ms, scanner " + current + " classes in " + (end - middle) / 1000000 + " ms");
+			}
+		} finally {
+			delete(root);
+		}
+	}
+
+	/**
+	 * The listing FileClasspathLocation did before it used DirectoryScanner.
+	 */
+	private static Collection<String> legacyListing(File toplevel) throws IOException {
+		Collection<String> rval = new ArrayList<String>();
+		for (File file : legacyFiles(toplevel, new ArrayList<String>())) {
+			if (!file.getAbsolutePath().endsWith(".class"))
+				continue;
+
+			String name = file.getAbsolutePath().replaceAll(Pattern.quote(toplevel.getAbsolutePath()), "");
+			name = name.substring(1).replace("\\", "/").replace("/", ".");
+			rval.add(name.substring(0, name.length() - 6));
+		}
+		return rval;
+	}
+
+	private static List<File> legacyFiles(File directory, List<String> visited) throws IOException {
+		List<File> rval = new ArrayList<File>();
+		if (directory.listFiles() == null)
+			return rval;
+
+		for (File file : directory.listFiles()) {
+			boolean skip = false;
+			for (String ignore : new String[] { "/dev/", "/sys/", "/proc/" }) {
+				if (file.getAbsolutePath().contains(ignore))
+					skip = true;
+			}
+			if (skip)
+				continue;
+
+			rval.add(file);
+
+			String canonical = file.getCanonicalPath();
+			if (visited.contains(canonical))
+				continue;
+			visited.add(canonical);
+
+			if (file.isDirectory())
+				rval.addAll(legacyFiles(file, visited));
+		}
+		return rval;
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,236 @@
+package io.core9.core.classpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import net.xeoh.plugins.base.impl.classpath.cache.JARCache;
+import net.xeoh.plugins.base.impl.classpath.cache.JARCache.JARInformation;
+import net.xeoh.plugins.base.impl.classpath.index.PluginIndex;
+import net.xeoh.plugins.base.impl.classpath.locator.locations.JARClasspathLocation;
+import net.xeoh.plugins.base.impl.classpath.locator.locations.PooledJARFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PooledJARFileTest {
+
+	File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("pooled").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testUsersShareOneOpenFile() throws IOException {
+		File jar = jar("a.jar", "a/A.class", "a/resource.txt");
+
+		PooledJARFile first = PooledJARFile.acquire(jar.toURI());
+		PooledJARFile second = PooledJARFile.acquire(jar.toURI());
+		assertSame(first, second);
+
+		first.release();
+		InputStream in = second.getInputStream("a/resource.txt");
+		assertNotNull(in);
+		in.close();
+		assertNull(second.getInputStream("a/missing.txt"));
+
+		second.release();
+		try {
+			second.getInputStream("a/resource.txt");
+			fail("JAR still open after the last release");
+		} catch (IllegalStateException e) {
+			// closed
+		} catch (IOException e) {
+			// closed
+		}
+
+		PooledJARFile third = PooledJARFile.acquire(jar.toURI());
+		assertFalse(third == second);
+		third.release();
+	}
+
+	@Test
+	public void testConcurrentUsersShareOneOpenFile() throws Exception {
+		final File jar = jar("a.jar", "a/A.class");
+		final PooledJARFile[] acquired = new PooledJARFile[8];
+
+		Thread[] threads = new Thread[acquired.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						acquired[index] = PooledJARFile.acquire(jar.toURI());
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		Set<PooledJARFile> distinct = new HashSet<PooledJARFile>(Arrays.asList(acquired));
+		assertEquals(1, distinct.size());
+		assertEquals(Arrays.asList("a.A"), acquired[0].listToplevelClassNames());
+
+		for (PooledJARFile file : acquired) {
+			file.release();
+		}
+	}
+
+	@Test
+	public void testFailedOpenLeavesNothingBehind() throws IOException {
+		File jar = new File(directory, "late.jar");
+		try {
+			PooledJARFile.acquire(jar.toURI());
+			fail("Opened a missing JAR");
+		} catch (IOException e) {
+			// expected
+		}
+
+		jar("late.jar", "b/B.class");
+		PooledJARFile file = PooledJARFile.acquire(jar.toURI());
+		assertEquals(Arrays.asList("b.B"), file.listToplevelClassNames());
+		file.release();
+	}
+
+	@Test
+	public void testListingsFollowChanges() throws IOException {
+		File jar = jar("a.jar", "a/A.class");
+		Collection<String> entries = PooledJARFile.listAllEntries(jar.toURI());
+		assertEquals(Arrays.asList("a/A.class"), entries);
+
+		jar("a.jar", "a/A.class", "a/B.class", "a/C.class");
+		assertTrue(jar.setLastModified(jar.lastModified() + 2000));
+		assertEquals(new HashSet<String>(Arrays.asList("a.A", "a.B", "a.C")), new HashSet<String>(PooledJARFile.listToplevelClassNames(jar.toURI())));
+	}
+
+	@Test
+	public void testEntryStreamsHoldTheFileUntilClosed() throws IOException {
+		File jar = jar("a.jar", "a/A.class", "a/resource.txt");
+
+		InputStream in = PooledJARFile.openEntry(jar.toURI(), "a/resource.txt");
+		PooledJARFile held = PooledJARFile.acquire(jar.toURI());
+		held.release();
+
+		// The stream still holds the file, so it is shared
+		PooledJARFile shared = PooledJARFile.acquire(jar.toURI());
+		assertSame(held, shared);
+		shared.release();
+
+		assertEquals("a/resource.txt", new String(read(in)));
+		in.close();
+		in.close();
+
+		PooledJARFile reopened = PooledJARFile.acquire(jar.toURI());
+		assertFalse(reopened == held);
+		reopened.release();
+
+		// Missing entries don't keep the file open either
+		assertNull(PooledJARFile.openEntry(jar.toURI(), "a/missing.txt"));
+		assertNull(PooledJARFile.openEntry(jar.toURI(), "a/"));
+		PooledJARFile last = PooledJARFile.acquire(jar.toURI());
+		assertFalse(last == reopened);
+		last.release();
+	}
+
+	@Test
+	public void testPluginIndexIsRememberedByTheCache() throws IOException {
+		File plain = jar("plain.jar", "a/A.class");
+		File indexed = indexedJar("indexed.jar", "b.B");
+
+		JARCache cache = new JARCache();
+		cache.setEnabled(true);
+		cache.setCachePath(new File(directory, "jspf.cache").getPath());
+
+		assertNull(location(cache, plain).getPredefinedPluginList());
+		assertTrue(cache.getJARInformationFor(plain.toURI()).subclasses.containsKey(JARInformation.NO_INDEX));
+
+		assertEquals(Arrays.asList("b.B"), new ArrayList<String>(location(cache, indexed).getPredefinedPluginList()));
+
+		// Later locations take the index from the cache instead of the JAR
+		JARInformation information = cache.getJARInformationFor(indexed.toURI());
+		assertEquals(Arrays.asList("b.B"), new ArrayList<String>(information.subclasses.get(JARInformation.INDEX)));
+		information.subclasses.put(JARInformation.INDEX, Arrays.asList("b.Cached"));
+		assertEquals(Arrays.asList("b.Cached"), new ArrayList<String>(location(cache, indexed).getPredefinedPluginList()));
+	}
+
+	private static JARClasspathLocation location(JARCache cache, File jar) {
+		return new JARClasspathLocation(cache, "test", jar.toURI());
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[256];
+		int read;
+		while ((read = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	private File indexedJar(String name, String... classNames) throws IOException {
+		List<PluginIndex.Entry> entries = new ArrayList<PluginIndex.Entry>();
+		for (String className : classNames) {
+			entries.add(new PluginIndex.Entry(className, Collections.<String> emptyList(), Collections.<String> emptyList()));
+		}
+		StringWriter index = new StringWriter();
+		PluginIndex.write(index, entries);
+
+		File rval = new File(directory, name);
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(rval));
+		out.putNextEntry(new JarEntry(PluginIndex.PATH));
+		out.write(index.toString().getBytes("UTF-8"));
+		out.closeEntry();
+		out.close();
+		return rval;
+	}
+
+	private File jar(String name, String... entries) throws IOException {
+		File rval = new File(directory, name);
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(rval));
+		for (String entry : entries) {
+			out.putNextEntry(new JarEntry(entry));
+			out.write(entry.getBytes());
+			out.closeEntry();
+		}
+		out.close();
+		return rval;
+	}
+}
@@ -0,0 +1,57 @@
+package io.core9.core.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CommandProviderTest {
+
+	static Command command(String name, int priority) {
+		return new Command(name, priority) {
+			@Override
+			public Object[] execute(Object... args) {
+				return args;
+			}
+		};
+	}
+
+	@Test
+	public void testFrozenCommandsKeepPriorityOrder() {
+		CommandProvider provider = new CommandProvider();
+		Command late = command("Plugin:run", 20);
+		Command early = command("Plugin:run", 10);
+		provider.registerCommands(Arrays.asList(late, early));
+
+		assertFalse(provider.isFrozen());
+		provider.freeze();
+		assertTrue(provider.isFrozen());
+
+		List<Command> commands = new ArrayList<Command>(provider.getCommands("Plugin", "run"));
+		assertEquals(Arrays.asList(early, late), commands);
+		assertNull(provider.getCommands("Plugin", "other"));
+		assertNull(provider.getCommands("Other", "run"));
+	}
+
+	@Test
+	public void testRegisterAfterFreezeFails() {
+		CommandProvider provider = new CommandProvider();
+		provider.freeze();
+
+		try {
+			provider.registerCommands(Collections.singletonList(command("Plugin:run", 1)));
+			fail("Registering after freeze must fail");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertNull(provider.getCommands("Plugin", "run"));
+	}
+}
@@ -0,0 +1,30 @@
+package io.core9.core.dependencies;
+
+import static org.junit.Assert.assertTrue;
+import io.core9.core.PluginRegistry;
+import io.core9.core.PluginRegistryImpl;
+import io.core9.core.boot.BootstrapFramework;
+import net.xeoh.plugins.base.PluginManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DependenciesTest {
+
+	PluginRegistry registry;
+
+	@Before
+	public void setUp() {
+		BootstrapFramework.run();
+		registry = PluginRegistryImpl.getInstance();
+	}
+
+	@Test
+	public void testDependencySpawnedFirst() {
+		PluginManager manager = registry.getManager();
+		TestPlugin plugin = manager.getPlugin(TestPlugin.class);
+		assertTrue(plugin != null);
+		assertTrue(plugin.getDependency() == manager.getPlugin(TestPlugin2.class));
+		assertTrue(plugin.getDependency().isInitialized());
+	}
+}
@@ -0,0 +1,161 @@
+package io.core9.core.dependencies;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import net.xeoh.plugins.base.Plugin;
+import net.xeoh.plugins.base.annotations.injections.InjectPlugin;
+import net.xeoh.plugins.base.impl.PluginManagerFactory;
+import net.xeoh.plugins.base.impl.PluginManagerImpl;
+import net.xeoh.plugins.base.impl.classpath.loader.DependencyResolver;
+import net.xeoh.plugins.base.impl.registry.PluginClassMetaInformation;
+import net.xeoh.plugins.base.impl.registry.PluginClassMetaInformation.PluginClassStatus;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DependencyResolverTest {
+
+	public interface Service extends Plugin {
+	}
+
+	public interface Client extends Plugin {
+	}
+
+	public interface Left extends Plugin {
+	}
+
+	public interface Right extends Plugin {
+	}
+
+	/** Not @PluginImplementations, so only spawned by the test */
+	public static class PlainService implements Service {
+	}
+
+	public static class ClientImpl implements Client {
+		@InjectPlugin
+		public Service service;
+	}
+
+	public static class ServiceUsingClient implements Service {
+		@InjectPlugin
+		public Client client;
+	}
+
+	public static class LeftImpl implements Left {
+		@InjectPlugin
+		public Right right;
+	}
+
+	public static class RightImpl implements Right {
+		@InjectPlugin
+		public Left left;
+	}
+
+	public static class Downstream implements Plugin {
+		@InjectPlugin
+		public Left left;
+	}
+
+	PluginManagerImpl manager;
+
+	final Logger logger = Logger.getAnonymousLogger();
+
+	final List<String> warnings = new ArrayList<String>();
+
+	@Before
+	public void setUp() {
+		manager = (PluginManagerImpl) PluginManagerFactory.createPluginManager();
+		logger.setUseParentHandlers(false);
+		logger.addHandler(new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				if (record.getLevel() == Level.WARNING) {
+					warnings.add(record.getMessage());
+				}
+			}
+
+			@Override
+			public void flush() {
+				//
+			}
+
+			@Override
+			public void close() {
+				//
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		manager.shutdown();
+	}
+
+	@Test
+	public void testOneSatisfyingProviderReleasesDependency() {
+		// The client needs a service, one service needs the client
+		register(ClientImpl.class);
+		register(ServiceUsingClient.class);
+		register(PlainService.class);
+
+		resolve();
+
+		assertEquals(PluginClassStatus.SPAWNED, status(ClientImpl.class));
+		assertEquals(PluginClassStatus.SPAWNED, status(ServiceUsingClient.class));
+		assertEquals(PluginClassStatus.SPAWNED, status(PlainService.class));
+		assertSame(PlainService.class, meta(ClientImpl.class).spawnedAfter);
+		assertTrue(warnings.isEmpty());
+	}
+
+	@Test
+	public void testOnlyCycleMembersAreReported() {
+		register(Downstream.class);
+		register(LeftImpl.class);
+		register(RightImpl.class);
+
+		resolve();
+
+		assertFalse(status(LeftImpl.class) == PluginClassStatus.SPAWNED);
+		assertFalse(status(Downstream.class) == PluginClassStatus.SPAWNED);
+		assertEquals(1, warnings.size());
+
+		String warning = warnings.get(0);
+		assertTrue(warning.contains(LeftImpl.class.getName()));
+		assertTrue(warning.contains(RightImpl.class.getName()));
+		assertFalse(warning.contains(Downstream.class.getName()));
+	}
+
+	private void register(Class<? extends Plugin> type) {
+		PluginClassMetaInformation meta = new PluginClassMetaInformation();
+		meta.dependencies = manager.getSpawner().getDependencies(type);
+		meta.pluginClassStatus = meta.dependencies.isEmpty() ? PluginClassStatus.SPAWNABLE : PluginClassStatus.CONTAINS_UNRESOLVED_DEPENDENCIES;
+		manager.getPluginRegistry().registerPluginClass(type, meta);
+	}
+
+	private void resolve() {
+		new DependencyResolver(manager, logger, new HashSet<Class<? extends Plugin>>()).resolve();
+	}
+
+	private PluginClassMetaInformation meta(Class<? extends Plugin> type) {
+		PluginClassMetaInformation rval = manager.getPluginRegistry().getMetaInformationFor(type);
+		assertNotNull(rval);
+		return rval;
+	}
+
+	private PluginClassStatus status(Class<? extends Plugin> type) {
+		return meta(type).pluginClassStatus;
+	}
+}
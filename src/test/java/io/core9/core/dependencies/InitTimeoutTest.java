@@ -0,0 +1,113 @@
+package io.core9.core.dependencies;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.xeoh.plugins.base.Plugin;
+import net.xeoh.plugins.base.annotations.events.Init;
+import net.xeoh.plugins.base.impl.PluginManagerFactory;
+import net.xeoh.plugins.base.impl.PluginManagerImpl;
+import net.xeoh.plugins.base.impl.registry.PluginClassMetaInformation;
+import net.xeoh.plugins.base.impl.registry.PluginMetaInformation.PluginStatus;
+import net.xeoh.plugins.base.impl.spawning.SpawnResult;
+
+import org.junit.Test;
+
+public class InitTimeoutTest {
+
+	/** Not a @PluginImplementation, so only spawned by the test */
+	public static class SlowPlugin implements Plugin {
+
+		static volatile boolean interrupted = false;
+
+		@Init(timeout = 50)
+		public void init() {
+			try {
+				Thread.sleep(10000);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+	}
+
+	/** Not a @PluginImplementation, so only spawned by the test */
+	public static class StubbornPlugin implements Plugin {
+
+		static volatile boolean interrupted = false;
+
+		@Init(timeout = 10)
+		public void init() {
+			long end = System.nanoTime() + 30000000;
+			while (System.nanoTime() < end) {
+				if (Thread.currentThread().isInterrupted()) {
+					interrupted = true;
+				}
+				Thread.yield();
+			}
+		}
+	}
+
+	@Test
+	public void testSlowInitFailsPlugin() {
+		PluginManagerImpl manager = (PluginManagerImpl) PluginManagerFactory.createPluginManager();
+		try {
+			long start = System.nanoTime();
+			SpawnResult result = manager.getSpawner().spawnPlugin(SlowPlugin.class);
+
+			assertTrue(System.nanoTime() - start < 5000000000L);
+			assertEquals(PluginStatus.FAILED, result.metaInformation.pluginStatus);
+			assertTrue(SlowPlugin.interrupted);
+			assertFalse(Thread.currentThread().isInterrupted());
+		} finally {
+			manager.shutdown();
+		}
+	}
+
+	@Test
+	public void testInitIgnoringInterruptFailsOnReturn() {
+		PluginManagerImpl manager = (PluginManagerImpl) PluginManagerFactory.createPluginManager();
+		try {
+			for (int i = 0; i < 10; i++) {
+				StubbornPlugin.interrupted = false;
+				long start = System.nanoTime();
+				SpawnResult result = manager.getSpawner().spawnPlugin(StubbornPlugin.class);
+
+				// The spawn thread was blocked until init returned, then left uninterrupted
+				assertTrue(System.nanoTime() - start >= 30000000);
+				assertEquals(PluginStatus.FAILED, result.metaInformation.pluginStatus);
+				assertTrue(StubbornPlugin.interrupted);
+				assertFalse(Thread.currentThread().isInterrupted());
+			}
+		} finally {
+			manager.shutdown();
+		}
+	}
+
+	@Test
+	public void testCriticalPathFollowsLastProvider() {
+		Map<Class<? extends Plugin>, PluginClassMetaInformation> classes = new LinkedHashMap<Class<? extends Plugin>, PluginClassMetaInformation>();
+		classes.put(TestPluginImpl2.class, timing(0, 10, null));
+		classes.put(SlowPlugin.class, timing(0, 40, null));
+		classes.put(TestPluginImpl.class, timing(10, 20, TestPluginImpl2.class));
+
+		assertEquals(Arrays.<Class<? extends Plugin>> asList(SlowPlugin.class),
+		        net.xeoh.plugins.base.impl.registry.PluginRegistry.criticalPath(classes));
+
+		classes.get(TestPluginImpl.class).spawnEnd = 50;
+		assertEquals(Arrays.<Class<? extends Plugin>> asList(TestPluginImpl2.class, TestPluginImpl.class),
+		        net.xeoh.plugins.base.impl.registry.PluginRegistry.criticalPath(classes));
+	}
+
+	private static PluginClassMetaInformation timing(long start, long end, Class<? extends Plugin> after) {
+		PluginClassMetaInformation rval = new PluginClassMetaInformation();
+		rval.spawnStart = start;
+		rval.spawnEnd = end;
+		rval.spawnedAfter = after;
+		return rval;
+	}
+}
@@ -0,0 +1,7 @@
+package io.core9.core.dependencies;
+
+import io.core9.core.plugin.Core9Plugin;
+
+public interface TestPlugin extends Core9Plugin {
+	TestPlugin2 getDependency();
+}
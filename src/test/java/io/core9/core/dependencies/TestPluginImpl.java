@@ -0,0 +1,16 @@
+package io.core9.core.dependencies;
+
+import net.xeoh.plugins.base.annotations.PluginImplementation;
+import net.xeoh.plugins.base.annotations.injections.InjectPlugin;
+
+@PluginImplementation
+public class TestPluginImpl implements TestPlugin {
+
+	@InjectPlugin
+	public TestPlugin2 dependency;
+
+	@Override
+	public TestPlugin2 getDependency() {
+		return dependency;
+	}
+}
@@ -0,0 +1,20 @@
+package io.core9.core.dependencies;
+
+import net.xeoh.plugins.base.annotations.PluginImplementation;
+import net.xeoh.plugins.base.annotations.events.Init;
+
+@PluginImplementation
+public class TestPluginImpl2 implements TestPlugin2 {
+
+	private boolean initialized = false;
+
+	@Init
+	public void init() {
+		initialized = true;
+	}
+
+	@Override
+	public boolean isInitialized() {
+		return initialized;
+	}
+}
@@ -0,0 +1,211 @@
+package io.core9.core.descriptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import net.xeoh.plugins.base.Plugin;
+import net.xeoh.plugins.base.annotations.Capabilities;
+import net.xeoh.plugins.base.annotations.events.Init;
+import net.xeoh.plugins.base.annotations.injections.InjectPlugin;
+import net.xeoh.plugins.base.impl.spawning.PluginDescriptor;
+
+import org.junit.Test;
+
+public class PluginDescriptorTest {
+
+	public static class DescribedPlugin implements Plugin {
+
+		@InjectPlugin
+		public Plugin other;
+
+		boolean initialized = false;
+
+		@Init
+		public boolean init() {
+			initialized = true;
+			return true;
+		}
+
+		@Capabilities
+		public String[] capabilities() {
+			return new String[] { "described" };
+		}
+	}
+
+	public static class BoundPlugin implements Plugin {
+
+		@InjectPlugin
+		public Plugin other;
+
+		@Init
+		public boolean init() {
+			return true;
+		}
+	}
+
+	public static class StalePlugin implements Plugin {
+
+		@InjectPlugin
+		public Plugin other;
+
+		@Init
+		public boolean init() {
+			return true;
+		}
+	}
+
+	public static class StaticPlugin implements Plugin {
+
+		@InjectPlugin
+		public static Plugin other;
+
+		static int initialized = 0;
+
+		@Init
+		public static boolean init() {
+			initialized++;
+			return true;
+		}
+	}
+
+	@Test
+	public void testMembersAreDescribedAndStored() throws Exception {
+		Map<String, Collection<String>> store = new HashMap<String, Collection<String>>();
+		PluginDescriptor descriptor = PluginDescriptor.of(DescribedPlugin.class, store);
+
+		assertSame(descriptor, PluginDescriptor.of(DescribedPlugin.class));
+		assertEquals(1, descriptor.getInitMethods().size());
+		assertEquals(1, descriptor.getInjectFields().size());
+		assertEquals(1, descriptor.getDependencies().size());
+
+		Collection<String> members = store.get(DescribedPlugin.class.getName());
+		assertTrue(members.contains("init " + DescribedPlugin.class.getName() + " init"));
+		assertTrue(members.contains("inject " + DescribedPlugin.class.getName() + " other"));
+
+		DescribedPlugin plugin = (DescribedPlugin) descriptor.newInstance();
+		assertEquals(Boolean.TRUE, descriptor.getInitMethods().get(0).invoke(plugin));
+		assertTrue(plugin.initialized);
+		assertEquals(Arrays.asList("described"), Arrays.asList(descriptor.getCapabilities(plugin)));
+	}
+
+	@Test
+	public void testStaticMembersAreBound() throws Exception {
+		PluginDescriptor descriptor = PluginDescriptor.of(StaticPlugin.class, new HashMap<String, Collection<String>>());
+		Plugin plugin = descriptor.newInstance();
+
+		assertEquals(Boolean.TRUE, descriptor.getInitMethods().get(0).invoke(plugin));
+		assertEquals(1, StaticPlugin.initialized);
+
+		descriptor.getInjectFields().get(0).set(plugin, plugin);
+		assertSame(plugin, StaticPlugin.other);
+	}
+
+	@Test
+	public void testStoredMembersAreBound() throws Exception {
+		String name = BoundPlugin.class.getName();
+		Collection<String> members = Arrays.asList("init " + name + " init");
+		Map<String, Collection<String>> store = new HashMap<String, Collection<String>>();
+		store.put(name, members);
+
+		// Only the stored members are used, the class is not reflected
+		PluginDescriptor descriptor = PluginDescriptor.of(BoundPlugin.class, store);
+		assertEquals(1, descriptor.getInitMethods().size());
+		assertEquals(0, descriptor.getInjectFields().size());
+		assertSame(members, store.get(name));
+	}
+
+	@Test
+	public void testStaleMemberFallsBackToReflection() throws Exception {
+		String name = StalePlugin.class.getName();
+		Map<String, Collection<String>> store = new HashMap<String, Collection<String>>();
+		store.put(name, Arrays.asList("init " + name + " init", "init " + name + " removed"));
+
+		PluginDescriptor descriptor = PluginDescriptor.of(StalePlugin.class, store);
+		assertEquals(1, descriptor.getInitMethods().size());
+		assertEquals(1, descriptor.getInjectFields().size());
+
+		// The stale entry is replaced
+		Collection<String> members = store.get(name);
+		assertTrue(members.contains("inject " + name + " other"));
+		assertFalse(members.contains("init " + name + " removed"));
+	}
+
+	@Test
+	public void testMembersOfOtherLocationsAreNotStored() throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			return;
+		}
+
+		File dir = Files.createTempDirectory("descriptor").toFile();
+		try {
+			File base = compile(compiler, dir, "base", "", "foreign.Base", "package foreign; public class Base implements net.xeoh.plugins.base.Plugin { @net.xeoh.plugins.base.annotations.events.Init public boolean init() { return true; } }");
+			File sub = compile(compiler, dir, "sub", base.getPath(), "foreign.Sub", "package foreign; public class Sub extends Base {}");
+
+			URLClassLoader loader = new URLClassLoader(new URL[] { sub.toURI().toURL(), base.toURI().toURL() }, getClass().getClassLoader());
+			try {
+				@SuppressWarnings("unchecked")
+				Class<? extends Plugin> type = (Class<? extends Plugin>) loader.loadClass("foreign.Sub");
+
+				// A stored member of the base class is not trusted either
+				Map<String, Collection<String>> store = new HashMap<String, Collection<String>>();
+				store.put("foreign.Sub", Arrays.asList("init foreign.Base init"));
+
+				PluginDescriptor descriptor = PluginDescriptor.of(type, store);
+				assertEquals(1, descriptor.getInitMethods().size());
+				assertFalse(store.containsKey("foreign.Sub"));
+			} finally {
+				loader.close();
+			}
+		} finally {
+			delete(dir);
+		}
+	}
+
+	private static File compile(JavaCompiler compiler, File dir, String name, String classpath, String className, String source) throws Exception {
+		File out = new File(dir, name);
+		out.mkdirs();
+
+		File file = new File(dir, "src/" + name + "/" + className.replace('.', '/') + ".java");
+		file.getParentFile().mkdirs();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(source);
+		} finally {
+			writer.close();
+		}
+
+		List<String> args = new ArrayList<String>(Arrays.asList("-d", out.getPath(), "-cp", classpath + File.pathSeparator + System.getProperty("java.class.path"), file.getPath()));
+		assertEquals(0, compiler.run(null, null, null, args.toArray(new String[args.size()])));
+		return out;
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,64 @@
+package io.core9.core.diagnosis;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import io.core9.core.PluginRegistry;
+import io.core9.core.PluginRegistryImpl;
+import io.core9.core.boot.BootstrapFramework;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import net.xeoh.plugins.base.PluginManager;
+import net.xeoh.plugins.base.diagnosis.channels.tracing.PluginManagerTracer;
+import net.xeoh.plugins.base.impl.PluginManagerImpl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiagnosisTest {
+
+	private static final int ROUNDS = 100000;
+
+	PluginRegistry registry;
+
+	@Before
+	public void setUp() {
+		BootstrapFramework.run();
+		registry = PluginRegistryImpl.getInstance();
+	}
+
+	@Test
+	public void testDisabledChannelIsShared() {
+		PluginManagerImpl manager = registry.getManager();
+		assertFalse(manager.getDiagnosis().channel(PluginManagerTracer.class).isEnabled());
+		assertTrue(manager.getDiagnosis().channel(PluginManagerTracer.class) == manager.getDiagnosis().channel(PluginManagerTracer.class));
+	}
+
+	@Test
+	public void testGetPluginDoesNotAllocateForTracing() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		long thread = Thread.currentThread().getId();
+
+		PluginManager manager = registry.getManager();
+		TestPlugin plugin = manager.getPlugin(TestPlugin.class);
+		assertTrue(plugin != null);
+
+		// Warm up, so the lookup is compiled
+		for (int i = 0; i < ROUNDS; i++) {
+			manager.getPlugin(TestPlugin.class);
+		}
+
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < ROUNDS; i++) {
+			manager.getPlugin(TestPlugin.class);
+		}
+		long perLookup = (threads.getThreadAllocatedBytes(thread) - before) / ROUNDS;
+
+		assertTrue("getPlugin() allocates " + perLookup + " bytes per lookup", perLookup < 64);
+	}
+}
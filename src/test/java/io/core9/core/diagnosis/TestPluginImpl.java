@@ -0,0 +1,12 @@
+package io.core9.core.diagnosis;
+
+import net.xeoh.plugins.base.annotations.PluginImplementation;
+
+@PluginImplementation
+public class TestPluginImpl implements TestPlugin {
+
+	@Override
+	public String getName() {
+		return "diagnosis";
+	}
+}
@@ -0,0 +1,124 @@
+package io.core9.core.execution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.xeoh.plugins.base.annotations.injections.InjectExecutor.Kind;
+import net.xeoh.plugins.base.impl.spawning.ExecutionService;
+import net.xeoh.plugins.base.impl.spawning.PluginExecutor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExecutionServiceTest {
+
+	ExecutionService service;
+
+	@Before
+	public void setUp() {
+		service = new ExecutionService();
+	}
+
+	@After
+	public void tearDown() {
+		service.shutdown();
+	}
+
+	@Test
+	public void testTasksAreCountedPerPlugin() throws Exception {
+		PluginExecutor first = service.getExecutor("shared", Kind.CPU);
+		PluginExecutor second = service.getExecutor("shared", Kind.CPU);
+
+		for (int i = 0; i < 3; i++) {
+			first.submit(new Runnable() {
+				@Override
+				public void run() {
+					//
+				}
+			}).get();
+		}
+		second.submit(new Runnable() {
+			@Override
+			public void run() {
+				//
+			}
+		}).get();
+
+		// Futures complete before the view counts the task
+		first.shutdown();
+		second.shutdown();
+		assertTrue(first.awaitTermination(5, TimeUnit.SECONDS));
+		assertTrue(second.awaitTermination(5, TimeUnit.SECONDS));
+
+		assertEquals(3, first.getSubmitted());
+		assertEquals(3, first.getCompleted());
+		assertEquals(1, second.getCompleted());
+	}
+
+	@Test
+	public void testShutdownNowOnlyAffectsOwnTasks() throws Exception {
+		PluginExecutor first = service.getExecutor("io", Kind.IO);
+		PluginExecutor second = service.getExecutor("io", Kind.IO);
+
+		final CountDownLatch started = new CountDownLatch(2);
+		final AtomicBoolean firstInterrupted = new AtomicBoolean();
+		final AtomicBoolean secondInterrupted = new AtomicBoolean();
+		final CountDownLatch release = new CountDownLatch(1);
+
+		first.execute(new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					Thread.sleep(10000);
+				} catch (InterruptedException e) {
+					firstInterrupted.set(true);
+				}
+			}
+		});
+		second.execute(new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					secondInterrupted.set(true);
+				}
+			}
+		});
+
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		first.shutdown();
+		assertFalse(first.awaitTermination(50, TimeUnit.MILLISECONDS));
+		first.shutdownNow();
+		assertTrue(first.awaitTermination(5, TimeUnit.SECONDS));
+		assertTrue(firstInterrupted.get());
+
+		assertFalse(second.isShutdown());
+		release.countDown();
+		second.shutdown();
+		assertTrue(second.awaitTermination(5, TimeUnit.SECONDS));
+		assertFalse(secondInterrupted.get());
+	}
+
+	@Test
+	public void testThreadsFallBackToPlatformThreads() {
+		Thread thread = service.newThread("test", new Runnable() {
+			@Override
+			public void run() {
+				//
+			}
+		}, true, true);
+
+		assertEquals("test", thread.getName());
+		assertTrue(thread.isDaemon());
+	}
+}
@@ -0,0 +1,57 @@
+package io.core9.core.hooks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class HookProviderTest {
+
+	static Hook hook(String name, int priority) {
+		return new Hook(name, priority) {
+			@Override
+			public Object[] execute(Object... args) {
+				return args;
+			}
+		};
+	}
+
+	@Test
+	public void testFrozenHooksKeepPriorityOrder() {
+		HookProvider provider = new HookProvider();
+		Hook late = hook("Plugin:run", 20);
+		Hook early = hook("Plugin:run", 10);
+		provider.registerHooks(Arrays.asList(late, early));
+
+		assertFalse(provider.isFrozen());
+		provider.freeze();
+		assertTrue(provider.isFrozen());
+
+		List<Hook> hooks = new ArrayList<Hook>(provider.getHooks("Plugin", "run"));
+		assertEquals(Arrays.asList(early, late), hooks);
+		assertNull(provider.getHooks("Plugin", "other"));
+		assertNull(provider.getHooks("Other", "run"));
+	}
+
+	@Test
+	public void testRegisterAfterFreezeFails() {
+		HookProvider provider = new HookProvider();
+		provider.freeze();
+
+		try {
+			provider.registerHooks(Collections.singletonList(hook("Plugin:run", 1)));
+			fail("Registering after freeze must fail");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertNull(provider.getHooks("Plugin", "run"));
+	}
+}
@@ -0,0 +1,229 @@
+package io.core9.core.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.xeoh.plugins.base.impl.classpath.loader.DownloadCache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class DownloadCacheTest {
+
+	HttpServer server;
+
+	ExecutorService executor;
+
+	File directory;
+
+	DownloadCache cache;
+
+	volatile String etag = "\"v1\"";
+
+	volatile byte[] content = "first version".getBytes();
+
+	final AtomicInteger requests = new AtomicInteger();
+
+	final AtomicInteger transfers = new AtomicInteger();
+
+	volatile int status = 200;
+
+	/** If set, every request waits until this many requests arrived */
+	volatile CountDownLatch arrivals;
+
+	final AtomicInteger inFlight = new AtomicInteger();
+
+	final AtomicInteger maxInFlight = new AtomicInteger();
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.incrementAndGet();
+				int current = inFlight.incrementAndGet();
+				try {
+					int max;
+					while ((max = maxInFlight.get()) < current && !maxInFlight.compareAndSet(max, current)) {
+						// retry
+					}
+					if (arrivals != null) {
+						arrivals.countDown();
+						arrivals.await(5, TimeUnit.SECONDS);
+					}
+					respond(exchange);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					inFlight.decrementAndGet();
+				}
+			}
+
+			private void respond(HttpExchange exchange) throws IOException {
+				if (status != 200) {
+					exchange.sendResponseHeaders(status, -1);
+					exchange.close();
+					return;
+				}
+
+				exchange.getResponseHeaders().set("ETag", etag);
+
+				if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+					exchange.sendResponseHeaders(304, -1);
+					exchange.close();
+					return;
+				}
+
+				transfers.incrementAndGet();
+				byte[] body = (exchange.getRequestURI().getPath() + ":" + new String(content)).getBytes();
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.start();
+
+		directory = Files.createTempDirectory("downloads").toFile();
+		cache = new DownloadCache(directory);
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		executor.shutdownNow();
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testUnchangedDownloadIsRevalidated() throws IOException {
+		File first = cache.fetch(uri("/a.jar"));
+		File second = cache.fetch(uri("/a.jar"));
+
+		assertEquals(first, second);
+		assertEquals(2, requests.get());
+		assertEquals(1, transfers.get());
+		assertEquals("/a.jar:first version", new String(Files.readAllBytes(second.toPath())));
+	}
+
+	@Test
+	public void testChangedDownloadIsFetchedAgain() throws IOException {
+		File first = cache.fetch(uri("/a.jar"));
+
+		etag = "\"v2\"";
+		content = "second version".getBytes();
+		File second = cache.fetch(uri("/a.jar"));
+
+		assertFalse(first.equals(second));
+		assertEquals(2, transfers.get());
+		assertEquals("/a.jar:second version", new String(Files.readAllBytes(second.toPath())));
+	}
+
+	@Test
+	public void testServerErrorFallsBackToCachedCopy() throws IOException {
+		File first = cache.fetch(uri("/a.jar"));
+
+		status = 500;
+		File second = cache.fetch(uri("/a.jar"));
+
+		assertEquals(first, second);
+		assertEquals("/a.jar:first version", new String(Files.readAllBytes(second.toPath())));
+		assertEquals(1, transfers.get());
+	}
+
+	@Test
+	public void testServerErrorWithoutCachedCopyFails() {
+		status = 404;
+		try {
+			cache.fetch(uri("/a.jar"));
+			fail("Fetched an error page");
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals(0, directory.listFiles().length);
+	}
+
+	@Test
+	public void testModifiedCopyIsFetchedAgain() throws IOException {
+		File first = cache.fetch(uri("/a.jar"));
+		Files.write(first.toPath(), "tampered".getBytes());
+
+		File second = cache.fetch(uri("/a.jar"));
+
+		assertEquals(first, second);
+		assertEquals(2, transfers.get());
+		assertEquals("/a.jar:first version", new String(Files.readAllBytes(second.toPath())));
+	}
+
+	@Test
+	public void testModifiedCopyIsNoFallback() throws IOException {
+		File first = cache.fetch(uri("/a.jar"));
+		Files.write(first.toPath(), "tampered".getBytes());
+
+		status = 500;
+		try {
+			cache.fetch(uri("/a.jar"));
+			fail("Used a modified copy");
+		} catch (IOException e) {
+			// expected
+		}
+		assertFalse(first.exists());
+	}
+
+	@Test
+	public void testReplacedDownloadIsRemoved() throws IOException {
+		File first = cache.fetch(uri("/a.jar"));
+		File other = cache.fetch(uri("/b.jar"));
+
+		etag = "\"v2\"";
+		content = "second version".getBytes();
+		File second = cache.fetch(uri("/a.jar"));
+
+		assertFalse(first.exists());
+		assertTrue(second.exists());
+		assertTrue(other.exists());
+		assertEquals(4, directory.listFiles().length);
+	}
+
+	@Test
+	public void testFetchSeveralInParallel() throws IOException {
+		arrivals = new CountDownLatch(3);
+		Map<URI, File> files = cache.fetch(Arrays.asList(uri("/a.jar"), uri("/b.jar"), uri("/c.jar")));
+
+		assertEquals(3, files.size());
+		assertEquals("/b.jar:first version", new String(Files.readAllBytes(files.get(uri("/b.jar")).toPath())));
+		assertTrue(files.get(uri("/a.jar")).getParentFile().equals(directory));
+		assertEquals(3, maxInFlight.get());
+	}
+
+	private URI uri(String path) {
+		return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path);
+	}
+}
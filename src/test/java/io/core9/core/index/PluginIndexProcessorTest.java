@@ -0,0 +1,115 @@
+package io.core9.core.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import net.xeoh.plugins.base.impl.classpath.index.PluginIndex;
+import net.xeoh.plugins.base.impl.classpath.index.PluginIndexProcessor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PluginIndexProcessorTest {
+
+	File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("index", "");
+		dir.delete();
+		new File(dir, "out").mkdirs();
+	}
+
+	@After
+	public void tearDown() {
+		delete(dir);
+	}
+
+	@Test
+	public void testIndexIsEmptiedWhenLastPluginIsRemoved() throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			return;
+		}
+
+		File plugin = source("a/APlugin.java", "package a; @net.xeoh.plugins.base.annotations.PluginImplementation public class APlugin implements net.xeoh.plugins.base.Plugin {}");
+		assertEquals(0, compile(compiler, plugin));
+		assertEquals(Arrays.asList("a.APlugin"), readIndex());
+
+		// Incremental build: the plugin is gone, only an unrelated class is compiled
+		plugin.delete();
+		new File(dir, "out/a/APlugin.class").delete();
+		File other = source("b/Other.java", "package b; public class Other {}");
+		assertEquals(0, compile(compiler, other));
+		assertTrue(readIndex().isEmpty());
+	}
+
+	@Test
+	public void testUnchangedPluginsAreKept() throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			return;
+		}
+
+		assertEquals(0, compile(compiler, source("a/APlugin.java", "package a; @net.xeoh.plugins.base.annotations.PluginImplementation public class APlugin implements net.xeoh.plugins.base.Plugin {}")));
+		assertEquals(0, compile(compiler, source("b/BPlugin.java", "package b; @net.xeoh.plugins.base.annotations.PluginImplementation public class BPlugin implements net.xeoh.plugins.base.Plugin {}")));
+		assertEquals(Arrays.asList("b.BPlugin", "a.APlugin"), readIndex());
+	}
+
+	private int compile(JavaCompiler compiler, File source) {
+		String out = new File(dir, "out").getPath();
+		String classpath = out + File.pathSeparator + System.getProperty("java.class.path");
+		return compiler.run(null, null, null, "-d", out, "-cp", classpath,
+		        "-processor", PluginIndexProcessor.class.getName(), "-processorpath", classpath, source.getPath());
+	}
+
+	private File source(String name, String content) throws IOException {
+		File file = new File(dir, "src/" + name);
+		file.getParentFile().mkdirs();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	private Collection<String> readIndex() throws IOException {
+		File index = new File(dir, "out/" + PluginIndex.PATH);
+		if (!index.exists()) {
+			return Collections.emptyList();
+		}
+		InputStream stream = new FileInputStream(index);
+		try {
+			return PluginIndex.readClassNames(stream);
+		} finally {
+			stream.close();
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
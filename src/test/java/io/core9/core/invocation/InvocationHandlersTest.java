@@ -34,4 +34,12 @@ public class InvocationHandlersTest {
 		assertTrue(testPlugin2.dummyTest().equals("fromtestplugin2invocationhandler"));
 		
 	}
+	
+	@Test
+	public void testPluginLookupByInterface() {
+		TestPlugin testPlugin = (TestPlugin) registry.getPlugin(TestPlugin.class);
+		assertTrue(testPlugin == registry.getPlugin(TestPluginImpl.class));
+		assertTrue(testPlugin.dummyTest().equals("invocationhandler"));
+		assertTrue(registry.getPlugins(TestPlugin2.class).size() == 1);
+	}
 }
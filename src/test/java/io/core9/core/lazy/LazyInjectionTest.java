@@ -0,0 +1,35 @@
+package io.core9.core.lazy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import io.core9.core.PluginRegistry;
+import io.core9.core.PluginRegistryImpl;
+import io.core9.core.boot.BootstrapFramework;
+import net.xeoh.plugins.base.PluginManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LazyInjectionTest {
+
+	PluginRegistry registry;
+
+	@Before
+	public void setUp() {
+		BootstrapFramework.run();
+		registry = PluginRegistryImpl.getInstance();
+	}
+
+	@Test
+	public void testPluginsUsingEachOtherLazilyAreSpawned() {
+		PluginManager manager = registry.getManager();
+		LazyPluginA a = manager.getPlugin(LazyPluginA.class);
+		LazyPluginB b = manager.getPlugin(LazyPluginB.class);
+		assertNotNull(a);
+		assertNotNull(b);
+
+		assertSame(b, a.getB());
+		assertEquals("a", b.getNameOfA());
+	}
+}
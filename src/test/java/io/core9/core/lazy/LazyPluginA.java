@@ -0,0 +1,9 @@
+package io.core9.core.lazy;
+
+import io.core9.core.plugin.Core9Plugin;
+
+public interface LazyPluginA extends Core9Plugin {
+	String getName();
+
+	LazyPluginB getB();
+}
@@ -0,0 +1,22 @@
+package io.core9.core.lazy;
+
+import net.xeoh.plugins.base.Provider;
+import net.xeoh.plugins.base.annotations.PluginImplementation;
+import net.xeoh.plugins.base.annotations.injections.InjectPlugin;
+
+@PluginImplementation
+public class LazyPluginAImpl implements LazyPluginA {
+
+	@InjectPlugin
+	public Provider<LazyPluginB> b;
+
+	@Override
+	public String getName() {
+		return "a";
+	}
+
+	@Override
+	public LazyPluginB getB() {
+		return b.get();
+	}
+}
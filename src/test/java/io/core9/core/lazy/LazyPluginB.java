@@ -0,0 +1,7 @@
+package io.core9.core.lazy;
+
+import io.core9.core.plugin.Core9Plugin;
+
+public interface LazyPluginB extends Core9Plugin {
+	String getNameOfA();
+}
@@ -0,0 +1,16 @@
+package io.core9.core.lazy;
+
+import net.xeoh.plugins.base.annotations.PluginImplementation;
+import net.xeoh.plugins.base.annotations.injections.InjectPlugin;
+
+@PluginImplementation
+public class LazyPluginBImpl implements LazyPluginB {
+
+	@InjectPlugin(lazy = true)
+	public LazyPluginA a;
+
+	@Override
+	public String getNameOfA() {
+		return a.getName();
+	}
+}
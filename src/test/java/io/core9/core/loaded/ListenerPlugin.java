@@ -0,0 +1,10 @@
+package io.core9.core.loaded;
+
+import io.core9.core.dependencies.TestPlugin2;
+import io.core9.core.plugin.Core9Plugin;
+
+import java.util.List;
+
+public interface ListenerPlugin extends Core9Plugin {
+	List<TestPlugin2> getLoaded();
+}
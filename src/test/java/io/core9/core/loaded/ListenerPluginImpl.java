@@ -0,0 +1,25 @@
+package io.core9.core.loaded;
+
+import io.core9.core.dependencies.TestPlugin2;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.xeoh.plugins.base.annotations.PluginImplementation;
+import net.xeoh.plugins.base.annotations.events.PluginLoaded;
+
+@PluginImplementation
+public class ListenerPluginImpl implements ListenerPlugin {
+
+	private final List<TestPlugin2> loaded = new CopyOnWriteArrayList<TestPlugin2>();
+
+	@PluginLoaded
+	public void loaded(TestPlugin2 plugin) {
+		loaded.add(plugin);
+	}
+
+	@Override
+	public List<TestPlugin2> getLoaded() {
+		return loaded;
+	}
+}
@@ -0,0 +1,42 @@
+package io.core9.core.loaded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import io.core9.core.PluginRegistry;
+import io.core9.core.PluginRegistryImpl;
+import io.core9.core.boot.BootstrapFramework;
+import io.core9.core.dependencies.TestPlugin2;
+import net.xeoh.plugins.base.PluginManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PluginLoadedTest {
+
+	PluginRegistry registry;
+
+	@Before
+	public void setUp() {
+		BootstrapFramework.run();
+		registry = PluginRegistryImpl.getInstance();
+	}
+
+	@Test
+	public void testListenerCalledOnceForMatchingPlugin() {
+		PluginManager manager = registry.getManager();
+		ListenerPlugin listener = manager.getPlugin(ListenerPlugin.class);
+
+		assertEquals(1, listener.getLoaded().size());
+		assertSame(manager.getPlugin(TestPlugin2.class), listener.getLoaded().get(0));
+	}
+
+	@Test
+	public void testListenersAreIndexedByType() {
+		PluginManager manager = registry.getManager();
+		net.xeoh.plugins.base.impl.registry.PluginRegistry pluginRegistry = registry.getManager().getPluginRegistry();
+
+		assertEquals(1, pluginRegistry.getListenersFor(manager.getPlugin(TestPlugin2.class)).size());
+		assertTrue(pluginRegistry.getListenersFor(manager.getPlugin(ListenerPlugin.class)).isEmpty());
+	}
+}
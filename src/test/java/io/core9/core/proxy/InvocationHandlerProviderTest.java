@@ -0,0 +1,58 @@
+package io.core9.core.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+
+import net.xeoh.plugins.base.Plugin;
+
+import org.junit.Test;
+
+public class InvocationHandlerProviderTest {
+
+	public interface HandledPlugin extends Plugin {
+	}
+
+	public interface UnhandledPlugin extends Plugin {
+	}
+
+	public static class Handler implements InvocationHandler {
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			return null;
+		}
+	}
+
+	@Test
+	public void testFrozenHandlersAreResolved() {
+		InvocationHandlerProvider provider = new InvocationHandlerProvider();
+		provider.setDefaultInvocationHandler(HandledPlugin.class, Handler.class);
+		provider.freeze();
+
+		assertTrue(provider.isFrozen());
+		assertEquals(Handler.class, provider.getInvocationHandler(HandledPlugin.class));
+		assertEquals(DefaultInvocationHandler.class, provider.getInvocationHandler(UnhandledPlugin.class));
+	}
+
+	@Test
+	public void testWritesAfterFreezeFail() {
+		InvocationHandlerProvider provider = new InvocationHandlerProvider();
+		provider.freeze();
+
+		try {
+			provider.setDefaultInvocationHandler(HandledPlugin.class, Handler.class);
+			fail("Setting a handler after freeze must fail");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			provider.addInvocationHandler(HandledPlugin.class, 3, Handler.class);
+			fail("Adding a handler after freeze must fail");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package io.core9.core.realm;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles small classes into directories the realms can load from.
+ */
+class Classes {
+
+	final File root;
+
+	Classes(File root) {
+		this.root = root;
+	}
+
+	static boolean canCompile() {
+		return ToolProvider.getSystemJavaCompiler() != null;
+	}
+
+	/**
+	 * Compiles the given sources into root/location.
+	 *
+	 * @param location Name of the output directory.
+	 * @param classpath Output directories of earlier calls.
+	 * @param sources Pairs of binary class name and source.
+	 * @return The output directory.
+	 */
+	File compile(String location, String[] classpath, String... sources) throws IOException {
+		File out = new File(root, location);
+		out.mkdirs();
+
+		StringBuilder cp = new StringBuilder(out.getPath());
+		for (String entry : classpath) {
+			cp.append(File.pathSeparator).append(new File(root, entry).getPath());
+		}
+
+		List<String> args = new ArrayList<String>();
+		args.add("-d");
+		args.add(out.getPath());
+		args.add("-cp");
+		args.add(cp.toString());
+		for (int i = 0; i < sources.length; i += 2) {
+			File file = new File(root, "src/" + location + "/" + sources[i].replace('.', '/') + ".java");
+			file.getParentFile().mkdirs();
+			Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+			try {
+				writer.write(sources[i + 1]);
+			} finally {
+				writer.close();
+			}
+			args.add(file.getPath());
+		}
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler.run(null, null, null, args.toArray(new String[args.size()])) != 0) {
+			throw new IOException("Unable to compile " + location);
+		}
+		return out;
+	}
+
+	void delete() {
+		delete(root);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,133 @@
+package io.core9.core.realm;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+
+import net.xeoh.plugins.base.impl.classpath.realm.PluginRealm;
+import net.xeoh.plugins.base.impl.classpath.realm.PluginRealms;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PluginRealmsTest {
+
+	Classes classes;
+
+	URLClassLoader parent;
+
+	PluginRealms realms;
+
+	File a;
+
+	File b;
+
+	@Before
+	public void setUp() throws Exception {
+		classes = new Classes(Files.createTempDirectory("realms").toFile());
+		if (!Classes.canCompile()) {
+			return;
+		}
+
+		File core = classes.compile("core", new String[0], "core.Api", "package core; public interface Api { Object other(); }");
+		b = classes.compile("b", new String[] { "core" },
+		        "b.B", "package b; public class B {}",
+		        "b.C", "package b; public class C {}");
+		a = classes.compile("a", new String[] { "core", "b" },
+		        "a.A", "package a; public class A implements core.Api { public Object other() { return new b.B(); } }");
+
+		// A copy of the core API in the plugin location must not shadow the parent
+		new File(a, "core").mkdirs();
+		Files.copy(new File(core, "core/Api.class").toPath(), new File(a, "core/Api.class").toPath());
+
+		parent = new URLClassLoader(new URL[] { core.toURI().toURL() }, null);
+		realms = new PluginRealms(parent);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (realms != null) {
+			realms.close();
+			parent.close();
+		}
+		classes.delete();
+	}
+
+	@Test
+	public void testCoreClassesComeFromTheParent() throws Exception {
+		if (realms == null) {
+			return;
+		}
+
+		PluginRealm realm = realms.addRealm("a", new URI[] { a.toURI() });
+		Class<?> api = realm.loadClass("core.Api");
+
+		assertSame(parent, api.getClassLoader());
+		assertSame(api, realm.loadClass("a.A").getInterfaces()[0]);
+	}
+
+	@Test
+	public void testClassesOfIndexedPackagesComeFromTheirRealm() throws Exception {
+		if (realms == null) {
+			return;
+		}
+
+		PluginRealm realmA = realms.addRealm("a", new URI[] { a.toURI() });
+		PluginRealm realmB = realms.addRealm("b", new URI[] { b.toURI() });
+
+		// Defines package b in realm b
+		Class<?> c = realmB.loadClass("b.C");
+		assertSame(realmB, c.getClassLoader());
+
+		assertSame(c, realmA.loadClass("b.C"));
+		assertSame(realmB, realmA.loadClass("b.B").getClassLoader());
+
+		Object other = invokeOther(realmA.loadClass("a.A"));
+		assertSame(realmB.loadClass("b.B"), other.getClass());
+	}
+
+	@Test
+	public void testClassesOfUnindexedPackagesAreFoundByResource() throws Exception {
+		if (realms == null) {
+			return;
+		}
+
+		PluginRealm realmA = realms.addRealm("a", new URI[] { a.toURI() });
+		PluginRealm realmB = realms.addRealm("b", new URI[] { b.toURI() });
+
+		Class<?> other = invokeOther(realmA.loadClass("a.A")).getClass();
+		assertSame(realmB, other.getClassLoader());
+		assertSame(other, realmB.loadClass("b.B"));
+	}
+
+	@Test
+	public void testMissingClassesAreNotFound() throws Exception {
+		if (realms == null) {
+			return;
+		}
+
+		PluginRealm realmA = realms.addRealm("a", new URI[] { a.toURI() });
+		realms.addRealm("b", new URI[] { b.toURI() });
+
+		try {
+			realmA.loadClass("b.Missing");
+			fail("Loaded a missing class");
+		} catch (ClassNotFoundException e) {
+			// expected
+		}
+		assertNull(realmA.getResource("b/Missing.class"));
+		assertNotNull(realmA.getResource("a/A.class"));
+	}
+
+	private static Object invokeOther(Class<?> type) throws Exception {
+		return type.getMethod("other").invoke(type.newInstance());
+	}
+}
@@ -0,0 +1,122 @@
+package io.core9.core.realm;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import net.xeoh.plugins.base.impl.classpath.realm.PluginRealms;
+
+/**
+ * Several threads load all classes of one JAR, through a plugin realm and through a
+ * class loader that is not parallel capable, as classworlds 1.1 realms are not.
+ * Arguments: number of classes (4000), number of threads (8), number of runs (5).
+ */
+public class RealmBenchmark {
+
+	/** Not registered as parallel capable, locks the whole loader per class */
+	static class SerialLoader extends URLClassLoader {
+		SerialLoader(URL[] urls, ClassLoader parent) {
+			super(urls, parent);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		Classes classes = new Classes(Files.createTempDirectory("realmbenchmark").toFile());
+		try {
+			String[] sources = new String[count * 2];
+			String[] names = new String[count];
+			for (int i = 0; i < count; i++) {
+				names[i] = "p" + (i % 20) + ".C" + i;
+				sources[2 * i] = names[i];
+				sources[2 * i + 1] = "package p" + (i % 20) + "; public class C" + i + " { public int value() { return " + i + "; } }";
+			}
+			File jar = jar(classes.compile("classes", new String[0], sources), new File(classes.root, "classes.jar"));
+
+			ClassLoader parent = ClassLoader.getSystemClassLoader().getParent();
+			for (int run = 0; run < runs; run++) {
+				SerialLoader serial = new SerialLoader(new URL[] { jar.toURI().toURL() }, parent);
+				long serialTime = load(serial, names, threads);
+				serial.close();
+
+				PluginRealms realms = new PluginRealms(parent);
+				long realmTime = load(realms.addRealm("benchmark", new URI[] { jar.toURI() }), names, threads);
+				realms.close();
+
+				System.out.println("run " + run + ": serial loader " + serialTime / 1000000 + " ms, plugin realm " + realmTime / 1000000 + " ms");
+			}
+		} finally {
+			classes.delete();
+		}
+	}
+
+	/**
+	 * Loads all classes with the given number of threads, each starting at another offset.
+	 *
+	 * @return Nanoseconds until all threads finished.
+	 */
+	private static long load(final ClassLoader loader, final String[] names, int threads) throws InterruptedException {
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int offset = t * names.length / threads;
+			workers[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < names.length; i++) {
+						try {
+							loader.loadClass(names[(offset + i) % names.length]);
+						} catch (ClassNotFoundException e) {
+							failures.incrementAndGet();
+						}
+					}
+				}
+			};
+		}
+
+		long start = System.nanoTime();
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long rval = System.nanoTime() - start;
+
+		if (failures.get() > 0) {
+			throw new IllegalStateException(failures.get() + " classes not found by " + loader);
+		}
+		return rval;
+	}
+
+	private static File jar(File directory, File target) throws Exception {
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(target));
+		try {
+			add(out, directory, "");
+		} finally {
+			out.close();
+		}
+		return target;
+	}
+
+	private static void add(JarOutputStream out, File directory, String prefix) throws Exception {
+		for (File file : directory.listFiles()) {
+			if (file.isDirectory()) {
+				add(out, file, prefix + file.getName() + "/");
+				continue;
+			}
+			out.putNextEntry(new JarEntry(prefix + file.getName()));
+			Files.copy(file.toPath(), out);
+			out.closeEntry();
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package io.core9.core.realm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+
+import net.xeoh.plugins.base.impl.classpath.realm.PluginRealm;
+import net.xeoh.plugins.base.impl.classpath.realm.PluginRealms;
+import net.xeoh.plugins.base.impl.classpath.realm.ResolutionCache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResolutionCacheTest {
+
+	/** Invalidates the cache while a realm asks it for a probe class */
+	static class InvalidatingParent extends URLClassLoader {
+		volatile ResolutionCache cache;
+
+		InvalidatingParent() {
+			super(new URL[0], null);
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (name.startsWith("probe.") && cache != null) {
+				cache.invalidate();
+			}
+			return super.loadClass(name, resolve);
+		}
+	}
+
+	Classes classes;
+
+	InvalidatingParent parent;
+
+	PluginRealms realms;
+
+	ResolutionCache cache;
+
+	File a;
+
+	@Before
+	public void setUp() throws Exception {
+		classes = new Classes(Files.createTempDirectory("resolution").toFile());
+		if (!Classes.canCompile()) {
+			return;
+		}
+
+		a = classes.compile("a", new String[0], "a.A", "package a; public class A {}");
+
+		parent = new InvalidatingParent();
+		realms = new PluginRealms(parent);
+		cache = realms.getResolutionCache();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (realms != null) {
+			realms.close();
+			parent.close();
+		}
+		classes.delete();
+	}
+
+	@Test
+	public void testHitsAreCached() throws Exception {
+		if (realms == null) {
+			return;
+		}
+
+		PluginRealm realm = realms.addRealm("a", new URI[] { a.toURI() });
+		Class<?> first = realm.loadClass("a.A");
+		long misses = cache.getMisses();
+		long hits = cache.getHits();
+
+		assertSame(first, realm.loadClass("a.A"));
+		assertEquals(hits + 1, cache.getHits());
+		assertEquals(misses, cache.getMisses());
+
+		URL resource = realm.getResource("a/A.class");
+		assertNotNull(resource);
+		assertEquals(resource, realm.getResource("a/A.class"));
+		assertEquals(hits + 2, cache.getHits());
+	}
+
+	@Test
+	public void testMissesAreCachedUntilLocationsAreAdded() throws Exception {
+		if (realms == null) {
+			return;
+		}
+
+		PluginRealm realm = realms.addRealm("a", new URI[] { a.toURI() });
+		assertMissing(realm, "b.B");
+		assertNull(realm.getResource("b/data.txt"));
+
+		long hits = cache.getHits();
+		assertMissing(realm, "b.B");
+		assertNull(realm.getResource("b/data.txt"));
+		assertEquals(hits + 2, cache.getHits());
+
+		// A new realm provides the class, the known miss must be forgotten
+		File b = classes.compile("b", new String[0], "b.B", "package b; public class B {}");
+		Files.write(new File(b, "b/data.txt").toPath(), "data".getBytes());
+		PluginRealm realmB = realms.addRealm("b", new URI[] { b.toURI() });
+
+		assertSame(realmB, realm.loadClass("b.B").getClassLoader());
+		assertNotNull(realmB.getResource("b/data.txt"));
+	}
+
+	@Test
+	public void testStoreAfterConcurrentInvalidateIsDropped() throws Exception {
+		if (realms == null) {
+			return;
+		}
+
+		PluginRealm realm = realms.addRealm("a", new URI[] { a.toURI() });
+		parent.cache = cache;
+
+		// The parent invalidates while the realm resolves, so the miss must not be stored
+		assertMissing(realm, "probe.Optional");
+		parent.cache = null;
+
+		long hits = cache.getHits();
+		long misses = cache.getMisses();
+		assertMissing(realm, "probe.Optional");
+		assertEquals(hits, cache.getHits());
+		assertEquals(misses + 1, cache.getMisses());
+
+		// Without invalidation the miss is stored
+		assertMissing(realm, "probe.Optional");
+		assertEquals(hits + 1, cache.getHits());
+	}
+
+	@Test
+	public void testInvalidateDropsEverything() throws Exception {
+		if (realms == null) {
+			return;
+		}
+
+		PluginRealm realm = realms.addRealm("a", new URI[] { a.toURI() });
+		realm.loadClass("a.A");
+		assertMissing(realm, "a.Missing");
+
+		cache.invalidate();
+		long misses = cache.getMisses();
+		realm.loadClass("a.A");
+		assertMissing(realm, "a.Missing");
+		assertEquals(misses + 2, cache.getMisses());
+	}
+
+	private static void assertMissing(PluginRealm realm, String name) {
+		try {
+			realm.loadClass(name);
+			fail("Loaded " + name);
+		} catch (ClassNotFoundException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package io.core9.core.timer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.xeoh.plugins.base.impl.spawning.Scheduler;
+import net.xeoh.plugins.base.impl.spawning.Scheduler.PeriodicTask;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SchedulerTest {
+
+	Scheduler scheduler;
+
+	@Before
+	public void setUp() {
+		scheduler = new Scheduler(1);
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void testTimerStopsWhenReturningTrue() throws InterruptedException {
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(3);
+
+		PeriodicTask task = scheduler.schedule("stops", new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				done.countDown();
+				return Boolean.valueOf(calls.incrementAndGet() == 3);
+			}
+		}, 0, 5, true);
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		Thread.sleep(50);
+
+		assertEquals(3, calls.get());
+		assertEquals(3, task.getRuns());
+		assertTrue(task.isCancelled());
+	}
+
+	@Test
+	public void testCancelAndMetrics() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(2);
+
+		PeriodicTask task = scheduler.schedule("slow", new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws InterruptedException {
+				Thread.sleep(20);
+				started.countDown();
+				return Boolean.FALSE;
+			}
+		}, 0, 5, false);
+
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		task.cancel();
+		Thread.sleep(30);
+		long runs = task.getRuns();
+		Thread.sleep(50);
+
+		assertEquals(runs, task.getRuns());
+		assertTrue(task.getOverruns() >= 2);
+	}
+}